@@ -0,0 +1,322 @@
+package rpg;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class of harnesses attributing the bytes allocated by the calling thread to individual public API calls
+ *
+ * Every probe prepares fresh state outside of the measurement and returns the call to measure. The bytes the current
+ * thread allocated during the call are read from the thread allocation counters of the JVM, which count every object
+ * the call allocates, including the ones thrown away immediately. Every probe is first run a number of times without
+ * being measured. The default of 20000 calls exceeds the invocation thresholds of the optimizing compiler of HotSpot,
+ * so the calls are normally measured once it compiled them and removed the allocations escape analysis can remove.
+ * Compilation happens in the background and is not awaited, so an allocation that disappears with a larger warmup was
+ * removed by escape analysis. With a much smaller warmup the calls run interpreted or with the first tier compiler,
+ * which does not do escape analysis. The report lists the probes ranked by the average number of bytes a call
+ * allocates.
+ *
+ * The Hero constructor is the exception: every hero claims a generated armor identification, which is found by
+ * scanning the primes from 2, so its warmup is capped at heroWarmup calls and it may be measured before escape
+ * analysis applies. The report marks it with its number of unmeasured calls.
+ *
+ * The harness is configured with arguments of the form name=value: warmup and iterations set the number of calls
+ * that are not and that are measured for every probe.
+ *
+ * @author  Corteville Andrew
+ */
+public class AllocationReport {
+
+    /**
+     * An interface of calls to measure
+     */
+    private interface Call {
+        void run() throws Exception;
+    }
+
+    /**
+     * An interface of probes, preparing the state of a call to measure
+     */
+    private interface Probe {
+        Call prepare() throws Exception;
+    }
+
+    /**
+     * The number of calls of every probe that are not measured
+     */
+    private int warmup = 20000;
+
+    /**
+     * The maximum number of calls of the Hero constructor that are not measured
+     */
+    private static final int heroWarmup = 1000;
+
+    /**
+     * The number of calls of every probe that are measured
+     */
+    private int iterations = 1000;
+
+    /**
+     * Variable referencing the names of the registered probes
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Variable referencing the registered probes
+     */
+    private final List<Probe> probes = new ArrayList<>();
+
+    /**
+     * Variable referencing the maximum number of unmeasured calls of every registered probe
+     */
+    private final List<Integer> warmups = new ArrayList<>();
+
+    /**
+     * Variable referencing the thread allocation counters of the JVM
+     */
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Variable referencing the last prime used as the identification of an armor
+     */
+    private long lastArmorId = 1;
+
+    /**
+     * Runs every probe and prints the ranked report
+     */
+    public static void main(String[] args) throws Exception {
+        AllocationReport report = new AllocationReport();
+        for (String arg: args) {
+            int index = arg.indexOf('=');
+            if(index < 0) throw new IllegalArgumentException("Expected name=value: " + arg);
+            int value = Integer.parseInt(arg.substring(index + 1));
+            switch (arg.substring(0, index)) {
+                case "warmup": report.warmup = value; break;
+                case "iterations": report.iterations = value; break;
+                default: throw new IllegalArgumentException("Unknown setting: " + arg);
+            }
+        }
+        report.registerProbes();
+        System.out.print(report.run());
+    }
+
+    /**
+     * Registers a probe of the call with the given name
+     */
+    private void probe(String name, Probe probe) {
+        probe(name, Integer.MAX_VALUE, probe);
+    }
+
+    /**
+     * Registers a probe of the call with the given name, of which at most the given number of calls are not measured
+     */
+    private void probe(String name, int maxWarmup, Probe probe) {
+        names.add(name);
+        probes.add(probe);
+        warmups.add(maxWarmup);
+    }
+
+    /**
+     * Registers a probe of every measured call
+     */
+    private void registerProbes() {
+        for (String type: new String[]{"Chainmail", "Leather", "Plate"}) {
+            if(!Armor.getArmorTypes().containsKey(type)) Armor.addArmorType(type, 20);
+        }
+        probe("new Hero(String, double)", heroWarmup, () -> () -> new Hero("Allocating", 25));
+        probe("new Monster(String, int, int, int, Collection)", () -> {
+            List<Item> items = List.of(new Weapon(1, 14), new Purse(0.5, 100));
+            return () -> new Monster("Allocating", 100, 10, 14, new ArrayList<>(items));
+        });
+        probe("new Weapon(double, int)", () -> () -> new Weapon(1, 14));
+        probe("new Armor(long, double, int, int)", () -> {
+            long id = nextArmorId();
+            return () -> new Armor(id, 1, 10, 10);
+        });
+        probe("new Armor(long, double, int, String)", () -> {
+            long id = nextArmorId();
+            return () -> new Armor(id, 1, 10, "Leather");
+        });
+        probe("Armor.getArmorTypes()", () -> Armor::getArmorTypes);
+        probe("Hero.canHaveAsName(String)", () -> {
+            Hero hero = newHero();
+            return () -> hero.canHaveAsName("Legolas: Greenleaf");
+        });
+        probe("Monster.canHaveAsName(String)", () -> {
+            Monster monster = newMonster();
+            return () -> monster.canHaveAsName("Balrog of Morgoth");
+        });
+        probe("Hero.hit(Monster)", () -> {
+            Hero hero = newHero();
+            Monster monster = newMonster();
+            return () -> hero.hit(monster);
+        });
+        probe("Monster.hit(Entity)", () -> {
+            Hero hero = newHero();
+            Monster monster = newMonster();
+            return () -> monster.hit(hero);
+        });
+        probe("Hero.fight(Monster)", () -> {
+            Hero hero = newHero();
+            Monster monster = newMonster();
+            return () -> hero.fight(monster);
+        });
+        probe("Hero.heal()", () -> {
+            Hero hero = Hero.restore("Allocating", 100, 53, 25);
+            return hero::heal;
+        });
+        probe("Backpack.pickup(Item)", () -> {
+            Backpack backpack = newBackpack();
+            Weapon weapon = new Weapon(1, 14);
+            return () -> backpack.pickup(weapon);
+        });
+        probe("Backpack.drop(Item)", () -> {
+            Backpack backpack = newBackpack();
+            Weapon weapon = new Weapon(1, 14);
+            backpack.pickup(weapon);
+            return () -> backpack.drop(weapon);
+        });
+        probe("Backpack.drop(Item) not held", () -> {
+            Backpack backpack = newBackpack();
+            Weapon weapon = new Weapon(1, 14);
+            return () -> {
+                try {
+                    backpack.drop(weapon);
+                } catch (IllegalArgumentException expected) {
+                    // The exception is part of the measured call
+                }
+            };
+        });
+        probe("Backpack.getLoad()", () -> newBackpack()::getLoad);
+        probe("Backpack.getValue()", () -> newBackpack()::getValue);
+        probe("Backpack.getNbItemsOfTypeHeld(Class)", () -> {
+            Backpack backpack = newBackpack();
+            return () -> backpack.getNbItemsOfTypeHeld(Weapon.class);
+        });
+        probe("Backpack.getItems()", () -> newBackpack()::getItems);
+        probe("Entity.getLoad()", () -> newHero()::getLoad);
+        probe("Entity.getValueHeld()", () -> newHero()::getValueHeld);
+        probe("Entity.pickup(Item, Anchorpoint)", () -> {
+            Hero hero = newHero();
+            Weapon weapon = new Weapon(1, 14);
+            return () -> hero.pickup(weapon, Anchorpoint.LEFT_HAND);
+        });
+        probe("Entity.transferItemAtAnchorTo(Entity, Anchorpoint, Anchorpoint)", () -> {
+            Hero hero = newHero();
+            Hero other = newHero();
+            hero.pickup(new Weapon(1, 14), Anchorpoint.LEFT_HAND);
+            return () -> hero.transferItemAtAnchorTo(other, Anchorpoint.LEFT_HAND, Anchorpoint.LEFT_HAND);
+        });
+        probe("Entity.transferItemAtAnchorTo(Entity, Anchorpoint, Anchorpoint) occupied", () -> {
+            Hero hero = newHero();
+            Hero other = newHero();
+            hero.pickup(new Weapon(1, 14), Anchorpoint.LEFT_HAND);
+            other.pickup(new Weapon(1, 14), Anchorpoint.LEFT_HAND);
+            return () -> {
+                try {
+                    hero.transferItemAtAnchorTo(other, Anchorpoint.LEFT_HAND, Anchorpoint.LEFT_HAND);
+                } catch (IllegalArgumentException expected) {
+                    // The exception is part of the measured call
+                }
+            };
+        });
+        probe("Entity.getInventorySnapshot()", () -> newHero()::getInventorySnapshot);
+        probe("Purse.addDucats(int)", () -> {
+            Purse purse = new Purse(0.5, 100);
+            return () -> purse.addDucats(1);
+        });
+        probe("Weapon.degrade(int)", () -> {
+            Weapon weapon = new Weapon(1, 14);
+            return () -> weapon.degrade(7);
+        });
+        probe("Armor.degrade(int)", () -> {
+            Armor armor = new Armor(nextArmorId(), 1, 10, 10);
+            return () -> armor.degrade(1);
+        });
+        probe("Item.toString()", () -> new Weapon(1, 14)::toString);
+        probe("Entity.toString()", () -> newHero()::toString);
+    }
+
+    /**
+     * Returns a new hero without items
+     */
+    private static Hero newHero() {
+        return Hero.restore("Allocating", 100, 97, 25);
+    }
+
+    /**
+     * Returns a new monster without items
+     */
+    private static Monster newMonster() {
+        return new Monster("Allocating", 100, 10, 14, new ArrayList<>());
+    }
+
+    /**
+     * Returns a new backpack holding a few weapons, purses and a backpack
+     */
+    private static Backpack newBackpack() throws Exception {
+        Backpack backpack = new Backpack(1, 10, 100);
+        for (int i = 0; i < 4; i++) backpack.pickup(new Weapon(1, 14));
+        for (int i = 0; i < 2; i++) backpack.pickup(new Purse(0.5, 100));
+        Backpack nested = new Backpack(1, 10, 100);
+        nested.pickup(new Weapon(1, 14));
+        backpack.pickup(nested);
+        return backpack;
+    }
+
+    /**
+     * Returns the next prime that is a valid new identification for an armor
+     */
+    private long nextArmorId() {
+        do {
+            lastArmorId++;
+        } while(!Armor.isValidNewId(lastArmorId));
+        return lastArmorId;
+    }
+
+    /**
+     * Returns the average number of bytes allocated by a call of the given probe, after the given number of calls that
+     * are not measured
+     */
+    private double measure(Probe probe, int warmup) throws Exception {
+        for (int i = 0; i < warmup; i++) probe.prepare().run();
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            Call call = probe.prepare();
+            long before = threads.getCurrentThreadAllocatedBytes();
+            call.run();
+            total += threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        return (double) total / iterations;
+    }
+
+    /**
+     * Runs every probe and returns the ranked report
+     */
+    private String run() throws Exception {
+        if(!threads.isThreadAllocatedMemorySupported()) throw new IllegalStateException("Allocation counters are not supported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        double baseline = measure(() -> () -> {}, warmup);
+
+        List<Map.Entry<String, Double>> results = new ArrayList<>();
+        for (int i = 0; i < probes.size(); i++) {
+            int probeWarmup = Math.min(warmup, warmups.get(i));
+            String name = probeWarmup < warmup ? names.get(i) + " (" + probeWarmup + " unmeasured calls)" : names.get(i);
+            results.add(Map.entry(name, Math.max(0, measure(probes.get(i), probeWarmup) - baseline)));
+        }
+        results.sort(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()));
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%4s %12s  %s%n", "rank", "bytes/call", "call"));
+        for (int i = 0; i < results.size(); i++) {
+            report.append(String.format("%4d %12.0f  %s%n", i + 1, results.get(i).getValue(), results.get(i).getKey()));
+        }
+        report.append(String.format("Averaged over %d calls after %d unmeasured calls, %.0f bytes of measurement overhead "
+                + "subtracted%n", iterations, warmup, baseline));
+        return report.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package rpg;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class of benchmarks of the operations of a backpack holding many items at the bottom of a chain of nested backpacks
+ *
+ * The innermost backpack holds the given number of items, either weapons with distinct identifications or purses all
+ * sharing identification 0, the worst case for operations that look up an item by its identification. The innermost
+ * backpack is nested in the given number of backpacks, the outermost of which lies on the ground. Queries are measured
+ * on the outermost backpack, pickups and drops on the innermost one.
+ *
+ * The worlds are built with restoreItem, as pickup checks every holder for every item and would take quadratic time
+ * to build the larger configurations.
+ *
+ * @author  Corteville Andrew
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackpackBenchmark {
+
+    /**
+     * The kinds of items held by the innermost backpack
+     */
+    public enum Contents {
+        WEAPONS, PURSES
+    }
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int nbItems;
+
+    @Param({"1", "10", "50"})
+    public int depth;
+
+    @Param({"WEAPONS", "PURSES"})
+    public Contents contents;
+
+    /**
+     * Variable referencing the backpack lying on the ground
+     */
+    private Backpack outermost;
+
+    /**
+     * Variable referencing the backpack holding the items
+     */
+    private Backpack innermost;
+
+    /**
+     * Variable referencing an item held by the innermost backpack, the last one added
+     */
+    private Item held;
+
+    /**
+     * Variable referencing an item lying on the ground that is picked up and dropped again
+     */
+    private Item spare;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        innermost = new Backpack(1, 10, 1e12);
+        for (int i = 0; i < nbItems; i++) {
+            held = newItem();
+            innermost.restoreItem(held);
+        }
+        outermost = innermost;
+        for (int i = 1; i < depth; i++) {
+            Backpack holder = new Backpack(1, 10, 1e12);
+            holder.restoreItem(outermost);
+            outermost = holder;
+        }
+        spare = newItem();
+    }
+
+    /**
+     * Returns a new item of the kind held by the innermost backpack
+     */
+    private Item newItem() {
+        return contents == Contents.WEAPONS ? new Weapon(0.01, 7) : new Purse(0.01, 1000);
+    }
+
+    @Benchmark
+    public void pickupDrop() throws Exception {
+        innermost.pickup(spare);
+        innermost.drop(spare);
+    }
+
+    @Benchmark
+    public double getLoad() {
+        return outermost.getLoad();
+    }
+
+    @Benchmark
+    public int getValue() {
+        return outermost.getValue();
+    }
+
+    @Benchmark
+    public boolean holdsItem() {
+        return outermost.holdsItem(held);
+    }
+
+    @Benchmark
+    public boolean holdsItemDirectly() {
+        return innermost.holdsItemDirectly(held);
+    }
+
+    @Benchmark
+    public int getNbItemsOfTypeHeld() {
+        return outermost.getNbItemsOfTypeHeld(contents == Contents.WEAPONS ? Weapon.class : Purse.class);
+    }
+
+    @Benchmark
+    public void canPickup(Blackhole blackhole) {
+        blackhole.consume(innermost.canPickup(spare));
+        blackhole.consume(innermost.canPickup(held));
+    }
+}
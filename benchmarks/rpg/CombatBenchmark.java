@@ -0,0 +1,201 @@
+package rpg;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class of benchmarks of combat between a hero and a monster
+ *
+ * Every benchmarked operation either kills one of the combatants or changes their hit points, so every operation
+ * gets a fresh hero and monster. They are built in batches of batchSize pairs before every iteration, and an
+ * iteration runs exactly one operation per pair, so building them is not timed. Heroes are created without the armor a
+ * hero is normally given, as armor identifications are never released and allocating one per pair would soon
+ * dominate the setup. The monsters looted by collectTreasuresFrom are killed while the batch is built, so only the
+ * looting is timed. Both combatants carry the given inventory:
+ * - NONE: nothing
+ * - ARMED: a weapon in each hand
+ * - LOADED_10, LOADED_100: a weapon in each hand, a purse and a backpack holding 10 or 100 weapons
+ *
+ * The score of a benchmark is the time of a batch, the time of an operation is that score divided by batchSize. The
+ * gc profiler measures the allocations of the whole iteration, so its normalized allocation rate includes building
+ * the pair an operation uses. The baseline benchmark only takes a pair: subtracting its normalized allocation rate
+ * from the one of an operation gives the bytes the operation itself allocates. AllocationReport measures the same
+ * operations without any setup.
+ *
+ * Run main to measure the operations together with the allocation rate reported by the gc profiler.
+ *
+ * @author  Corteville Andrew
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 20, batchSize = CombatBenchmark.batchSize)
+@Measurement(iterations = 20, batchSize = CombatBenchmark.batchSize)
+@Fork(1)
+public class CombatBenchmark {
+
+    /**
+     * The number of operations of an iteration, and of pairs of combatants built before it
+     */
+    static final int batchSize = 1000;
+
+    /**
+     * The inventories both combatants carry
+     */
+    public enum Inventory {
+        NONE(0), ARMED(0), LOADED_10(10), LOADED_100(100);
+
+        /**
+         * Initializes the inventory with a backpack holding the given number of weapons, none if it is zero
+         */
+        Inventory(int nbBackpackItems) {
+            this.nbBackpackItems = nbBackpackItems;
+        }
+
+        /**
+         * Variable referencing the number of weapons in the backpack of this inventory, zero if it has no backpack
+         */
+        private final int nbBackpackItems;
+
+        /**
+         * @return  True if and only if this inventory carries a purse and a backpack
+         */
+        public boolean isLoaded() {
+            return nbBackpackItems > 0;
+        }
+    }
+
+    /**
+     * A class of batches of fresh pairs of combatants, each pair used by a single operation
+     */
+    @State(Scope.Thread)
+    public static class Combatants {
+
+        @Param({"NONE", "ARMED", "LOADED_10", "LOADED_100"})
+        public Inventory inventory;
+
+        private final Hero[] heroes = new Hero[batchSize];
+
+        private final Monster[] monsters = new Monster[batchSize];
+
+        /**
+         * The index of the next pair to use
+         */
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void setup() throws Exception {
+            for (int i = 0; i < batchSize; i++) {
+                heroes[i] = Hero.restore("Benchmarked", 100, 97, 100);
+                for (Item item: newItems()) heroes[i].pickup(item);
+                monsters[i] = newMonster();
+            }
+            next = 0;
+        }
+
+        /**
+         * Returns a new monster carrying an inventory of the benchmarked kind
+         */
+        Monster newMonster() throws Exception {
+            return new Monster("Benchmarked", 100, 10, 14, newItems());
+        }
+
+        /**
+         * Returns the items of a new inventory of the benchmarked kind
+         */
+        private List<Item> newItems() throws Exception {
+            List<Item> items = new ArrayList<>();
+            if(inventory == Inventory.NONE) return items;
+            items.add(new Weapon(1, 14));
+            items.add(new Weapon(1, 14));
+            if(inventory.isLoaded()) {
+                Purse purse = new Purse(0.5, 100);
+                purse.addDucats(50);
+                items.add(purse);
+                Backpack backpack = new Backpack(1, 10, inventory.nbBackpackItems);
+                for (int i = 0; i < inventory.nbBackpackItems; i++) backpack.pickup(new Weapon(0.5, 7));
+                items.add(backpack);
+            }
+            return items;
+        }
+
+        /**
+         * Returns the hero of the next pair, the monster of that pair is returned by the next call of monster()
+         */
+        Hero hero() {
+            return heroes[next];
+        }
+
+        /**
+         * Returns the monster of the next pair and moves on to the pair after it
+         */
+        Monster monster() {
+            return monsters[next++];
+        }
+    }
+
+    /**
+     * A class of batches of pairs of which the monster is already dead
+     */
+    @State(Scope.Thread)
+    public static class Defeated extends Combatants {
+
+        @Override
+        Monster newMonster() throws Exception {
+            Monster monster = super.newMonster();
+            monster.die();
+            return monster;
+        }
+    }
+
+    @Benchmark
+    public Monster baseline(Combatants combatants) {
+        combatants.hero();
+        return combatants.monster();
+    }
+
+    @Benchmark
+    public Monster hit(Combatants combatants) throws Exception {
+        Hero hero = combatants.hero();
+        Monster monster = combatants.monster();
+        hero.hit(monster);
+        return monster;
+    }
+
+    @Benchmark
+    public Hero fight(Combatants combatants) {
+        Hero hero = combatants.hero();
+        hero.fight(combatants.monster());
+        return hero;
+    }
+
+    @Benchmark
+    public Hero dealFinalBlow(Combatants combatants) throws Exception {
+        Hero hero = combatants.hero();
+        hero.dealFinalBlow(combatants.monster());
+        return hero;
+    }
+
+    @Benchmark
+    public Hero collectTreasuresFrom(Defeated combatants) throws Exception {
+        Hero hero = combatants.hero();
+        hero.collectTreasuresFrom(combatants.monster());
+        return hero;
+    }
+
+    /**
+     * Runs the combat benchmarks with the gc profiler
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CombatBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,98 @@
+package rpg;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class of benchmarks of the validation rules that dominate the creation of items and entities
+ *
+ * The identification benchmark measures the search for the next identification of an armor after the given number of
+ * armors claimed the smallest primes, without claiming the result. Every fork starts with no armors, so the existing
+ * armors are created once per trial with explicit identifications.
+ *
+ * @author  Corteville Andrew
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreationBenchmark {
+
+    /**
+     * The given number of armors created before the next identification is searched for
+     */
+    @State(Scope.Thread)
+    public static class Armors {
+
+        @Param({"0", "100", "1000", "10000"})
+        public int nbArmors;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            long id = 2;
+            for (int i = 0; i < nbArmors; i++) {
+                while(!Armor.isValidNewId(id)) id++;
+                new Armor(id, 1, 10, 10);
+            }
+        }
+    }
+
+    /**
+     * The number the first lower prime is searched for
+     */
+    @State(Scope.Thread)
+    public static class Magnitude {
+
+        @Param({"100", "10000", "1000000", "100000000"})
+        public int magnitude;
+    }
+
+    /**
+     * The entities whose name rules are checked, with realistic names including some that are not valid
+     */
+    @State(Scope.Thread)
+    public static class Names {
+
+        private final String[] heroNames = {"Aragorn", "Frodo Baggins", "Samwise: the Brave", "Gil'galad",
+                "Legolas Greenleaf", "Eowyn: Shieldmaiden of Rohan", "Tom O'Bom'badil", "boromir", "Gandalf the Grey",
+                "Radagast: the Brown"};
+
+        private final String[] monsterNames = {"Smaug", "Shelob", "Balrog of Morgoth", "Gollum", "Cave Troll",
+                "Witch-king", "Mouth of Sauron", "Old Man Willow", "goblin", "Ungoliant"};
+
+        private Hero hero;
+
+        private Monster monster;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            hero = Hero.restore("Benchmarked", 100, 97, 10);
+            monster = new Monster("Benchmarked", 100, 10, 14);
+        }
+    }
+
+    @Benchmark
+    public long getNextArmorId(Armors state) {
+        return Armor.getNextId();
+    }
+
+    @Benchmark
+    public int getFirstLowerPrime(Magnitude state) {
+        return Entity.getFirstLowerPrime(state.magnitude);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void canHaveAsNameHero(Names state, Blackhole blackhole) {
+        for (String name: state.heroNames) blackhole.consume(state.hero.canHaveAsName(name));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void canHaveAsNameMonster(Names state, Blackhole blackhole) {
+        for (String name: state.monsterNames) blackhole.consume(state.monster.canHaveAsName(name));
+    }
+}
@@ -0,0 +1,361 @@
+package rpg;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A class of load generators building synthetic worlds of increasing size and reporting how the library scales
+ *
+ * For every scale a new world with that many entities is built through the public constructors and pickups, and the
+ * time it took and the heap it retains are measured. Afterwards a fixed number of pickups, drops, degrades and repairs
+ * is applied to items of random heroes with an InMemoryMetrics recorder installed, to measure their latency in a
+ * world of that size. The report has a line per scale, ending with how the build time per entity grew compared to the
+ * previous scale: a factor close to 1 means construction scales linearly.
+ *
+ * Every entity carries a backpack tree: a backpack holding fanOut items, each of which is a backpack holding fanOut
+ * items itself up to the given depth, the leaves being purses with a probability of purseDensity and weapons otherwise.
+ * Heroes also carry an armor, monsters a weapon. Armors are created with explicit identifications, the consecutive
+ * primes, as generating them would take quadratic time and would be all this generator measures. They are looked up
+ * before the build is timed.
+ *
+ * The generator is configured with arguments of the form name=value, see the fields of this class for the names and
+ * their defaults, for example: scales=10000,100000 heroRatio=0.8 depth=2 fanOut=3 csv=report.csv
+ *
+ * @author  Corteville Andrew
+ */
+public class LoadGenerator {
+
+    /**
+     * The numbers of entities of the worlds to build
+     */
+    private int[] scales = {10000, 100000, 1000000};
+
+    /**
+     * The fraction of entities that are heroes, the others are monsters
+     */
+    private double heroRatio = 0.5;
+
+    /**
+     * The number of levels of nested backpacks every entity carries
+     */
+    private int depth = 1;
+
+    /**
+     * The number of items in every backpack
+     */
+    private int fanOut = 4;
+
+    /**
+     * The fraction of leaf items that are purses, the others are weapons
+     */
+    private double purseDensity = 0.25;
+
+    /**
+     * The number of entities of a world built and discarded before measuring, so the first scale is not measured
+     * while the code is still being compiled
+     */
+    private int warmup = 10000;
+
+    /**
+     * The number of operations to measure the latency of in every world
+     */
+    private int nbOperations = 20000;
+
+    /**
+     * The seed of the random choices of the generator
+     */
+    private long seed = 42;
+
+    /**
+     * The file to also write the report to as comma separated values, null if none
+     */
+    private Path csv = null;
+
+    /**
+     * Variable referencing the random choices of this generator
+     */
+    private Random random;
+
+    /**
+     * Variable referencing the last prime used as the identification of an armor
+     */
+    private long lastArmorId = 1;
+
+    /**
+     * Builds worlds of every configured scale and prints the report
+     */
+    public static void main(String[] args) throws IOException {
+        LoadGenerator generator = new LoadGenerator();
+        for (String arg: args) generator.configure(arg);
+        System.out.print(generator.run());
+    }
+
+    /**
+     * Sets the setting named in the given argument of the form name=value
+     */
+    private void configure(String arg) {
+        int index = arg.indexOf('=');
+        if(index < 0) throw new IllegalArgumentException("Expected name=value: " + arg);
+        String value = arg.substring(index + 1);
+        switch (arg.substring(0, index)) {
+            case "scales": scales = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+            case "heroRatio": heroRatio = Double.parseDouble(value); break;
+            case "depth": depth = Integer.parseInt(value); break;
+            case "fanOut": fanOut = Integer.parseInt(value); break;
+            case "purseDensity": purseDensity = Double.parseDouble(value); break;
+            case "warmup": warmup = Integer.parseInt(value); break;
+            case "nbOperations": nbOperations = Integer.parseInt(value); break;
+            case "seed": seed = Long.parseLong(value); break;
+            case "csv": csv = Path.of(value); break;
+            default: throw new IllegalArgumentException("Unknown setting: " + arg);
+        }
+    }
+
+    /**
+     * The measurements of a single scale
+     */
+    private static final class Measurement {
+
+        private int nbEntities;
+
+        private long nbItems;
+
+        private long buildNanos;
+
+        private long heapBytes;
+
+        private final Map<MetricsRecorder.Operation, long[]> latencies = new EnumMap<>(MetricsRecorder.Operation.class);
+
+        private boolean outOfMemory = false;
+    }
+
+    /**
+     * The operations of which the latency is reported
+     */
+    private static final MetricsRecorder.Operation[] operations = {MetricsRecorder.Operation.PICKUP,
+            MetricsRecorder.Operation.DROP, MetricsRecorder.Operation.DEGRADE, MetricsRecorder.Operation.REPAIR};
+
+    /**
+     * Builds a world for every scale and returns the report
+     */
+    private String run() throws IOException {
+        random = new Random(seed);
+        if(warmup > 0) measure(warmup);
+        List<Measurement> measurements = new ArrayList<>();
+        for (int scale: scales) measurements.add(measure(scale));
+
+        StringBuilder report = new StringBuilder();
+        StringBuilder values = new StringBuilder("entities,items,build_ms,heap_bytes");
+        report.append(String.format("%10s %11s %10s %10s %10s %10s", "entities", "items", "build ms", "ns/entity",
+                "heap MB", "B/entity"));
+        for (MetricsRecorder.Operation operation: operations) {
+            String name = operation.name().toLowerCase();
+            report.append(String.format(" %16s", name + " p50/p99"));
+            values.append(String.format(",%s_p50_ns,%s_p99_ns", name, name));
+        }
+        report.append(String.format(" %8s%n", "growth"));
+        values.append("\n");
+
+        Measurement previous = null;
+        for (Measurement measurement: measurements) {
+            if(measurement.outOfMemory) {
+                report.append(String.format("%10d out of memory, run with a larger -Xmx%n", measurement.nbEntities));
+                values.append(measurement.nbEntities).append(",,,\n");
+                previous = null;
+                continue;
+            }
+            double nanosPerEntity = (double) measurement.buildNanos / measurement.nbEntities;
+            report.append(String.format("%10d %11d %10d %10.0f %10.1f %10d", measurement.nbEntities, measurement.nbItems,
+                    measurement.buildNanos / 1000000, nanosPerEntity, measurement.heapBytes / 1048576.0,
+                    measurement.heapBytes / measurement.nbEntities));
+            values.append(String.format("%d,%d,%d,%d", measurement.nbEntities, measurement.nbItems,
+                    measurement.buildNanos / 1000000, measurement.heapBytes));
+            for (MetricsRecorder.Operation operation: operations) {
+                long[] latency = measurement.latencies.get(operation);
+                report.append(String.format(" %16s", latency[0] + "/" + latency[1]));
+                values.append(String.format(",%d,%d", latency[0], latency[1]));
+            }
+            if(previous != null) {
+                double previousNanos = (double) previous.buildNanos / previous.nbEntities;
+                report.append(String.format(" %7.2fx", nanosPerEntity / previousNanos));
+            }
+            report.append("\n");
+            values.append("\n");
+            previous = measurement;
+        }
+        report.append("Latencies in nanoseconds, as upper bounds of power of two buckets\n");
+        if(csv != null) Files.writeString(csv, values);
+        return report.toString();
+    }
+
+    /**
+     * Builds a world with the given number of entities and measures it
+     */
+    private Measurement measure(int nbEntities) {
+        Measurement measurement = new Measurement();
+        measurement.nbEntities = nbEntities;
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        try {
+            long[] armorIds = new long[nbEntities];
+            for (int i = 0; i < nbEntities; i++) armorIds[i] = random.nextDouble() < heroRatio ? nextArmorId() : -1;
+            long heapBefore = getUsedHeap(memory);
+            long start = System.nanoTime();
+            World world = new World();
+            List<Entity> entities = new ArrayList<>(nbEntities);
+            for (int i = 0; i < nbEntities; i++) {
+                Entity entity = armorIds[i] >= 0 ? newHero(armorIds[i]) : newMonster();
+                world.addEntity(entity);
+                entities.add(entity);
+            }
+            measurement.buildNanos = System.nanoTime() - start;
+            measurement.heapBytes = getUsedHeap(memory) - heapBefore;
+            List<Hero> heroes = new ArrayList<>();
+            for (Entity entity: entities) {
+                measurement.nbItems += countItems(entity);
+                if(entity instanceof Hero) heroes.add((Hero) entity);
+            }
+            measureOperations(heroes, measurement);
+        } catch (OutOfMemoryError e) {
+            measurement.outOfMemory = true;
+        }
+        return measurement;
+    }
+
+    /**
+     * Returns the used heap after collecting garbage
+     */
+    private static long getUsedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Returns the number of items held by the given entity, directly or indirectly
+     */
+    private static long countItems(Entity entity) {
+        long count = 0;
+        for (Item item: entity.getItems()) {
+            if(item == null) continue;
+            count++;
+            if(item instanceof Backpack) count += countItems((Backpack) item);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of items held by the given backpack, directly or indirectly
+     */
+    private static long countItems(Backpack backpack) {
+        long count = 0;
+        for (Item item: backpack.getItems()) {
+            count++;
+            if(item instanceof Backpack) count += countItems((Backpack) item);
+        }
+        return count;
+    }
+
+    /**
+     * Applies the configured number of operations to items of random heroes among the given ones and records their
+     * latencies in the given measurement
+     *
+     * Monsters are left alone, as their capacity is the load they were created with and rounding may keep them from
+     * picking up an item they just dropped.
+     */
+    private void measureOperations(List<Hero> heroes, Measurement measurement) {
+        if(heroes.isEmpty())
+            throw new IllegalStateException("Operations are only measured on heroes, none were generated");
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        MetricsRecorder previous = Metrics.getRecorder();
+        Metrics.setRecorder(metrics);
+        try {
+            for (int i = 0; i < nbOperations; i++) {
+                Backpack backpack = getBackpack(heroes.get(random.nextInt(heroes.size())));
+                List<Item> items = backpack.getItems();
+                Item item = items.get(random.nextInt(items.size()));
+                backpack.drop(item);
+                backpack.pickup(item);
+                if(item instanceof Weapon) {
+                    ((Weapon) item).degrade(7);
+                    ((Weapon) item).repair(7);
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("A generated item could not be operated on", e);
+        } finally {
+            Metrics.setRecorder(previous);
+        }
+        for (MetricsRecorder.Operation operation: operations) {
+            measurement.latencies.put(operation, new long[]{metrics.getPercentileNanos(operation, 50),
+                    metrics.getPercentileNanos(operation, 99)});
+        }
+    }
+
+    /**
+     * Returns the outermost backpack of the given entity
+     */
+    private static Backpack getBackpack(Entity entity) {
+        for (Anchorpoint anchor: entity.getAnchorPoints()) {
+            if(entity.getItemAt(anchor) instanceof Backpack) return (Backpack) entity.getItemAt(anchor);
+        }
+        throw new IllegalStateException("Every generated entity carries a backpack");
+    }
+
+    /**
+     * Returns a new hero carrying an armor with the given identification and a backpack tree
+     */
+    private Hero newHero(long armorId) {
+        List<Item> items = new ArrayList<>();
+        items.add(new Armor(armorId, 7.20, 130, 30));
+        items.add(newBackpack(depth));
+        return new Hero("Generated", 100, 97, items, 50);
+    }
+
+    /**
+     * Returns a new monster carrying a weapon and a backpack tree
+     */
+    private Monster newMonster() {
+        List<Item> items = new ArrayList<>();
+        items.add(new Weapon(1, 14));
+        items.add(newBackpack(depth));
+        return new Monster("Generated", 100, 10, 14, items);
+    }
+
+    /**
+     * Returns a new backpack holding a tree of items of the given depth
+     */
+    private Backpack newBackpack(int depth) {
+        Backpack backpack = new Backpack(1, 10, 1000);
+        try {
+            for (int i = 0; i < fanOut; i++) {
+                Item item;
+                if(depth > 1) {
+                    item = newBackpack(depth - 1);
+                } else if(random.nextDouble() < purseDensity) {
+                    Purse purse = new Purse(0.1, 100);
+                    purse.addDucats(1 + random.nextInt(100));
+                    item = purse;
+                } else {
+                    item = new Weapon(0.1, 14);
+                }
+                backpack.pickup(item);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("A generated item could not be picked up", e);
+        }
+        return backpack;
+    }
+
+    /**
+     * Returns the next prime that is a valid new identification for an armor
+     */
+    private long nextArmorId() {
+        do {
+            lastArmorId++;
+        } while(!Armor.isValidNewId(lastArmorId));
+        return lastArmorId;
+    }
+}
@@ -0,0 +1,431 @@
+package rpg;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A class of workload drivers running a mix of inventory operations against a prebuilt world from several threads
+ *
+ * The world consists of heroes carrying an armor, a purse on their belt, a weapon in their right hand, a backpack of
+ * weapons and purses on their back and, for every other hero, a weapon in their left hand. Entities are not thread
+ * safe, so every thread owns a disjoint partition of the heroes and a pool of items lying on the ground, and only
+ * operates on those. Every operation picks heroes of its partition at random:
+ * - pickup: picks up an item of the pool in the backpack of a hero, or drops one if the pool is empty
+ * - drop: drops an item of the backpack of a hero into the pool, or picks one up if the backpack is empty
+ * - transfer: transfers the weapon in the left hand of a hero to the empty left hand of another one
+ * - addDucats: adds a ducat to the purse on the belt of a hero, emptying it once it holds 100
+ * - degrade: degrades the weapon in the right hand of a hero, repairing it instead once it would break
+ * - query: reads the load and value held of a hero and the number of weapons in its backpack
+ * A pickup or drop is executed as a query instead if both the pool and the backpack of the hero are empty.
+ *
+ * If a target rate is set, every thread issues operations on a fixed schedule and the latency of an operation is
+ * measured from the time it was scheduled to start instead of the time it actually started. An operation delayed by a
+ * slow predecessor then reports the time it spent waiting, which is the coordinated omission correction. Without a
+ * target rate, threads issue operations back to back and only service times are reported.
+ *
+ * The driver is configured with arguments of the form name=value, see the fields of this class for the names and
+ * their defaults, for example: threads=8 duration=60 rate=20000 mix=pickup:10,drop:10,query:80
+ *
+ * @author  Corteville Andrew
+ */
+public class WorkloadDriver {
+
+    /**
+     * The operations of the workload, in the order they are configured and reported
+     */
+    enum Operation {
+        PICKUP, DROP, TRANSFER, ADD_DUCATS, DEGRADE, QUERY
+    }
+
+    /**
+     * The weight of every operation in the mix
+     */
+    private final int[] mix = {15, 15, 10, 10, 10, 40};
+
+    /**
+     * The number of threads issuing operations
+     */
+    private int threads = 4;
+
+    /**
+     * The number of seconds operations are measured
+     */
+    private int duration = 30;
+
+    /**
+     * The number of seconds operations are issued before being measured
+     */
+    private int warmup = 5;
+
+    /**
+     * The number of operations every thread issues per second, 0 to issue them back to back
+     */
+    private int rate = 0;
+
+    /**
+     * The number of heroes in the world
+     */
+    private int heroes = 10000;
+
+    /**
+     * The number of items in the backpack of every hero
+     */
+    private int itemsPerBackpack = 10;
+
+    /**
+     * The seed of the random choices of the driver
+     */
+    private long seed = 42;
+
+    /**
+     * Variable referencing the last prime used as the identification of an armor
+     */
+    private long lastArmorId = 1;
+
+    /**
+     * Builds the world, runs the workload and prints the report
+     */
+    public static void main(String[] args) throws InterruptedException {
+        WorkloadDriver driver = new WorkloadDriver();
+        for (String arg: args) driver.configure(arg);
+        System.out.print(driver.run());
+    }
+
+    /**
+     * Sets the setting named in the given argument of the form name=value
+     */
+    private void configure(String arg) {
+        int index = arg.indexOf('=');
+        if(index < 0) throw new IllegalArgumentException("Expected name=value: " + arg);
+        String value = arg.substring(index + 1);
+        switch (arg.substring(0, index)) {
+            case "mix":
+                Arrays.fill(mix, 0);
+                for (String weight: value.split(",")) {
+                    String[] parts = weight.split(":");
+                    mix[getOperation(parts[0]).ordinal()] = Integer.parseInt(parts[1]);
+                }
+                break;
+            case "threads": threads = Integer.parseInt(value); break;
+            case "duration": duration = Integer.parseInt(value); break;
+            case "warmup": warmup = Integer.parseInt(value); break;
+            case "rate": rate = Integer.parseInt(value); break;
+            case "heroes": heroes = Integer.parseInt(value); break;
+            case "itemsPerBackpack": itemsPerBackpack = Integer.parseInt(value); break;
+            case "seed": seed = Long.parseLong(value); break;
+            default: throw new IllegalArgumentException("Unknown setting: " + arg);
+        }
+    }
+
+    /**
+     * Returns the operation with the given name in the mix
+     */
+    private static Operation getOperation(String name) {
+        for (Operation operation: Operation.values()) {
+            if(operation.name().replace("_", "").equalsIgnoreCase(name)) return operation;
+        }
+        throw new IllegalArgumentException("Unknown operation: " + name);
+    }
+
+    /**
+     * Builds the world, runs the workload from every thread and returns the report
+     */
+    private String run() throws InterruptedException {
+        if(threads <= 0 || heroes < 2 * threads) throw new IllegalArgumentException("Every thread needs 2 heroes");
+        if(Arrays.stream(mix).sum() <= 0) throw new IllegalArgumentException("The mix has no operations");
+        Random random = new Random(seed);
+        World world = new World();
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) workers.add(new Worker(new Random(random.nextLong())));
+        for (int i = 0; i < heroes; i++) {
+            Hero hero = newHero(random, (i / threads) % 2 == 0);
+            world.addEntity(hero);
+            Worker worker = workers.get(i % threads);
+            worker.heroes.add(hero);
+            worker.pool.add(newLeaf(random));
+        }
+
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        for (Worker worker: workers) {
+            Thread thread = new Thread(() -> {
+                try {
+                    worker.run(start);
+                } finally {
+                    done.countDown();
+                }
+            }, "workload-driver");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        for (Worker worker: workers) {
+            if(worker.failure != null) throw new IllegalStateException("A worker failed", worker.failure);
+        }
+        return getReport(workers);
+    }
+
+    /**
+     * Returns the report of the measurements of the given workers
+     */
+    private String getReport(List<Worker> workers) {
+        Histogram[] histograms = new Histogram[Operation.values().length];
+        Histogram[] serviceTimes = new Histogram[Operation.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+            serviceTimes[i] = new Histogram();
+            for (Worker worker: workers) {
+                histograms[i].add(worker.latencies[i]);
+                serviceTimes[i].add(worker.serviceTimes[i]);
+            }
+        }
+        StringBuilder report = new StringBuilder();
+        long total = Arrays.stream(histograms).mapToLong(Histogram::getCount).sum();
+        report.append(String.format("%d threads, %d heroes, %d s, %s%n", threads, heroes, duration,
+                rate > 0 ? "target " + rate * threads + " ops/s" : "unthrottled"));
+        report.append(String.format("Throughput: %.0f ops/s%n", (double) total / duration));
+        report.append(String.format("%-11s %10s %10s %9s %9s %9s %9s %9s %13s%n", "operation", "count", "ops/s",
+                "p50 us", "p95 us", "p99 us", "p99.9 us", "max us", "service p99"));
+        for (Operation operation: Operation.values()) {
+            Histogram histogram = histograms[operation.ordinal()];
+            if(histogram.getCount() == 0) continue;
+            report.append(String.format("%-11s %10d %10.0f %9.1f %9.1f %9.1f %9.1f %9.1f %13.1f%n",
+                    operation.name().toLowerCase(), histogram.getCount(), (double) histogram.getCount() / duration,
+                    histogram.getPercentile(50) / 1000.0, histogram.getPercentile(95) / 1000.0,
+                    histogram.getPercentile(99) / 1000.0, histogram.getPercentile(99.9) / 1000.0,
+                    histogram.getMax() / 1000.0, serviceTimes[operation.ordinal()].getPercentile(99) / 1000.0));
+        }
+        if(rate > 0) report.append("Latencies are measured from the scheduled start of every operation\n");
+        return report.toString();
+    }
+
+    /**
+     * A class of workers issuing operations on the heroes of their partition from a single thread
+     */
+    private final class Worker {
+
+        private Worker(Random random) {
+            this.random = random;
+        }
+
+        private final Random random;
+
+        private final List<Hero> heroes = new ArrayList<>();
+
+        private final Deque<Item> pool = new ArrayDeque<>();
+
+        private final Histogram[] latencies = new Histogram[Operation.values().length];
+
+        private final Histogram[] serviceTimes = new Histogram[Operation.values().length];
+
+        private Throwable failure = null;
+
+        /**
+         * Issues operations from the given start time until the warmup and measurement have passed
+         */
+        private void run(long start) {
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new Histogram();
+                serviceTimes[i] = new Histogram();
+            }
+            int totalWeight = Arrays.stream(mix).sum();
+            long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+            long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+            long end = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+            long scheduled = start;
+            try {
+                while(true) {
+                    long now = System.nanoTime();
+                    if(interval > 0) {
+                        while(now < scheduled) {
+                            LockSupport.parkNanos(scheduled - now);
+                            now = System.nanoTime();
+                        }
+                    } else {
+                        scheduled = now;
+                    }
+                    if(scheduled >= end) return;
+                    Operation operation = choose(totalWeight);
+                    long started = System.nanoTime();
+                    operation = execute(operation);
+                    long finished = System.nanoTime();
+                    if(scheduled >= measureFrom) {
+                        latencies[operation.ordinal()].record(finished - scheduled);
+                        serviceTimes[operation.ordinal()].record(finished - started);
+                    }
+                    scheduled += interval;
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+
+        /**
+         * Returns a random operation of the mix
+         */
+        private Operation choose(int totalWeight) {
+            int choice = random.nextInt(totalWeight);
+            for (Operation operation: Operation.values()) {
+                choice -= mix[operation.ordinal()];
+                if(choice < 0) return operation;
+            }
+            throw new IllegalStateException();
+        }
+
+        private Hero randomHero() {
+            return heroes.get(random.nextInt(heroes.size()));
+        }
+
+        /**
+         * Executes the given operation, or the one executed instead, and returns the operation that was executed
+         */
+        private Operation execute(Operation operation) throws Exception {
+            Hero hero = randomHero();
+            Backpack backpack = (Backpack) hero.getItemAt(Anchorpoint.BACK);
+            switch (operation) {
+                case PICKUP:
+                case DROP:
+                    if(pool.isEmpty() && backpack.getNbItemsHeld() == 0) return execute(Operation.QUERY);
+                    if(operation == Operation.PICKUP && !pool.isEmpty() || backpack.getNbItemsHeld() == 0) {
+                        backpack.pickup(pool.poll());
+                        return Operation.PICKUP;
+                    }
+                    List<Item> items = backpack.getItems();
+                    Item item = items.get(random.nextInt(items.size()));
+                    backpack.drop(item);
+                    pool.add(item);
+                    return Operation.DROP;
+                case TRANSFER:
+                    Hero other = randomHero();
+                    if(other == hero) return execute(Operation.QUERY);
+                    if(hero.getItemAt(Anchorpoint.LEFT_HAND) == null) {
+                        Hero swap = hero;
+                        hero = other;
+                        other = swap;
+                    }
+                    if(hero.getItemAt(Anchorpoint.LEFT_HAND) == null || other.getItemAt(Anchorpoint.LEFT_HAND) != null)
+                        return execute(Operation.QUERY);
+                    hero.transferItemAtAnchorTo(other, Anchorpoint.LEFT_HAND, Anchorpoint.LEFT_HAND);
+                    return Operation.TRANSFER;
+                case ADD_DUCATS:
+                    Purse purse = (Purse) hero.getItemAt(Anchorpoint.BELT);
+                    if(purse.getContents() >= 100) {
+                        purse.removeDucats(purse.getContents());
+                    } else {
+                        purse.addDucats(1);
+                    }
+                    return Operation.ADD_DUCATS;
+                case DEGRADE:
+                    Weapon weapon = (Weapon) hero.getItemAt(Anchorpoint.RIGHT_HAND);
+                    if(weapon.getDamage() > 7) {
+                        weapon.degrade(7);
+                    } else {
+                        weapon.repair(7);
+                    }
+                    return Operation.DEGRADE;
+                default:
+                    double load = hero.getLoad();
+                    int value = hero.getValueHeld();
+                    int nbWeapons = backpack.getNbItemsOfTypeHeld(Weapon.class);
+                    if(load < 0 || value < 0 || nbWeapons < 0) throw new IllegalStateException();
+                    return Operation.QUERY;
+            }
+        }
+    }
+
+    /**
+     * Returns a new hero carrying the items of the workload
+     */
+    private Hero newHero(Random random, boolean armed) {
+        Hero hero = Hero.restore("Driven", 100, 97, 100);
+        try {
+            Backpack backpack = new Backpack(1, 10, 1000);
+            for (int i = 0; i < itemsPerBackpack; i++) backpack.pickup(newLeaf(random));
+            hero.pickup(new Armor(nextArmorId(), 7.20, 130, 30), Anchorpoint.BODY);
+            hero.pickup(new Purse(0.5, 1000), Anchorpoint.BELT);
+            hero.pickup(backpack, Anchorpoint.BACK);
+            hero.pickup(new Weapon(1, 14), Anchorpoint.RIGHT_HAND);
+            if(armed) hero.pickup(new Weapon(1, 14), Anchorpoint.LEFT_HAND);
+        } catch (Exception e) {
+            throw new IllegalStateException("A generated item could not be picked up", e);
+        }
+        return hero;
+    }
+
+    /**
+     * Returns a new weapon or purse to put in a backpack
+     */
+    private static Item newLeaf(Random random) {
+        return random.nextInt(4) == 0 ? new Purse(0.1, 100) : new Weapon(0.5, 14);
+    }
+
+    /**
+     * Returns the next prime that is a valid new identification for an armor
+     */
+    private long nextArmorId() {
+        do {
+            lastArmorId++;
+        } while(!Armor.isValidNewId(lastArmorId));
+        return lastArmorId;
+    }
+
+    /**
+     * A class of latency histograms with a relative precision of 1/16
+     *
+     * A duration is counted in one of 16 linear sub-buckets of the power of two range it lies in, so percentiles are
+     * reported as the upper bound of a sub-bucket, at most 6.25% above the actual duration.
+     */
+    private static final class Histogram {
+
+        private final long[] counts = new long[64 * 16];
+
+        private long count = 0;
+
+        private long max = 0;
+
+        private static int getIndex(long nanos) {
+            if(nanos < 16) return (int) Math.max(0, nanos);
+            int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+            return (magnitude - 3) * 16 + (int) ((nanos >>> (magnitude - 4)) & 15);
+        }
+
+        private static long getUpperBound(int index) {
+            if(index < 16) return index;
+            int magnitude = index / 16 + 3;
+            return ((16L + index % 16 + 1) << (magnitude - 4)) - 1;
+        }
+
+        private void record(long nanos) {
+            counts[getIndex(nanos)]++;
+            count++;
+            max = Math.max(max, nanos);
+        }
+
+        private void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+            count += other.count;
+            max = Math.max(max, other.max);
+        }
+
+        private long getCount() {
+            return count;
+        }
+
+        private long getMax() {
+            return max;
+        }
+
+        private long getPercentile(double percentile) {
+            if(count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank) return Math.min(getUpperBound(i), max);
+            }
+            return max;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import be.kuleuven.cs.som.annotate.Immutable;
 import be.kuleuven.cs.som.annotate.Model;
 import be.kuleuven.cs.som.annotate.Raw;
 import rpg.exceptions.BrokenItemException;
+import rpg.jfr.IdAllocationEvent;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -37,9 +38,9 @@ public class Armor extends Item implements Degradable {
      * @param   maxProtection
      *          The maximum protection of the new armor
      *
-     * @effect  Initializes armor with the given identification or a generated one if the given one was not valid,
-     *          the given weight and value
-     *          | super(isValidNewId(id)? id: getNextId(), weight, value)
+     * @effect  Initializes armor with the given identification if it was reserved or is a valid new identification,
+     *          otherwise with a generated one, and the given weight and value
+     *          | super(claimId(id), weight, value)
      * @post    The identification of this new Armor is added to the collection of already used ids
      *          | new.usedIds.contains(getId())
      * @post    If the given maximum protection is valid the maximum protection this Armor offers is set to the given
@@ -51,13 +52,64 @@ public class Armor extends Item implements Degradable {
      */
     @Raw
     public Armor(long id, double weight, int value, int maxProtection) {
-        super(isValidNewId(id) ? id: getNextId(), weight, value);
-        usedIds.add(getId());
+        this(id, weight, value, maxProtection, false);
+    }
+
+    /**
+     * Initializes this new armor with the given id, weight, value and maximum protection, restoring the given id if
+     * asked to
+     *
+     * @param   id
+     *          The identification of the new armor
+     * @param   weight
+     *          The weight of the new Armor
+     * @param   value
+     *          The value of the new Armor
+     * @param   maxProtection
+     *          The maximum protection of the new armor
+     * @param   isRestored
+     *          Whether the new armor is restored and keeps the given identification
+     *
+     * @effect  Initializes armor with the restored identification if the new armor is restored, otherwise with the
+     *          claimed identification, and the given weight and value
+     *          | super(isRestored ? restoreId(id) : claimId(id), weight, value)
+     * @post    If the given maximum protection is valid the maximum protection this Armor offers is set to the given
+     *          protection, otherwise it is set to a default maximum protection
+     *          | if(isValidMaxProtection(maxProtection))
+     *          | then new.getMaxProtection() == maxProtection
+     * @effect  Sets the effective protection this armor offers to its maximum protection
+     *          | setEffectiveProtection(getMaxProtection())
+     */
+    @Raw
+    private Armor(long id, double weight, int value, int maxProtection, boolean isRestored) {
+        super(isRestored ? restoreId(id) : claimId(id), weight, value);
         if(!isValidMaxProtection(maxProtection)) maxProtection = getDefaultMaxProtection();
         this.maxProtection = maxProtection;
         setEffectiveProtection(getMaxProtection());
     }
 
+    /**
+     * Returns a new armor with the given id, weight, value and maximum protection, as restored from a snapshot or an
+     * event.
+     *
+     * @param   id
+     *          The identification of the restored armor
+     * @param   weight
+     *          The weight of the restored armor
+     * @param   value
+     *          The value of the restored armor
+     * @param   maxProtection
+     *          The maximum protection of the restored armor
+     * @return  A new armor with the given identification, weight, value and maximum protection
+     *          | result == new Armor(restoreId(id), weight, value, maxProtection)
+     * @throws  IllegalArgumentException
+     *          The given identification is not a valid identification for an armor
+     *          | !isPrime(id)
+     */
+    static Armor restore(long id, double weight, int value, int maxProtection) throws IllegalArgumentException {
+        return new Armor(id, weight, value, maxProtection, true);
+    }
+
     /**
      * Initializes this new armor with the given id, weight, value and its maximum protection set to the maximum protection
      * associated with the given armor type.
@@ -71,9 +123,9 @@ public class Armor extends Item implements Degradable {
      * @param   armorType
      *          The given armor type
      *
-     * @effect  Initializes this armor with the given id or a generated id if the given id is not valid, given weight and
-     *          value
-     *          | super(isValidNewId(id)? id: getNextId(), weight, value)
+     * @effect  Initializes armor with the given identification if it was reserved or is a valid new identification,
+     *          otherwise with a generated one, and the given weight and value
+     *          | super(claimId(id), weight, value)
      * @post    The identification of this new Armor is added to the collection of already used ids
      *          | new.usedIds.contains(getId())
      * @post    The maximum protection of this new Armor is set to the maximum protection associated with the given
@@ -87,9 +139,8 @@ public class Armor extends Item implements Degradable {
      *          | !getArmorTypes().containsKey(armorType)
      */
     public Armor(long id, double weight, int value, String armorType) throws IllegalArgumentException {
-        super(isValidNewId(id)? id: getNextId(), weight, value);
+        super(claimId(id), weight, value);
         if(!getArmorTypes().containsKey(armorType)) throw new IllegalArgumentException("The given armor type is not defined");
-        usedIds.add(getId());
         this.maxProtection = getArmorTypes().get(armorType);
         setEffectiveProtection(getMaxProtection());
     }
@@ -112,6 +163,102 @@ public class Armor extends Item implements Degradable {
      */
     private static final Set<Long> usedIds = new HashSet<>();
 
+    /**
+     * Class variable that contains all identifications reserved for armors that are not yet created
+     *
+     * @invar   No reserved identification is used
+     *          | for each id in reservedIds:
+     *          |   !usedIds.contains(id)
+     */
+    private static final Set<Long> reservedIds = new HashSet<>();
+
+    /**
+     * Reserves an identification for an armor that is created later on, possibly by another thread
+     *
+     * @param   id
+     *          The identification to reserve, or a negative number to reserve a generated identification
+     * @return  The given identification if it is not negative, otherwise the lowest valid new identification
+     *          | if(id >= 0) then result == id
+     *          | else result == getNextId()
+     * @post    The resulting identification is reserved
+     *          | !isValidNewId(result)
+     * @throws  IllegalArgumentException
+     *          The given identification is not negative and is not a valid new identification
+     *          | id >= 0 && !isValidNewId(id)
+     */
+    static synchronized long reserveId(long id) throws IllegalArgumentException {
+        if(id < 0) id = getNextId();
+        else if(!isValidNewId(id)) throw new IllegalArgumentException(id + " is not a prime that is not yet used");
+        reservedIds.add(id);
+        return id;
+    }
+
+    /**
+     * Cancels the reservation of an identification for an armor that is not created after all
+     *
+     * @param   id
+     *          The identification whose reservation to cancel
+     * @post    The given identification is no longer reserved
+     *          | !new.reservedIds.contains(id)
+     * @note    An identification that was claimed in the meantime stays used.
+     */
+    static synchronized void cancelReservation(long id) {
+        reservedIds.remove(id);
+    }
+
+    /**
+     * Claims an identification for a new armor
+     *
+     * @param   id
+     *          The identification that is asked for
+     * @return  The given identification if it was reserved or is a valid new identification, otherwise a generated one
+     *          | if(reservedIds.contains(id) || isValidNewId(id))
+     *          | then result == id
+     *          | else result == getNextId()
+     * @post    The resulting identification is used and no longer reserved
+     *          | usedIds.contains(result) && !reservedIds.contains(result)
+     */
+    private static synchronized long claimId(long id) {
+        if(!reservedIds.remove(id) && !isValidNewId(id)) id = getNextId();
+        usedIds.add(id);
+        return id;
+    }
+
+    /**
+     * Claims the identification of a restored armor
+     *
+     * @param   id
+     *          The identification of the restored armor
+     * @return  The given identification, even if it is used by the armor that was saved, as the restored armor is the
+     *          same armor
+     *          | result == id
+     * @post    The given identification is used and no longer reserved
+     *          | usedIds.contains(id) && !reservedIds.contains(id)
+     * @throws  IllegalArgumentException
+     *          The given identification is not a valid identification for an armor
+     *          | !isPrime(id)
+     */
+    private static synchronized long restoreId(long id) throws IllegalArgumentException {
+        if(!isPrime(id)) throw new IllegalArgumentException(id + " is not a valid identification for an armor");
+        reservedIds.remove(id);
+        usedIds.add(id);
+        return id;
+    }
+
+    /**
+     * Releases the identification of an armor that is dropped from memory to be restored later on
+     *
+     * @param   id
+     *          The identification to release
+     * @post    If the given identification was used, it is no longer used but reserved, so only the restored armor
+     *          claims it again
+     *          | if(usedIds.contains(id))
+     *          | then !new.usedIds.contains(id) && new.reservedIds.contains(id)
+     */
+    static synchronized void releaseId(long id) {
+        if(usedIds.remove(id)) reservedIds.add(id);
+    }
+
     /**
      * @return  A valid identification number that isn't currently used
      *          | isValidId(result) && !usedIds.contains(result)
@@ -126,11 +273,11 @@ public class Armor extends Item implements Degradable {
      *
      * @param   id
      *          The identification to check
-     * @return  True if and only if the given id is a prime number
-     *          | result == isPrime(id) && !usedIds.contains(id)
+     * @return  True if and only if the given id is a prime number that is neither used nor reserved
+     *          | result == isPrime(id) && !usedIds.contains(id) && !reservedIds.contains(id)
      */
     protected static boolean isValidNewId(long id) {
-        return isPrime(id) && !usedIds.contains(id);
+        return isPrime(id) && !usedIds.contains(id) && !reservedIds.contains(id);
     }
 
     /**
@@ -165,10 +312,25 @@ public class Armor extends Item implements Degradable {
      * @return  A valid identification number that isn't currently used
      *          | isValidNewId(result)
      */
-    private static long getNextId() {
-        if(isValidNewId(2L)) return 2L;
-        long currentId = 3;
-        while(!isValidNewId(currentId)) currentId += 2;
+    static synchronized long getNextId() {
+        IdAllocationEvent event = new IdAllocationEvent();
+        event.begin();
+        long probes = 1;
+        long currentId = 2;
+        if(!isValidNewId(currentId)) {
+            currentId = 3;
+            probes++;
+            while(!isValidNewId(currentId)) {
+                currentId += 2;
+                probes++;
+            }
+        }
+        if(event.shouldCommit()) {
+            event.itemType = Armor.class;
+            event.id = currentId;
+            event.probes = probes;
+            event.commit();
+        }
         return currentId;
     }
 
@@ -263,6 +425,7 @@ public class Armor extends Item implements Degradable {
     private void setEffectiveProtection(int effectiveProtection) throws IllegalArgumentException {
         if(!canHaveAsEffectiveProtection(effectiveProtection)) throw new IllegalArgumentException("Invalid effective protection");
         this.effectiveProtection = effectiveProtection;
+        notifyChanged();
     }
 
     /**
@@ -284,9 +447,12 @@ public class Armor extends Item implements Degradable {
      */
     @Raw
     public void degrade(int amount) throws BrokenItemException {
+        long start = Metrics.start();
         if(isBroken()) throw new BrokenItemException(this);
         if(amount > 0 && amount <= getEffectiveProtection())
             setEffectiveProtection(getEffectiveProtection()-amount);
+        InvariantSampler.sample(this);
+        Metrics.record(MetricsRecorder.Operation.DEGRADE, start);
     }
 
     /**
@@ -307,9 +473,12 @@ public class Armor extends Item implements Degradable {
      *          | isBroken()
      */
     public void repair(int amount) throws BrokenItemException {
+        long start = Metrics.start();
         if(isBroken()) throw new BrokenItemException(this);
         if( (0<=amount) && (amount<=(getMaxProtection()-getEffectiveProtection())))
             setEffectiveProtection(getEffectiveProtection() + amount);
+        InvariantSampler.sample(this);
+        Metrics.record(MetricsRecorder.Operation.REPAIR, start);
     }
 
 
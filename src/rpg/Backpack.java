@@ -6,8 +6,10 @@ import be.kuleuven.cs.som.annotate.Model;
 import be.kuleuven.cs.som.annotate.Raw;
 import rpg.exceptions.BrokenItemException;
 import rpg.exceptions.InvalidHolderException;
+import rpg.jfr.InventoryEvent;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * A class of Backpacks
@@ -41,6 +43,39 @@ public class Backpack extends Storage implements ItemHolder {
          if(!isValidCapacity(capacity)) capacity = getDefaultCapacity();
          this.capacity = capacity;
      }
+
+    /**
+     * Initializes this backpack with the given identification, weight, value and capacity, as restored from a snapshot
+     *
+     * @param   id
+     *          The identification of the restored backpack
+     * @param   weight
+     *          The weight of the restored backpack
+     * @param   value
+     *          The value of the restored backpack
+     * @param   capacity
+     *          The capacity of the restored backpack
+     *
+     * @effect  Initializes this backpack with the given identification, weight and value
+     *          | super(id, weight, value)
+     * @post    The capacity is set to the given capacity or a default capacity if the given capacity was not valid
+     * @post    The identifications generated for new backpacks are greater than the identification of this backpack,
+     *          if there are greater identifications left
+     *          | getId() == Long.MAX_VALUE || Backpack.getCurrentId() > getId()
+     */
+    @Raw
+    Backpack(long id, double weight, int value, double capacity) {
+        super(id, weight, value);
+        if(!isValidCapacity(capacity)) capacity = getDefaultCapacity();
+        this.capacity = capacity;
+        synchronized (Backpack.class) {
+            if(getId() == Long.MAX_VALUE) {
+                isIdSpaceExhausted = true;
+            } else if(getId() >= getCurrentId()) {
+                currentId = getId() + 1;
+            }
+        }
+    }
      /*
         Identification (TOTAL)
       */
@@ -66,12 +101,21 @@ public class Backpack extends Storage implements ItemHolder {
         return getNextId();
     }
 
+    /**
+     * Variable registering whether every identification up to Long.MAX_VALUE was generated or restored
+     */
+    private static boolean isIdSpaceExhausted = false;
+
     /**
      * Returns the currently available id and increments it.
      * @post    currentId is incremented with 1.
      *          | old.getCurrentId() + 1 == new.getCurrentId()
+     * @throws  IllegalStateException
+     *          Every identification up to Long.MAX_VALUE was already generated or restored
      */
-    private static long getNextId() {
+    static synchronized long getNextId() throws IllegalStateException {
+        if(isIdSpaceExhausted) throw new IllegalStateException("No identifications are left for new backpacks");
+        if(currentId == Long.MAX_VALUE) isIdSpaceExhausted = true;
         return currentId++;
     }
 
@@ -145,6 +189,7 @@ public class Backpack extends Storage implements ItemHolder {
      */
     @Basic
     public Set<Long> getStoredIds() {
+        materialize();
         return contents.keySet();
     }
 
@@ -158,6 +203,7 @@ public class Backpack extends Storage implements ItemHolder {
      */
     @Basic
     public int getNbItemsWithId(long id) {
+        materialize();
         if(!contents.containsKey(id)) return 0;
         try {
             return contents.get(id).size();
@@ -186,6 +232,114 @@ public class Backpack extends Storage implements ItemHolder {
         return contents.get(id);
     }
 
+    /**
+     * Returns all items held directly by this backpack
+     *
+     * @return  A new list containing every item held directly by this backpack
+     *          | for each id in getStoredIds():
+     *          |   result.containsAll(getItemsWithId(id))
+     */
+    protected List<Item> getItems() {
+        materialize();
+        List<Item> result = new ArrayList<>();
+        for (ArrayList<Item> items: contents.values()) result.addAll(items);
+        return result;
+    }
+
+    /**
+     * Variable referencing the number of items held directly or indirectly by this backpack
+     */
+    private int nbItemsHeld = 0;
+
+    /**
+     * Returns the number of items held directly or indirectly by this backpack
+     */
+    @Basic
+    public int getNbItemsHeld() {
+        return nbItemsHeld;
+    }
+
+    /**
+     * Adds the given difference to the number of items held by this backpack and the backpacks holding it
+     *
+     * @param   difference
+     *          The difference to add
+     * @post    The number of items held by this backpack is increased with the given difference
+     *          | new.getNbItemsHeld() == getNbItemsHeld() + difference
+     * @effect  If this backpack is held by another backpack, the difference is added to that backpack as well
+     *          | if(getHolder() instanceof Backpack)
+     *          | then ((Backpack) getHolder()).addNbItemsHeld(difference)
+     */
+    @Model
+    private void addNbItemsHeld(int difference) {
+        nbItemsHeld += difference;
+        if(getHolder() instanceof Backpack) ((Backpack) getHolder()).addNbItemsHeld(difference);
+    }
+
+    /**
+     * Variable referencing the counts of the items held directly or indirectly by this backpack
+     */
+    private final Statistics.Counts heldCounts = new Statistics.Counts();
+
+    /**
+     * Returns the counts of the items held directly or indirectly by this backpack
+     */
+    @Basic
+    Statistics.Counts getHeldCounts() {
+        return heldCounts;
+    }
+
+    /**
+     * Adds the given number of times the given item and the items it holds to the counts of this backpack and the
+     * backpacks holding it
+     */
+    private void countHeld(Item item, int times) {
+        for (ItemHolder backpack = this; backpack instanceof Backpack; backpack = ((Backpack) backpack).getHolder())
+            ((Backpack) backpack).heldCounts.add(item, times);
+    }
+
+    /**
+     * Registers that the given item held by this backpack broke in the counts of this backpack and the backpacks
+     * holding it
+     */
+    void countHeldItemBroken(Item item) {
+        for (ItemHolder backpack = this; backpack instanceof Backpack; backpack = ((Backpack) backpack).getHolder())
+            ((Backpack) backpack).heldCounts.itemBroken(item);
+    }
+
+    /**
+     * Registers that the contents of a purse held by this backpack changed with the given amount of ducats in the
+     * counts of this backpack and the backpacks holding it
+     */
+    void countHeldDucatsChanged(long amount) {
+        for (ItemHolder backpack = this; backpack instanceof Backpack; backpack = ((Backpack) backpack).getHolder())
+            ((Backpack) backpack).heldCounts.ducatsChanged(amount);
+    }
+
+    /**
+     * Returns the number of items that are held along with the given item, including itself
+     *
+     * @param   item
+     *          The given item
+     * @return  1 increased with the number of items held by the given item if it is a backpack
+     *          | if(item instanceof Backpack)
+     *          | then result == 1 + ((Backpack) item).getNbItemsHeld()
+     *          | else result == 1
+     */
+    private static int getNbItemsIn(Item item) {
+        return item instanceof Backpack ? 1 + ((Backpack) item).getNbItemsHeld() : 1;
+    }
+
+    /**
+     * Checks if the contents of this backpack should be traversed in parallel
+     *
+     * @return  True if and only if the number of items held by this backpack reaches the parallel threshold
+     *          | result == (getNbItemsHeld() >= NestedContents.getParallelThreshold())
+     */
+    private boolean isTraversedInParallel() {
+        return getNbItemsHeld() >= NestedContents.getParallelThreshold();
+    }
+
     /**
      * Returns the item with the given id at the given position
      *
@@ -280,9 +434,12 @@ public class Backpack extends Storage implements ItemHolder {
      *          |       )
      *          |   })
      *          |})
+     * @note    Backpacks holding at least NestedContents.getParallelThreshold() items are traversed in parallel
      */
     @Override
     public int getNbItemsOfTypeHeld(Class<? extends Item> type) {
+        if(isTraversedInParallel()) return (int) NestedContents.count(this, item -> item.getClass() == type);
+        materialize();
         int amount = 0;
         for (ArrayList<Item> items: contents.values()) {
             for (Item item: items) {
@@ -307,6 +464,7 @@ public class Backpack extends Storage implements ItemHolder {
      */
     @Raw
     public boolean hasProperContents() {
+        materialize();
         for (Map.Entry<Long, ArrayList<Item>> entry: contents.entrySet()) {
             for(Item item: entry.getValue()) {
                 if (item == null || !canPickup(item) || item.getHolder() != this || item.getId() != entry.getKey()) return false;
@@ -324,9 +482,12 @@ public class Backpack extends Storage implements ItemHolder {
      *          |       item.getWeight()
      *          |   })
      *          | })
+     * @note    Backpacks holding at least NestedContents.getParallelThreshold() items are traversed in parallel
      */
     @Override
     public double getLoad() {
+        if(isTraversedInParallel())
+            return NestedContents.sum(this, item -> item instanceof Backpack ? ((Backpack) item).getOwnWeight() : item.getWeight());
         double load = 0.00;
         for (long id: getStoredIds()) {
             for (Item item: getItemsWithId(id)) {
@@ -355,8 +516,12 @@ public class Backpack extends Storage implements ItemHolder {
      *          |       item.getValue()
      *          |   })
      *          | })
+     * @note    Backpacks holding at least NestedContents.getParallelThreshold() items are traversed in parallel
      */
     public int getLoadValue() {
+        if(isTraversedInParallel())
+            return NestedContents.collect(this,
+                    Collectors.summingInt(item -> item instanceof Backpack ? ((Backpack) item).getOwnValue() : item.getValue()));
         int value = 0;
         for (long id: getStoredIds()) {
             for (Item item: getItemsWithId(id)) {
@@ -472,17 +637,150 @@ public class Backpack extends Storage implements ItemHolder {
     @Raw
     public void drop(Item item)
             throws IllegalArgumentException {
-
+        long start = Metrics.start();
+        InventoryEvent event = new InventoryEvent();
+        event.begin();
         if(item == null) throw new IllegalArgumentException("The given item is not effective");
         if( !holdsItemDirectly(item))
             throw new IllegalArgumentException("Item is not located inside the contents of this backpack");
 
-        contents.get(item.getId()).remove(item);
+        detachItem(item);
+        addNbItemsHeld(-getNbItemsIn(item));
+        countHeld(item, -1);
         try {
             item.setHolder(null);
         } catch(Exception e) {
             assert false;
         }
+        notifyChanged();
+        Item.commit(event, "drop", item, this, 0);
+        InvariantSampler.sample(this);
+        Metrics.record(MetricsRecorder.Operation.DROP, start);
+    }
+
+    /**
+     * Adds the given item to the contents of this backpack without checking whether it can be picked up, as done
+     * when restoring a snapshot
+     *
+     * @param   item
+     *          The item to add
+     * @pre     The given item lies on the ground and can be held by this backpack
+     *          | item.liesOnGround() && item.canHaveAsHolder(this)
+     * @post    This backpack holds the given item directly
+     *          | holdsItemDirectly(item)
+     * @effect  The holder of the given item is set to this backpack
+     *          | item.setHolder(this)
+     * @note    No snapshots are published, the entity holding this backpack must be notified once restored.
+     */
+    @Raw
+    void restoreItem(Item item) {
+        attachItem(item);
+        addNbItemsHeld(getNbItemsIn(item));
+    }
+
+    /**
+     * Adds the given item to the contents of this backpack without checking whether it can be picked up and without
+     * changing the number of items held
+     */
+    @Raw
+    private void attachItem(Item item) {
+        item.setHolder(this);
+        contents.computeIfAbsent(item.getId(), id -> new ArrayList<>()).add(item);
+        countHeld(item, 1);
+    }
+
+    /**
+     * Removes the given item from the contents of this backpack, together with the list of its id once it is empty
+     *
+     * @note    An empty list left behind would keep reporting the id in getStoredIds.
+     */
+    @Raw
+    private void detachItem(Item item) {
+        List<Item> items = contents.get(item.getId());
+        items.remove(item);
+        if(items.isEmpty()) contents.remove(item.getId());
+    }
+
+    /*
+        Lazy contents
+     */
+
+    /**
+     * Variable referencing the contents of this backpack in a mapped snapshot, if they are not materialized yet
+     */
+    private volatile MappedSnapshotLoader.Contents pendingContents = null;
+
+    /**
+     * Registers the given contents of a mapped snapshot as the contents of this backpack, to be materialized on first
+     * access
+     *
+     * @param   pendingContents
+     *          The records of the items held directly or indirectly by this backpack
+     * @param   nbItemsHeld
+     *          The number of items the given records describe
+     * @pre     This backpack lies on the ground and holds no items
+     *          | liesOnGround() && getNbItemsHeld() == 0
+     * @post    The number of items held by this backpack is set to the given number
+     *          | new.getNbItemsHeld() == nbItemsHeld
+     */
+    @Raw
+    void setPendingContents(MappedSnapshotLoader.Contents pendingContents, int nbItemsHeld) {
+        this.nbItemsHeld = nbItemsHeld;
+        this.pendingContents = pendingContents;
+    }
+
+    /**
+     * Returns whether the contents of this backpack are not materialized yet
+     */
+    public boolean hasPendingContents() {
+        return pendingContents != null;
+    }
+
+    /**
+     * Variable registering whether a snapshot of this backpack refers to its pending contents
+     */
+    private boolean hasPendingSnapshot = false;
+
+    /**
+     * Variable referencing the snapshots of the contents of this backpack as they were materialized, if a snapshot
+     * refers to its pending contents
+     */
+    private ItemSnapshot.Contents materializedContents = null;
+
+    /**
+     * Returns whether the contents of this backpack are pending, registering that a snapshot refers to them if so
+     */
+    synchronized boolean registerPendingSnapshot() {
+        if(pendingContents == null) return false;
+        hasPendingSnapshot = true;
+        return true;
+    }
+
+    /**
+     * Returns the snapshots of the contents of this backpack as they were materialized, materializing them if needed
+     *
+     * @pre     A snapshot refers to the pending contents of this backpack
+     *          | registerPendingSnapshot() was invoked while hasPendingContents()
+     */
+    synchronized ItemSnapshot.Contents getMaterializedContents() {
+        materialize();
+        return materializedContents;
+    }
+
+    /**
+     * Materializes the pending contents of this backpack, if any
+     *
+     * @note    The items held directly by this backpack are created, the contents of backpacks among them stay pending.
+     */
+    private void materialize() {
+        if(pendingContents == null) return;
+        synchronized (this) {
+            MappedSnapshotLoader.Contents pending = pendingContents;
+            if(pending == null) return;
+            for (Item item: pending.readItems()) attachItem(item);
+            pendingContents = null;
+            if(hasPendingSnapshot) materializedContents = ItemSnapshot.contentsOf(this);
+        }
     }
 
     /**
@@ -513,15 +811,26 @@ public class Backpack extends Storage implements ItemHolder {
     @Raw
     public void pickup(Item item)
             throws IllegalArgumentException, InvalidHolderException {
+        long start = Metrics.start();
+        InventoryEvent event = new InventoryEvent();
+        event.begin();
         if(item == null) throw new IllegalArgumentException("The given item is not effective");
         if(!item.canHaveAsHolder(this)) throw new InvalidHolderException(this, item);
+        long checkStart = event.isEnabled() ? System.nanoTime() : 0;
         if(!canPickup(item)) throw new IllegalArgumentException("Cannot pickup this Item");
+        long checkTime = event.isEnabled() ? System.nanoTime() - checkStart : 0;
         if(!item.liesOnGround()) throw new IllegalArgumentException("You can only take items that are on the ground");
         if(holdsItemDirectly(item)) throw new IllegalArgumentException("This item is already held by this backpack");
         item.setHolder(this);
 
         if(getNbItemsWithId(item.getId()) == 0) contents.put(item.getId(), new ArrayList<>());
         contents.get(item.getId()).add(item);
+        addNbItemsHeld(getNbItemsIn(item));
+        countHeld(item, 1);
+        notifyChanged();
+        Item.commit(event, "pickup", item, this, checkTime);
+        InvariantSampler.sample(this);
+        Metrics.record(MetricsRecorder.Operation.PICKUP, start);
     }
 
 }
@@ -0,0 +1,635 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A class of importers, creating the items of a catalog read from a CSV or JSON stream
+ *
+ * Every row of a catalog describes a single item or armor type through the fields kind, id, weight, value, damage,
+ * protection, type, capacity, contents and name. The kind is one of weapon, armor, backpack, purse or armortype. Armor
+ * types are registered as soon as their row is read, so later rows can refer to them. A CSV catalog starts with a header
+ * naming its columns; a JSON catalog is an array of flat objects.
+ *
+ * Rows are read and validated one batch at a time. Identifications are allocated in the order of the rows, after which
+ * the items of the batch are created in parallel and handed to the sink in the order of the rows, so at most one batch
+ * is held in memory. A row that is not valid is reported as an error instead of being created with default values.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each importer references an effective sink
+ *          | getSink() != null
+ */
+public class CatalogImporter {
+
+    /**
+     * Initializes this importer handing the items it creates to the given sink
+     *
+     * @param   sink
+     *          The sink of the new importer
+     * @post    The sink of this new importer is set to the given sink
+     *          | new.getSink() == sink
+     * @throws  IllegalArgumentException
+     *          The given sink is not effective
+     *          | sink == null
+     */
+    public CatalogImporter(Consumer<? super Item> sink) throws IllegalArgumentException {
+        if(sink == null) throw new IllegalArgumentException("The given sink is not effective");
+        this.sink = sink;
+    }
+
+    /**
+     * Variable referencing the sink of this importer
+     */
+    private final Consumer<? super Item> sink;
+
+    /**
+     * Returns the sink the items created by this importer are handed to
+     */
+    @Basic @Immutable
+    public Consumer<? super Item> getSink() {
+        return sink;
+    }
+
+    /**
+     * Returns the number of rows that are created at once
+     */
+    @Immutable
+    public static int getBatchSize() {
+        return 1024;
+    }
+
+    /**
+     * Returns the maximum number of errors kept in a report
+     */
+    @Immutable
+    public static int getMaxNbReportedErrors() {
+        return 1000;
+    }
+
+    /**
+     * Imports the catalog read from the given CSV stream
+     *
+     * @param   reader
+     *          The stream to read from, starting with a header naming the columns
+     * @return  A report of the rows that were read
+     * @throws  IllegalArgumentException
+     *          The given reader is not effective
+     *          | reader == null
+     * @throws  IOException
+     *          The stream could not be read or does not start with a header
+     */
+    public Report importCsv(Reader reader) throws IllegalArgumentException, IOException {
+        if(reader == null) throw new IllegalArgumentException("The given reader is not effective");
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String header = lines.readLine();
+        if(header == null) throw new IOException("The catalog does not start with a header");
+        List<String> columns = new ArrayList<>();
+        for (String column: splitCsv(header)) columns.add(column.trim().toLowerCase(Locale.ROOT));
+        return importRows(() -> {
+            String line;
+            do {
+                line = lines.readLine();
+                if(line == null) return null;
+            } while(line.isBlank());
+            List<String> values = splitCsv(line);
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < values.size(); i++) {
+                if(i >= columns.size()) {
+                    fields.put("", values.get(i));
+                } else {
+                    fields.put(columns.get(i), values.get(i));
+                }
+            }
+            return fields;
+        });
+    }
+
+    /**
+     * Imports the catalog read from the given JSON stream
+     *
+     * @param   reader
+     *          The stream to read from, containing an array of flat objects
+     * @return  A report of the rows that were read
+     * @throws  IllegalArgumentException
+     *          The given reader is not effective
+     *          | reader == null
+     * @throws  IOException
+     *          The stream could not be read or does not contain an array of flat objects
+     */
+    public Report importJson(Reader reader) throws IllegalArgumentException, IOException {
+        if(reader == null) throw new IllegalArgumentException("The given reader is not effective");
+        JsonTokenizer tokenizer = new JsonTokenizer(reader instanceof BufferedReader ? reader : new BufferedReader(reader));
+        tokenizer.expect('[');
+        boolean[] isFirst = {true};
+        return importRows(() -> {
+            int next = tokenizer.peek();
+            if(next == ']') {
+                tokenizer.expect(']');
+                return null;
+            }
+            if(!isFirst[0]) tokenizer.expect(',');
+            isFirst[0] = false;
+            return tokenizer.readObject();
+        });
+    }
+
+    /**
+     * A source of rows, returning null after the last row
+     */
+    private interface RowSource {
+        Map<String, String> next() throws IOException;
+    }
+
+    /**
+     * Imports every row of the given source
+     */
+    private Report importRows(RowSource source) throws IOException {
+        Report report = new Report();
+        Map<String, Integer> armorTypes = Armor.getArmorTypes();
+        List<Supplier<Item>> batch = new ArrayList<>(getBatchSize());
+        try {
+            for (Map<String, String> fields = source.next(); fields != null; fields = source.next()) {
+                report.nbRows++;
+                try {
+                    Supplier<Item> factory = parse(fields, armorTypes);
+                    if(factory == null) {
+                        report.nbArmorTypes++;
+                    } else {
+                        batch.add(factory);
+                        if(batch.size() == getBatchSize()) createBatch(batch, report);
+                    }
+                } catch (IllegalArgumentException e) {
+                    report.addError(new RowError(report.nbRows, e.getMessage()));
+                }
+            }
+            createBatch(batch, report);
+        } finally {
+            for (Supplier<Item> factory: batch) {
+                if(factory instanceof ArmorFactory armorFactory) Armor.cancelReservation(armorFactory.id);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Creates the items of the given batch in parallel and hands them to the sink in order
+     */
+    private void createBatch(List<Supplier<Item>> batch, Report report) {
+        List<Item> items = batch.parallelStream().map(Supplier::get).toList();
+        items.forEach(sink);
+        report.nbItems += items.size();
+        batch.clear();
+    }
+
+    /**
+     * Validates the given row and allocates the identification of the item it describes
+     *
+     * @return  A factory creating the item described by the given row, or null if the row registered an armor type
+     * @throws  IllegalArgumentException
+     *          The given row is not valid
+     */
+    private static Supplier<Item> parse(Map<String, String> fields, Map<String, Integer> armorTypes)
+            throws IllegalArgumentException {
+        if(fields.containsKey("")) throw new IllegalArgumentException("the row has more fields than the header");
+        String kind = getString(fields, "kind");
+        if(kind == null) throw new IllegalArgumentException("kind is missing");
+        switch (kind.toLowerCase(Locale.ROOT)) {
+            case "armortype" -> {
+                String name = getString(fields, "name");
+                int protection = getInt(fields, "protection");
+                if(!Armor.isValidArmorTypeName(name)) throw new IllegalArgumentException("name is missing");
+                checkProtection(protection);
+                Armor.addArmorType(name, protection);
+                armorTypes.put(name, protection);
+                return null;
+            }
+            case "weapon" -> {
+                checkNoId(fields, kind);
+                if(getString(fields, "value") != null)
+                    throw new IllegalArgumentException("the value of a weapon follows from its damage");
+                double weight = getWeight(fields);
+                int damage = getInt(fields, "damage");
+                if(!Weapon.isValidDamage(damage)) throw new IllegalArgumentException("damage " + damage + " is not valid");
+                long id = Weapon.getNextId();
+                return () -> new Weapon(id, weight, damage);
+            }
+            case "armor" -> {
+                double weight = getWeight(fields);
+                int value = getInt(fields, "value");
+                if(value < 0) throw new IllegalArgumentException("value " + value + " is negative");
+                String type = getString(fields, "type");
+                int protection;
+                if(type == null) {
+                    protection = getInt(fields, "protection");
+                    checkProtection(protection);
+                } else {
+                    if(getString(fields, "protection") != null)
+                        throw new IllegalArgumentException("an armor has either a type or a protection");
+                    Integer typeProtection = armorTypes.get(type);
+                    if(typeProtection == null) throw new IllegalArgumentException("armor type " + type + " is not defined");
+                    protection = typeProtection;
+                }
+                long id = Armor.reserveId(getString(fields, "id") == null ? -1 : getLong(fields, "id"));
+                return new ArmorFactory(id, weight, value, protection);
+            }
+            case "backpack" -> {
+                checkNoId(fields, kind);
+                double weight = getWeight(fields);
+                int value = getInt(fields, "value");
+                if(value < 0 || value > Backpack.getMaxValue())
+                    throw new IllegalArgumentException("value " + value + " is not valid for a backpack");
+                double capacity = getDouble(fields, "capacity");
+                if(!Backpack.isValidCapacity(capacity))
+                    throw new IllegalArgumentException("capacity " + capacity + " is not valid");
+                long id = Backpack.getNextId();
+                return () -> new Backpack(id, weight, value, capacity);
+            }
+            case "purse" -> {
+                checkNoId(fields, kind);
+                double weight = getWeight(fields);
+                int capacity = getInt(fields, "capacity");
+                if(!Purse.isValidCapacity(capacity))
+                    throw new IllegalArgumentException("capacity " + capacity + " is not valid");
+                int contents = getString(fields, "contents") == null ? 0 : getInt(fields, "contents");
+                if(contents < 0 || contents > capacity)
+                    throw new IllegalArgumentException("contents " + contents + " do not fit the capacity");
+                return () -> new Purse(0, weight, capacity, contents);
+            }
+            default -> throw new IllegalArgumentException("kind " + kind + " is not known");
+        }
+    }
+
+    /**
+     * A factory creating an armor with a reserved identification
+     *
+     * @note    The reservation is cancelled if the import stops before the armor is created.
+     */
+    private static final class ArmorFactory implements Supplier<Item> {
+
+        private final long id;
+        private final double weight;
+        private final int value;
+        private final int protection;
+
+        private ArmorFactory(long id, double weight, int value, int protection) {
+            this.id = id;
+            this.weight = weight;
+            this.value = value;
+            this.protection = protection;
+        }
+
+        @Override
+        public Item get() {
+            return new Armor(id, weight, value, protection);
+        }
+    }
+
+    /**
+     * Checks that the given row does not ask for an identification that is generated
+     */
+    private static void checkNoId(Map<String, String> fields, String kind) throws IllegalArgumentException {
+        if(getString(fields, "id") != null)
+            throw new IllegalArgumentException("the identification of a " + kind + " is generated");
+    }
+
+    /**
+     * Checks that the given protection is a valid maximum protection
+     */
+    private static void checkProtection(int protection) throws IllegalArgumentException {
+        if(!Armor.isValidMaxProtection(protection))
+            throw new IllegalArgumentException("protection " + protection + " is not valid");
+    }
+
+    /**
+     * Returns the value of the given field, or null if it is missing or empty
+     */
+    private static String getString(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if(value == null) return null;
+        value = value.trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Returns the value of the given required field
+     */
+    private static String getRequired(Map<String, String> fields, String name) throws IllegalArgumentException {
+        String value = getString(fields, name);
+        if(value == null) throw new IllegalArgumentException(name + " is missing");
+        return value;
+    }
+
+    private static int getInt(Map<String, String> fields, String name) throws IllegalArgumentException {
+        String value = getRequired(fields, name);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " " + value + " is not an integer");
+        }
+    }
+
+    private static long getLong(Map<String, String> fields, String name) throws IllegalArgumentException {
+        String value = getRequired(fields, name);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " " + value + " is not an integer");
+        }
+    }
+
+    private static double getDouble(Map<String, String> fields, String name) throws IllegalArgumentException {
+        String value = getRequired(fields, name);
+        try {
+            double result = Double.parseDouble(value);
+            if(Double.isNaN(result)) throw new NumberFormatException();
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " " + value + " is not a number");
+        }
+    }
+
+    private static double getWeight(Map<String, String> fields) throws IllegalArgumentException {
+        double weight = getDouble(fields, "weight");
+        if(!Item.isValidWeight(weight)) throw new IllegalArgumentException("weight " + weight + " is not valid");
+        return weight;
+    }
+
+    /*
+        Parsing
+     */
+
+    /**
+     * Splits the given CSV line into its fields, fields between double quotes may contain commas and doubled quotes
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean isQuoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if(isQuoted) {
+                if(c != '"') {
+                    field.append(c);
+                } else if(i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    isQuoted = false;
+                }
+            } else if(c == '"') {
+                isQuoted = true;
+            } else if(c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * A tokenizer reading flat JSON objects from a stream, one character at a time
+     */
+    private static final class JsonTokenizer {
+
+        private final Reader reader;
+
+        private int next = -2;
+
+        private long position = 0;
+
+        JsonTokenizer(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Returns the next character that is not whitespace without consuming it, -1 at the end of the stream
+         */
+        int peek() throws IOException {
+            if(next == -2) next = reader.read();
+            while(next == ' ' || next == '\t' || next == '\n' || next == '\r') {
+                next = reader.read();
+                position++;
+            }
+            return next;
+        }
+
+        int read() throws IOException {
+            int c = peek();
+            next = -2;
+            position++;
+            return c;
+        }
+
+        void expect(char expected) throws IOException {
+            int c = read();
+            if(c != expected) throw error("expected '" + expected + "'");
+        }
+
+        IOException error(String message) {
+            return new IOException("Malformed catalog at character " + position + ": " + message);
+        }
+
+        /**
+         * Reads an object of which every value is a string, number, boolean or null
+         */
+        Map<String, String> readObject() throws IOException {
+            expect('{');
+            Map<String, String> fields = new HashMap<>();
+            if(peek() == '}') {
+                read();
+                return fields;
+            }
+            do {
+                if(peek() != '"') throw error("expected a name");
+                String name = readString().toLowerCase(Locale.ROOT);
+                expect(':');
+                String value = readValue();
+                if(value != null) fields.put(name, value);
+            } while(peek() == ',' && read() == ',');
+            expect('}');
+            return fields;
+        }
+
+        private String readValue() throws IOException {
+            int c = peek();
+            if(c == '"') return readString();
+            if(c == '{' || c == '[') throw error("nested values are not supported");
+            StringBuilder literal = new StringBuilder();
+            while(c != ',' && c != '}' && c != -1 && !Character.isWhitespace(c)) {
+                literal.append((char) read());
+                c = next == -2 ? (next = reader.read()) : next;
+            }
+            if(literal.length() == 0) throw error("expected a value");
+            String value = literal.toString();
+            return value.equals("null") ? null : value;
+        }
+
+        private String readString() throws IOException {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while(true) {
+                int c = reader.read();
+                position++;
+                if(c == -1) throw error("unterminated string");
+                if(c == '"') return value.toString();
+                if(c == '\\') {
+                    int escaped = reader.read();
+                    position++;
+                    switch (escaped) {
+                        case 'n' -> value.append('\n');
+                        case 't' -> value.append('\t');
+                        case 'r' -> value.append('\r');
+                        case 'b' -> value.append('\b');
+                        case 'f' -> value.append('\f');
+                        case 'u' -> {
+                            char[] hex = new char[4];
+                            for (int i = 0; i < 4; i++) {
+                                int digit = reader.read();
+                                if(digit == -1) throw error("unterminated string");
+                                hex[i] = (char) digit;
+                            }
+                            position += 4;
+                            try {
+                                value.append((char) Integer.parseInt(new String(hex), 16));
+                            } catch (NumberFormatException e) {
+                                throw error("invalid escape");
+                            }
+                        }
+                        case -1 -> throw error("unterminated string");
+                        default -> value.append((char) escaped);
+                    }
+                } else {
+                    value.append((char) c);
+                }
+            }
+        }
+    }
+
+    /*
+        Reports
+     */
+
+    /**
+     * A class of reports on the import of a catalog
+     */
+    public static final class Report {
+
+        private long nbRows = 0;
+
+        private long nbItems = 0;
+
+        private long nbArmorTypes = 0;
+
+        private long nbErrors = 0;
+
+        private final List<RowError> errors = new ArrayList<>();
+
+        private Report() {
+        }
+
+        private void addError(RowError error) {
+            nbErrors++;
+            if(errors.size() < getMaxNbReportedErrors()) errors.add(error);
+        }
+
+        /**
+         * Returns the number of rows that were read
+         */
+        @Basic
+        public long getNbRows() {
+            return nbRows;
+        }
+
+        /**
+         * Returns the number of items that were created
+         */
+        @Basic
+        public long getNbItems() {
+            return nbItems;
+        }
+
+        /**
+         * Returns the number of armor types that were registered
+         */
+        @Basic
+        public long getNbArmorTypes() {
+            return nbArmorTypes;
+        }
+
+        /**
+         * Returns the number of rows that were not valid
+         */
+        @Basic
+        public long getNbErrors() {
+            return nbErrors;
+        }
+
+        /**
+         * Returns the errors of the first rows that were not valid, in order
+         */
+        public List<RowError> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * Returns whether every row was valid
+         *
+         * @return  | result == (getNbErrors() == 0)
+         */
+        public boolean isValid() {
+            return nbErrors == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows: %d items, %d armor types, %d errors", nbRows, nbItems, nbArmorTypes, nbErrors);
+        }
+    }
+
+    /**
+     * A class of errors on a single row of a catalog
+     */
+    public static final class RowError {
+
+        private final long row;
+
+        private final String message;
+
+        private RowError(long row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+
+        /**
+         * Returns the number of the row this error is about, starting from 1 for the first row after the header
+         */
+        @Basic @Immutable
+        public long getRow() {
+            return row;
+        }
+
+        /**
+         * Returns the message of this error
+         */
+        @Basic @Immutable
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "row " + row + ": " + message;
+        }
+    }
+}
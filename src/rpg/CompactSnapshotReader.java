@@ -0,0 +1,333 @@
+package rpg;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A class of readers of compact world snapshots
+ *
+ * Every entity and item is decoded into a snapshot record, which is restored as a WorldSnapshotReader would, so a
+ * compact snapshot restores the same world as the snapshot written from the same state. See CompactSnapshotWriter
+ * for the encoding.
+ *
+ * A reader holds a native decompressor until it is closed.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each reader has an effective channel
+ *          | getChannel() != null
+ */
+public class CompactSnapshotReader implements AutoCloseable {
+
+    /**
+     * Initializes this reader with the given channel
+     *
+     * @param   channel
+     *          The channel to read compact snapshots from
+     * @post    The channel of this new reader is set to the given channel
+     *          | new.getChannel() == channel
+     * @throws  IllegalArgumentException
+     *          The given channel is not effective
+     *          | channel == null
+     */
+    public CompactSnapshotReader(ReadableByteChannel channel) throws IllegalArgumentException {
+        if(channel == null) throw new IllegalArgumentException("The given channel is not effective");
+        this.channel = channel;
+        block.limit(0);
+    }
+
+    /**
+     * Reads the world from the compact snapshot in the file at the given path
+     *
+     * @param   path
+     *          The path of the file to read
+     * @return  The world that was saved in the given file
+     *          | result == new CompactSnapshotReader(FileChannel.open(path)).read()
+     */
+    public static World load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             CompactSnapshotReader reader = new CompactSnapshotReader(channel)) {
+            return reader.read();
+        }
+    }
+
+    /**
+     * Variable referencing the channel of this reader
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * Returns the channel of this reader
+     */
+    public ReadableByteChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Variable referencing the uncompressed bytes of the block being read
+     */
+    private final ByteBuffer block = ByteBuffer.allocate(SnapshotFormat.compactBlockSize);
+
+    /**
+     * Variable referencing the compressed bytes of the block being read
+     */
+    private ByteBuffer compressed = ByteBuffer.allocate(SnapshotFormat.compactBlockSize);
+
+    /**
+     * Variable referencing the inflater decompressing blocks
+     */
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * Variable referencing the record an entity or item is decoded into
+     */
+    private final ByteBuffer record = ByteBuffer.allocate(SnapshotFormat.getEntityRecordSize(SnapshotFormat.monster,
+            SnapshotFormat.maxNameLength));
+
+    /**
+     * Variable referencing the names read so far, encoded in UTF-8, in the order of their index
+     */
+    private final List<byte[]> names = new ArrayList<>();
+
+    /**
+     * Variable referencing the item templates read so far, in the order of their index
+     */
+    private final List<long[]> templates = new ArrayList<>();
+
+    /**
+     * Variable referencing the last identification read for every kind of item
+     */
+    private final long[] previousIds = new long[SnapshotFormat.purse + 1];
+
+    /**
+     * Reads a world from the channel of this reader
+     *
+     * @return  A new world with the entities, and the items they hold, and items on the ground that were written
+     *          to the compact snapshot
+     * @throws  IOException
+     *          The channel does not contain a valid compact snapshot or could not be read
+     */
+    public World read() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SnapshotFormat.headerSize);
+        readFully(header);
+        int[] counts = SnapshotFormat.readHeader(header.flip(), SnapshotFormat.compactMagic);
+        names.clear();
+        templates.clear();
+        Arrays.fill(previousIds, 0);
+
+        World world = new World();
+        try {
+            for (int i = 0; i < counts[0]; i++) world.addEntity(readEntity());
+            for (int i = 0; i < counts[1]; i++) world.addItem(readItemTree());
+        } catch (BufferOverflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt compact snapshot", e);
+        }
+        return world;
+    }
+
+    /**
+     * Releases the decompressor of this reader, without closing its channel
+     *
+     * @post    This reader can no longer read compact snapshots
+     */
+    @Override
+    public void close() {
+        inflater.end();
+    }
+
+    /**
+     * Reads an entity and the items it holds
+     */
+    private Entity readEntity() throws IOException {
+        byte flags = get();
+        byte kind = (byte) (flags & 0x7F);
+        int nameIndex = (int) getVarLong();
+        if(nameIndex == names.size()) {
+            long length = getVarLong();
+            if(length > SnapshotFormat.maxNameLength) throw new IOException("Corrupt compact snapshot: name too long");
+            byte[] bytes = new byte[(int) length];
+            getBytes(bytes);
+            names.add(bytes);
+        } else if(nameIndex > names.size()) {
+            throw new IOException("Corrupt compact snapshot");
+        }
+        byte[] name = names.get(nameIndex);
+        record.clear();
+        record.put(kind);
+        record.putShort((short) name.length);
+        record.put(name);
+        record.putInt((int) getVarLong());
+        record.putInt((int) getVarLong());
+        record.put((byte) ((flags & 0x80) != 0 ? 1 : 0));
+        record.putInt((int) getVarLong());
+        if(kind == SnapshotFormat.hero) {
+            record.putDouble(getDouble());
+        } else {
+            record.putInt((int) getVarLong());
+            record.putInt((int) getVarLong());
+            record.putInt((int) getVarLong());
+            record.putDouble(getDouble());
+        }
+        Entity entity = SnapshotFormat.readEntity(record.flip());
+        int nbItems = (int) getVarLong();
+        for (int i = 0; i < nbItems; i++) {
+            byte index = get();
+            if(index < 0 || index >= Anchorpoint.values().length)
+                throw new IOException("Corrupt compact snapshot: unknown anchor " + index);
+            Anchorpoint anchor = Anchorpoint.values()[index];
+            entity.restoreItemAt(anchor, readItemTree());
+        }
+        entity.notifyChanged();
+        return entity;
+    }
+
+    /**
+     * Reads an item and the items it holds
+     */
+    private Item readItemTree() throws IOException {
+        byte flags = get();
+        byte kind = (byte) (flags & 0x7F);
+        if(kind < SnapshotFormat.weapon || kind > SnapshotFormat.purse) throw new IOException("Unknown item kind: " + kind);
+        long delta = getVarLong();
+        long id = previousIds[kind] + ((delta >>> 1) ^ -(delta & 1));
+        previousIds[kind] = id;
+
+        int templateIndex = (int) getVarLong();
+        if(templateIndex == templates.size()) {
+            long[] template = new long[3];
+            template[0] = getLong();
+            template[1] = getVarLong();
+            if(kind == SnapshotFormat.backpack) {
+                template[2] = getLong();
+            } else if(kind != SnapshotFormat.weapon) {
+                template[2] = getVarLong();
+            }
+            templates.add(template);
+        } else if(templateIndex > templates.size()) {
+            throw new IOException("Corrupt compact snapshot");
+        }
+        long[] template = templates.get(templateIndex);
+
+        record.clear();
+        record.put(kind);
+        record.put(SnapshotFormat.noAnchor);
+        record.putLong(kind == SnapshotFormat.weapon ? id * 6 : id);
+        record.put((byte) ((flags & 0x80) != 0 ? 1 : 0));
+        record.putLong(template[0]);
+        record.putInt((int) template[1]);
+        if(kind == SnapshotFormat.armor) {
+            record.putInt((int) template[2]);
+            record.putInt((int) getVarLong());
+        } else if(kind == SnapshotFormat.backpack) {
+            record.putLong(template[2]);
+        } else if(kind == SnapshotFormat.purse) {
+            record.putInt((int) template[2]);
+            record.putInt((int) getVarLong());
+        }
+        Item item = SnapshotFormat.readItem(record.flip());
+        if(item instanceof Backpack) {
+            int nbItems = (int) getVarLong();
+            for (int i = 0; i < nbItems; i++) ((Backpack) item).restoreItem(readItemTree());
+        }
+        return item;
+    }
+
+    /*
+        Decoding
+     */
+
+    private byte get() throws IOException {
+        ensureAvailable(1);
+        return block.get();
+    }
+
+    private long getLong() throws IOException {
+        ensureAvailable(8);
+        return block.getLong();
+    }
+
+    private double getDouble() throws IOException {
+        ensureAvailable(8);
+        return block.getDouble();
+    }
+
+    /**
+     * Reads a variable length integer, which never spans two blocks
+     */
+    private long getVarLong() throws IOException {
+        ensureAvailable(1);
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte next = block.get();
+            result |= (long) (next & 0x7F) << shift;
+            if(next >= 0) return result;
+        }
+        throw new IOException("Corrupt compact snapshot");
+    }
+
+    /**
+     * Reads the given array, which may span several blocks
+     */
+    private void getBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while(offset < bytes.length) {
+            ensureAvailable(1);
+            int length = Math.min(block.remaining(), bytes.length - offset);
+            block.get(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Makes sure the block being read has at least the given number of bytes available, decompressing the next block
+     * if it is exhausted
+     *
+     * The writer never splits a value over two blocks, so the next block is only read once the current one is empty.
+     */
+    private void ensureAvailable(int nbBytes) throws IOException {
+        if(block.remaining() >= nbBytes) return;
+        if(block.hasRemaining()) throw new IOException("Corrupt compact snapshot");
+        ByteBuffer lengths = ByteBuffer.allocate(8);
+        readFully(lengths);
+        int length = lengths.getInt(0);
+        int compressedLength = lengths.getInt(4);
+        if(length <= 0 || length > block.capacity() || compressedLength <= 0)
+            throw new IOException("Corrupt compact snapshot");
+        if(compressed.capacity() < compressedLength) compressed = ByteBuffer.allocate(compressedLength);
+        compressed.clear().limit(compressedLength);
+        readFully(compressed);
+        inflater.reset();
+        inflater.setInput(compressed.flip());
+        block.clear().limit(length);
+        try {
+            while(block.hasRemaining() && !inflater.finished()) {
+                if(inflater.inflate(block) == 0 && inflater.needsInput()) break;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        if(block.hasRemaining()) throw new IOException("Corrupt compact snapshot");
+        block.flip();
+        if(block.remaining() < nbBytes) throw new IOException("Corrupt compact snapshot");
+    }
+
+    /**
+     * Fills the given buffer from the channel of this reader
+     */
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) throw new EOFException("Unexpected end of compact snapshot");
+        }
+    }
+}
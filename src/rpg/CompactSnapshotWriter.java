@@ -0,0 +1,338 @@
+package rpg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * A class of writers of compact world snapshots
+ *
+ * A compact snapshot stores the same state as a snapshot, in the same order, but encodes it to take less space:
+ * - Entity names are dictionary coded: the first occurrence of a name is written in full, every later occurrence as
+ *   its index in the dictionary.
+ * - The attributes items are created with (kind, weight, value, damage, protection, capacity) are dictionary coded as
+ *   item templates in the same way. Only the identification, broken state, effective protection of armors and contents
+ *   of purses are written per item.
+ * - Identifications are written as the zigzag coded difference with the previous identification of the same kind,
+ *   weapon identifications divided by 6. Other integers are written as variable length integers.
+ * - The encoded bytes are compressed in blocks of at most SnapshotFormat.compactBlockSize bytes, each block preceded by
+ *   its uncompressed and compressed length.
+ *
+ * Compact snapshots are read back with a CompactSnapshotReader. Unlike a snapshot, a compact snapshot cannot be read
+ * lazily, since records are no longer of a fixed size.
+ *
+ * A writer holds a native compressor until it is closed.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each writer has an effective channel
+ *          | getChannel() != null
+ */
+public class CompactSnapshotWriter implements AutoCloseable {
+
+    /**
+     * Initializes this writer with the given channel
+     *
+     * @param   channel
+     *          The channel to write compact snapshots to
+     * @post    The channel of this new writer is set to the given channel
+     *          | new.getChannel() == channel
+     * @throws  IllegalArgumentException
+     *          The given channel is not effective
+     *          | channel == null
+     */
+    public CompactSnapshotWriter(WritableByteChannel channel) throws IllegalArgumentException {
+        if(channel == null) throw new IllegalArgumentException("The given channel is not effective");
+        this.channel = channel;
+    }
+
+    /**
+     * Writes a compact snapshot of the given world to the file at the given path, replacing its contents
+     *
+     * @param   world
+     *          The world to save
+     * @param   path
+     *          The path of the file to write to
+     * @effect  A compact snapshot of the given world is written to the file at the given path
+     *          | new CompactSnapshotWriter(FileChannel.open(path)).write(world)
+     */
+    public static void save(World world, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             CompactSnapshotWriter writer = new CompactSnapshotWriter(channel)) {
+            writer.write(world);
+        }
+    }
+
+    /**
+     * Variable referencing the channel of this writer
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * Returns the channel of this writer
+     */
+    public WritableByteChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Variable referencing the uncompressed bytes of the block being written
+     */
+    private final ByteBuffer block = ByteBuffer.allocate(SnapshotFormat.compactBlockSize);
+
+    /**
+     * Variable referencing the buffer compressed blocks are written from, large enough for the length of a block and
+     * its compressed bytes even if the block cannot be compressed
+     */
+    private final ByteBuffer compressed = ByteBuffer.allocate(8 + SnapshotFormat.compactBlockSize
+            + SnapshotFormat.compactBlockSize / 16 + 64);
+
+    /**
+     * Variable referencing the deflater compressing blocks
+     */
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    /**
+     * Variable referencing the index of every name written so far
+     */
+    private final Map<String, Integer> names = new HashMap<>();
+
+    /**
+     * Variable referencing the index of every item template written so far
+     */
+    private final Map<List<Long>, Integer> templates = new HashMap<>();
+
+    /**
+     * Variable referencing the last identification written for every kind of item
+     */
+    private final long[] previousIds = new long[SnapshotFormat.purse + 1];
+
+    /**
+     * Writes a compact snapshot of the given world to the channel of this writer
+     *
+     * @param   world
+     *          The world to write
+     * @throws  IllegalArgumentException
+     *          The given world is not effective
+     *          | world == null
+     * @throws  IllegalArgumentException
+     *          The given world contains an entity or item of which the class is not supported by the snapshot format
+     * @throws  IllegalArgumentException
+     *          The given world contains an entity of which the name is longer than the snapshot format supports
+     * @throws  IOException
+     *          The compact snapshot could not be written to the channel of this writer
+     */
+    public void write(World world) throws IllegalArgumentException, IOException {
+        if(world == null) throw new IllegalArgumentException("The given world is not effective");
+        ByteBuffer header = ByteBuffer.allocate(SnapshotFormat.headerSize);
+        header.putInt(SnapshotFormat.compactMagic);
+        header.putShort(SnapshotFormat.version);
+        header.putInt(world.getNbEntities());
+        header.putInt(world.getNbItems());
+        header.flip();
+        while(header.hasRemaining()) channel.write(header);
+        names.clear();
+        templates.clear();
+        Arrays.fill(previousIds, 0);
+        for (Entity entity: world.getEntities()) writeEntity(entity);
+        for (Item item: world.getItems()) writeItem(item);
+        flushBlock();
+        deflater.reset();
+    }
+
+    /**
+     * Releases the compressor of this writer, without closing its channel
+     *
+     * @post    This writer can no longer write compact snapshots
+     */
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    /**
+     * Writes the given entity and the items it holds
+     */
+    private void writeEntity(Entity entity) throws IOException {
+        byte kind;
+        if(entity instanceof Hero) {
+            kind = SnapshotFormat.hero;
+        } else if(entity instanceof Monster) {
+            kind = SnapshotFormat.monster;
+        } else {
+            throw new IllegalArgumentException("Unsupported entity: " + entity.getClass());
+        }
+        Integer name = names.get(entity.getName());
+        byte[] bytes = null;
+        if(name == null) {
+            bytes = entity.getName().getBytes(StandardCharsets.UTF_8);
+            if(bytes.length > SnapshotFormat.maxNameLength)
+                throw new IllegalArgumentException("The name of " + entity + " is too long for a snapshot");
+        }
+        ensureRemaining(1);
+        block.put((byte) (entity.isDead() ? kind | 0x80 : kind));
+        if(name != null) {
+            putVarLong(name);
+        } else {
+            putVarLong(names.size());
+            names.put(entity.getName(), names.size());
+            putVarLong(bytes.length);
+            putBytes(bytes);
+        }
+        putVarLong(entity.getMaxHitPoints());
+        putVarLong(entity.getHitPoints());
+
+        int anchorMask = 0;
+        int nbItems = 0;
+        for (Anchorpoint anchor: entity.getAnchorPoints()) {
+            anchorMask |= 1 << anchor.ordinal();
+            if(entity.getItemAt(anchor) != null) nbItems++;
+        }
+        putVarLong(anchorMask);
+        if(entity instanceof Hero) {
+            ensureRemaining(8);
+            block.putDouble(((Hero) entity).getStrength());
+        } else {
+            Monster monster = (Monster) entity;
+            putVarLong(monster.getBaseProtection());
+            putVarLong(monster.getProtection());
+            putVarLong(monster.getDamage());
+            ensureRemaining(8);
+            block.putDouble(monster.getCapacity());
+        }
+        putVarLong(nbItems);
+        for (Anchorpoint anchor: Anchorpoint.values()) {
+            if(entity.hasAnchor(anchor) && entity.getItemAt(anchor) != null) {
+                ensureRemaining(1);
+                block.put((byte) anchor.ordinal());
+                writeItem(entity.getItemAt(anchor));
+            }
+        }
+    }
+
+    /**
+     * Writes the given item and the items it holds
+     */
+    private void writeItem(Item item) throws IOException {
+        byte kind;
+        List<Long> template;
+        if(item instanceof Weapon) {
+            kind = SnapshotFormat.weapon;
+            template = List.of((long) kind, Double.doubleToLongBits(item.getWeight()), (long) ((Weapon) item).getDamage(), 0L);
+        } else if(item instanceof Armor) {
+            Armor armor = (Armor) item;
+            kind = SnapshotFormat.armor;
+            template = List.of((long) kind, Double.doubleToLongBits(armor.getWeight()), (long) armor.getMaxValue(),
+                    (long) armor.getMaxProtection());
+        } else if(item instanceof Backpack) {
+            Backpack backpack = (Backpack) item;
+            kind = SnapshotFormat.backpack;
+            template = List.of((long) kind, Double.doubleToLongBits(backpack.getOwnWeight()), (long) backpack.getOwnValue(),
+                    Double.doubleToLongBits(backpack.getCapacity()));
+        } else if(item instanceof Purse) {
+            Purse purse = (Purse) item;
+            kind = SnapshotFormat.purse;
+            template = List.of((long) kind, Double.doubleToLongBits(purse.getOwnWeight()), (long) purse.getValue(),
+                    (long) purse.getCapacity());
+        } else {
+            throw new IllegalArgumentException("Unsupported item: " + item.getClass());
+        }
+        ensureRemaining(1);
+        block.put((byte) (item.isBroken() ? kind | 0x80 : kind));
+
+        long id = kind == SnapshotFormat.weapon ? item.getId() / 6 : item.getId();
+        putVarLong(zigzag(id - previousIds[kind]));
+        previousIds[kind] = id;
+
+        Integer index = templates.get(template);
+        if(index != null) {
+            putVarLong(index);
+        } else {
+            putVarLong(templates.size());
+            templates.put(template, templates.size());
+            ensureRemaining(8);
+            block.putLong(template.get(1));
+            putVarLong(template.get(2));
+            if(kind == SnapshotFormat.backpack) {
+                ensureRemaining(8);
+                block.putLong(template.get(3));
+            } else if(kind != SnapshotFormat.weapon) {
+                putVarLong(template.get(3));
+            }
+        }
+
+        if(item instanceof Armor) {
+            putVarLong(((Armor) item).getEffectiveProtection());
+        } else if(item instanceof Purse) {
+            putVarLong(((Purse) item).getContents());
+        } else if(item instanceof Backpack) {
+            List<Item> contents = ((Backpack) item).getItems();
+            putVarLong(contents.size());
+            for (Item content: contents) writeItem(content);
+        }
+    }
+
+    /**
+     * Returns the zigzag code of the given number, mapping numbers close to zero to small positive numbers
+     */
+    private static long zigzag(long number) {
+        return (number << 1) ^ (number >> 63);
+    }
+
+    /**
+     * Writes the given positive number as a variable length integer, 7 bits per byte
+     */
+    private void putVarLong(long number) throws IOException {
+        ensureRemaining(10);
+        while((number & ~0x7FL) != 0) {
+            block.put((byte) ((number & 0x7F) | 0x80));
+            number >>>= 7;
+        }
+        block.put((byte) number);
+    }
+
+    /**
+     * Writes the given bytes, spreading them over several blocks if needed
+     */
+    private void putBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while(offset < bytes.length) {
+            ensureRemaining(1);
+            int length = Math.min(block.remaining(), bytes.length - offset);
+            block.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Compresses and writes the block being written if it has less than the given number of bytes remaining
+     */
+    private void ensureRemaining(int nbBytes) throws IOException {
+        if(block.remaining() < nbBytes) flushBlock();
+    }
+
+    /**
+     * Compresses and writes the block being written
+     */
+    private void flushBlock() throws IOException {
+        if(block.position() == 0) return;
+        deflater.reset();
+        deflater.setInput(block.flip());
+        deflater.finish();
+        compressed.clear();
+        compressed.position(8);
+        while(!deflater.finished()) deflater.deflate(compressed);
+        compressed.flip();
+        compressed.putInt(0, block.limit());
+        compressed.putInt(4, (int) deflater.getBytesWritten());
+        while(compressed.hasRemaining()) channel.write(compressed);
+        block.clear();
+    }
+}
@@ -0,0 +1,288 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A class of checkpointers, writing a world to a directory as a base snapshot followed by deltas
+ *
+ * A delta only contains the entities and items on the ground that changed since the previous checkpoint, every other
+ * one is written as a reference to its position in the previous checkpoint. An entity or item is changed if it, or an
+ * item it holds directly or indirectly, was notified of a change of its anchors, contents, hit points, protection,
+ * damage or ducats. After a number of deltas, the world is compacted into a new base snapshot and the previous
+ * generation of files is removed.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each checkpointer references an effective world
+ *          | getWorld() != null
+ * @invar   Each checkpointer has a strictly positive compaction interval
+ *          | getCompactionInterval() > 0
+ *
+ * @note    The world should not be mutated while a checkpoint is written.
+ */
+public class DeltaCheckpointer {
+
+    /**
+     * Initializes this checkpointer for the given world, directory and compaction interval
+     *
+     * @param   world
+     *          The world to checkpoint
+     * @param   directory
+     *          The directory to write checkpoints to
+     * @param   compactionInterval
+     *          The number of deltas after which the world is compacted into a new base snapshot
+     * @post    The world, directory and compaction interval of this new checkpointer are set to the given ones
+     *          | new.getWorld() == world && new.getDirectory() == directory
+     *          | && new.getCompactionInterval() == compactionInterval
+     * @post    The generation of this new checkpointer follows every generation found in the given directory
+     * @throws  IllegalArgumentException
+     *          The given world or directory is not effective or the given interval is not strictly positive
+     *          | world == null || directory == null || compactionInterval <= 0
+     * @throws  IOException
+     *          The given directory could not be created or listed
+     */
+    public DeltaCheckpointer(World world, Path directory, int compactionInterval)
+            throws IllegalArgumentException, IOException {
+        if(world == null) throw new IllegalArgumentException("The given world is not effective");
+        if(directory == null) throw new IllegalArgumentException("The given directory is not effective");
+        if(compactionInterval <= 0) throw new IllegalArgumentException("The compaction interval must be strictly positive");
+        this.world = world;
+        this.directory = directory;
+        this.compactionInterval = compactionInterval;
+        Files.createDirectories(directory);
+        this.generation = getLastGeneration(directory) + 1;
+    }
+
+    /**
+     * Initializes this checkpointer for the given world and directory with the default compaction interval
+     *
+     * @effect  | this(world, directory, getDefaultCompactionInterval())
+     */
+    public DeltaCheckpointer(World world, Path directory) throws IllegalArgumentException, IOException {
+        this(world, directory, getDefaultCompactionInterval());
+    }
+
+    /**
+     * Returns the default number of deltas after which a world is compacted
+     */
+    @Immutable
+    public static int getDefaultCompactionInterval() {
+        return 10;
+    }
+
+    /**
+     * Variable referencing the world of this checkpointer
+     */
+    private final World world;
+
+    /**
+     * Returns the world of this checkpointer
+     */
+    @Basic @Immutable
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Variable referencing the directory of this checkpointer
+     */
+    private final Path directory;
+
+    /**
+     * Returns the directory this checkpointer writes to
+     */
+    @Basic @Immutable
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Variable referencing the compaction interval of this checkpointer
+     */
+    private final int compactionInterval;
+
+    /**
+     * Returns the number of deltas after which the world is compacted into a new base snapshot
+     */
+    @Basic @Immutable
+    public int getCompactionInterval() {
+        return compactionInterval;
+    }
+
+    /**
+     * Variable referencing the generation of the current base snapshot
+     */
+    private int generation;
+
+    /**
+     * Returns the generation of the base snapshot that is currently written or extended
+     */
+    @Basic
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Variable referencing the number of deltas written on top of the current base snapshot, -1 if it is not written
+     */
+    private int nbDeltas = -1;
+
+    /**
+     * Returns the number of deltas written on top of the current base snapshot
+     */
+    @Basic
+    public int getNbDeltas() {
+        return Math.max(0, nbDeltas);
+    }
+
+    /**
+     * Variable referencing the position of every entity and item on the ground in the last checkpoint
+     */
+    private final Map<Object, Integer> previousIndices = new IdentityHashMap<>();
+
+    /**
+     * Writes a checkpoint of the world of this checkpointer
+     *
+     * @effect  If no base snapshot is written yet or the compaction interval is reached, the world is compacted,
+     *          otherwise a delta is written
+     *          | if(no base written || getNbDeltas() == getCompactionInterval())
+     *          | then compact()
+     * @return  The path of the file that was written
+     * @throws  IOException
+     *          The checkpoint could not be written
+     */
+    public synchronized Path checkpoint() throws IOException {
+        if(nbDeltas < 0 || nbDeltas >= compactionInterval) return compact();
+        Path path = directory.resolve(String.format("delta-%d-%d.snapshot", generation, nbDeltas + 1));
+        List<Object> roots = getRoots();
+        write(path, writer -> writer.writeDelta(world, root -> {
+            Integer index = previousIndices.get(root);
+            return index == null || isDirty(root) ? -1 : index;
+        }), roots);
+        nbDeltas++;
+        return path;
+    }
+
+    /**
+     * Writes the world of this checkpointer as the base snapshot of a new generation and removes the files of the
+     * previous generations
+     *
+     * @return  The path of the base snapshot that was written
+     * @throws  IOException
+     *          The base snapshot could not be written
+     */
+    public synchronized Path compact() throws IOException {
+        if(nbDeltas >= 0) generation++;
+        Path path = directory.resolve(String.format("base-%d.snapshot", generation));
+        write(path, writer -> writer.write(world), getRoots());
+        nbDeltas = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file: files) {
+                int fileGeneration = getGeneration(file);
+                if(fileGeneration >= 0 && fileGeneration < generation) Files.delete(file);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * An operation writing to a snapshot writer
+     */
+    private interface WriteOperation {
+        void writeTo(WorldSnapshotWriter writer) throws IOException;
+    }
+
+    /**
+     * Returns the entities and items on the ground of the world, in order
+     */
+    private List<Object> getRoots() {
+        List<Object> roots = new ArrayList<>(world.getEntities());
+        roots.addAll(world.getItems());
+        return roots;
+    }
+
+    /**
+     * Writes a file atomically at the given path and registers the given roots as written
+     */
+    private void write(Path path, WriteOperation operation, List<Object> roots) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            operation.writeTo(new WorldSnapshotWriter(channel));
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        previousIndices.clear();
+        for (int i = 0; i < roots.size(); i++) {
+            Object root = roots.get(i);
+            previousIndices.put(root, i);
+            if(root instanceof Entity) {
+                ((Entity) root).clearDirty();
+            } else {
+                ((Item) root).clearDirty();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given entity or item changed since it was last checkpointed
+     */
+    private static boolean isDirty(Object root) {
+        return root instanceof Entity ? ((Entity) root).isDirty() : ((Item) root).isDirty();
+    }
+
+    /*
+        Loading
+     */
+
+    private static final Pattern fileName = Pattern.compile("(base|delta)-(\\d+)(?:-(\\d+))?\\.snapshot");
+
+    /**
+     * Returns the generation of the given checkpoint file, -1 if it is not a checkpoint file
+     */
+    private static int getGeneration(Path file) {
+        Matcher matcher = fileName.matcher(file.getFileName().toString());
+        return matcher.matches() ? Integer.parseInt(matcher.group(2)) : -1;
+    }
+
+    /**
+     * Returns the last generation of which a base snapshot exists in the given directory, -1 if there is none
+     */
+    private static int getLastGeneration(Path directory) throws IOException {
+        int generation = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "base-*.snapshot")) {
+            for (Path file: files) generation = Math.max(generation, getGeneration(file));
+        }
+        return generation;
+    }
+
+    /**
+     * Loads the world from the last base snapshot in the given directory and the deltas written on top of it
+     *
+     * @param   directory
+     *          The directory to load from
+     * @return  The world as it was at the last checkpoint written to the given directory
+     * @throws  IOException
+     *          The directory does not contain a base snapshot, or a snapshot or delta could not be read
+     */
+    public static World load(Path directory) throws IOException {
+        int generation = getLastGeneration(directory);
+        if(generation < 0) throw new NoSuchFileException(directory + " does not contain a base snapshot");
+        World world = WorldSnapshotReader.load(directory.resolve(String.format("base-%d.snapshot", generation)));
+        for (int delta = 1; ; delta++) {
+            Path path = directory.resolve(String.format("delta-%d-%d.snapshot", generation, delta));
+            if(!Files.exists(path)) return world;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                world = new WorldSnapshotReader(channel).readDelta(world);
+            }
+        }
+    }
+}
@@ -8,6 +8,8 @@ import rpg.exceptions.BrokenItemException;
 import rpg.exceptions.DeadEntityException;
 import rpg.exceptions.InvalidAnchorException;
 import rpg.exceptions.InvalidHolderException;
+import rpg.jfr.FightEvent;
+import rpg.jfr.InventoryEvent;
 
 import java.util.*;
 
@@ -213,6 +215,7 @@ public abstract class Entity implements ItemHolder {
      *          | new.getHitPoints() == 0
      */
     public void die() {
+        if(!isDead && world != null) world.getStatistics().entityDied(this);
         this.isDead = true;
         setHitPoints(0);
     }
@@ -257,6 +260,7 @@ public abstract class Entity implements ItemHolder {
     public void setName(String name) throws IllegalArgumentException {
         if(canHaveAsName(name)) {
             this.name = name;
+            notifyChanged();
         } else {
             throw new IllegalArgumentException(name + " is not a valid name for a " + getClass().toString());
         }
@@ -337,6 +341,7 @@ public abstract class Entity implements ItemHolder {
     @Model
     protected void setMaxHitPoints(int maxHitPoints) {
         this.maxHitPoints = maxHitPoints;
+        notifyChanged();
     }
 
     /**
@@ -394,6 +399,7 @@ public abstract class Entity implements ItemHolder {
     @Raw
     protected void setHitPoints(int hitPoints) {
         this.hitPoints = hitPoints;
+        notifyChanged();
     }
 
     /**
@@ -560,6 +566,7 @@ public abstract class Entity implements ItemHolder {
         for (Anchorpoint anchor: anchors) {
             if(!hasAnchor(anchor)) this.anchors.put(anchor, null);
         }
+        notifyChanged();
     }
 
     /**
@@ -603,6 +610,7 @@ public abstract class Entity implements ItemHolder {
                     if (!foundAnchor) throw new IllegalArgumentException(
                             String.format("No anchor was found for %h at %h", item, this));
             }
+            notifyChanged();
         }
     }
 
@@ -645,6 +653,7 @@ public abstract class Entity implements ItemHolder {
             if(item.getHolder() != null && item.getHolder() != this) item.getHolder().drop(item);
             item.setHolder(this);
             anchors.replace(anchor, item);
+            notifyChanged();
         } catch (Exception e) {
             // Should not happen
             assert false;
@@ -652,6 +661,106 @@ public abstract class Entity implements ItemHolder {
 
     }
 
+    /**
+     * Places the given item at the given anchor without any checks, as done when restoring a snapshot
+     *
+     * @param   anchor
+     *          The anchor to place the item at
+     * @param   item
+     *          The item to place
+     * @pre     This entity has the given anchor and can have the given item at it
+     *          | hasAnchor(anchor) && canHaveItemAtAnchor(item, anchor)
+     * @pre     The given item lies on the ground
+     *          | item.liesOnGround()
+     * @post    The given item is located at the given anchor
+     *          | new.getItemAt(anchor) == item
+     * @effect  The holder of the given item is set to this entity
+     *          | item.setHolder(this)
+     * @note    No snapshot is published, notifyChanged() must be invoked once this entity is restored.
+     */
+    @Raw
+    void restoreItemAt(Anchorpoint anchor, Item item) {
+        anchors.put(anchor, item);
+        item.setHolder(this);
+    }
+
+    /**
+     * Variable referencing the items of this entity in a mapped snapshot, if they are not materialized yet
+     */
+    private volatile MappedSnapshotLoader.Contents pendingItems = null;
+
+    /**
+     * Registers the given contents of a mapped snapshot as the items of this entity, to be materialized on first
+     * access
+     *
+     * @param   pendingItems
+     *          The records of the items held directly or indirectly by this entity
+     * @pre     This entity holds no items
+     *          | for each anchor in getAnchorPoints():
+     *          |   getItemAt(anchor) == null
+     */
+    @Raw
+    void setPendingItems(MappedSnapshotLoader.Contents pendingItems) {
+        this.pendingItems = pendingItems;
+    }
+
+    /**
+     * Materializes the pending items of this entity, if any
+     *
+     * @effect  If this entity had pending items, the items at its anchors are created and a new snapshot is published
+     *          | notifyChanged()
+     */
+    private void materialize() {
+        if(pendingItems == null) return;
+        synchronized (this) {
+            MappedSnapshotLoader.Contents pending = pendingItems;
+            if(pending == null) return;
+            pending.readAnchoredItems().forEach(this::restoreItemAt);
+            pendingItems = null;
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Returns whether this entity has pending items that are not materialized yet
+     */
+    boolean hasPendingItems() {
+        return pendingItems != null;
+    }
+
+    /*
+        World
+     */
+
+    /**
+     * Variable referencing the world this entity belongs to, if any
+     */
+    private World world = null;
+
+    /**
+     * Returns the world this entity belongs to, null if none
+     */
+    @Basic
+    World getWorld() {
+        return world;
+    }
+
+    /**
+     * Sets the world this entity belongs to to the given world
+     *
+     * @param   world
+     *          The world this entity was added to, null if it was removed from its world
+     * @post    | new.getWorld() == world
+     * @effect  This entity and the items it holds are counted in the statistics of the given world instead of the ones
+     *          of its previous world
+     * @note    Only to be invoked by the world itself.
+     */
+    void setWorld(World world) {
+        World previous = this.world;
+        this.world = world;
+        Statistics.moved(this, previous, world);
+    }
+
     /**
      * Checks if the given anchor exists on this entity
      *
@@ -681,6 +790,7 @@ public abstract class Entity implements ItemHolder {
      * | result.length() == getAnchorPoints().length()
      */
     protected Collection<Item> getItems() {
+        materialize();
         return anchors.values();
     }
 
@@ -700,6 +810,7 @@ public abstract class Entity implements ItemHolder {
     public Item getItemAt(Anchorpoint anchorPoint) throws IllegalArgumentException {
         if(hasAnchor(anchorPoint))
         {
+                materialize();
                 return anchors.get(anchorPoint);
         }
         throw new IllegalArgumentException(anchorPoint + " does not exist on " + this);
@@ -767,6 +878,7 @@ public abstract class Entity implements ItemHolder {
      *          | )
      */
     public boolean hasProperAnchors() {
+        materialize();
         for (Map.Entry<Anchorpoint, Item> entry: anchors.entrySet()) {
             Anchorpoint anchor = entry.getKey();
             Item item = entry.getValue();
@@ -775,6 +887,97 @@ public abstract class Entity implements ItemHolder {
         return getLoad() <= getCapacity();
     }
 
+    /*
+        Snapshot
+     */
+
+    /**
+     * Variable referencing the number of times this entity or its inventory changed, only incremented by the thread
+     * mutating this entity
+     */
+    private volatile long version = 0;
+
+    /**
+     * Variable referencing the last snapshot taken of this entity and its inventory, null if none was taken yet
+     */
+    private volatile EntitySnapshot inventorySnapshot = null;
+
+    /**
+     * Returns an immutable snapshot of this entity and its full inventory.
+     *
+     * The snapshot is only built by the first call after a mutation, reusing the snapshots of unchanged items, so
+     * mutations themselves never pay for it. A snapshot is tagged with the version of this entity it was taken of and
+     * is only reused while that version is current. A snapshot during which this entity changed is discarded and taken
+     * again, so a snapshot taken by another thread than the one mutating this entity never mixes the states before and
+     * after a mutation that notified this entity, and is never cached after this entity changed.
+     *
+     * @return  A snapshot of the current state of this entity that is never changed afterwards and may be read by any
+     *          thread.
+     * @throws  IllegalStateException
+     *          The items of this entity are not materialized yet, which is left to the thread mutating this entity
+     *          | hasPendingItems()
+     */
+    public EntitySnapshot getInventorySnapshot() throws IllegalStateException {
+        if(hasPendingItems()) throw new IllegalStateException("The items of this entity are not materialized yet");
+        while(true) {
+            long before = version;
+            EntitySnapshot result = inventorySnapshot;
+            if(result != null && result.getVersion() == before) return result;
+            result = new EntitySnapshot(this, before);
+            if(version == before) {
+                inventorySnapshot = result;
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Notifies this entity that its state or the state of its inventory changed
+     *
+     * @post    The version of this entity is incremented, discarding its snapshot
+     *          | new.version == version + 1
+     * @post    This entity is dirty
+     *          | new.isDirty()
+     */
+    @Raw
+    protected void notifyChanged() {
+        version++;
+        isDirty = true;
+    }
+
+    /**
+     * Variable registering whether this entity or an item it holds changed since it was last checkpointed
+     */
+    private volatile boolean isDirty = true;
+
+    /**
+     * Returns whether this entity or an item it holds changed since it was last checkpointed
+     */
+    boolean isDirty() {
+        return isDirty;
+    }
+
+    /**
+     * Registers that state of this entity that is checkpointed but not part of its snapshot changed
+     *
+     * @post    This entity is dirty
+     *          | new.isDirty()
+     */
+    @Raw
+    void markDirty() {
+        isDirty = true;
+    }
+
+    /**
+     * Registers that this entity was checkpointed
+     *
+     * @post    This entity is not dirty
+     *          | !new.isDirty()
+     */
+    void clearDirty() {
+        isDirty = false;
+    }
+
     /**
      * Returns the weight of all the items that this entity holds
      *
@@ -961,11 +1164,18 @@ public abstract class Entity implements ItemHolder {
     @Override
     @Raw
     public void drop(Item item) throws IllegalArgumentException {
+        long start = Metrics.start();
+        InventoryEvent event = new InventoryEvent();
+        event.begin();
         if(item == null) throw new IllegalArgumentException("The given item is not effective");
         if(!holdsItemDirectly(item)) throw new IllegalArgumentException("The given item is not held by this entity");
 
         anchors.put(getAnchorOf(item), null);
         item.setHolder(null);
+        notifyChanged();
+        Item.commit(event, "drop", item, this, 0);
+        InvariantSampler.sample(this);
+        Metrics.record(MetricsRecorder.Operation.DROP, start);
     }
 
     /**
@@ -1049,16 +1259,24 @@ public abstract class Entity implements ItemHolder {
     @Raw
     public void pickup(Item item, Anchorpoint anchor)
             throws IllegalArgumentException, InvalidAnchorException, InvalidHolderException {
+        long start = Metrics.start();
+        InventoryEvent event = new InventoryEvent();
+        event.begin();
         if(item == null) throw new IllegalArgumentException("The given item is not effective");
         if(!hasAnchor(anchor)) throw new IllegalArgumentException(this + "has no anchor named: " + anchor);
         if(!item.canHaveAsHolder(this)) throw new InvalidHolderException(this, item);
+        long checkStart = event.isEnabled() ? System.nanoTime() : 0;
         if(!canHaveItemAtAnchor(item, anchor)) throw new InvalidAnchorException(this, item, anchor);
+        long checkTime = event.isEnabled() ? System.nanoTime() - checkStart : 0;
         try {
             setAnchor(anchor, item);
         } catch (Exception e) {
             // Should not happen
             assert false;
         }
+        Item.commit(event, "pickup", item, this, checkTime);
+        InvariantSampler.sample(this);
+        Metrics.record(MetricsRecorder.Operation.PICKUP, start);
     }
 
     /*
@@ -1152,6 +1370,7 @@ public abstract class Entity implements ItemHolder {
      */
     protected void hit(Entity opponent)
             throws IllegalArgumentException, DeadEntityException, InvalidAnchorException, InvalidHolderException, BrokenItemException {
+        long start = Metrics.start();
         if(opponent == null) throw new IllegalArgumentException("The given opponent is not effective");
         if(opponent.isDead()) throw new DeadEntityException(opponent);
         if(this.isDead()) throw new DeadEntityException(this);
@@ -1165,6 +1384,9 @@ public abstract class Entity implements ItemHolder {
                 opponent.takeDamage(this.getDamage());
             }
         }
+        InvariantSampler.sample(this);
+        InvariantSampler.sample(opponent);
+        Metrics.record(MetricsRecorder.Operation.HIT, start);
     }
 
     /**
@@ -1208,7 +1430,27 @@ public abstract class Entity implements ItemHolder {
      *          | opponent == null
      */
     protected void fight(Entity opponent) throws IllegalArgumentException {
+        fightRounds(opponent);
+    }
+
+    /**
+     * Lets this entity fight the given opponent until one of them dies and returns the number of rounds it took
+     *
+     * @param   opponent
+     *          The opponent to fight
+     * @effect  This entity and the given opponent take turns hitting each other, as documented in fight
+     *          | fight(opponent)
+     * @return  The number of times this entity hit the given opponent
+     * @throws  IllegalArgumentException
+     *          The given opponent is not effective
+     *          | opponent == null
+     */
+    int fightRounds(Entity opponent) throws IllegalArgumentException {
+        long start = Metrics.start();
+        FightEvent event = new FightEvent();
+        event.begin();
         if (opponent == null) throw new IllegalArgumentException("THe given opponent is not effective");
+        int rounds = 0;
         while(!(isDead() || opponent.isDead())) {
             try {
                 hit(opponent);
@@ -1217,9 +1459,28 @@ public abstract class Entity implements ItemHolder {
                 // Should not happen
                 assert false;
             }
+            rounds++;
         }
         stopFighting();
         opponent.stopFighting();
+        commit(event, this, opponent, rounds);
+        if(world != null) world.getStatistics().fightEnded();
+        Metrics.record(MetricsRecorder.Operation.FIGHT, start);
+        return rounds;
+    }
+
+    /**
+     * Commits the given fight event for a fight between the given attacker and defender that took the given number of
+     * rounds, if the event is enabled and its threshold is exceeded
+     */
+    static void commit(FightEvent event, Entity attacker, Entity defender, int rounds) {
+        if(!event.shouldCommit()) return;
+        event.attacker = attacker.getName();
+        event.defender = defender.getName();
+        event.rounds = rounds;
+        event.attackerWon = !attacker.isDead();
+        event.winnerHitPoints = attacker.isDead() ? defender.getHitPoints() : attacker.getHitPoints();
+        event.commit();
     }
 
     /**
@@ -1265,6 +1526,7 @@ public abstract class Entity implements ItemHolder {
     @Raw
     public void transferItemAtAnchorTo(Entity recipient, Anchorpoint anchorFrom, Anchorpoint anchorTo)
             throws IllegalArgumentException, InvalidAnchorException, InvalidHolderException {
+        long start = Metrics.start();
         if(!hasAnchor(anchorFrom))
             throw new IllegalArgumentException(String.format("This entity does not have the anchor: %s", anchorFrom));
         if(!recipient.hasAnchor(anchorTo))
@@ -1285,6 +1547,9 @@ public abstract class Entity implements ItemHolder {
             // Should not happen
             assert false;
         }
+        InvariantSampler.sample(this);
+        InvariantSampler.sample(recipient);
+        Metrics.record(MetricsRecorder.Operation.TRANSFER, start);
     }
 
     /**
@@ -0,0 +1,400 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class of entity actors, wrapping a single entity behind a mailbox of commands.
+ *
+ * Commands are enqueued on a lock-free multi-producer, single-consumer mailbox and are executed one after another
+ * on an executor, so that at most one thread acts on the entity at any given time without locking it.
+ *
+ * Commands that involve the entity of a second actor (hit, transferItemAtAnchorTo) are enqueued on the actor that was
+ * created first. Once that actor reaches the command, it suspends itself and forwards the command to the mailbox of
+ * the other actor, which executes it and resumes the first one. Both entities are then only acted on by the thread
+ * executing the command, no thread ever blocks waiting for another actor, and as a command is always forwarded from
+ * an older to a newer actor, no two actors can wait for each other.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each actor references an effective entity
+ *          | getEntity() != null
+ * @invar   Each actor references an effective executor
+ *          | getExecutor() != null
+ *
+ * @note    An entity must have at most one actor, and must only be mutated through it while it has one.
+ */
+public class EntityActor {
+
+    /**
+     * Initializes this actor for the given entity, processing its commands on the given executor
+     *
+     * @param   entity
+     *          The entity of the new actor
+     * @param   executor
+     *          The executor on which commands of the new actor are processed
+     *
+     * @post    The entity of this new actor is set to the given entity
+     *          | new.getEntity() == entity
+     * @post    The executor of this new actor is set to the given executor
+     *          | new.getExecutor() == executor
+     * @throws  IllegalArgumentException
+     *          The given entity is not effective
+     *          | entity == null
+     * @throws  IllegalArgumentException
+     *          The given executor is not effective
+     *          | executor == null
+     */
+    public EntityActor(Entity entity, Executor executor) throws IllegalArgumentException {
+        if(entity == null) throw new IllegalArgumentException("The given entity is not effective");
+        if(executor == null) throw new IllegalArgumentException("The given executor is not effective");
+        this.entity = entity;
+        this.executor = executor;
+        this.order = nbActors.getAndIncrement();
+    }
+
+    /**
+     * Initializes this actor for the given entity, processing its commands on the default executor
+     *
+     * @param   entity
+     *          The entity of the new actor
+     *
+     * @effect  Initializes this actor with the given entity and the default executor
+     *          | this(entity, getDefaultExecutor())
+     */
+    public EntityActor(Entity entity) throws IllegalArgumentException {
+        this(entity, getDefaultExecutor());
+    }
+
+    /*
+        Entity
+     */
+
+    /**
+     * Variable referencing the entity of this actor
+     */
+    private final Entity entity;
+
+    /**
+     * Returns the entity of this actor
+     */
+    @Basic @Immutable
+    public Entity getEntity() {
+        return entity;
+    }
+
+    /*
+        Executor
+     */
+
+    /**
+     * Variable referencing the executor on which the commands of this actor are processed
+     */
+    private final Executor executor;
+
+    /**
+     * Returns the executor on which the commands of this actor are processed
+     */
+    @Basic @Immutable
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Variable referencing the executor shared by all actors that were not given an executor
+     */
+    private static volatile ExecutorService defaultExecutor = null;
+
+    /**
+     * Returns the executor that is shared by all actors that were not given an executor.
+     *
+     * @return  A pool of daemon threads with as many threads as there are available processors
+     */
+    public static ExecutorService getDefaultExecutor() {
+        if(defaultExecutor == null) {
+            synchronized (EntityActor.class) {
+                if(defaultExecutor == null) {
+                    defaultExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                            runnable -> {
+                                Thread thread = new Thread(runnable, "entity-actor");
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+
+    /*
+        Order
+     */
+
+    /**
+     * Variable referencing the number of actors created so far
+     */
+    private static final AtomicLong nbActors = new AtomicLong(0);
+
+    /**
+     * Variable referencing the number of actors created before this actor, commands involving two actors are
+     * forwarded from the actor with the lowest order to the other one
+     */
+    private final long order;
+
+    /*
+        Mailbox
+     */
+
+    /**
+     * Interface for commands that can be executed on the entity of an actor
+     */
+    @FunctionalInterface
+    private interface Command {
+        void execute() throws Exception;
+    }
+
+    /**
+     * Variable referencing the mailbox of this actor
+     *
+     * @invar   mailbox references an effective queue
+     *          | mailbox != null
+     */
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Variable referencing the number of commands that are enqueued but not yet processed
+     */
+    private final AtomicInteger nbPendingCommands = new AtomicInteger(0);
+
+    /**
+     * Variable referencing whether this actor is scheduled on (or running on) its executor
+     */
+    private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+
+    /**
+     * Variable referencing the command to forward to another actor once this actor stopped processing its mailbox,
+     * only accessed by the thread processing the mailbox
+     */
+    private Runnable forward = null;
+
+    /**
+     * Variable referencing the actor to forward the command to, only accessed by the thread processing the mailbox
+     */
+    private EntityActor forwardTo = null;
+
+    /**
+     * Variable referencing the maximal number of commands that are processed before yielding the executor thread
+     */
+    private static final int batchSize = 64;
+
+    /**
+     * Returns the number of commands that are enqueued but not yet processed
+     */
+    public int getNbPendingCommands() {
+        return nbPendingCommands.get();
+    }
+
+    /**
+     * Enqueues the given command and schedules this actor if it isn't scheduled yet
+     *
+     * @param   command
+     *          The command to enqueue
+     * @return  A future that is completed once the given command is executed, exceptionally if the command threw an
+     *          exception or an error
+     */
+    private CompletableFuture<Void> enqueue(Command command) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        post(() -> {
+            try {
+                command.execute();
+                result.complete(null);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Enqueues the given command, which involves the entity of the given actor as well, so that neither actor
+     * processes another command while it is executed
+     *
+     * @param   other
+     *          The actor of the other entity involved in the given command
+     * @param   command
+     *          The command to enqueue
+     * @return  A future that is completed once the given command is executed, exceptionally if the command threw an
+     *          exception or an error
+     */
+    private CompletableFuture<Void> enqueueWith(EntityActor other, Command command) {
+        if(other == this) return enqueue(command);
+        EntityActor first = order < other.order ? this : other;
+        EntityActor second = first == this ? other : this;
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        first.post(() -> {
+            first.forwardTo = second;
+            first.forward = () -> {
+                try {
+                    command.execute();
+                    result.complete(null);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    first.resume();
+                }
+            };
+        });
+        return result;
+    }
+
+    /**
+     * Adds the given command to the mailbox and schedules this actor if it isn't scheduled yet
+     */
+    private void post(Runnable command) {
+        nbPendingCommands.incrementAndGet();
+        mailbox.add(command);
+        schedule();
+    }
+
+    /**
+     * Resumes processing the mailbox of this actor after the command it forwarded was executed
+     */
+    private void resume() {
+        isScheduled.set(false);
+        schedule();
+    }
+
+    /**
+     * Submits this actor to its executor if it is not scheduled yet and there are commands pending
+     */
+    private void schedule() {
+        if(!mailbox.isEmpty() && isScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::processMailbox);
+            } catch (RejectedExecutionException e) {
+                isScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Processes a batch of commands of the mailbox of this actor and reschedules if commands remain
+     */
+    private void processMailbox() {
+        try {
+            Runnable command;
+            int processed = 0;
+            while(forward == null && processed < batchSize && (command = mailbox.poll()) != null) {
+                nbPendingCommands.decrementAndGet();
+                command.run();
+                processed++;
+            }
+        } finally {
+            if(forward != null) {
+                // This actor stays scheduled, so it stays suspended until the forwarded command resumes it
+                Runnable command = forward;
+                EntityActor target = forwardTo;
+                forward = null;
+                forwardTo = null;
+                target.post(command);
+            } else {
+                isScheduled.set(false);
+                schedule();
+            }
+        }
+    }
+
+    /*
+        Commands
+     */
+
+    /**
+     * Enqueues picking up the given item
+     *
+     * @param   item
+     *          The item to pick up
+     * @effect  The entity of this actor picks up the given item once the command is processed
+     *          | getEntity().pickup(item)
+     */
+    public CompletableFuture<Void> pickup(Item item) {
+        return enqueue(() -> entity.pickup(item));
+    }
+
+    /**
+     * Enqueues dropping the given item
+     *
+     * @param   item
+     *          The item to drop
+     * @effect  The entity of this actor drops the given item once the command is processed
+     *          | getEntity().drop(item)
+     */
+    public CompletableFuture<Void> drop(Item item) {
+        return enqueue(() -> entity.drop(item));
+    }
+
+    /**
+     * Enqueues hitting the entity of the given actor
+     *
+     * @param   opponent
+     *          The actor of the opponent to hit
+     * @effect  The entity of this actor hits the entity of the given actor once the command is processed by both
+     *          actors
+     *          | getEntity().hit(opponent.getEntity())
+     * @throws  IllegalArgumentException
+     *          The given actor is not effective
+     *          | opponent == null
+     * @note    The returned future completes exceptionally with an IllegalArgumentException if the entity of this
+     *          actor is a Hero and the entity of the given actor is not a Monster
+     */
+    public CompletableFuture<Void> hit(EntityActor opponent) throws IllegalArgumentException {
+        if(opponent == null) throw new IllegalArgumentException("The given actor is not effective");
+        return enqueueWith(opponent, () -> {
+            if(entity instanceof Hero && !(opponent.entity instanceof Monster))
+                throw new IllegalArgumentException("A hero can only hit monsters");
+            entity.hit(opponent.entity);
+        });
+    }
+
+    /**
+     * Enqueues healing the entity of this actor
+     *
+     * @effect  The entity of this actor heals once the command is processed
+     *          | ((Hero) getEntity()).heal()
+     * @note    The returned future completes exceptionally with an IllegalArgumentException if the entity of this
+     *          actor is not a Hero
+     */
+    public CompletableFuture<Void> heal() {
+        return enqueue(() -> {
+            if(!(entity instanceof Hero)) throw new IllegalArgumentException(entity + " cannot heal");
+            ((Hero) entity).heal();
+        });
+    }
+
+    /**
+     * Enqueues transferring the item at the given anchor to the given anchor of the entity of the given actor
+     *
+     * @param   recipient
+     *          The actor of the recipient of the item
+     * @param   anchorFrom
+     *          The anchor of the entity of this actor where the item is located
+     * @param   anchorTo
+     *          The anchor of the recipient where to add the item
+     * @effect  The item is transferred once the command is processed by both actors
+     *          | getEntity().transferItemAtAnchorTo(recipient.getEntity(), anchorFrom, anchorTo)
+     * @throws  IllegalArgumentException
+     *          The given actor is not effective
+     *          | recipient == null
+     */
+    public CompletableFuture<Void> transferItemAtAnchorTo(EntityActor recipient, Anchorpoint anchorFrom,
+                                                          Anchorpoint anchorTo) throws IllegalArgumentException {
+        if(recipient == null) throw new IllegalArgumentException("The given actor is not effective");
+        return enqueueWith(recipient, () -> entity.transferItemAtAnchorTo(recipient.entity, anchorFrom, anchorTo));
+    }
+}
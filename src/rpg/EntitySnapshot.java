@@ -0,0 +1,167 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A class of immutable snapshots of entities and their full inventory
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each snapshot has effective anchors
+ *          | getAnchorPoints() != null
+ */
+public final class EntitySnapshot {
+
+    /**
+     * Initializes this snapshot with the current state of the given entity
+     *
+     * @param   entity
+     *          The entity to take a snapshot of
+     * @param   version
+     *          The version of the given entity the snapshot is taken of
+     *
+     * @post    The name, hit points, maximum hit points and dead state of this snapshot are those of the given entity
+     * @post    Each anchor of the given entity is mapped to a snapshot of the item it holds, or null if it holds
+     *          no item.
+     */
+    EntitySnapshot(Entity entity, long version) {
+        this.version = version;
+        this.name = entity.getName();
+        this.hitPoints = entity.getHitPoints();
+        this.maxHitPoints = entity.getMaxHitPoints();
+        this.isDead = entity.isDead();
+        Map<Anchorpoint, ItemSnapshot> anchors = new EnumMap<>(Anchorpoint.class);
+        for (Anchorpoint anchor: entity.getAnchorPoints()) {
+            Item item = entity.getItemAt(anchor);
+            anchors.put(anchor, item == null ? null : item.getSnapshot());
+        }
+        this.anchors = Collections.unmodifiableMap(anchors);
+    }
+
+    /**
+     * Variable referencing the name of the entity of this snapshot
+     */
+    private final String name;
+
+    /**
+     * Returns the name of the entity of this snapshot
+     */
+    @Basic @Immutable
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Variable referencing the hit points of the entity of this snapshot
+     */
+    private final int hitPoints;
+
+    /**
+     * Returns the hit points of the entity of this snapshot
+     */
+    @Basic @Immutable
+    public int getHitPoints() {
+        return hitPoints;
+    }
+
+    /**
+     * Variable referencing the maximum hit points of the entity of this snapshot
+     */
+    private final int maxHitPoints;
+
+    /**
+     * Returns the maximum hit points of the entity of this snapshot
+     */
+    @Basic @Immutable
+    public int getMaxHitPoints() {
+        return maxHitPoints;
+    }
+
+    /**
+     * Variable referencing whether the entity of this snapshot was dead
+     */
+    private final boolean isDead;
+
+    /**
+     * Returns whether the entity of this snapshot was dead
+     */
+    @Basic @Immutable
+    public boolean isDead() {
+        return isDead;
+    }
+
+    /**
+     * Variable referencing the version of the entity of this snapshot, the number of times it changed before this
+     * snapshot was taken
+     */
+    private final long version;
+
+    /**
+     * Returns the version of the entity of this snapshot
+     */
+    @Basic @Immutable
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Variable referencing the snapshots of the items at each anchor of the entity of this snapshot
+     */
+    private final Map<Anchorpoint, ItemSnapshot> anchors;
+
+    /**
+     * Returns the anchors of the entity of this snapshot
+     */
+    @Basic @Immutable
+    public Set<Anchorpoint> getAnchorPoints() {
+        return anchors.keySet();
+    }
+
+    /**
+     * Returns the snapshot of the item at the given anchor
+     *
+     * @param   anchorPoint
+     *          The desired anchor
+     * @return  The snapshot of the item at the given anchor or null if no item was held at the given anchor
+     * @throws  IllegalArgumentException
+     *          The entity of this snapshot has no such anchor
+     *          | !getAnchorPoints().contains(anchorPoint)
+     */
+    public ItemSnapshot getItemAt(Anchorpoint anchorPoint) throws IllegalArgumentException {
+        if(!anchors.containsKey(anchorPoint))
+            throw new IllegalArgumentException(anchorPoint + " does not exist on " + getName());
+        return anchors.get(anchorPoint);
+    }
+
+    /**
+     * Returns the weight of all items held by the entity of this snapshot
+     *
+     * @return  The sum of the weights of all effective item snapshots at the anchors of this snapshot
+     */
+    public double getLoad() {
+        double load = 0.00;
+        for (ItemSnapshot item: anchors.values()) {
+            if(item != null) load += item.getWeight();
+        }
+        return load;
+    }
+
+    /**
+     * Returns the value of all items held by the entity of this snapshot
+     *
+     * @return  The sum of the values of all effective item snapshots at the anchors of this snapshot
+     */
+    public int getValueHeld() {
+        int value = 0;
+        for (ItemSnapshot item: anchors.values()) {
+            if(item != null) value += item.getValue();
+        }
+        return value;
+    }
+}
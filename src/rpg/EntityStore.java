@@ -0,0 +1,317 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A class of entity stores, keeping the most recently used entities in memory and paging the others out to a file
+ *
+ * Every entity added to a store gets a handle. As long as the number of resident entities exceeds the maximum, the
+ * least recently used entity is paged out: its snapshot record, including its full inventory, is appended to the page
+ * file and the store drops its reference to it. Getting a paged out entity reads it back from the page file. An entity
+ * that did not change since it was last paged in is not written again, its previous record is reused.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each store has a strictly positive maximum number of resident entities
+ *          | getMaxResident() > 0
+ * @invar   Each store has at most the maximum number of resident entities
+ *          | getNbResident() <= getMaxResident()
+ *
+ * @note    An entity that is paged in again is a new object, so entities should be referenced by their handle and
+ *          references to them should not be kept across calls to get.
+ * @note    The page file only grows, records of entities that changed or were removed are not reclaimed until the
+ *          store is closed.
+ */
+public class EntityStore implements AutoCloseable {
+
+    /**
+     * Initializes this store with the given page file and maximum number of resident entities
+     *
+     * @param   path
+     *          The path of the page file, its contents are replaced and it is deleted when the store is closed
+     * @param   maxResident
+     *          The maximum number of entities kept in memory
+     * @post    The maximum number of resident entities of this new store is set to the given one
+     *          | new.getMaxResident() == maxResident
+     * @post    This new store has no entities
+     *          | new.getNbEntities() == 0
+     * @throws  IllegalArgumentException
+     *          The given path is not effective or the given maximum is not strictly positive
+     *          | path == null || maxResident <= 0
+     * @throws  IOException
+     *          The page file could not be opened
+     */
+    public EntityStore(Path path, int maxResident) throws IllegalArgumentException, IOException {
+        if(path == null) throw new IllegalArgumentException("The given path is not effective");
+        if(maxResident <= 0) throw new IllegalArgumentException("The maximum number of resident entities must be strictly positive");
+        this.maxResident = maxResident;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE);
+        this.writer = new WorldSnapshotWriter(channel);
+        this.reader = new WorldSnapshotReader(channel);
+    }
+
+    /**
+     * Variable referencing the maximum number of resident entities of this store
+     */
+    private final int maxResident;
+
+    /**
+     * Returns the maximum number of entities this store keeps in memory
+     */
+    @Basic @Immutable
+    public int getMaxResident() {
+        return maxResident;
+    }
+
+    /**
+     * Variable referencing the page file of this store
+     */
+    private final FileChannel channel;
+
+    /**
+     * Variable referencing the writer paging entities out
+     */
+    private final WorldSnapshotWriter writer;
+
+    /**
+     * Variable referencing the reader paging entities in
+     */
+    private final WorldSnapshotReader reader;
+
+    /**
+     * A class of pages, registering where an entity is stored
+     */
+    private static final class Page {
+
+        /**
+         * The entity if it is resident, null otherwise
+         */
+        private Entity entity;
+
+        /**
+         * The snapshot of the entity when it was last written to or read from the page file, null if it was never
+         * written
+         */
+        private EntitySnapshot written;
+
+        /**
+         * The offset of the last record of the entity in the page file, -1 if it was never written
+         */
+        private long offset = -1;
+    }
+
+    /**
+     * Variable referencing the page of every entity by its handle
+     */
+    private final Map<Long, Page> pages = new HashMap<>();
+
+    /**
+     * Variable referencing the handles of the resident entities, from least to most recently used
+     */
+    private final LinkedHashMap<Long, Page> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Variable referencing the next handle to assign
+     */
+    private long nextHandle = 0;
+
+    private long nbPageIns = 0;
+
+    private long nbPageOuts = 0;
+
+    private long nbWrites = 0;
+
+    /**
+     * Returns the number of entities in this store
+     */
+    public synchronized int getNbEntities() {
+        return pages.size();
+    }
+
+    /**
+     * Returns the number of entities this store keeps in memory
+     */
+    public synchronized int getNbResident() {
+        return resident.size();
+    }
+
+    /**
+     * Returns the number of times an entity was read back from the page file
+     */
+    public synchronized long getNbPageIns() {
+        return nbPageIns;
+    }
+
+    /**
+     * Returns the number of times an entity was paged out
+     */
+    public synchronized long getNbPageOuts() {
+        return nbPageOuts;
+    }
+
+    /**
+     * Returns the number of records written to the page file, which is less than the number of page outs if
+     * unchanged entities were paged out
+     */
+    public synchronized long getNbWrites() {
+        return nbWrites;
+    }
+
+    /**
+     * Returns whether this store has an entity with the given handle
+     */
+    public synchronized boolean hasAsHandle(long handle) {
+        return pages.containsKey(handle);
+    }
+
+    /**
+     * Returns whether the entity with the given handle is kept in memory
+     */
+    public synchronized boolean isResident(long handle) {
+        return resident.containsKey(handle);
+    }
+
+    /**
+     * Adds the given entity to this store
+     *
+     * @param   entity
+     *          The entity to add
+     * @return  A new handle referencing the given entity in this store
+     * @effect  The given entity is the most recently used entity of this store, the least recently used entities are
+     *          paged out until the maximum number of resident entities is respected
+     * @throws  IllegalArgumentException
+     *          The given entity is not effective
+     *          | entity == null
+     * @throws  IllegalStateException
+     *          This store is closed
+     * @throws  UncheckedIOException
+     *          An entity could not be paged out
+     */
+    public synchronized long add(Entity entity) throws IllegalArgumentException, IllegalStateException {
+        if(entity == null) throw new IllegalArgumentException("The given entity is not effective");
+        if(!channel.isOpen()) throw new IllegalStateException("This store is closed");
+        long handle = nextHandle++;
+        Page page = new Page();
+        page.entity = entity;
+        pages.put(handle, page);
+        resident.put(handle, page);
+        evict();
+        return handle;
+    }
+
+    /**
+     * Returns the entity with the given handle, reading it back from the page file if it is paged out
+     *
+     * @param   handle
+     *          The handle of the entity
+     * @return  The entity with the given handle, in the state it was in when it was last used
+     * @effect  The entity is the most recently used entity of this store, the least recently used entities are paged
+     *          out until the maximum number of resident entities is respected
+     * @throws  NoSuchElementException
+     *          This store has no entity with the given handle
+     *          | !hasAsHandle(handle)
+     * @throws  IllegalStateException
+     *          This store is closed
+     * @throws  UncheckedIOException
+     *          The entity could not be paged in, or another entity could not be paged out
+     */
+    public synchronized Entity get(long handle) throws NoSuchElementException, IllegalStateException {
+        Page page = pages.get(handle);
+        if(page == null) throw new NoSuchElementException("No entity with handle " + handle);
+        if(!channel.isOpen()) throw new IllegalStateException("This store is closed");
+        if(page.entity == null) {
+            try {
+                channel.position(page.offset);
+                reader.discardBuffered();
+                page.entity = reader.readEntity();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            page.written = page.entity.getInventorySnapshot();
+            nbPageIns++;
+        }
+        resident.put(handle, page);
+        evict();
+        return page.entity;
+    }
+
+    /**
+     * Removes the entity with the given handle from this store
+     *
+     * @param   handle
+     *          The handle of the entity to remove
+     * @post    This store has no entity with the given handle
+     *          | !new.hasAsHandle(handle)
+     */
+    public synchronized void remove(long handle) {
+        pages.remove(handle);
+        resident.remove(handle);
+    }
+
+    /**
+     * Pages out the least recently used entities as long as the maximum number of resident entities is exceeded
+     */
+    private void evict() {
+        Iterator<Map.Entry<Long, Page>> iterator = resident.entrySet().iterator();
+        while(resident.size() > maxResident) {
+            Page page = iterator.next().getValue();
+            EntitySnapshot snapshot = page.entity.getInventorySnapshot();
+            if(snapshot != page.written) {
+                try {
+                    long offset = channel.size();
+                    channel.position(offset);
+                    writer.writeRecord(page.entity);
+                    page.offset = offset;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                nbWrites++;
+            }
+            releaseArmorIds(snapshot);
+            page.entity = null;
+            page.written = null;
+            iterator.remove();
+            nbPageOuts++;
+        }
+    }
+
+    /**
+     * Releases the identifications of the armors held by the entity of the given snapshot, so the armors claim them
+     * again when the entity is paged in
+     */
+    private static void releaseArmorIds(EntitySnapshot snapshot) {
+        for (Anchorpoint anchorpoint: snapshot.getAnchorPoints()) {
+            ItemSnapshot item = snapshot.getItemAt(anchorpoint);
+            if(item != null) releaseArmorIds(item);
+        }
+    }
+
+    /**
+     * Releases the identifications of the armors in the item of the given snapshot, including the item itself
+     */
+    private static void releaseArmorIds(ItemSnapshot item) {
+        if(item.getItemClass() == Armor.class) Armor.releaseId(item.getId());
+        for (long id: item.getStoredIds()) {
+            for (int pos = 0; pos < item.getNbItemsWithId(id); pos++) releaseArmorIds(item.getItemWithIdAtPos(id, pos));
+        }
+    }
+
+    /**
+     * Closes and deletes the page file of this store
+     *
+     * @post    Every entity that is not resident is lost
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,246 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import rpg.exceptions.DeadEntityException;
+
+/**
+ * A class of results of fights between two entities
+ *
+ * A result stores the stats of both combatants when the fight started, the number of rounds it took, which of them won
+ * and with how many hit points, and the value the winner held after collecting the treasures of the loser. Results are
+ * exported column by column with a FightResultWriter and read back with a FightResultReader.
+ *
+ * @author  Corteville Andrew
+ */
+@Immutable
+public final class FightResult {
+
+    /**
+     * An enum of the columns of an exported fight result, in the order they are stored in a row group
+     */
+    public enum Column {
+        SEED(8),
+        ATTACKER_KIND(1),
+        ATTACKER_MAX_HIT_POINTS(4),
+        ATTACKER_HIT_POINTS(4),
+        ATTACKER_PROTECTION(4),
+        ATTACKER_DAMAGE(4),
+        DEFENDER_KIND(1),
+        DEFENDER_MAX_HIT_POINTS(4),
+        DEFENDER_HIT_POINTS(4),
+        DEFENDER_PROTECTION(4),
+        DEFENDER_DAMAGE(4),
+        ROUNDS(4),
+        WINNER(1),
+        WINNER_HIT_POINTS(4),
+        LOOT_VALUE(4);
+
+        /**
+         * Initializes this column with the given width
+         */
+        Column(int width) {
+            this.width = width;
+        }
+
+        /**
+         * Variable referencing the number of bytes a single value of this column takes
+         */
+        private final int width;
+
+        /**
+         * Returns the number of bytes a single value of this column takes
+         */
+        @Basic @Immutable
+        public int getWidth() {
+            return width;
+        }
+    }
+
+    /**
+     * The kind of heroes in the kind columns
+     */
+    public static final byte hero = SnapshotFormat.hero;
+
+    /**
+     * The kind of monsters in the kind columns
+     */
+    public static final byte monster = SnapshotFormat.monster;
+
+    /**
+     * The value of the winner column if the attacker won
+     */
+    public static final byte attackerWon = 0;
+
+    /**
+     * The value of the winner column if the defender won
+     */
+    public static final byte defenderWon = 1;
+
+    /**
+     * Initializes this result with the given values
+     *
+     * @param   seed
+     *          The label identifying the fight, as chosen by the caller
+     * @param   attacker
+     *          The stats of the attacker when the fight started, in the order of the attacker columns
+     * @param   defender
+     *          The stats of the defender when the fight started, in the order of the defender columns
+     * @param   rounds
+     *          The number of rounds the fight took
+     * @param   winner
+     *          Whether the attacker or the defender won
+     * @param   winnerHitPoints
+     *          The hit points the winner had left
+     * @param   lootValue
+     *          The value the winner held after the fight
+     * @throws  IllegalArgumentException
+     *          The given stats are not effective or do not contain 5 values, the given number of rounds is negative
+     *          or the given winner is not attackerWon or defenderWon
+     */
+    public FightResult(long seed, int[] attacker, int[] defender, int rounds, byte winner, int winnerHitPoints,
+                       int lootValue) throws IllegalArgumentException {
+        if(attacker == null || attacker.length != 5 || defender == null || defender.length != 5)
+            throw new IllegalArgumentException("The given stats are not valid");
+        if(rounds < 0) throw new IllegalArgumentException("The number of rounds cannot be negative");
+        if(winner != attackerWon && winner != defenderWon) throw new IllegalArgumentException("The given winner is not valid");
+        this.seed = seed;
+        this.attacker = attacker.clone();
+        this.defender = defender.clone();
+        this.rounds = rounds;
+        this.winner = winner;
+        this.winnerHitPoints = winnerHitPoints;
+        this.lootValue = lootValue;
+    }
+
+    /**
+     * Lets the given attacker fight the given defender until one of them dies and returns the result
+     *
+     * @param   seed
+     *          A label chosen by the caller to identify the fight, for example the seed of the generator that chose
+     *          the combatants
+     * @param   attacker
+     *          The entity that hits first every round
+     * @param   defender
+     *          The entity that hits back every round it survives
+     * @effect  As long as neither entity is dead, the attacker hits the defender and the defender hits back if it
+     *          survives
+     *          | attacker.fight(defender)
+     * @return  The result of the fight, with the stats both entities had before it
+     * @throws  IllegalArgumentException
+     *          The given attacker or defender is not effective or they are the same entity
+     *          | attacker == null || defender == null || attacker == defender
+     * @throws  IllegalArgumentException
+     *          The attacker and defender are both heroes
+     *          | attacker instanceof Hero && defender instanceof Hero
+     * @throws  DeadEntityException
+     *          The given attacker or defender is dead
+     *          | attacker.isDead() || defender.isDead()
+     */
+    public static FightResult fight(long seed, Entity attacker, Entity defender)
+            throws IllegalArgumentException, DeadEntityException {
+        if(attacker == null || defender == null) throw new IllegalArgumentException("The given entities are not effective");
+        if(attacker == defender) throw new IllegalArgumentException("An entity cannot fight itself");
+        if(attacker instanceof Hero && defender instanceof Hero)
+            throw new IllegalArgumentException("Heroes can only fight monsters");
+        if(attacker.isDead()) throw new DeadEntityException(attacker);
+        if(defender.isDead()) throw new DeadEntityException(defender);
+        int[] attackerStats = getStats(attacker);
+        int[] defenderStats = getStats(defender);
+        int rounds = attacker.fightRounds(defender);
+        Entity winner = attacker.isDead() ? defender : attacker;
+        return new FightResult(seed, attackerStats, defenderStats, rounds,
+                winner == attacker ? attackerWon : defenderWon, winner.getHitPoints(), winner.getValueHeld());
+    }
+
+    /**
+     * Returns the kind, maximum hit points, hit points, protection and damage of the given entity
+     */
+    private static int[] getStats(Entity entity) {
+        return new int[]{entity instanceof Hero ? hero : monster, entity.getMaxHitPoints(), entity.getHitPoints(),
+                entity.getProtection(), entity.getDamage()};
+    }
+
+    private final long seed;
+
+    /**
+     * Returns the label identifying the fight, as chosen by the caller
+     */
+    @Basic @Immutable
+    public long getSeed() {
+        return seed;
+    }
+
+    private final int[] attacker;
+
+    private final int[] defender;
+
+    private final int rounds;
+
+    /**
+     * Returns the number of rounds the fight took
+     */
+    @Basic @Immutable
+    public int getRounds() {
+        return rounds;
+    }
+
+    private final byte winner;
+
+    /**
+     * Returns attackerWon if the attacker won the fight, defenderWon otherwise
+     */
+    @Basic @Immutable
+    public byte getWinner() {
+        return winner;
+    }
+
+    private final int winnerHitPoints;
+
+    /**
+     * Returns the hit points the winner had left after the fight
+     */
+    @Basic @Immutable
+    public int getWinnerHitPoints() {
+        return winnerHitPoints;
+    }
+
+    private final int lootValue;
+
+    /**
+     * Returns the value the winner held after the fight
+     */
+    @Basic @Immutable
+    public int getLootValue() {
+        return lootValue;
+    }
+
+    /**
+     * Returns the value of this result in the given column, widened to a long
+     *
+     * @param   column
+     *          The column to return the value of
+     * @throws  IllegalArgumentException
+     *          The given column is not effective
+     *          | column == null
+     */
+    public long get(Column column) throws IllegalArgumentException {
+        if(column == null) throw new IllegalArgumentException("The given column is not effective");
+        switch (column) {
+            case SEED: return seed;
+            case ROUNDS: return rounds;
+            case WINNER: return winner;
+            case WINNER_HIT_POINTS: return winnerHitPoints;
+            case LOOT_VALUE: return lootValue;
+            default:
+                int ordinal = column.ordinal() - Column.ATTACKER_KIND.ordinal();
+                return ordinal < 5 ? attacker[ordinal] : defender[ordinal - 5];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Fight %d: %s won after %d rounds with %d hit points and %d ducats worth of loot", seed,
+                winner == attackerWon ? "attacker" : "defender", rounds, winnerHitPoints, lootValue);
+    }
+}
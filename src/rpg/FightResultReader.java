@@ -0,0 +1,184 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class of readers of columnar fight result files
+ *
+ * The footer of the file is read when the reader is opened. Columns are read one row group at a time and only the
+ * bytes of the requested column are read, see FightResultWriter for the layout.
+ *
+ * @author  Corteville Andrew
+ */
+public class FightResultReader implements AutoCloseable {
+
+    /**
+     * Initializes this reader for the fight result file at the given path
+     *
+     * @param   path
+     *          The path of the file to read
+     * @throws  IllegalArgumentException
+     *          The given path is not effective
+     *          | path == null
+     * @throws  IOException
+     *          The file could not be read, or is not a fight result file of the current version
+     */
+    public FightResultReader(Path path) throws IllegalArgumentException, IOException {
+        if(path == null) throw new IllegalArgumentException("The given path is not effective");
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, FightResultWriter.headerSize);
+            if(header.getInt() != FightResultWriter.magic) throw new IOException(path + " is not a fight result file");
+            if(header.getShort() != FightResultWriter.version) throw new IOException("Unsupported fight result version");
+            int nbColumns = header.getShort();
+            if(nbColumns != FightResult.Column.values().length) throw new IOException("Unexpected number of columns");
+            ByteBuffer trailer = read(channel.size() - FightResultWriter.trailerSize, FightResultWriter.trailerSize);
+            long footerOffset = trailer.getLong();
+            if(trailer.getInt() != FightResultWriter.magic) throw new IOException(path + " is truncated");
+            ByteBuffer footer = read(footerOffset, (int) (channel.size() - FightResultWriter.trailerSize - footerOffset));
+            int nbRowGroups = footer.getInt();
+            this.rowGroupSizes = new int[nbRowGroups];
+            this.offsets = new long[nbRowGroups][nbColumns];
+            long nbRows = 0;
+            for (int i = 0; i < nbRowGroups; i++) {
+                rowGroupSizes[i] = footer.getInt();
+                nbRows += rowGroupSizes[i];
+                for (int j = 0; j < nbColumns; j++) offsets[i][j] = footer.getLong();
+            }
+            this.nbRows = nbRows;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Variable referencing the channel of this reader
+     */
+    private final FileChannel channel;
+
+    /**
+     * Variable referencing the number of rows of every row group
+     */
+    private final int[] rowGroupSizes;
+
+    /**
+     * Variable referencing the offset of every column of every row group
+     */
+    private final long[][] offsets;
+
+    /**
+     * Variable referencing the total number of rows in the file
+     */
+    private final long nbRows;
+
+    /**
+     * Returns the number of rows in the file of this reader
+     */
+    @Basic
+    public long getNbRows() {
+        return nbRows;
+    }
+
+    /**
+     * Returns the number of row groups in the file of this reader
+     */
+    public int getNbRowGroups() {
+        return rowGroupSizes.length;
+    }
+
+    /**
+     * Returns the number of rows in the given row group
+     *
+     * @throws  IndexOutOfBoundsException
+     *          The given row group does not exist
+     *          | rowGroup < 0 || rowGroup >= getNbRowGroups()
+     */
+    public int getNbRowsIn(int rowGroup) throws IndexOutOfBoundsException {
+        return rowGroupSizes[rowGroup];
+    }
+
+    /**
+     * Reads the values of the given column in the given row group, widened to longs
+     *
+     * @param   column
+     *          The column to read
+     * @param   rowGroup
+     *          The row group to read the column of
+     * @return  The values of the given column of every row in the given row group, in order
+     * @throws  IllegalArgumentException
+     *          The given column is not effective
+     *          | column == null
+     * @throws  IndexOutOfBoundsException
+     *          The given row group does not exist
+     *          | rowGroup < 0 || rowGroup >= getNbRowGroups()
+     * @throws  IOException
+     *          The column could not be read
+     */
+    public long[] readColumn(FightResult.Column column, int rowGroup)
+            throws IllegalArgumentException, IndexOutOfBoundsException, IOException {
+        if(column == null) throw new IllegalArgumentException("The given column is not effective");
+        int size = rowGroupSizes[rowGroup];
+        ByteBuffer buffer = read(offsets[rowGroup][column.ordinal()], size * column.getWidth());
+        long[] result = new long[size];
+        switch (column.getWidth()) {
+            case 1: for (int i = 0; i < size; i++) result[i] = buffer.get(); break;
+            case 4: for (int i = 0; i < size; i++) result[i] = buffer.getInt(); break;
+            default: for (int i = 0; i < size; i++) result[i] = buffer.getLong();
+        }
+        return result;
+    }
+
+    /**
+     * Reads the values of the given column in every row group, widened to longs
+     *
+     * @param   column
+     *          The column to read
+     * @return  The values of the given column of every row, in order
+     * @throws  IllegalArgumentException
+     *          The given column is not effective
+     *          | column == null
+     * @throws  IllegalStateException
+     *          The file has too many rows to read a column into a single array
+     * @throws  IOException
+     *          The column could not be read
+     */
+    public long[] readColumn(FightResult.Column column)
+            throws IllegalArgumentException, IllegalStateException, IOException {
+        if(nbRows > Integer.MAX_VALUE - 8) throw new IllegalStateException("Read the column per row group instead");
+        long[] result = new long[(int) nbRows];
+        int position = 0;
+        for (int i = 0; i < rowGroupSizes.length; i++) {
+            long[] values = readColumn(column, i);
+            System.arraycopy(values, 0, result, position, values.length);
+            position += values.length;
+        }
+        return result;
+    }
+
+    /**
+     * Reads the given number of bytes starting at the given offset into a new buffer
+     */
+    private ByteBuffer read(long offset, int length) throws IOException {
+        if(offset < 0 || length < 0 || offset + length > channel.size()) throw new IOException("Corrupt fight result file");
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, offset + buffer.position()) < 0) throw new IOException("Unexpected end of file");
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Closes the file of this reader
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
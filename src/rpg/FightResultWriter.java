@@ -0,0 +1,247 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class of writers exporting fight results to a columnar file
+ *
+ * Results are buffered column by column and written in row groups: a row group stores all values of the first column,
+ * then all values of the second column and so on. The file ends with a footer storing the number of rows and the
+ * offset of every column of every row group, so a reader can read a single column without touching the others.
+ *
+ * A file starts with a header (magic number, version, number of columns). The footer consists of the number of row
+ * groups, then for each row group its number of rows and the offset of each of its columns, and ends with the offset
+ * of the footer and the magic number.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each writer has a strictly positive row group size
+ *          | getRowGroupSize() > 0
+ */
+public class FightResultWriter implements AutoCloseable {
+
+    /**
+     * The magic number every fight result file starts and ends with ("RPGF")
+     */
+    static final int magic = 0x52504746;
+
+    /**
+     * The current version of the fight result format
+     */
+    static final short version = 1;
+
+    /**
+     * The number of bytes of the header of a fight result file
+     */
+    static final int headerSize = 8;
+
+    /**
+     * The number of bytes of the trailer ending the footer of a fight result file
+     */
+    static final int trailerSize = 12;
+
+    /**
+     * Initializes this writer for the file at the given path with the given row group size
+     *
+     * @param   path
+     *          The path of the file to write to, its contents are replaced
+     * @param   rowGroupSize
+     *          The number of rows after which the buffered rows are written as a row group
+     * @post    The row group size of this new writer is set to the given one
+     *          | new.getRowGroupSize() == rowGroupSize
+     * @post    No rows are written yet
+     *          | new.getNbRows() == 0
+     * @throws  IllegalArgumentException
+     *          The given path is not effective or the given row group size is not strictly positive
+     *          | path == null || rowGroupSize <= 0
+     * @throws  IOException
+     *          The file could not be opened
+     */
+    public FightResultWriter(Path path, int rowGroupSize) throws IllegalArgumentException, IOException {
+        if(path == null) throw new IllegalArgumentException("The given path is not effective");
+        if(rowGroupSize <= 0) throw new IllegalArgumentException("The row group size must be strictly positive");
+        this.rowGroupSize = rowGroupSize;
+        int rowSize = 0;
+        for (FightResult.Column column: FightResult.Column.values()) rowSize += column.getWidth();
+        this.buffer = ByteBuffer.allocateDirect(Math.max(rowGroupSize * rowSize, SnapshotFormat.bufferSize));
+        this.columns = new long[FightResult.Column.values().length][rowGroupSize];
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(magic).putShort(version).putShort((short) columns.length);
+        flushBuffer();
+    }
+
+    /**
+     * Initializes this writer for the file at the given path with the default row group size
+     *
+     * @effect  | this(path, getDefaultRowGroupSize())
+     */
+    public FightResultWriter(Path path) throws IllegalArgumentException, IOException {
+        this(path, getDefaultRowGroupSize());
+    }
+
+    /**
+     * Returns the default number of rows in a row group
+     */
+    @Immutable
+    public static int getDefaultRowGroupSize() {
+        return 1 << 16;
+    }
+
+    /**
+     * Variable referencing the number of rows in a row group of this writer
+     */
+    private final int rowGroupSize;
+
+    /**
+     * Returns the number of rows after which the buffered rows are written as a row group
+     */
+    @Basic @Immutable
+    public int getRowGroupSize() {
+        return rowGroupSize;
+    }
+
+    /**
+     * Variable referencing the channel of this writer
+     */
+    private final FileChannel channel;
+
+    /**
+     * Variable referencing the buffer a row group is encoded in
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Variable referencing the buffered values of the row group being built, one array per column
+     */
+    private final long[][] columns;
+
+    /**
+     * Variable referencing the number of rows buffered in the row group being built
+     */
+    private int nbBuffered = 0;
+
+    /**
+     * Variable referencing the number of rows of every row group that is written
+     */
+    private final List<Integer> rowGroupSizes = new ArrayList<>();
+
+    /**
+     * Variable referencing the offsets of the columns of every row group that is written
+     */
+    private final List<long[]> rowGroupOffsets = new ArrayList<>();
+
+    /**
+     * Variable referencing the number of bytes written to the file
+     */
+    private long position = 0;
+
+    /**
+     * Variable referencing the number of rows written or buffered
+     */
+    private long nbRows = 0;
+
+    /**
+     * Returns the number of rows written to this writer
+     */
+    @Basic
+    public long getNbRows() {
+        return nbRows;
+    }
+
+    /**
+     * Variable referencing whether this writer is closed
+     */
+    private boolean isClosed = false;
+
+    /**
+     * Appends the given result as a row
+     *
+     * @param   result
+     *          The result to append
+     * @effect  If the row group being built is full, it is written to the file
+     * @post    | new.getNbRows() == getNbRows() + 1
+     * @throws  IllegalArgumentException
+     *          The given result is not effective
+     *          | result == null
+     * @throws  IllegalStateException
+     *          This writer is closed
+     * @throws  IOException
+     *          A row group could not be written
+     */
+    public void write(FightResult result) throws IllegalArgumentException, IllegalStateException, IOException {
+        if(result == null) throw new IllegalArgumentException("The given result is not effective");
+        if(isClosed) throw new IllegalStateException("This writer is closed");
+        for (FightResult.Column column: FightResult.Column.values()) {
+            columns[column.ordinal()][nbBuffered] = result.get(column);
+        }
+        nbBuffered++;
+        nbRows++;
+        if(nbBuffered == rowGroupSize) writeRowGroup();
+    }
+
+    /**
+     * Writes the buffered rows as a row group
+     */
+    private void writeRowGroup() throws IOException {
+        long[] offsets = new long[columns.length];
+        for (FightResult.Column column: FightResult.Column.values()) {
+            offsets[column.ordinal()] = position + buffer.position();
+            long[] values = columns[column.ordinal()];
+            switch (column.getWidth()) {
+                case 1: for (int i = 0; i < nbBuffered; i++) buffer.put((byte) values[i]); break;
+                case 4: for (int i = 0; i < nbBuffered; i++) buffer.putInt((int) values[i]); break;
+                default: for (int i = 0; i < nbBuffered; i++) buffer.putLong(values[i]);
+            }
+        }
+        flushBuffer();
+        rowGroupSizes.add(nbBuffered);
+        rowGroupOffsets.add(offsets);
+        nbBuffered = 0;
+    }
+
+    /**
+     * Writes the contents of the buffer to the channel and clears it
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) position += channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes the remaining rows and the footer and closes the file
+     *
+     * @effect  The buffered rows are written as a last row group, followed by the footer
+     */
+    @Override
+    public void close() throws IOException {
+        if(isClosed) return;
+        isClosed = true;
+        try {
+            if(nbBuffered > 0) writeRowGroup();
+            long footer = position;
+            buffer.putInt(rowGroupSizes.size());
+            for (int i = 0; i < rowGroupSizes.size(); i++) {
+                if(buffer.remaining() < 4 + 8 * columns.length) flushBuffer();
+                buffer.putInt(rowGroupSizes.get(i));
+                for (long offset: rowGroupOffsets.get(i)) buffer.putLong(offset);
+            }
+            if(buffer.remaining() < trailerSize) flushBuffer();
+            buffer.putLong(footer).putInt(magic);
+            flushBuffer();
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+}
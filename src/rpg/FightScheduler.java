@@ -0,0 +1,231 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import rpg.exceptions.DeadEntityException;
+
+import java.util.*;
+
+/**
+ * A class of fight schedulers, executing the exchanges of blows of a single tick in parallel
+ *
+ * Exchanges are scheduled during a tick and partitioned into rounds when the tick is run. No entity takes part in two
+ * exchanges of the same round, so the exchanges of a round are executed in parallel without locking. An exchange is
+ * assigned to the first round after the last round of both of its entities, so each entity takes part in its exchanges
+ * in the order they were scheduled.
+ *
+ * @author  Corteville Andrew
+ */
+public class FightScheduler {
+
+    /**
+     * Initializes this scheduler without scheduled exchanges
+     *
+     * @post    No exchanges are scheduled
+     *          | new.getNbScheduledExchanges() == 0
+     */
+    public FightScheduler() {
+    }
+
+    /**
+     * Variable referencing the exchanges that are scheduled for the next tick, in order
+     */
+    private final List<Entity[]> exchanges = new ArrayList<>();
+
+    /**
+     * Returns the number of exchanges scheduled for the next tick
+     */
+    public int getNbScheduledExchanges() {
+        return exchanges.size();
+    }
+
+    /**
+     * Schedules an exchange of blows between the given attacker and defender for the next tick
+     *
+     * @param   attacker
+     *          The entity that hits first
+     * @param   defender
+     *          The entity that hits back if it survives
+     *
+     * @post    The exchange is scheduled after all previously scheduled exchanges
+     *          | new.getNbScheduledExchanges() == getNbScheduledExchanges() + 1
+     * @throws  IllegalArgumentException
+     *          The given attacker or defender is not effective
+     *          | attacker == null || defender == null
+     * @throws  IllegalArgumentException
+     *          The given attacker and defender are the same entity
+     *          | attacker == defender
+     * @throws  IllegalArgumentException
+     *          The attacker and defender are both heroes
+     *          | attacker instanceof Hero && defender instanceof Hero
+     */
+    public void schedule(Entity attacker, Entity defender) throws IllegalArgumentException {
+        if(attacker == null || defender == null) throw new IllegalArgumentException("The given entities are not effective");
+        if(attacker == defender) throw new IllegalArgumentException("An entity cannot fight itself");
+        if(attacker instanceof Hero && defender instanceof Hero)
+            throw new IllegalArgumentException("Heroes can only fight monsters");
+        exchanges.add(new Entity[]{attacker, defender});
+    }
+
+    /**
+     * Partitions the given exchanges into rounds in which no entity takes part in more than one exchange
+     *
+     * @param   exchanges
+     *          The exchanges to partition, in order
+     * @return  A list of rounds such that every exchange is part of exactly one round, no entity is part of two
+     *          exchanges of the same round and the exchanges of each entity appear in rounds in the given order
+     */
+    private static List<List<Entity[]>> partition(List<Entity[]> exchanges) {
+        List<List<Entity[]>> rounds = new ArrayList<>();
+        Map<Entity, Integer> lastRounds = new IdentityHashMap<>();
+        for (Entity[] exchange: exchanges) {
+            int round = 1 + Math.max(lastRounds.getOrDefault(exchange[0], -1), lastRounds.getOrDefault(exchange[1], -1));
+            if(round == rounds.size()) rounds.add(new ArrayList<>());
+            rounds.get(round).add(exchange);
+            lastRounds.put(exchange[0], round);
+            lastRounds.put(exchange[1], round);
+        }
+        return rounds;
+    }
+
+    /**
+     * Executes a single exchange of blows
+     *
+     * @param   exchange
+     *          The attacker and defender of the exchange
+     * @return  True if and only if the exchange took place, meaning neither entity was dead when it started
+     */
+    private static boolean execute(Entity[] exchange) {
+        Entity attacker = exchange[0];
+        Entity defender = exchange[1];
+        if(attacker.isDead() || defender.isDead()) return false;
+        try {
+            attacker.hit(defender);
+            if(!defender.isDead()) defender.hit(attacker);
+        } catch (DeadEntityException e) {
+            return false;
+        } catch (Exception e) {
+            // Should not happen
+            assert false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs all exchanges scheduled for this tick
+     *
+     * @effect  The scheduled exchanges are executed round by round, the exchanges of a round in parallel. Exchanges
+     *          of which an entity is dead when the exchange starts are skipped.
+     * @effect  Every entity that took part in this tick stops fighting
+     *          | for each entity in participants:
+     *          |   entity.stopFighting()
+     * @post    No exchanges are scheduled anymore
+     *          | new.getNbScheduledExchanges() == 0
+     * @return  A report of this tick
+     */
+    public TickReport runTick() {
+        long start = System.nanoTime();
+        List<List<Entity[]>> rounds = partition(exchanges);
+        int nbExecuted = 0;
+        int maxRoundSize = 0;
+        for (List<Entity[]> round: rounds) {
+            maxRoundSize = Math.max(maxRoundSize, round.size());
+            nbExecuted += (int) round.parallelStream().filter(FightScheduler::execute).count();
+        }
+        Set<Entity> participants = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Entity[] exchange: exchanges) {
+            participants.add(exchange[0]);
+            participants.add(exchange[1]);
+        }
+        for (Entity participant: participants) {
+            if(participant.isFighting()) participant.stopFighting();
+        }
+        TickReport report = new TickReport(exchanges.size(), nbExecuted, rounds.size(), maxRoundSize,
+                System.nanoTime() - start);
+        exchanges.clear();
+        return report;
+    }
+
+    /**
+     * A class of reports about a single tick of a fight scheduler
+     */
+    public static final class TickReport {
+
+        private TickReport(int nbExchanges, int nbExecuted, int nbRounds, int maxRoundSize, long durationNanos) {
+            this.nbExchanges = nbExchanges;
+            this.nbExecuted = nbExecuted;
+            this.nbRounds = nbRounds;
+            this.maxRoundSize = maxRoundSize;
+            this.durationNanos = durationNanos;
+        }
+
+        private final int nbExchanges;
+
+        /**
+         * Returns the number of exchanges that were scheduled for the tick
+         */
+        @Basic @Immutable
+        public int getNbExchanges() {
+            return nbExchanges;
+        }
+
+        private final int nbExecuted;
+
+        /**
+         * Returns the number of exchanges that took place, the others were skipped because an entity was dead
+         */
+        @Basic @Immutable
+        public int getNbExecuted() {
+            return nbExecuted;
+        }
+
+        private final int nbRounds;
+
+        /**
+         * Returns the number of conflict-free rounds the exchanges were partitioned in
+         */
+        @Basic @Immutable
+        public int getNbRounds() {
+            return nbRounds;
+        }
+
+        private final int maxRoundSize;
+
+        /**
+         * Returns the number of exchanges in the largest round
+         */
+        @Basic @Immutable
+        public int getMaxRoundSize() {
+            return maxRoundSize;
+        }
+
+        /**
+         * Returns the average number of exchanges that could be executed in parallel
+         *
+         * @return  The number of exchanges divided by the number of rounds, or 0 if there were no exchanges
+         *          | if(getNbRounds() == 0)
+         *          | then result == 0
+         *          | else result == getNbExchanges() / getNbRounds()
+         */
+        public double getParallelism() {
+            return nbRounds == 0 ? 0 : (double) nbExchanges / nbRounds;
+        }
+
+        private final long durationNanos;
+
+        /**
+         * Returns the time it took to run the tick in nanoseconds
+         */
+        @Basic @Immutable
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d exchanges in %d rounds (parallelism %.2f, max %d) in %.3f ms",
+                    getNbExecuted(), getNbExchanges(), getNbRounds(), getParallelism(), getMaxRoundSize(),
+                    getDurationNanos() / 1e6);
+        }
+    }
+}
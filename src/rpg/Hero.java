@@ -91,6 +91,53 @@ public class Hero extends Entity {
         setStrength(strength);
     }
 
+    /**
+     * Initializes this hero with the given name, maximum hit points, actual hit points, strength and anchors, but
+     * without any items
+     *
+     * @param   name
+     *          The name for the new hero
+     * @param   maxHitPoints
+     *          The maximum hit points for the new hero
+     * @param   hitPoints
+     *          The actual hit points of the new hero
+     * @param   strength
+     *          The strength for the new hero
+     * @param   anchors
+     *          The anchors of the new hero
+     *
+     * @effect  Initializes this hero with the given name, maximum hit points, actual hit points and anchors alongside
+     *          the protection of a Hero
+     *          | super(name, maxHitPoints, hitPoints, anchors, baseProtection)
+     * @effect  The strength of this hero is set to the given strength
+     *          | setStrength(strength)
+     */
+    @Raw
+    private Hero(String name, int maxHitPoints, int hitPoints, double strength, Collection<Anchorpoint> anchors)
+            throws IllegalArgumentException {
+        super(name, maxHitPoints, hitPoints, anchors, baseProtection);
+        setStrength(strength);
+    }
+
+    /**
+     * Returns a new hero with the given name, maximum hit points, actual hit points and strength, the default anchors
+     * of a hero and no items, as restored from a snapshot.
+     *
+     * @param   name
+     *          The name of the restored hero
+     * @param   maxHitPoints
+     *          The maximum hit points of the restored hero
+     * @param   hitPoints
+     *          The actual hit points of the restored hero
+     * @param   strength
+     *          The strength of the restored hero
+     * @return  A new hero with the given name, maximum hit points, actual hit points and strength without any items
+     *          | result == new Hero(name, maxHitPoints, hitPoints, strength, defaultAnchors)
+     */
+    static Hero restore(String name, int maxHitPoints, int hitPoints, double strength) throws IllegalArgumentException {
+        return new Hero(name, maxHitPoints, hitPoints, strength, defaultAnchors);
+    }
+
     /**
      * Returns an initialized collection of items
      *
@@ -142,6 +189,7 @@ public class Hero extends Entity {
             this.strength = BigDecimal.valueOf(Math.max(getDefaultStrength(), getLoad()/capacityStrengthFactor))
                     .setScale(strengthPrecision, RoundingMode.HALF_UP).doubleValue();
         }
+        markDirty();
     }
 
     /**
@@ -0,0 +1,143 @@
+package rpg;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class of metrics recorders keeping counters and latency histograms in memory
+ *
+ * Every operation has a striped counter of its number of completions, of its total duration and of the number of
+ * completions in every latency bucket, so recording from many threads does not contend on a single value. Bucket i
+ * counts durations of at least 2^(i-1) and less than 2^i nanoseconds.
+ *
+ * @author  Corteville Andrew
+ */
+public class InMemoryMetrics implements MetricsRecorder {
+
+    /**
+     * The number of latency buckets of every operation
+     */
+    private static final int nbBuckets = 64;
+
+    /**
+     * Initializes this recorder without recorded operations
+     *
+     * @post    | for each operation in Operation.values():
+     *          |   new.getCount(operation) == 0
+     */
+    public InMemoryMetrics() {
+        int nbOperations = Operation.values().length;
+        counts = new LongAdder[nbOperations];
+        totals = new LongAdder[nbOperations];
+        buckets = new LongAdder[nbOperations][nbBuckets];
+        for (int i = 0; i < nbOperations; i++) {
+            counts[i] = new LongAdder();
+            totals[i] = new LongAdder();
+            for (int j = 0; j < nbBuckets; j++) buckets[i][j] = new LongAdder();
+        }
+    }
+
+    private final LongAdder[] counts;
+
+    private final LongAdder[] totals;
+
+    private final LongAdder[][] buckets;
+
+    @Override
+    public void record(Operation operation, long durationNanos) {
+        int index = operation.ordinal();
+        counts[index].increment();
+        totals[index].add(durationNanos);
+        buckets[index][getBucket(durationNanos)].increment();
+    }
+
+    /**
+     * Returns the latency bucket of the given duration
+     */
+    private static int getBucket(long durationNanos) {
+        return durationNanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(durationNanos);
+    }
+
+    /**
+     * Returns the number of times the given operation completed
+     */
+    public long getCount(Operation operation) {
+        return counts[operation.ordinal()].sum();
+    }
+
+    /**
+     * Returns the total time the given operation took, in nanoseconds
+     */
+    public long getTotalNanos(Operation operation) {
+        return totals[operation.ordinal()].sum();
+    }
+
+    /**
+     * Returns an upper bound on the given percentile of the durations of the given operation
+     *
+     * @param   operation
+     *          The operation to return the percentile of
+     * @param   percentile
+     *          The percentile to return, between 0 and 100
+     * @return  The upper bound of the latency bucket containing the given percentile in nanoseconds, or 0 if the given
+     *          operation was not recorded
+     * @throws  IllegalArgumentException
+     *          The given percentile is not between 0 and 100
+     *          | percentile < 0 || percentile > 100
+     */
+    public long getPercentileNanos(Operation operation, double percentile) throws IllegalArgumentException {
+        if(percentile < 0 || percentile > 100) throw new IllegalArgumentException("The percentile must lie between 0 and 100");
+        long[] counts = new long[nbBuckets];
+        long total = 0;
+        for (int i = 0; i < nbBuckets; i++) {
+            counts[i] = buckets[operation.ordinal()][i].sum();
+            total += counts[i];
+        }
+        if(total == 0) return 0;
+        long rank = (long) Math.ceil(percentile / 100 * total);
+        long seen = 0;
+        for (int i = 0; i < nbBuckets; i++) {
+            seen += counts[i];
+            if(seen >= Math.max(1, rank)) return i == 63 ? Long.MAX_VALUE : 1L << i;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Resets every counter and histogram of this recorder
+     *
+     * @post    | for each operation in Operation.values():
+     *          |   new.getCount(operation) == 0
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i].reset();
+            totals[i].reset();
+            for (LongAdder bucket: buckets[i]) bucket.reset();
+        }
+    }
+
+    /**
+     * Returns the counters and histograms of this recorder in a plain text format, one value per line
+     *
+     * @return  For every operation a line with its count and its total duration, followed by a line per non-empty
+     *          latency bucket with its upper bound in nanoseconds and the cumulative count up to that bucket
+     */
+    public String scrape() {
+        StringBuilder result = new StringBuilder();
+        for (Operation operation: Operation.values()) {
+            String name = operation.name().toLowerCase();
+            result.append(String.format("rpg_operation_count{operation=\"%s\"} %d\n", name, getCount(operation)));
+            result.append(String.format("rpg_operation_nanos_total{operation=\"%s\"} %d\n", name,
+                    getTotalNanos(operation)));
+            long cumulative = 0;
+            for (int i = 0; i < nbBuckets; i++) {
+                long count = buckets[operation.ordinal()][i].sum();
+                if(count == 0) continue;
+                cumulative += count;
+                result.append(String.format("rpg_operation_nanos_bucket{operation=\"%s\",le=\"%d\"} %d\n", name,
+                        i == 63 ? Long.MAX_VALUE : 1L << i, cumulative));
+            }
+        }
+        return result.toString();
+    }
+}
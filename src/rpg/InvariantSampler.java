@@ -0,0 +1,181 @@
+package rpg;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A class checking the class invariants of entities and items on a sample of their mutations
+ *
+ * After a sampled pickup, drop, transfer, hit, degrade or repair, the entities and items it mutated are checked with
+ * hasProperAnchors and canHaveAsHitPoints, or hasProperHolder and hasProperContents. Only the mutated objects are
+ * checked, never the rest of the world, so the cost of a check is bounded by the size of a single inventory and the
+ * cost of sampling by the sample rate.
+ *
+ * Every mutation is checked if assertions are enabled, as they are in tests, and none are checked otherwise. A
+ * violation is passed to the installed reporter; if no reporter is installed, it fails an assertion if assertions are
+ * enabled and is only counted otherwise.
+ *
+ * @author  Corteville Andrew
+ */
+public final class InvariantSampler {
+
+    /**
+     * This class cannot be instantiated
+     */
+    private InvariantSampler() {
+    }
+
+    /**
+     * Variable registering whether assertions are enabled for this class
+     */
+    private static final boolean assertionsEnabled;
+
+    static {
+        boolean enabled = false;
+        assert enabled = true;
+        assertionsEnabled = enabled;
+    }
+
+    /**
+     * Variable referencing the number of mutations out of which one is checked, 0 if none are checked
+     */
+    private static volatile int sampleRate = assertionsEnabled ? 1 : 0;
+
+    /**
+     * Returns the number of mutations out of which one is checked on average, 0 if none are checked
+     */
+    public static int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Sets the number of mutations out of which one is checked on average
+     *
+     * @param   sampleRate
+     *          The number of mutations out of which one is checked, 1 to check every mutation and 0 to check none
+     * @post    | getSampleRate() == sampleRate
+     * @throws  IllegalArgumentException
+     *          The given sample rate is negative
+     *          | sampleRate < 0
+     */
+    public static void setSampleRate(int sampleRate) throws IllegalArgumentException {
+        if(sampleRate < 0) throw new IllegalArgumentException("The sample rate cannot be negative");
+        InvariantSampler.sampleRate = sampleRate;
+    }
+
+    /**
+     * Variable referencing the installed reporter, null if none is installed
+     */
+    private static volatile Consumer<? super InvariantViolation> reporter = null;
+
+    /**
+     * Returns the installed reporter, null if none is installed
+     */
+    public static Consumer<? super InvariantViolation> getReporter() {
+        return reporter;
+    }
+
+    /**
+     * Installs the given reporter
+     *
+     * @param   reporter
+     *          The reporter to pass every violation to, null to fail an assertion on every violation if assertions are
+     *          enabled
+     * @post    | getReporter() == reporter
+     */
+    public static void setReporter(Consumer<? super InvariantViolation> reporter) {
+        InvariantSampler.reporter = reporter;
+    }
+
+    /**
+     * Variable referencing the number of checked mutations
+     */
+    private static final LongAdder nbChecks = new LongAdder();
+
+    /**
+     * Returns the number of mutations that were checked
+     */
+    public static long getNbChecks() {
+        return nbChecks.sum();
+    }
+
+    /**
+     * Variable referencing the number of violations found
+     */
+    private static final LongAdder nbViolations = new LongAdder();
+
+    /**
+     * Returns the number of violations that were found
+     */
+    public static long getNbViolations() {
+        return nbViolations.sum();
+    }
+
+    /**
+     * Resets the number of checked mutations and of violations found
+     *
+     * @post    | getNbChecks() == 0 && getNbViolations() == 0
+     */
+    public static void resetCounters() {
+        nbChecks.reset();
+        nbViolations.reset();
+    }
+
+    /**
+     * Returns whether the current mutation is to be checked
+     */
+    private static boolean isSampled() {
+        int rate = sampleRate;
+        if(rate == 0) return false;
+        if(rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) return false;
+        nbChecks.increment();
+        return true;
+    }
+
+    /**
+     * Checks the invariants of the given mutated entity, if the current mutation is sampled
+     *
+     * The anchors of a dead entity are not checked, as a dead entity holds the items it still carried until they are
+     * collected or discarded after its death.
+     *
+     * @param   entity
+     *          The entity that was mutated
+     */
+    static void sample(Entity entity) {
+        if(!isSampled()) return;
+        if(!entity.isDead()) check(entity.hasProperAnchors(), "hasProperAnchors()", entity);
+        check(entity.canHaveAsHitPoints(entity.getHitPoints()), "canHaveAsHitPoints(getHitPoints())", entity);
+    }
+
+    /**
+     * Checks the invariants of the given mutated item, if the current mutation is sampled
+     *
+     * @param   item
+     *          The item that was mutated
+     */
+    static void sample(Item item) {
+        if(!isSampled()) return;
+        check(item.hasProperHolder(), "hasProperHolder()", item);
+        if(item instanceof Backpack) check(((Backpack) item).hasProperContents(), "hasProperContents()", item);
+    }
+
+    /**
+     * Reports a violation of the given invariant by the given entity or item if the invariant does not hold
+     *
+     * The path of the subject is only built once a violation is found, so a check that holds does not allocate.
+     */
+    private static void check(boolean invariant, String description, Object subject) {
+        if(invariant) return;
+        nbViolations.increment();
+        String path = subject instanceof Entity ? WorldValidator.getName((Entity) subject)
+                : WorldValidator.getName((Item) subject);
+        InvariantViolation violation = new InvariantViolation(path, description, subject);
+        Consumer<? super InvariantViolation> current = reporter;
+        if(current != null) {
+            current.accept(violation);
+        } else {
+            assert false : violation;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+/**
+ * A class of reports of violated class invariants
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each violation has an effective path
+ *          | getPath() != null
+ * @invar   Each violation has an effective invariant
+ *          | getInvariant() != null
+ */
+public final class InvariantViolation {
+
+    /**
+     * Initializes this violation with the given path, invariant and subject
+     *
+     * @param   path
+     *          The path from the root of the world to the subject of the new violation
+     * @param   invariant
+     *          The invariant that is violated
+     * @param   subject
+     *          The entity or item that violates the given invariant
+     *
+     * @post    The path, invariant and subject of this new violation are set to the given ones
+     *          | new.getPath() == path && new.getInvariant() == invariant && new.getSubject() == subject
+     * @throws  IllegalArgumentException
+     *          The given path or invariant is not effective
+     *          | path == null || invariant == null
+     */
+    public InvariantViolation(String path, String invariant, Object subject) throws IllegalArgumentException {
+        if(path == null) throw new IllegalArgumentException("The given path is not effective");
+        if(invariant == null) throw new IllegalArgumentException("The given invariant is not effective");
+        this.path = path;
+        this.invariant = invariant;
+        this.subject = subject;
+    }
+
+    /**
+     * Variable referencing the path to the subject of this violation
+     */
+    private final String path;
+
+    /**
+     * Returns the path from the root of the world to the subject of this violation
+     */
+    @Basic @Immutable
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Variable referencing the violated invariant
+     */
+    private final String invariant;
+
+    /**
+     * Returns the violated invariant
+     */
+    @Basic @Immutable
+    public String getInvariant() {
+        return invariant;
+    }
+
+    /**
+     * Variable referencing the subject of this violation
+     */
+    private final Object subject;
+
+    /**
+     * Returns the entity or item that violates the invariant
+     */
+    @Basic @Immutable
+    public Object getSubject() {
+        return subject;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s", getPath(), getInvariant());
+    }
+}
@@ -2,6 +2,7 @@ package rpg;
 
 import be.kuleuven.cs.som.annotate.*;
 import rpg.exceptions.*;
+import rpg.jfr.InventoryEvent;
 
 
 /**
@@ -81,6 +82,10 @@ public abstract class Item {
     protected void destroy() throws BrokenItemException {
         if(isBroken()) throw new BrokenItemException(this);
         this.isBroken = true;
+        Statistics statistics = getStatistics();
+        if(statistics != null) statistics.itemBroken(this);
+        if(holder instanceof Backpack) ((Backpack) holder).countHeldItemBroken(this);
+        notifyChanged();
     }
 
     /**
@@ -200,6 +205,7 @@ public abstract class Item {
     protected void setValue(int value) throws IllegalArgumentException {
         if (!canHaveAsValue(value)) throw new IllegalArgumentException(value + "is not a valid value");
         this.value = value;
+        notifyChanged();
     }
 
     /**
@@ -275,10 +281,79 @@ public abstract class Item {
      *          The new ItemHolder
      * @post    The holder of this item is set to the given holder
      *          | new.getHolder() == holder
+     * @post    If the given holder is effective, this item is removed from the ground of the world it was put on
+     *          | if(holder != null && getGroundWorld() != null)
+     *          | then !(new getGroundWorld()).hasAsItem(this) && new.getGroundWorld() == null
+     * @effect  This item and the items it holds are counted in the statistics of the world of the given holder instead
+     *          of the ones of its previous world
      */
     @Model
     protected void setHolder(@Raw ItemHolder holder) {
+        World previous = getWorld();
+        if(holder != null && groundWorld != null) {
+            groundWorld.forgetItem(this);
+            groundWorld = null;
+        }
         this.holder = holder;
+        Statistics.moved(this, previous, getWorldOf(holder));
+    }
+
+    /*
+        World
+     */
+
+    /**
+     * Variable referencing the world on the ground of which this item was put, if any
+     */
+    private World groundWorld = null;
+
+    /**
+     * Returns the world on the ground of which this item was put, null if none
+     */
+    @Basic
+    World getGroundWorld() {
+        return groundWorld;
+    }
+
+    /**
+     * Sets the world on the ground of which this item was put to the given world
+     *
+     * @param   world
+     *          The world this item was put on the ground of, null if it was removed from the ground of its world
+     * @post    | new.getGroundWorld() == world
+     * @note    Only to be invoked by the world itself.
+     */
+    void setGroundWorld(World world) {
+        World previous = getWorld();
+        this.groundWorld = world;
+        Statistics.moved(this, previous, getWorld());
+    }
+
+    /**
+     * Returns the world this item belongs to
+     *
+     * @return  The world on the ground of which this item was put if any, otherwise the world of the holder of this
+     *          item, null if this item belongs to no world
+     */
+    World getWorld() {
+        return groundWorld != null ? groundWorld : getWorldOf(holder);
+    }
+
+    /**
+     * Returns the world the given holder belongs to, null if it is not effective or belongs to no world
+     */
+    private static World getWorldOf(ItemHolder holder) {
+        if(holder instanceof Entity) return ((Entity) holder).getWorld();
+        if(holder instanceof Item) return ((Item) holder).getWorld();
+        return null;
+    }
+
+    /**
+     * Returns the statistics of the world this item belongs to, null if it belongs to no world
+     */
+    Statistics getStatistics() {
+        World world = getWorld();
+        return world == null ? null : world.getStatistics();
     }
 
 
@@ -321,6 +396,115 @@ public abstract class Item {
         return canHaveAsHolder(getHolder()) && (liesOnGround() || getHolder().holdsItemDirectly(this));
     }
 
+    /*
+        Snapshot
+     */
+
+    /**
+     * Variable referencing the number of times this item or an item it holds changed, only incremented by the thread
+     * mutating this item
+     */
+    private volatile long version = 0;
+
+    /**
+     * Variable referencing the last snapshot taken of this item, null if none was taken yet
+     */
+    private volatile ItemSnapshot snapshot = null;
+
+    /**
+     * Returns an immutable snapshot of the current state of this item
+     *
+     * A snapshot is tagged with the version of this item it was taken of, and is only reused while that version is
+     * current. A snapshot during which this item changed is discarded and taken again, so a snapshot taken by
+     * another thread than the one mutating this item is never cached after this item changed.
+     *
+     * @return  The last snapshot of this item if this item did not change since, otherwise a new snapshot
+     *          | result == ItemSnapshot.of(this, version)
+     */
+    ItemSnapshot getSnapshot() {
+        while(true) {
+            long before = version;
+            ItemSnapshot result = snapshot;
+            if(result != null && result.getVersion() == before) return result;
+            result = ItemSnapshot.of(this, before);
+            if(version == before) {
+                snapshot = result;
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Variable registering whether this item or an item it holds changed since it was last checkpointed
+     */
+    private volatile boolean isDirty = true;
+
+    /**
+     * Returns whether this item or an item it holds changed since it was last checkpointed
+     */
+    boolean isDirty() {
+        return isDirty;
+    }
+
+    /**
+     * Registers that this item was checkpointed
+     *
+     * @post    This item is not dirty
+     *          | !new.isDirty()
+     */
+    void clearDirty() {
+        isDirty = false;
+    }
+
+    /**
+     * Notifies this item and its holders that the state of this item changed
+     *
+     * @post    The version of this item is incremented, discarding its snapshot
+     *          | new.version == version + 1
+     * @post    This item is dirty
+     *          | new.isDirty()
+     * @effect  If the holder of this item is a backpack, the backpack is notified that it changed
+     *          | if(getHolder() instanceof Backpack)
+     *          | then ((Backpack) getHolder()).notifyChanged()
+     * @effect  If the holder of this item is an entity, the entity is notified that it changed
+     *          | if(getHolder() instanceof Entity)
+     *          | then ((Entity) getHolder()).notifyChanged()
+     */
+    @Raw
+    protected void notifyChanged() {
+        version++;
+        isDirty = true;
+        ItemHolder holder = getHolder();
+        if(holder instanceof Backpack) {
+            ((Backpack) holder).notifyChanged();
+        } else if(holder instanceof Entity) {
+            ((Entity) holder).notifyChanged();
+        }
+    }
+
+    /**
+     * Returns the number of backpacks between the given holder and the entity or ground it lies on, the given holder
+     * included
+     */
+    static int getHolderDepth(ItemHolder holder) {
+        int depth = 0;
+        for (ItemHolder current = holder; current instanceof Item; current = ((Item) current).getHolder()) depth++;
+        return depth;
+    }
+
+    /**
+     * Commits the given inventory event for the given operation on the given item by the given holder, if the event
+     * is enabled and its threshold is exceeded
+     */
+    static void commit(InventoryEvent event, String operation, Item item, ItemHolder holder, long capacityCheckTime) {
+        if(!event.shouldCommit()) return;
+        event.operation = operation;
+        event.itemType = item.getClass();
+        event.holderDepth = getHolderDepth(holder);
+        event.capacityCheckTime = capacityCheckTime;
+        event.commit();
+    }
+
     /*
         Shiny
      */
@@ -0,0 +1,295 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.util.*;
+
+/**
+ * A class of immutable snapshots of items
+ *
+ * Snapshots of backpacks reference the snapshots of their contents, unchanged contents are shared between
+ * consecutive snapshots of the same backpack. The contents of a snapshot of a backpack whose contents were not
+ * materialized from a mapped snapshot yet are only resolved when they, the weight or the value of the snapshot are
+ * first queried, so taking a snapshot does not materialize them.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each snapshot has effective contents
+ *          | getStoredIds() != null
+ */
+public final class ItemSnapshot {
+
+    /**
+     * Initializes this snapshot with the given attributes
+     *
+     * @param   itemClass
+     *          The class of the item of the new snapshot
+     * @param   id
+     *          The identification of the item of the new snapshot
+     * @param   ownWeight
+     *          The weight of the item of the new snapshot, excluding its contents
+     * @param   ownValue
+     *          The value of the item of the new snapshot, excluding its contents
+     * @param   isBroken
+     *          Whether the item of the new snapshot is broken
+     * @param   contents
+     *          The snapshots of the contents of the item of the new snapshot, null if they are pending
+     * @param   pending
+     *          The backpack of which the pending contents are the contents of the new snapshot, if any
+     * @param   version
+     *          The version of the item of the new snapshot
+     */
+    private ItemSnapshot(Class<? extends Item> itemClass, long id, double ownWeight, int ownValue, boolean isBroken,
+                         Contents contents, Backpack pending, long version) {
+        this.version = version;
+        this.itemClass = itemClass;
+        this.id = id;
+        this.ownWeight = ownWeight;
+        this.ownValue = ownValue;
+        this.isBroken = isBroken;
+        this.contents = contents;
+        this.pending = pending;
+    }
+
+    /**
+     * Returns a snapshot of the current state of the given item
+     *
+     * @param   item
+     *          The item to take a snapshot of
+     * @param   version
+     *          The version of the given item the snapshot is taken of
+     * @return  A snapshot with the class, id, weight, value and broken state of the given item. If the given item is a
+     *          backpack the snapshot references the (possibly shared) snapshots of its contents, or the pending
+     *          contents of the backpack if they are not materialized yet.
+     */
+    static ItemSnapshot of(Item item, long version) {
+        if(!(item instanceof Backpack)) {
+            return new ItemSnapshot(item.getClass(), item.getId(), item.getWeight(), item.getValue(), item.isBroken(),
+                    Contents.empty, null, version);
+        }
+        Backpack backpack = (Backpack) item;
+        boolean isPending = backpack.registerPendingSnapshot();
+        return new ItemSnapshot(item.getClass(), item.getId(), backpack.getOwnWeight(), backpack.getOwnValue(),
+                item.isBroken(), isPending ? null : contentsOf(backpack), isPending ? backpack : null, version);
+    }
+
+    /**
+     * Returns the snapshots of the current contents of the given backpack
+     */
+    static Contents contentsOf(Backpack backpack) {
+        Map<Long, List<ItemSnapshot>> snapshots = new HashMap<>();
+        for (long id: backpack.getStoredIds()) {
+            int nbItems = backpack.getNbItemsWithId(id);
+            if(nbItems == 0) continue;
+            ItemSnapshot[] items = new ItemSnapshot[nbItems];
+            for (int pos = 0; pos < nbItems; pos++) items[pos] = backpack.getItemWithIdAtPos(id, pos).getSnapshot();
+            snapshots.put(id, List.of(items));
+        }
+        return new Contents(Collections.unmodifiableMap(snapshots));
+    }
+
+    /**
+     * A class of the snapshots of the contents of an item, with their total weight and value
+     *
+     * The totals are summed when they are first queried, so pending contents among the snapshots stay pending until
+     * then.
+     */
+    static final class Contents {
+
+        private static final Contents empty = new Contents(Collections.emptyMap());
+
+        private Contents(Map<Long, List<ItemSnapshot>> items) {
+            this.items = items;
+        }
+
+        private final Map<Long, List<ItemSnapshot>> items;
+
+        private double weight;
+
+        private int value;
+
+        /**
+         * Variable registering whether the totals are summed, written after them to publish them
+         */
+        private volatile boolean isSummed = false;
+
+        private void sum() {
+            if(isSummed) return;
+            double weight = 0;
+            int value = 0;
+            for (List<ItemSnapshot> snapshots: items.values()) {
+                for (ItemSnapshot snapshot: snapshots) {
+                    weight += snapshot.getWeight();
+                    value += snapshot.getValue();
+                }
+            }
+            this.weight = weight;
+            this.value = value;
+            isSummed = true;
+        }
+
+        private double getWeight() {
+            sum();
+            return weight;
+        }
+
+        private int getValue() {
+            sum();
+            return value;
+        }
+    }
+
+    /**
+     * Variable referencing the class of the item of this snapshot
+     */
+    private final Class<? extends Item> itemClass;
+
+    /**
+     * Returns the class of the item of this snapshot
+     */
+    @Basic @Immutable
+    public Class<? extends Item> getItemClass() {
+        return itemClass;
+    }
+
+    /**
+     * Variable referencing the identification of the item of this snapshot
+     */
+    private final long id;
+
+    /**
+     * Returns the identification of the item of this snapshot
+     */
+    @Basic @Immutable
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Variable referencing the weight of the item of this snapshot, excluding its contents
+     */
+    private final double ownWeight;
+
+    /**
+     * Returns the total weight of the item of this snapshot
+     */
+    @Immutable
+    public double getWeight() {
+        return ownWeight + getContents().getWeight();
+    }
+
+    /**
+     * Variable referencing the value of the item of this snapshot, excluding its contents
+     */
+    private final int ownValue;
+
+    /**
+     * Returns the total value of the item of this snapshot
+     */
+    @Immutable
+    public int getValue() {
+        return ownValue + getContents().getValue();
+    }
+
+    /**
+     * Variable referencing the version of the item of this snapshot, the number of times it changed before this
+     * snapshot was taken
+     */
+    private final long version;
+
+    /**
+     * Returns the version of the item of this snapshot
+     */
+    @Basic @Immutable
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Variable referencing whether the item of this snapshot was broken
+     */
+    private final boolean isBroken;
+
+    /**
+     * Returns whether the item of this snapshot was broken
+     */
+    @Basic @Immutable
+    public boolean isBroken() {
+        return isBroken;
+    }
+
+    /**
+     * Variable referencing the snapshots of the contents of the item of this snapshot, null until pending contents
+     * are resolved
+     */
+    private volatile Contents contents;
+
+    /**
+     * Variable referencing the backpack of which the pending contents are the contents of this snapshot, if any
+     */
+    private final Backpack pending;
+
+    /**
+     * Returns the snapshots of the contents of the item of this snapshot, resolving pending contents if needed
+     *
+     * @note    Pending contents are the contents of the backpack as they were materialized, which are the contents it
+     *          had when this snapshot was taken, as a backpack materializes its contents before it changes them.
+     */
+    private Contents getContents() {
+        Contents result = contents;
+        if(result == null) {
+            result = pending.getMaterializedContents();
+            contents = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the identifications that are stored inside the item of this snapshot
+     */
+    @Immutable
+    public Set<Long> getStoredIds() {
+        return getContents().items.keySet();
+    }
+
+    /**
+     * Returns how many items with the given id were stored inside the item of this snapshot
+     *
+     * @param   id
+     *          The id to search
+     * @return  The number of items with the given id
+     *          | if (!getStoredIds().contains(id)) result == 0
+     */
+    public int getNbItemsWithId(long id) {
+        List<ItemSnapshot> items = getContents().items.get(id);
+        return items == null ? 0 : items.size();
+    }
+
+    /**
+     * Returns the snapshot of the item with the given id at the given position
+     *
+     * @param   id
+     *          The id of the desired item
+     * @param   pos
+     *          The position of the desired item
+     * @return  The snapshot of the item with the given id at the given position
+     * @throws  IllegalArgumentException
+     *          No item with the given id was stored inside the item of this snapshot
+     *          | getNbItemsWithId(id) == 0
+     * @throws  IndexOutOfBoundsException
+     *          The given position exceeds the number of items with the given id
+     *          | pos >= getNbItemsWithId(id)
+     */
+    public ItemSnapshot getItemWithIdAtPos(long id, int pos) throws IllegalArgumentException, IndexOutOfBoundsException {
+        if(getNbItemsWithId(id) == 0)
+            throw new IllegalArgumentException("This snapshot does not contain any items with the given id");
+        if(getNbItemsWithId(id) <= pos) throw new IndexOutOfBoundsException("Index out of bounds: " + pos);
+        return getContents().items.get(id).get(pos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s -> total weight: %.2f, total value: %d", getItemClass().getSimpleName(), getWeight(), getValue());
+    }
+}
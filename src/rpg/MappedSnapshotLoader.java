@@ -0,0 +1,143 @@
+package rpg;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A utility class loading worlds from memory-mapped snapshots
+ *
+ * Only the entities and the items on the ground are created when a world is loaded. The items held by an entity are
+ * created when they are first accessed, and the contents of a backpack when they are first accessed, so the time to
+ * load a world does not depend on the number of items it holds. Until then, the records stay in the mapped file.
+ *
+ * @author  Corteville Andrew
+ */
+public final class MappedSnapshotLoader {
+
+    /**
+     * This class cannot be instantiated
+     */
+    private MappedSnapshotLoader() {
+    }
+
+    /**
+     * Loads the world from the snapshot in the file at the given path, materializing held items lazily
+     *
+     * @param   path
+     *          The path of the file to load
+     * @return  A world with the entities and items on the ground that were saved in the given file, of which the
+     *          entities and backpacks create the items they hold when first accessed
+     * @throws  IOException
+     *          The file does not contain a valid snapshot, could not be mapped or is larger than 2 GB
+     */
+    public static World load(Path path) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) throw new IOException("The snapshot is too large to be mapped");
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.duplicate();
+        try {
+            int[] header = SnapshotFormat.readHeader(buffer);
+            World world = new World();
+            for (int i = 0; i < header[0]; i++) {
+                Entity entity = SnapshotFormat.readEntity(buffer);
+                int nbItems = buffer.getInt();
+                int nbBytes = buffer.getInt();
+                if(nbItems > 0) entity.setPendingItems(new Contents(mapped, buffer.position(), nbBytes));
+                buffer.position(buffer.position() + nbBytes);
+                world.addEntity(entity);
+            }
+            for (int i = 0; i < header[1]; i++) world.addItem(readItem(mapped, buffer));
+            return world;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt world snapshot", e);
+        }
+    }
+
+    /**
+     * Reads an item record from the given buffer, registering the contents of a backpack as pending and skipping
+     * them
+     */
+    private static Item readItem(ByteBuffer mapped, ByteBuffer buffer) throws IOException {
+        Item item = SnapshotFormat.readItem(buffer);
+        if(item instanceof Backpack) {
+            int nbItems = buffer.getInt();
+            int nbBytes = buffer.getInt();
+            if(nbItems > 0) ((Backpack) item).setPendingContents(new Contents(mapped, buffer.position(), nbBytes), nbItems);
+            buffer.position(buffer.position() + nbBytes);
+        }
+        return item;
+    }
+
+    /**
+     * A class of item records in a mapped snapshot, held by an entity or backpack that did not materialize them yet
+     */
+    static final class Contents {
+
+        private Contents(ByteBuffer mapped, int offset, int nbBytes) {
+            this.mapped = mapped;
+            this.offset = offset;
+            this.nbBytes = nbBytes;
+        }
+
+        /**
+         * The mapped snapshot, of which the position is never changed
+         */
+        private final ByteBuffer mapped;
+
+        private final int offset;
+
+        private final int nbBytes;
+
+        /**
+         * Returns a new buffer positioned at the first record of these contents
+         */
+        private ByteBuffer open() {
+            ByteBuffer buffer = mapped.duplicate();
+            buffer.position(offset);
+            return buffer;
+        }
+
+        /**
+         * Creates the items held directly by a backpack, in order, leaving the contents of backpacks among them pending
+         */
+        List<Item> readItems() {
+            ByteBuffer buffer = open();
+            List<Item> items = new ArrayList<>();
+            try {
+                while(buffer.position() < offset + nbBytes) items.add(readItem(mapped, buffer));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return items;
+        }
+
+        /**
+         * Creates the items held directly by an entity, mapped on their anchors, leaving the contents of backpacks
+         * among them pending
+         */
+        Map<Anchorpoint, Item> readAnchoredItems() {
+            ByteBuffer buffer = open();
+            Map<Anchorpoint, Item> items = new EnumMap<>(Anchorpoint.class);
+            try {
+                while(buffer.position() < offset + nbBytes) {
+                    Anchorpoint anchor = Anchorpoint.values()[buffer.get(buffer.position() + 1)];
+                    items.put(anchor, readItem(mapped, buffer));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return items;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package rpg;
+
+/**
+ * A class holding the metrics recorder of all entities and items
+ *
+ * No recorder is installed by default. Every instrumented operation then reads the recorder field once, when it
+ * starts, and skips timing. The field is volatile, so a recorder installed by one thread is used by the operations
+ * other threads start afterwards. The JIT cannot remove that read, so an operation without a recorder still costs a
+ * load and a well predicted branch at its start and a branch at its end.
+ *
+ * @author  Corteville Andrew
+ */
+public final class Metrics {
+
+    /**
+     * This class cannot be instantiated
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Variable referencing the installed recorder, null if none is installed
+     */
+    private static volatile MetricsRecorder recorder = null;
+
+    /**
+     * Returns the installed recorder, null if none is installed
+     */
+    public static MetricsRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Installs the given recorder
+     *
+     * @param   recorder
+     *          The recorder to notify of every completed operation, null to stop recording
+     * @post    | getRecorder() == recorder
+     */
+    public static void setRecorder(MetricsRecorder recorder) {
+        Metrics.recorder = recorder;
+    }
+
+    /**
+     * Returns the start time of an operation, or 0 if no recorder is installed
+     */
+    static long start() {
+        return recorder == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records that the given operation, started at the given time, completed
+     *
+     * @param   operation
+     *          The operation that completed
+     * @param   start
+     *          The start time of the operation, as returned by start()
+     * @note    The recorder is only read again if the operation was timed, it is skipped if it was uninstalled since.
+     */
+    static void record(MetricsRecorder.Operation operation, long start) {
+        if(start == 0) return;
+        MetricsRecorder current = recorder;
+        if(current != null) current.record(operation, System.nanoTime() - start);
+    }
+}
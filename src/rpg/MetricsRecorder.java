@@ -0,0 +1,36 @@
+package rpg;
+
+/**
+ * An interface for recorders of the operations performed on entities and items
+ *
+ * A recorder is installed with Metrics.setRecorder and is then notified of every completed operation, from any thread.
+ * Implementations must therefore be thread-safe and should return quickly, since they are called on the hot path of
+ * every operation.
+ *
+ * @author  Corteville Andrew
+ */
+public interface MetricsRecorder {
+
+    /**
+     * An enum of the operations that are recorded
+     */
+    enum Operation {
+        PICKUP,
+        DROP,
+        TRANSFER,
+        HIT,
+        FIGHT,
+        DEGRADE,
+        REPAIR
+    }
+
+    /**
+     * Records that the given operation completed after the given duration
+     *
+     * @param   operation
+     *          The operation that completed
+     * @param   durationNanos
+     *          The time the operation took in nanoseconds
+     */
+    void record(Operation operation, long durationNanos);
+}
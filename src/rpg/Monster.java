@@ -54,6 +54,45 @@ public class Monster extends Entity {
         this.capacity = (new Random()).nextInt(5, 25) * anchors.size();
     }
 
+    /**
+     * Initializes this monster with the given name, maximum hit points, hit points, anchors, protection, damage
+     * and capacity, as restored from a snapshot.
+     *
+     * @param   name
+     *          The name for the new monster
+     * @param   maxHitPoints
+     *          The maximum hit points of the new monster
+     * @param   hitPoints
+     *          The actual hit points of the new monster
+     * @param   anchors
+     *          The anchors of the new monster
+     * @param   protection
+     *          The protection of the new monster
+     * @param   effectiveProtection
+     *          The effective protection of the new monster
+     * @param   damage
+     *          The damage of the new monster
+     * @param   capacity
+     *          The capacity of the new monster
+     *
+     * @effect  Initializes this monster with the given name, maximum hit points, actual hit points, anchors
+     *          and protection
+     *          | super(name, maxHitPoints, hitPoints, anchors, protection)
+     * @effect  If the given effective protection is valid, the effective protection of this monster is set to it
+     *          | if(canHaveAsEffectiveProtection(effectiveProtection))
+     *          | then setEffectiveProtection(effectiveProtection)
+     * @post    The capacity of this new monster is set to the given capacity
+     *          | new.getCapacity() == capacity
+     */
+    @Raw
+    Monster(String name, int maxHitPoints, int hitPoints, Collection<Anchorpoint> anchors, int protection,
+            int effectiveProtection, int damage, double capacity) throws IllegalArgumentException {
+        super(name, maxHitPoints, hitPoints, anchors, protection);
+        setDamage(damage);
+        if(canHaveAsEffectiveProtection(effectiveProtection)) setEffectiveProtection(effectiveProtection);
+        this.capacity = capacity;
+    }
+
     /**
      * Initializes this new monster with the given name, maximum hit points, protection and damage.
      *
@@ -316,6 +355,7 @@ public class Monster extends Entity {
         if(!canHaveAsEffectiveProtection(protection))
             throw new IllegalArgumentException(this + " cannot have " + protection + " as protection.");
         this.effectiveProtection = protection;
+        notifyChanged();
     }
 
     /**
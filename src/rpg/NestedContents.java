@@ -0,0 +1,150 @@
+package rpg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * A utility class for parallel aggregations over the nested contents of backpacks
+ *
+ * The contents of a backpack are traversed level by level, the backpacks found on each level are split over
+ * fork-join tasks so that large trees of backpacks are traversed by all available cores.
+ *
+ * @author  Corteville Andrew
+ */
+public final class NestedContents {
+
+    /**
+     * This class cannot be instantiated
+     */
+    private NestedContents() {
+    }
+
+    /**
+     * Variable referencing the number of items held directly or indirectly from which a backpack traverses its
+     * contents in parallel
+     */
+    private static final int parallelThreshold = 10_000;
+
+    /**
+     * Returns the number of items held directly or indirectly from which a backpack traverses its contents in parallel
+     */
+    public static int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Variable referencing the maximal number of backpacks that are traversed by a single task before it is split
+     */
+    private static final int backpacksPerTask = 16;
+
+    /**
+     * Collects all items held directly or indirectly by the given backpack with the given collector
+     *
+     * @param   backpack
+     *          The backpack of which to collect the contents
+     * @param   collector
+     *          The collector to use, its accumulator is called once for each item held by the given backpack
+     * @return  The result of the given collector over all items held directly or indirectly by the given backpack,
+     *          not including the given backpack itself
+     * @throws  IllegalArgumentException
+     *          The given backpack or collector is not effective
+     *          | backpack == null || collector == null
+     */
+    public static <A, R> R collect(Backpack backpack, Collector<? super Item, A, R> collector)
+            throws IllegalArgumentException {
+        if(backpack == null) throw new IllegalArgumentException("The given backpack is not effective");
+        if(collector == null) throw new IllegalArgumentException("The given collector is not effective");
+        A container = ForkJoinPool.commonPool().invoke(new CollectTask<>(List.of(backpack), collector));
+        return collector.finisher().apply(container);
+    }
+
+    /**
+     * Sums the given function over all items held directly or indirectly by the given backpack
+     *
+     * @param   backpack
+     *          The backpack of which to sum the contents
+     * @param   function
+     *          The function to sum
+     * @return  The sum of the given function for all items held directly or indirectly by the given backpack
+     *          | result == collect(backpack, Collectors.summingDouble(function))
+     */
+    public static double sum(Backpack backpack, ToDoubleFunction<? super Item> function)
+            throws IllegalArgumentException {
+        return collect(backpack, Collectors.summingDouble(function));
+    }
+
+    /**
+     * Counts the items held directly or indirectly by the given backpack that satisfy the given predicate
+     *
+     * @param   backpack
+     *          The backpack of which to count the contents
+     * @param   predicate
+     *          The predicate to satisfy
+     * @return  The number of items held directly or indirectly by the given backpack that satisfy the given predicate
+     *          | result == collect(backpack, Collectors.filtering(predicate, Collectors.counting()))
+     */
+    public static long count(Backpack backpack, Predicate<? super Item> predicate)
+            throws IllegalArgumentException {
+        return collect(backpack, Collectors.filtering(predicate, Collectors.counting()));
+    }
+
+    /**
+     * Returns the items held directly or indirectly by the given backpack that satisfy the given predicate
+     *
+     * @param   backpack
+     *          The backpack of which to filter the contents
+     * @param   predicate
+     *          The predicate to satisfy
+     * @return  A list of all items held directly or indirectly by the given backpack that satisfy the given predicate
+     *          | result == collect(backpack, Collectors.filtering(predicate, Collectors.toList()))
+     */
+    public static List<Item> filter(Backpack backpack, Predicate<? super Item> predicate)
+            throws IllegalArgumentException {
+        return collect(backpack, Collectors.filtering(predicate, Collectors.toList()));
+    }
+
+    /**
+     * A task that collects the contents of a list of backpacks and of all backpacks nested in those
+     */
+    private static final class CollectTask<A> extends RecursiveTask<A> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Backpack> backpacks;
+
+        private final Collector<? super Item, A, ?> collector;
+
+        private CollectTask(List<Backpack> backpacks, Collector<? super Item, A, ?> collector) {
+            this.backpacks = backpacks;
+            this.collector = collector;
+        }
+
+        @Override
+        protected A compute() {
+            if(backpacks.size() > backpacksPerTask) {
+                int middle = backpacks.size() / 2;
+                CollectTask<A> left = new CollectTask<>(backpacks.subList(0, middle), collector);
+                CollectTask<A> right = new CollectTask<>(backpacks.subList(middle, backpacks.size()), collector);
+                left.fork();
+                A rightResult = right.compute();
+                return collector.combiner().apply(left.join(), rightResult);
+            }
+            A container = collector.supplier().get();
+            List<Backpack> nested = new ArrayList<>();
+            for (Backpack backpack: backpacks) {
+                for (Item item: backpack.getItems()) {
+                    collector.accumulator().accept(container, item);
+                    if(item instanceof Backpack) nested.add((Backpack) item);
+                }
+            }
+            if(nested.isEmpty()) return container;
+            return collector.combiner().apply(container, new CollectTask<>(nested, collector).compute());
+        }
+    }
+}
@@ -0,0 +1,674 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class of asynchronous persistence writers, appending the state of changed entities and items on the ground to a
+ * file in the background
+ *
+ * A change is submitted by handing over the entity or item that changed. Its state is encoded as a snapshot record on
+ * the submitting thread and put in a bounded queue, so the submitting thread never waits for the disk unless the queue
+ * is full. A background thread collects the changes of a flush window, keeps only the last change of every entity or
+ * item on the ground, and appends them to the file in a single sequential write.
+ *
+ * Every record in the file consists of a tag (changed or removed), the handle of the entity or item on the ground, its
+ * kind (entity or item) and, for changed records, the snapshot record of its state. Loading the file keeps the last
+ * record of every handle. A writer opening a file that already has records assigns handles after the highest handle in
+ * the file, so the entities and items of every session are kept apart.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each writer has a strictly positive queue capacity
+ *          | getQueueCapacity() > 0
+ * @invar   Each writer has a positive flush window
+ *          | getFlushWindowMillis() >= 0
+ *
+ * @note    A writer keeps a reference to every entity and item on the ground it persisted, until it is removed.
+ */
+public class PersistenceWriter implements AutoCloseable {
+
+    /*
+        Record tags and kinds
+     */
+
+    private static final byte removed = 2;
+
+    private static final byte entity = 0;
+
+    private static final byte item = 1;
+
+    /**
+     * The number of bytes of the header of a record
+     */
+    private static final int recordHeaderSize = 14;
+
+    /**
+     * Initializes this writer for the file at the given path, with the given queue capacity and flush window
+     *
+     * @param   path
+     *          The path of the file to append to
+     * @param   queueCapacity
+     *          The maximum number of changes that can wait to be written before submitting blocks
+     * @param   flushWindowMillis
+     *          The number of milliseconds changes are collected before they are written
+     * @post    The queue capacity and flush window of this new writer are set to the given ones
+     *          | new.getQueueCapacity() == queueCapacity && new.getFlushWindowMillis() == flushWindowMillis
+     * @throws  IllegalArgumentException
+     *          The given path is not effective, the given capacity is not strictly positive or the given window is
+     *          negative
+     *          | path == null || queueCapacity <= 0 || flushWindowMillis < 0
+     * @throws  IOException
+     *          The file could not be opened or ends with a truncated record
+     */
+    public PersistenceWriter(Path path, int queueCapacity, long flushWindowMillis)
+            throws IllegalArgumentException, IOException {
+        if(path == null) throw new IllegalArgumentException("The given path is not effective");
+        if(queueCapacity <= 0) throw new IllegalArgumentException("The queue capacity must be strictly positive");
+        if(flushWindowMillis < 0) throw new IllegalArgumentException("The flush window cannot be negative");
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.flushWindowMillis = flushWindowMillis;
+        this.nextHandle = findNextHandle(path);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        flusher = new Thread(this::writeBatches, "persistence-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Initializes this writer for the file at the given path with the default queue capacity and flush window
+     *
+     * @effect  | this(path, getDefaultQueueCapacity(), getDefaultFlushWindowMillis())
+     */
+    public PersistenceWriter(Path path) throws IllegalArgumentException, IOException {
+        this(path, getDefaultQueueCapacity(), getDefaultFlushWindowMillis());
+    }
+
+    /**
+     * Returns the default maximum number of changes waiting to be written
+     */
+    @Immutable
+    public static int getDefaultQueueCapacity() {
+        return 1 << 14;
+    }
+
+    /**
+     * Returns the default number of milliseconds changes are collected before they are written
+     */
+    @Immutable
+    public static long getDefaultFlushWindowMillis() {
+        return 10;
+    }
+
+    /**
+     * Variable referencing the maximum number of changes waiting to be written
+     */
+    private final int queueCapacity;
+
+    /**
+     * Returns the maximum number of changes that can wait to be written before submitting blocks
+     */
+    @Basic @Immutable
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Variable referencing the flush window of this writer in milliseconds
+     */
+    private final long flushWindowMillis;
+
+    /**
+     * Returns the number of milliseconds changes are collected before they are written
+     */
+    @Basic @Immutable
+    public long getFlushWindowMillis() {
+        return flushWindowMillis;
+    }
+
+    /**
+     * Variable referencing the channel of this writer
+     */
+    private final FileChannel channel;
+
+    /**
+     * Variable referencing the changes waiting to be written
+     */
+    private final BlockingQueue<Change> queue;
+
+    /**
+     * Variable referencing the thread writing batches
+     */
+    private final Thread flusher;
+
+    /**
+     * A class of changes waiting to be written
+     */
+    private static final class Change {
+
+        private Change(Object root, byte[] record, long submitted) {
+            this.root = root;
+            this.record = record;
+            this.submitted = submitted;
+        }
+
+        /**
+         * The entity or item on the ground that changed
+         */
+        private final Object root;
+
+        /**
+         * The snapshot record of its state, null if it is removed
+         */
+        private final byte[] record;
+
+        /**
+         * The value of System.nanoTime() when the change was submitted
+         */
+        private final long submitted;
+    }
+
+    /**
+     * A class of encoders, writing snapshot records to a reusable array
+     */
+    private static final class Encoder {
+
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        private final WorldSnapshotWriter writer = new WorldSnapshotWriter(Channels.newChannel(output));
+
+        private byte[] encode(Object root) throws IOException {
+            output.reset();
+            writer.writeRecord(root);
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Variable referencing the encoder of every submitting thread
+     */
+    private static final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+
+    /*
+        Submitting
+     */
+
+    /**
+     * Submits the current state of the given entity
+     *
+     * @param   entity
+     *          The entity that changed
+     * @effect  The current state of the given entity is queued to be written, waiting while the queue is full
+     * @throws  IllegalArgumentException
+     *          The given entity is not effective
+     *          | entity == null
+     * @throws  IllegalStateException
+     *          This writer is closed, or its background thread stopped
+     */
+    public void submit(Entity entity) throws IllegalArgumentException, IllegalStateException {
+        if(entity == null) throw new IllegalArgumentException("The given entity is not effective");
+        enqueue(entity, encode(entity));
+    }
+
+    /**
+     * Submits the current state of the given item
+     *
+     * @param   item
+     *          The item that changed
+     * @effect  If the given item lies on the ground, its current state is queued to be written, otherwise the state
+     *          of the entity or item on the ground holding it directly or indirectly is queued, waiting while the
+     *          queue is full
+     * @throws  IllegalArgumentException
+     *          The given item is not effective
+     *          | item == null
+     * @throws  IllegalStateException
+     *          This writer is closed, or its background thread stopped
+     */
+    public void submit(Item item) throws IllegalArgumentException, IllegalStateException {
+        if(item == null) throw new IllegalArgumentException("The given item is not effective");
+        Object root = getRoot(item);
+        enqueue(root, encode(root));
+    }
+
+    /**
+     * Submits the removal of the given entity or item on the ground
+     *
+     * @param   root
+     *          The entity or item that is removed from the world
+     * @effect  The removal is queued to be written, waiting while the queue is full
+     * @throws  IllegalArgumentException
+     *          The given root is not an entity or an item
+     *          | !(root instanceof Entity || root instanceof Item)
+     * @throws  IllegalStateException
+     *          This writer is closed, or its background thread stopped
+     */
+    public void remove(Object root) throws IllegalArgumentException, IllegalStateException {
+        if(!(root instanceof Entity || root instanceof Item))
+            throw new IllegalArgumentException("The given object is not an entity or an item");
+        enqueue(root, null);
+    }
+
+    /**
+     * Returns the entity or item on the ground holding the given item directly or indirectly, or the given item if it
+     * lies on the ground
+     */
+    private static Object getRoot(Item item) {
+        while(item.getHolder() instanceof Backpack) item = (Backpack) item.getHolder();
+        return item.getHolder() instanceof Entity ? item.getHolder() : item;
+    }
+
+    /**
+     * Encodes the current state of the given entity or item on the ground
+     */
+    private static byte[] encode(Object root) {
+        try {
+            return encoders.get().encode(root);
+        } catch (IOException e) {
+            // Should not happen, the encoder writes to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Queues a change of the given root with the given record, waiting while the queue is full and the background
+     * thread is still writing
+     */
+    private void enqueue(Object root, byte[] record) throws IllegalStateException {
+        if(isClosed) throw new IllegalStateException("This writer is closed");
+        ensureFlusherAlive();
+        Change change = new Change(root, record, System.nanoTime());
+        nbSubmitted.incrementAndGet();
+        if(queue.offer(change)) return;
+        long start = System.nanoTime();
+        try {
+            while(!queue.offer(change, 100, TimeUnit.MILLISECONDS)) ensureFlusherAlive();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the queue", e);
+        }
+        synchronized (this) {
+            nbStalls++;
+            stallNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Checks that the background thread of this writer is still writing
+     *
+     * @throws  IllegalStateException
+     *          The background thread stopped, the change would never be written
+     */
+    private void ensureFlusherAlive() throws IllegalStateException {
+        if(!flusher.isAlive()) throw new IllegalStateException("The writer thread stopped", getLastFailure());
+    }
+
+    /*
+        Writing
+     */
+
+    /**
+     * Variable referencing the handles of the entities and items on the ground written by this writer
+     */
+    private final Map<Object, Long> handles = new IdentityHashMap<>();
+
+    /**
+     * Variable referencing the next handle to assign
+     */
+    private long nextHandle;
+
+    /**
+     * Returns the handle following the highest handle of the records in the file at the given path, 0 if it does not
+     * exist or has no records
+     *
+     * @throws  IOException
+     *          The file could not be read or ends with a truncated record
+     */
+    private static long findNextHandle(Path path) throws IOException {
+        if(!Files.exists(path)) return 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return findNextHandle(channel);
+        }
+    }
+
+    /**
+     * Returns the handle following the highest handle of the records in the file of the given channel
+     */
+    private static long findNextHandle(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(recordHeaderSize);
+        long size = channel.size();
+        long position = 0;
+        long result = 0;
+        while(position < size) {
+            header.clear();
+            while(header.hasRemaining()) {
+                if(channel.read(header, position + header.position()) < 0)
+                    throw new IOException("The file ends with a truncated record");
+            }
+            header.flip();
+            header.get(); // Tag
+            result = Math.max(result, header.getLong() + 1);
+            header.get(); // Kind
+            position += recordHeaderSize + header.getInt();
+        }
+        if(position != size) throw new IOException("The file ends with a truncated record");
+        return result;
+    }
+
+    /**
+     * Variable referencing the buffer batches are encoded in
+     */
+    private ByteBuffer batch = ByteBuffer.allocateDirect(SnapshotFormat.bufferSize);
+
+    private volatile boolean isClosed = false;
+
+    /**
+     * Writes batches of changes until this writer is closed and its queue is drained, registering any failure that
+     * stops it as the last failure
+     */
+    private void writeBatches() {
+        try {
+            writeBatchesUntilClosed();
+        } catch (Throwable e) {
+            synchronized (this) {
+                lastFailure = e;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes batches of changes until this writer is closed and its queue is drained
+     */
+    private void writeBatchesUntilClosed() {
+        Map<Object, Change> window = new IdentityHashMap<>();
+        List<Object> order = new ArrayList<>();
+        while(true) {
+            Change first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if(first == null) {
+                if(isClosed && queue.isEmpty()) return;
+                continue;
+            }
+            collect(window, order, first);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushWindowMillis);
+            int nbChanges = 1;
+            try {
+                for (long left = deadline - System.nanoTime(); left > 0 && !isClosed;
+                     left = deadline - System.nanoTime()) {
+                    Change change = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if(change == null) break;
+                    collect(window, order, change);
+                    nbChanges++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<Change> drained = new ArrayList<>();
+            queue.drainTo(drained);
+            for (Change change: drained) collect(window, order, change);
+            nbChanges += drained.size();
+            List<Change> changes = new ArrayList<>(order.size());
+            for (Object root: order) changes.add(window.get(root));
+            write(changes, first.submitted, nbChanges);
+            window.clear();
+            order.clear();
+            if(Thread.currentThread().isInterrupted()) return;
+        }
+    }
+
+    /**
+     * Registers the given change in the given window, replacing the previous change of the same entity or item on the
+     * ground, and registers its root in the given order if it has no change in the window yet
+     */
+    private static void collect(Map<Object, Change> window, List<Object> order, Change change) {
+        if(window.put(change.root, change) == null) order.add(change.root);
+    }
+
+    /**
+     * Appends the given changes to the file in a single write
+     */
+    private void write(List<Change> changes, long oldest, int nbChanges) {
+        batch.clear();
+        for (Change change: changes) {
+            int size = recordHeaderSize + (change.record == null ? 0 : change.record.length);
+            if(batch.remaining() < size) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(2 * (batch.capacity() + size));
+                batch.flip();
+                batch = larger.put(batch);
+            }
+            Long handle = change.record == null ? handles.remove(change.root) : handles.get(change.root);
+            if(handle == null) {
+                if(change.record == null) continue;
+                handle = nextHandle++;
+                handles.put(change.root, handle);
+            }
+            batch.put(change.record == null ? removed : SnapshotFormat.changed);
+            batch.putLong(handle);
+            batch.put(change.root instanceof Entity ? entity : item);
+            if(change.record != null) {
+                batch.putInt(change.record.length);
+                batch.put(change.record);
+            } else {
+                batch.putInt(0);
+            }
+        }
+        batch.flip();
+        int nbBytes = batch.remaining();
+        IOException failure = null;
+        try {
+            while(batch.hasRemaining()) channel.write(batch);
+            channel.force(false);
+        } catch (IOException e) {
+            failure = e;
+        }
+        synchronized (this) {
+            if(failure != null) {
+                lastFailure = failure;
+            } else {
+                nbWritten += changes.size();
+                nbBytesWritten += nbBytes;
+            }
+            nbCoalesced += nbChanges - changes.size();
+            nbBatches++;
+            lagNanos = System.nanoTime() - oldest;
+            nbProcessed += nbChanges;
+            notifyAll();
+        }
+    }
+
+    /*
+        Metrics
+     */
+
+    private final AtomicLong nbSubmitted = new AtomicLong(0);
+
+    private long nbProcessed = 0;
+
+    private long nbWritten = 0;
+
+    private long nbCoalesced = 0;
+
+    private long nbBatches = 0;
+
+    private long nbBytesWritten = 0;
+
+    private long nbStalls = 0;
+
+    private long stallNanos = 0;
+
+    private long lagNanos = 0;
+
+    private Throwable lastFailure = null;
+
+    /**
+     * Returns the last failure of a batch or of the background thread, null if none
+     */
+    private synchronized Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Returns the number of changes waiting in the queue
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of records written to the file
+     */
+    public synchronized long getNbWritten() {
+        return nbWritten;
+    }
+
+    /**
+     * Returns the number of changes that were not written because a later change of the same entity or item on the
+     * ground was written in the same batch
+     */
+    public synchronized long getNbCoalesced() {
+        return nbCoalesced;
+    }
+
+    /**
+     * Returns the number of batches written
+     */
+    public synchronized long getNbBatches() {
+        return nbBatches;
+    }
+
+    /**
+     * Returns the number of bytes written to the file
+     */
+    public synchronized long getNbBytesWritten() {
+        return nbBytesWritten;
+    }
+
+    /**
+     * Returns the number of times a submitting thread had to wait because the queue was full
+     */
+    public synchronized long getNbStalls() {
+        return nbStalls;
+    }
+
+    /**
+     * Returns the total time submitting threads waited because the queue was full, in nanoseconds
+     */
+    public synchronized long getStallNanos() {
+        return stallNanos;
+    }
+
+    /**
+     * Returns the time between the submission of the oldest change of the last batch and the moment it was written,
+     * in nanoseconds
+     */
+    public synchronized long getLagNanos() {
+        return lagNanos;
+    }
+
+    /**
+     * Waits until every change submitted so far is written
+     *
+     * @throws  IOException
+     *          A batch could not be written, or the background thread stopped before writing every change
+     */
+    public void flush() throws IOException {
+        long target = nbSubmitted.get();
+        synchronized (this) {
+            try {
+                while(nbProcessed < target && flusher.isAlive()) wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            if(nbProcessed < target)
+                throw new IOException("The writer thread stopped before writing every change", lastFailure);
+            if(lastFailure != null) throw new IOException("A batch could not be written", lastFailure);
+        }
+    }
+
+    /**
+     * Stops accepting changes, writes every submitted change and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if(isClosed) return;
+            isClosed = true;
+        }
+        try {
+            flush();
+        } finally {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+    }
+
+    /*
+        Loading
+     */
+
+    /**
+     * Loads the last written state of every entity and item on the ground from the file at the given path
+     *
+     * @param   path
+     *          The path of the file to load
+     * @return  A new world with the last written state of every entity and item on the ground that was not removed,
+     *          in the order they were first written
+     * @throws  IOException
+     *          The file could not be read or is corrupt
+     */
+    public static World load(Path path) throws IOException {
+        Map<Long, Object> roots = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WorldSnapshotReader reader = new WorldSnapshotReader(channel);
+            while(!reader.isAtEnd()) {
+                ByteBuffer header = reader.require(recordHeaderSize);
+                byte tag = header.get();
+                long handle = header.getLong();
+                byte kind = header.get();
+                header.getInt(); // Number of bytes
+                if(tag == removed) {
+                    roots.remove(handle);
+                } else if(tag == SnapshotFormat.changed) {
+                    Object root = kind == entity ? reader.readEntity() : reader.readItemTree();
+                    roots.put(handle, root);
+                } else {
+                    throw new IOException("Unknown record: " + tag);
+                }
+            }
+        }
+        World world = new World();
+        for (Object root: roots.values()) {
+            if(root instanceof Entity) {
+                world.addEntity((Entity) root);
+            } else {
+                world.addItem((Item) root);
+            }
+        }
+        return world;
+    }
+}
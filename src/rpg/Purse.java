@@ -3,6 +3,7 @@ package rpg;
 import be.kuleuven.cs.som.annotate.Basic;
 import be.kuleuven.cs.som.annotate.Immutable;
 import be.kuleuven.cs.som.annotate.Model;
+import be.kuleuven.cs.som.annotate.Raw;
 import rpg.exceptions.BrokenItemException;
 
 /**
@@ -170,6 +171,27 @@ public class Purse extends Storage {
     private void setContents(int contents) throws IllegalArgumentException, BrokenItemException {
         if(isBroken()) throw new BrokenItemException(this);
         if(!canHaveAsContents(contents)) throw new IllegalArgumentException("Invalid contents for a purse");
+        countDucatsChanged(contents - this.contents);
+        this.contents = contents;
+        setValue(contents);
+    }
+
+    /**
+     * Sets the contents of this purse to the given contents without checking the capacity of its holder, as done when
+     * replaying trusted events
+     *
+     * @param   contents
+     *          The contents to set to
+     * @pre     The given contents are valid contents for this purse
+     *          | canHaveAsContents(contents)
+     * @post    The contents of this purse are set to the given contents
+     *          | new.getContents() == contents
+     * @effect  The value of this purse is set to the given contents
+     *          | setValue(contents)
+     */
+    @Raw
+    void restoreContents(int contents) {
+        if(!isBroken()) countDucatsChanged(contents - this.contents);
         this.contents = contents;
         setValue(contents);
     }
@@ -355,5 +377,16 @@ public class Purse extends Storage {
      */
     public void destroy() throws BrokenItemException {
         super.destroy();
+        countDucatsChanged(-getContents());
+    }
+
+    /**
+     * Registers that the contents of this purse changed with the given amount of ducats in the statistics of its world
+     * and the counts of the backpacks holding it
+     */
+    private void countDucatsChanged(long amount) {
+        Statistics statistics = getStatistics();
+        if(statistics != null) statistics.ducatsChanged(amount);
+        if(getHolder() instanceof Backpack) ((Backpack) getHolder()).countHeldDucatsChanged(amount);
     }
 }
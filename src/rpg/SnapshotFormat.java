@@ -0,0 +1,241 @@
+package rpg;
+
+import rpg.exceptions.BrokenItemException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A class collecting the constants of the binary world snapshot format
+ *
+ * A snapshot starts with a header (magic number, version, number of entities, number of items on the ground), followed
+ * by every entity and every item on the ground in pre-order: each entity record is followed by the records of the items
+ * it holds, each backpack record by the records of its contents. Entity records and backpack records store the number
+ * of item records that follow them as their contents, so holder relationships need not be stored explicitly. They also
+ * store the number of bytes those records take, so the contents of an entity or backpack can be skipped without
+ * reading them.
+ *
+ * @author  Corteville Andrew
+ */
+final class SnapshotFormat {
+
+    /**
+     * This class cannot be instantiated
+     */
+    private SnapshotFormat() {
+    }
+
+    /**
+     * The magic number every snapshot starts with ("RPGS")
+     */
+    static final int magic = 0x52504753;
+
+    /**
+     * The magic number every delta starts with ("RPGD")
+     *
+     * A delta has the same header as a snapshot, followed by every entity and every item on the ground, each either as
+     * a reference to its index in the previous state or as a full record.
+     */
+    static final int deltaMagic = 0x52504744;
+
+    /**
+     * The magic number every compact snapshot starts with ("RPGC")
+     *
+     * A compact snapshot has the same header as a snapshot, followed by deflated blocks, see CompactSnapshotWriter.
+     */
+    static final int compactMagic = 0x52504743;
+
+    /**
+     * The maximum number of uncompressed bytes in a block of a compact snapshot
+     */
+    static final int compactBlockSize = 1 << 18;
+
+    /**
+     * The current version of the snapshot format
+     */
+    static final short version = 2;
+
+    /**
+     * The size of the buffers used to stream snapshots
+     */
+    static final int bufferSize = 1 << 16;
+
+    /*
+        Entity kinds
+     */
+
+    static final byte hero = 1;
+
+    static final byte monster = 2;
+
+    /*
+        Item kinds
+     */
+
+    static final byte weapon = 1;
+
+    static final byte armor = 2;
+
+    static final byte backpack = 3;
+
+    static final byte purse = 4;
+
+    /**
+     * The anchor ordinal of items that are not held directly by an entity
+     */
+    static final byte noAnchor = -1;
+
+    /*
+        Delta tags
+     */
+
+    static final byte unchanged = 0;
+
+    static final byte changed = 1;
+
+    /*
+        Record sizes
+     */
+
+    /**
+     * The number of bytes of the header of a snapshot
+     */
+    static final int headerSize = 14;
+
+    /**
+     * The number of bytes of an entity record of the given kind, with a name of the given number of bytes
+     */
+    static int getEntityRecordSize(byte kind, int nameLength) {
+        return 3 + nameLength + 13 + (kind == monster ? 20 : 8) + 8;
+    }
+
+    /**
+     * The maximum number of UTF-8 bytes of the name of an entity, so its record fits in the buffer of a reader
+     */
+    static final int maxNameLength = bufferSize - getEntityRecordSize(monster, 0);
+
+    /**
+     * The number of bytes of an item record of the given kind, excluding the records of its contents
+     */
+    static int getItemRecordSize(byte kind) {
+        switch (kind) {
+            case weapon: return 23;
+            case backpack: return 39;
+            default: return 31;
+        }
+    }
+
+    /*
+        Decoding
+     */
+
+    /**
+     * Reads the header of a snapshot from the given buffer
+     *
+     * @effect  The header is read as a header of a snapshot
+     *          | result == readHeader(buffer, magic)
+     */
+    static int[] readHeader(ByteBuffer buffer) throws IOException {
+        return readHeader(buffer, magic);
+    }
+
+    /**
+     * Reads the header of a snapshot or delta, starting with the given magic number, from the given buffer
+     *
+     * @return  The number of entities and the number of items on the ground of the snapshot
+     * @throws  IOException
+     *          The buffer does not start with a header of the current version
+     */
+    static int[] readHeader(ByteBuffer buffer, int magic) throws IOException {
+        if(buffer.remaining() < headerSize || buffer.getInt() != magic) throw new IOException("Not a world snapshot");
+        short version = buffer.getShort();
+        if(version != SnapshotFormat.version) throw new IOException("Unsupported snapshot version: " + version);
+        return new int[]{buffer.getInt(), buffer.getInt()};
+    }
+
+    /**
+     * Reads an entity record from the given buffer, up to the number of item records and bytes of its contents
+     *
+     * @return  A new entity without items, restored from the record
+     * @throws  IOException
+     *          The record is of an unknown kind
+     */
+    static Entity readEntity(ByteBuffer buffer) throws IOException {
+        byte kind = buffer.get();
+        byte[] nameBytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(nameBytes);
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+        int maxHitPoints = buffer.getInt();
+        int hitPoints = buffer.getInt();
+        boolean isDead = buffer.get() == 1;
+        int anchorMask = buffer.getInt();
+
+        Entity entity;
+        if(kind == hero) {
+            entity = Hero.restore(name, maxHitPoints, hitPoints, buffer.getDouble());
+        } else if(kind == monster) {
+            Collection<Anchorpoint> anchors = new ArrayList<>();
+            for (Anchorpoint anchor: Anchorpoint.values()) {
+                if((anchorMask & (1 << anchor.ordinal())) != 0) anchors.add(anchor);
+            }
+            int protection = buffer.getInt();
+            int effectiveProtection = buffer.getInt();
+            int damage = buffer.getInt();
+            double capacity = buffer.getDouble();
+            entity = new Monster(name, maxHitPoints, hitPoints, anchors, protection, effectiveProtection, damage, capacity);
+        } else {
+            throw new IOException("Unknown entity kind: " + kind);
+        }
+        if(isDead) entity.die();
+        return entity;
+    }
+
+    /**
+     * Reads an item record from the given buffer, up to the number of items and bytes of the contents of backpacks
+     *
+     * @return  A new item on the ground, restored from the record
+     * @throws  IOException
+     *          The record is of an unknown kind, or is an armor of which the identification is not a prime
+     */
+    static Item readItem(ByteBuffer buffer) throws IOException {
+        byte kind = buffer.get();
+        buffer.get(); // Anchor
+        long id = buffer.getLong();
+        boolean isBroken = buffer.get() == 1;
+        double weight = buffer.getDouble();
+        Item item;
+        try {
+            if(kind == weapon) {
+                item = new Weapon(id, weight, buffer.getInt());
+            } else if(kind == armor) {
+                int value = buffer.getInt();
+                int maxProtection = buffer.getInt();
+                int effectiveProtection = buffer.getInt();
+                Armor armor = Armor.restore(id, weight, value, maxProtection);
+                if(effectiveProtection < maxProtection) armor.degrade(maxProtection - effectiveProtection);
+                item = armor;
+            } else if(kind == backpack) {
+                int value = buffer.getInt();
+                item = new Backpack(id, weight, value, buffer.getDouble());
+            } else if(kind == purse) {
+                int value = buffer.getInt();
+                int capacity = buffer.getInt();
+                Purse purse = new Purse(id, weight, capacity, buffer.getInt());
+                purse.setValue(value);
+                item = purse;
+            } else {
+                throw new IOException("Unknown item kind: " + kind);
+            }
+            if(isBroken && !item.isBroken()) item.destroy();
+        } catch (BrokenItemException e) {
+            // Should not happen
+            throw new IOException(e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid item record", e);
+        }
+        return item;
+    }
+}
@@ -0,0 +1,271 @@
+package rpg;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class of counters of the entities, items, ducats and fights of a world
+ *
+ * The entities of a world are the entities added to it, its items are the items on its ground and the items held
+ * directly or indirectly by its entities or by the items on its ground. The counters are maintained incrementally when
+ * entities and items join or leave the world, die or break, when the contents of its purses change and when its
+ * entities end a fight, so reading them never walks the world. Every backpack keeps the counts of the items it holds
+ * directly or indirectly, so an entity or item joining or leaving a world never walks the items it holds. Entities and items that belong to no world are not
+ * counted anywhere, so restoring a world from a snapshot or events only counts the restored objects in the restored
+ * world, and the counters of a world are collected together with it.
+ *
+ * Items that are not materialized yet are counted once they are materialized, so counting a world loaded lazily does
+ * not materialize it.
+ *
+ * @author  Corteville Andrew
+ */
+public final class Statistics {
+
+    /**
+     * Initializes these statistics without any entities, items, ducats or fights
+     */
+    Statistics() {
+    }
+
+    /**
+     * The kinds of entities that are counted separately, any other entity is counted as the last kind
+     */
+    private static final Class<?>[] entityKinds = {Hero.class, Monster.class, Entity.class};
+
+    /**
+     * The types of items that are counted separately, any other item is counted as the last type
+     */
+    private static final Class<?>[] itemTypes = {Weapon.class, Armor.class, Backpack.class, Purse.class, Item.class};
+
+    private final LongAdder[] alive = newAdders(entityKinds.length);
+
+    private final LongAdder[] dead = newAdders(entityKinds.length);
+
+    private final LongAdder[] items = newAdders(itemTypes.length);
+
+    private final LongAdder[] broken = newAdders(itemTypes.length);
+
+    private final LongAdder ducats = new LongAdder();
+
+    private final LongAdder fights = new LongAdder();
+
+    private static LongAdder[] newAdders(int length) {
+        LongAdder[] result = new LongAdder[length];
+        for (int i = 0; i < length; i++) result[i] = new LongAdder();
+        return result;
+    }
+
+    /**
+     * Returns the index of the given class in the given counted classes, or the index of the last one if it is not
+     * counted separately
+     */
+    private static int indexOf(Class<?>[] counted, Class<?> type) {
+        for (int i = 0; i < counted.length - 1; i++) {
+            if(counted[i] == type) return i;
+        }
+        return counted.length - 1;
+    }
+
+    /*
+        Updates
+     */
+
+    /**
+     * Moves the counts of the given entity and the items it holds from the statistics of the first given world to the
+     * ones of the second given world
+     *
+     * @param   entity
+     *          The entity that moved
+     * @param   from
+     *          The world the given entity belonged to, null if none
+     * @param   to
+     *          The world the given entity belongs to, null if none
+     */
+    static void moved(Entity entity, World from, World to) {
+        if(from == to) return;
+        if(from != null) from.getStatistics().add(entity, -1);
+        if(to != null) to.getStatistics().add(entity, 1);
+    }
+
+    /**
+     * Moves the counts of the given item and the items it holds from the statistics of the first given world to the
+     * ones of the second given world
+     *
+     * @param   item
+     *          The item that moved
+     * @param   from
+     *          The world the given item belonged to, null if none
+     * @param   to
+     *          The world the given item belongs to, null if none
+     */
+    static void moved(Item item, World from, World to) {
+        if(from == to) return;
+        if(from != null) from.getStatistics().add(item, -1);
+        if(to != null) to.getStatistics().add(item, 1);
+    }
+
+    /**
+     * Adds the given number of times the given entity and the items it holds
+     */
+    private void add(Entity entity, int times) {
+        (entity.isDead() ? dead : alive)[indexOf(entityKinds, entity.getClass())].add(times);
+        if(entity.hasPendingItems()) return;
+        for (Anchorpoint anchor: entity.getAnchorPoints()) {
+            Item item = entity.getItemAt(anchor);
+            if(item != null) add(item, times);
+        }
+    }
+
+    /**
+     * Adds the given number of times the given item and the items it holds
+     */
+    private void add(Item item, int times) {
+        (item.isBroken() ? broken : items)[indexOf(itemTypes, item.getClass())].add(times);
+        if(item instanceof Purse && !item.isBroken()) ducats.add((long) times * ((Purse) item).getContents());
+        if(item instanceof Backpack) {
+            Counts held = ((Backpack) item).getHeldCounts();
+            for (int i = 0; i < itemTypes.length; i++) {
+                if(held.items[i] != 0) items[i].add((long) times * held.items[i]);
+                if(held.broken[i] != 0) broken[i].add((long) times * held.broken[i]);
+            }
+            if(held.ducats != 0) ducats.add(times * held.ducats);
+        }
+    }
+
+    /**
+     * Registers that the given entity died
+     */
+    void entityDied(Entity entity) {
+        int index = indexOf(entityKinds, entity.getClass());
+        alive[index].decrement();
+        dead[index].increment();
+    }
+
+    /**
+     * Registers that the given item broke
+     */
+    void itemBroken(Item item) {
+        int index = indexOf(itemTypes, item.getClass());
+        items[index].decrement();
+        broken[index].increment();
+    }
+
+    /**
+     * Registers that the contents of a purse changed with the given amount of ducats
+     */
+    void ducatsChanged(long amount) {
+        ducats.add(amount);
+    }
+
+    /**
+     * Registers that a fight ended
+     */
+    void fightEnded() {
+        fights.increment();
+    }
+
+    /**
+     * A class of counts of the items held directly or indirectly by a backpack, by type and broken state, together with
+     * the ducats in the purses among them that are not broken
+     *
+     * @note    Items that are not materialized yet are counted once they are materialized.
+     */
+    static final class Counts {
+
+        private final int[] items = new int[itemTypes.length];
+
+        private final int[] broken = new int[itemTypes.length];
+
+        private long ducats = 0;
+
+        /**
+         * Adds the given number of times the given item and the items it holds
+         */
+        void add(Item item, int times) {
+            int index = indexOf(itemTypes, item.getClass());
+            (item.isBroken() ? broken : items)[index] += times;
+            if(item instanceof Purse && !item.isBroken()) ducats += (long) times * ((Purse) item).getContents();
+            if(item instanceof Backpack) {
+                Counts held = ((Backpack) item).getHeldCounts();
+                for (int i = 0; i < itemTypes.length; i++) {
+                    items[i] += times * held.items[i];
+                    broken[i] += times * held.broken[i];
+                }
+                ducats += times * held.ducats;
+            }
+        }
+
+        /**
+         * Registers that the given item broke
+         */
+        void itemBroken(Item item) {
+            int index = indexOf(itemTypes, item.getClass());
+            items[index]--;
+            broken[index]++;
+        }
+
+        /**
+         * Registers that the contents of a purse changed with the given amount of ducats
+         */
+        void ducatsChanged(long amount) {
+            ducats += amount;
+        }
+    }
+
+    /*
+        Queries
+     */
+
+    /**
+     * Returns the number of entities of the given kind that are alive
+     *
+     * @param   kind
+     *          Hero.class, Monster.class or Entity.class for entities of any other class
+     */
+    public long getNbAlive(Class<? extends Entity> kind) {
+        return alive[indexOf(entityKinds, kind)].sum();
+    }
+
+    /**
+     * Returns the number of entities of the given kind that are dead
+     *
+     * @param   kind
+     *          Hero.class, Monster.class or Entity.class for entities of any other class
+     */
+    public long getNbDead(Class<? extends Entity> kind) {
+        return dead[indexOf(entityKinds, kind)].sum();
+    }
+
+    /**
+     * Returns the number of items of the given type that are not broken
+     *
+     * @param   type
+     *          Weapon.class, Armor.class, Backpack.class, Purse.class or Item.class for items of any other class
+     */
+    public long getNbItems(Class<? extends Item> type) {
+        return items[indexOf(itemTypes, type)].sum();
+    }
+
+    /**
+     * Returns the number of items of the given type that are broken
+     *
+     * @param   type
+     *          Weapon.class, Armor.class, Backpack.class, Purse.class or Item.class for items of any other class
+     */
+    public long getNbBroken(Class<? extends Item> type) {
+        return broken[indexOf(itemTypes, type)].sum();
+    }
+
+    /**
+     * Returns the total number of ducats in purses that are not broken
+     */
+    public long getNbDucats() {
+        return ducats.sum();
+    }
+
+    /**
+     * Returns the number of fights that ended
+     */
+    public long getNbFights() {
+        return fights.sum();
+    }
+}
@@ -0,0 +1,178 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A class of embedded HTTP servers exposing the statistics of a world on the loopback interface
+ *
+ * A GET request of /stats returns a line per value in a plain text format: the number of alive and dead entities of
+ * every kind, the number of items and broken items of every type, the total number of ducats in purses, the number of
+ * fights and the number of fights per second since the previous request. If the installed metrics recorder keeps its
+ * counters in memory, the counters and latency histograms of every operation follow. Every value is read from counters
+ * that are maintained while the world changes, so a request never walks the world.
+ *
+ * The server only accepts connections from the local host and answers requests on a single background thread.
+ *
+ * @author  Corteville Andrew
+ */
+public class StatsServer implements AutoCloseable {
+
+    /**
+     * The path the statistics are exposed at
+     */
+    private static final String path = "/stats";
+
+    /**
+     * The kinds of entities of which the statistics are exposed
+     */
+    private static final List<Class<? extends Entity>> entityKinds = List.of(Hero.class, Monster.class);
+
+    /**
+     * The types of items of which the statistics are exposed
+     */
+    private static final List<Class<? extends Item>> itemTypes =
+            List.of(Weapon.class, Armor.class, Backpack.class, Purse.class);
+
+    /**
+     * Initializes this server exposing the statistics of the given world on the given port of the loopback interface
+     * and starts it
+     *
+     * @param   world
+     *          The world of which the statistics are exposed
+     * @param   port
+     *          The port to listen on, 0 to listen on a free port
+     * @post    The world of this new server is set to the given world
+     *          | new.getWorld() == world
+     * @post    This new server listens on the given port, or on a free port if the given port is 0
+     *          | port == 0 || new.getPort() == port
+     * @throws  IllegalArgumentException
+     *          The given world is not effective
+     *          | world == null
+     * @throws  IllegalArgumentException
+     *          The given port is not a valid port
+     *          | port < 0 || port > 65535
+     * @throws  IOException
+     *          The server could not listen on the given port
+     */
+    public StatsServer(World world, int port) throws IllegalArgumentException, IOException {
+        if(world == null) throw new IllegalArgumentException("The given world is not effective");
+        if(port < 0 || port > 65535) throw new IllegalArgumentException("The given port is not a valid port");
+        this.world = world;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext(path, this::handle);
+        this.server.start();
+        this.lastNanos = System.nanoTime();
+        this.lastFights = world.getStatistics().getNbFights();
+    }
+
+    /**
+     * Variable referencing the world of which this server exposes the statistics
+     */
+    private final World world;
+
+    /**
+     * Returns the world of which this server exposes the statistics
+     */
+    @Basic @Immutable
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Variable referencing the server answering the requests
+     */
+    private final HttpServer server;
+
+    /**
+     * Returns the port this server listens on
+     */
+    @Basic @Immutable
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * The time and number of fights of the previous request
+     */
+    private long lastNanos;
+
+    private long lastFights;
+
+    /**
+     * Answers the given request with the statistics, or with an error if it is not a GET request of the exposed path
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if(!exchange.getRequestURI().getPath().equals(path)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if(!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics in a plain text format, one value per line
+     */
+    public synchronized String scrape() {
+        Statistics statistics = world.getStatistics();
+        StringBuilder result = new StringBuilder();
+        for (Class<? extends Entity> kind: entityKinds) {
+            String name = kind.getSimpleName().toLowerCase();
+            result.append(String.format("rpg_entities{kind=\"%s\",state=\"alive\"} %d\n", name,
+                    statistics.getNbAlive(kind)));
+            result.append(String.format("rpg_entities{kind=\"%s\",state=\"dead\"} %d\n", name,
+                    statistics.getNbDead(kind)));
+        }
+        for (Class<? extends Item> type: itemTypes) {
+            String name = type.getSimpleName().toLowerCase();
+            result.append(String.format("rpg_items{type=\"%s\",state=\"intact\"} %d\n", name,
+                    statistics.getNbItems(type)));
+            result.append(String.format("rpg_items{type=\"%s\",state=\"broken\"} %d\n", name,
+                    statistics.getNbBroken(type)));
+        }
+        result.append(String.format("rpg_ducats_total %d\n", statistics.getNbDucats()));
+
+        long nanos = System.nanoTime();
+        long fights = statistics.getNbFights();
+        double seconds = (nanos - lastNanos) / 1e9;
+        result.append(String.format("rpg_fights_total %d\n", fights));
+        result.append(String.format(Locale.ROOT, "rpg_fights_per_second %.3f\n",
+                seconds > 0 ? (fights - lastFights) / seconds : 0));
+        lastNanos = nanos;
+        lastFights = fights;
+
+        MetricsRecorder recorder = Metrics.getRecorder();
+        if(recorder instanceof InMemoryMetrics) result.append(((InMemoryMetrics) recorder).scrape());
+        return result.toString();
+    }
+
+    /**
+     * Stops this server, waiting at most a second for the requests being answered
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+    }
+}
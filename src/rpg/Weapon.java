@@ -36,6 +36,32 @@ public class Weapon extends Item implements Degradable {
         setDamage(damage);
     }
 
+    /**
+     * Initializes this weapon with the given identification, weight and damage, as restored from a snapshot
+     *
+     * @param   id
+     *          The identification of the restored weapon
+     * @param   weight
+     *          The weight of the restored weapon
+     * @param   damage
+     *          The damage of the restored weapon
+     *
+     * @effect  Initializes this weapon with the given identification, weight and value gained from the given damage
+     *          | super(id, weight, getValueFromDamage(damage))
+     * @effect  Sets the damage of this weapon to the given damage
+     *          | setDamage(damage)
+     * @post    The identifications generated for new weapons are greater than the identification of this weapon
+     *          | Weapon.getCurrentId() > getId()
+     */
+    @Raw
+    Weapon(long id, double weight, int damage) {
+        super(id, weight, getValueFromDamage(damage));
+        setDamage(damage);
+        synchronized (Weapon.class) {
+            if(getId() >= getCurrentId()) Weapon.currentId = getId() + 6;
+        }
+    }
+
     /*
         Identification (TOTAL)
      */
@@ -63,7 +89,7 @@ public class Weapon extends Item implements Degradable {
      * @return  Returns the lowest unused valid identification (aka currentId)
      *          | result == (old Weapon).getCurrentId()
      */
-    private static long getNextId() {
+    static synchronized long getNextId() {
         long id = getCurrentId();
         incrementCurrentId();
         return id;
@@ -157,8 +183,8 @@ public class Weapon extends Item implements Degradable {
     @Model @Raw
     private void setDamage(int damage) throws  IllegalArgumentException {
         assert isValidDamage(damage): damage + " is an invalid damage"; // Dynamic Verification
-        setValue(getValueFromDamage(damage));
         this.damage = damage;
+        setValue(getValueFromDamage(damage));
     }
 
     /**
@@ -184,12 +210,15 @@ public class Weapon extends Item implements Degradable {
     @Override
     @Raw
     public void degrade(int amount) throws BrokenItemException {
+        long start = Metrics.start();
         if(isBroken()) throw new BrokenItemException(this);
         if(amount >= getDamage()) {
             discard();
         } else {
             setDamage(getDamage() - amount);
         }
+        InvariantSampler.sample(this);
+        Metrics.record(MetricsRecorder.Operation.DEGRADE, start);
     }
 
     /**
@@ -209,8 +238,11 @@ public class Weapon extends Item implements Degradable {
      */
     @Override
     public void repair(int amount) throws BrokenItemException {
+        long start = Metrics.start();
         if(isBroken()) throw new BrokenItemException(this);
         setDamage(getDamage() + amount);
+        InvariantSampler.sample(this);
+        Metrics.record(MetricsRecorder.Operation.REPAIR, start);
     }
 
     /**
@@ -0,0 +1,210 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.util.*;
+
+/**
+ * A class of worlds, containing entities and the items that lie on the ground
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each world has proper entities
+ *          | for each entity in getEntities():
+ *          |   entity != null
+ * @invar   Each world has proper items
+ *          | for each item in getItems():
+ *          |   item != null && item.liesOnGround()
+ * @invar   Each entity and item belongs to at most one world
+ */
+public class World {
+
+    /**
+     * Initializes this world without entities or items
+     *
+     * @post    This new world has no entities
+     *          | new.getNbEntities() == 0
+     * @post    This new world has no items
+     *          | new.getNbItems() == 0
+     */
+    public World() {
+    }
+
+    /**
+     * Variable referencing the statistics of this world
+     */
+    private final Statistics statistics = new Statistics();
+
+    /**
+     * Returns the statistics of the entities and items of this world
+     */
+    @Basic @Immutable
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /*
+        Entities
+     */
+
+    /**
+     * Variable referencing the entities of this world
+     *
+     * @invar   entities references an effective set
+     *          | entities != null
+     */
+    private final Set<Entity> entities = new LinkedHashSet<>();
+
+    /**
+     * Returns the entities of this world
+     */
+    @Basic
+    public Set<Entity> getEntities() {
+        return Collections.unmodifiableSet(entities);
+    }
+
+    /**
+     * Returns the number of entities of this world
+     */
+    public int getNbEntities() {
+        return entities.size();
+    }
+
+    /**
+     * Checks if the given entity is an entity of this world
+     *
+     * @param   entity
+     *          The entity to check
+     * @return  True if and only if the given entity is an entity of this world
+     *          | result == getEntities().contains(entity)
+     */
+    public boolean hasAsEntity(Entity entity) {
+        return entities.contains(entity);
+    }
+
+    /**
+     * Adds the given entity to this world
+     *
+     * @param   entity
+     *          The entity to add
+     * @post    The given entity is an entity of this world
+     *          | new.hasAsEntity(entity)
+     * @effect  The given entity and the items it holds are counted in the statistics of this world
+     * @throws  IllegalArgumentException
+     *          The given entity is not effective
+     *          | entity == null
+     * @throws  IllegalArgumentException
+     *          The given entity is an entity of another world
+     */
+    public void addEntity(Entity entity) throws IllegalArgumentException {
+        if(entity == null) throw new IllegalArgumentException("The given entity is not effective");
+        if(entity.getWorld() != null && entity.getWorld() != this)
+            throw new IllegalArgumentException("The given entity is an entity of another world");
+        if(entities.add(entity)) entity.setWorld(this);
+    }
+
+    /**
+     * Removes the given entity from this world
+     *
+     * @param   entity
+     *          The entity to remove
+     * @post    The given entity is no longer an entity of this world
+     *          | !new.hasAsEntity(entity)
+     * @effect  The given entity and the items it holds are no longer counted in the statistics of this world
+     */
+    public void removeEntity(Entity entity) {
+        if(entities.remove(entity)) entity.setWorld(null);
+    }
+
+    /*
+        Items
+     */
+
+    /**
+     * Variable referencing the items that lie on the ground of this world
+     *
+     * @invar   items references an effective set
+     *          | items != null
+     */
+    private final Set<Item> items = new LinkedHashSet<>();
+
+    /**
+     * Returns the items that lie on the ground of this world
+     */
+    @Basic
+    public Set<Item> getItems() {
+        return Collections.unmodifiableSet(items);
+    }
+
+    /**
+     * Returns the number of items that lie on the ground of this world
+     */
+    public int getNbItems() {
+        return items.size();
+    }
+
+    /**
+     * Checks if the given item lies on the ground of this world
+     *
+     * @param   item
+     *          The item to check
+     * @return  True if and only if the given item lies on the ground of this world
+     *          | result == getItems().contains(item)
+     */
+    public boolean hasAsItem(Item item) {
+        return items.contains(item);
+    }
+
+    /**
+     * Adds the given item to the ground of this world
+     *
+     * @param   item
+     *          The item to add
+     * @post    The given item lies on the ground of this world
+     *          | new.hasAsItem(item)
+     * @effect  The given item and the items it holds are counted in the statistics of this world
+     * @throws  IllegalArgumentException
+     *          The given item is not effective
+     *          | item == null
+     * @throws  IllegalArgumentException
+     *          The given item does not lie on the ground
+     *          | !item.liesOnGround()
+     * @throws  IllegalArgumentException
+     *          The given item lies on the ground of another world
+     */
+    public void addItem(Item item) throws IllegalArgumentException {
+        if(item == null) throw new IllegalArgumentException("The given item is not effective");
+        if(!item.liesOnGround()) throw new IllegalArgumentException("The given item doesn't lie on the ground");
+        if(item.getGroundWorld() != null && item.getGroundWorld() != this)
+            throw new IllegalArgumentException("The given item lies on the ground of another world");
+        if(items.add(item)) item.setGroundWorld(this);
+    }
+
+    /**
+     * Removes the given item from the ground of this world
+     *
+     * @param   item
+     *          The item to remove
+     * @post    The given item no longer lies on the ground of this world
+     *          | !new.hasAsItem(item)
+     * @effect  Unless the given item belongs to this world through its holder, the given item and the items it holds
+     *          are no longer counted in the statistics of this world
+     */
+    public void removeItem(Item item) {
+        if(items.remove(item)) item.setGroundWorld(null);
+    }
+
+    /**
+     * Removes the given item from the ground of this world without changing the item, as done when it is picked up
+     *
+     * @param   item
+     *          The item to remove
+     * @post    The given item no longer lies on the ground of this world
+     *          | !new.hasAsItem(item)
+     * @note    Only to be invoked by the item itself, which moves its counts to the world of its new holder.
+     */
+    void forgetItem(Item item) {
+        items.remove(item);
+    }
+}
@@ -0,0 +1,489 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A class of domain events, describing a single change of the state of a world
+ *
+ * Entities and items are referenced by keys, assigned by the source of the events when they are created. Keys are
+ * unique over all entities and items of a stream of events, unlike the identifications of items.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each event references only non-negative keys
+ */
+public abstract class WorldEvent {
+
+    /**
+     * The key used to reference no entity or item
+     */
+    public static final long noKey = -1;
+
+    /**
+     * Initializes this event
+     */
+    private WorldEvent() {
+    }
+
+    /**
+     * Returns the keys of the entities and items this event reads or changes
+     */
+    abstract long[] getKeys();
+
+    /**
+     * Checks whether the given key is a valid key for an entity or item
+     *
+     * @return  True if and only if the given key is not negative
+     *          | result == key >= 0
+     */
+    public static boolean isValidKey(long key) {
+        return key >= 0;
+    }
+
+    /**
+     * Throws an IllegalArgumentException if the given key is not valid
+     */
+    private static long checkKey(long key) throws IllegalArgumentException {
+        if(!isValidKey(key)) throw new IllegalArgumentException("Invalid key: " + key);
+        return key;
+    }
+
+    /**
+     * A class of events creating a hero or monster without items
+     */
+    public static final class EntityCreated extends WorldEvent {
+
+        private EntityCreated(long key, Class<? extends Entity> type, String name, int maxHitPoints, int hitPoints) {
+            if(name == null) throw new IllegalArgumentException("The given name is not effective");
+            this.key = checkKey(key);
+            this.type = type;
+            this.name = name;
+            this.maxHitPoints = maxHitPoints;
+            this.hitPoints = hitPoints;
+        }
+
+        /**
+         * Returns an event creating a hero with the given key, name, hit points and strength
+         *
+         * @throws  IllegalArgumentException
+         *          The given key is not valid or the given name is not effective
+         */
+        public static EntityCreated hero(long key, String name, int maxHitPoints, int hitPoints, double strength)
+                throws IllegalArgumentException {
+            EntityCreated event = new EntityCreated(key, Hero.class, name, maxHitPoints, hitPoints);
+            event.strength = strength;
+            return event;
+        }
+
+        /**
+         * Returns an event creating a monster with the given key, name, hit points, anchors, protection, damage and
+         * capacity
+         *
+         * @throws  IllegalArgumentException
+         *          The given key is not valid or the given name or anchors are not effective
+         */
+        public static EntityCreated monster(long key, String name, int maxHitPoints, int hitPoints,
+                Collection<Anchorpoint> anchors, int protection, int damage, double capacity) throws IllegalArgumentException {
+            if(anchors == null) throw new IllegalArgumentException("The given anchors are not effective");
+            EntityCreated event = new EntityCreated(key, Monster.class, name, maxHitPoints, hitPoints);
+            event.anchors = List.copyOf(anchors);
+            event.protection = protection;
+            event.damage = damage;
+            event.capacity = capacity;
+            return event;
+        }
+
+        private final long key;
+
+        private final Class<? extends Entity> type;
+
+        private final String name;
+
+        private final int maxHitPoints;
+
+        private final int hitPoints;
+
+        private double strength = 0;
+
+        private List<Anchorpoint> anchors = List.of();
+
+        private int protection = 0;
+
+        private int damage = 0;
+
+        private double capacity = 0;
+
+        /**
+         * Returns the key of the created entity
+         */
+        @Basic @Immutable
+        public long getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the class of the created entity, Hero or Monster
+         */
+        @Basic @Immutable
+        public Class<? extends Entity> getType() {
+            return type;
+        }
+
+        @Basic @Immutable
+        public String getName() {
+            return name;
+        }
+
+        @Basic @Immutable
+        public int getMaxHitPoints() {
+            return maxHitPoints;
+        }
+
+        @Basic @Immutable
+        public int getHitPoints() {
+            return hitPoints;
+        }
+
+        /**
+         * Returns the strength of the created hero, 0 for monsters
+         */
+        @Basic @Immutable
+        public double getStrength() {
+            return strength;
+        }
+
+        /**
+         * Returns the anchors of the created monster, heroes have default anchors
+         */
+        @Basic @Immutable
+        public List<Anchorpoint> getAnchors() {
+            return anchors;
+        }
+
+        /**
+         * Returns the protection of the created monster
+         */
+        @Basic @Immutable
+        public int getProtection() {
+            return protection;
+        }
+
+        /**
+         * Returns the damage of the created monster
+         */
+        @Basic @Immutable
+        public int getDamage() {
+            return damage;
+        }
+
+        /**
+         * Returns the capacity of the created monster
+         */
+        @Basic @Immutable
+        public double getCapacity() {
+            return capacity;
+        }
+
+        @Override
+        long[] getKeys() {
+            return new long[]{key};
+        }
+    }
+
+    /**
+     * A class of events creating an item on the ground
+     */
+    public static final class ItemCreated extends WorldEvent {
+
+        private ItemCreated(long key, Class<? extends Item> type, long id, double weight, int value) {
+            this.key = checkKey(key);
+            this.type = type;
+            this.id = id;
+            this.weight = weight;
+            this.value = value;
+        }
+
+        /**
+         * Returns an event creating a weapon with the given key, identification, weight and damage
+         */
+        public static ItemCreated weapon(long key, long id, double weight, int damage) throws IllegalArgumentException {
+            ItemCreated event = new ItemCreated(key, Weapon.class, id, weight, 0);
+            event.amount = damage;
+            return event;
+        }
+
+        /**
+         * Returns an event creating an armor with the given key, identification, weight, value and maximum protection
+         */
+        public static ItemCreated armor(long key, long id, double weight, int value, int maxProtection)
+                throws IllegalArgumentException {
+            ItemCreated event = new ItemCreated(key, Armor.class, id, weight, value);
+            event.amount = maxProtection;
+            return event;
+        }
+
+        /**
+         * Returns an event creating an empty backpack with the given key, identification, weight, value and capacity
+         */
+        public static ItemCreated backpack(long key, long id, double weight, int value, double capacity)
+                throws IllegalArgumentException {
+            ItemCreated event = new ItemCreated(key, Backpack.class, id, weight, value);
+            event.capacity = capacity;
+            return event;
+        }
+
+        /**
+         * Returns an event creating a purse with the given key, weight, capacity and contents
+         */
+        public static ItemCreated purse(long key, double weight, int capacity, int contents)
+                throws IllegalArgumentException {
+            ItemCreated event = new ItemCreated(key, Purse.class, 0, weight, contents);
+            event.capacity = capacity;
+            event.amount = contents;
+            return event;
+        }
+
+        private final long key;
+
+        private final Class<? extends Item> type;
+
+        private final long id;
+
+        private final double weight;
+
+        private final int value;
+
+        private int amount = 0;
+
+        private double capacity = 0;
+
+        /**
+         * Returns the key of the created item
+         */
+        @Basic @Immutable
+        public long getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the class of the created item, Weapon, Armor, Backpack or Purse
+         */
+        @Basic @Immutable
+        public Class<? extends Item> getType() {
+            return type;
+        }
+
+        @Basic @Immutable
+        public long getId() {
+            return id;
+        }
+
+        @Basic @Immutable
+        public double getWeight() {
+            return weight;
+        }
+
+        /**
+         * Returns the value of the created armor or backpack
+         */
+        @Basic @Immutable
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the damage of a weapon, the maximum protection of an armor or the contents of a purse
+         */
+        @Basic @Immutable
+        public int getAmount() {
+            return amount;
+        }
+
+        /**
+         * Returns the capacity of a backpack or purse
+         */
+        @Basic @Immutable
+        public double getCapacity() {
+            return capacity;
+        }
+
+        @Override
+        long[] getKeys() {
+            return new long[]{key};
+        }
+    }
+
+    /**
+     * A class of events in which an entity or backpack picks up an item from the ground
+     */
+    public static final class ItemPickedUp extends WorldEvent {
+
+        /**
+         * Initializes this event for the given item, picked up by the given holder at the given anchor
+         *
+         * @param   anchor
+         *          The anchor at which an entity holds the item, null if the holder is a backpack
+         */
+        public ItemPickedUp(long itemKey, long holderKey, Anchorpoint anchor) throws IllegalArgumentException {
+            this.itemKey = checkKey(itemKey);
+            this.holderKey = checkKey(holderKey);
+            this.anchor = anchor;
+        }
+
+        private final long itemKey;
+
+        private final long holderKey;
+
+        private final Anchorpoint anchor;
+
+        @Basic @Immutable
+        public long getItemKey() {
+            return itemKey;
+        }
+
+        @Basic @Immutable
+        public long getHolderKey() {
+            return holderKey;
+        }
+
+        @Basic @Immutable
+        public Anchorpoint getAnchor() {
+            return anchor;
+        }
+
+        @Override
+        long[] getKeys() {
+            return new long[]{itemKey, holderKey};
+        }
+    }
+
+    /**
+     * A class of events in which the holder of an item drops it on the ground
+     */
+    public static final class ItemDropped extends WorldEvent {
+
+        public ItemDropped(long itemKey) throws IllegalArgumentException {
+            this.itemKey = checkKey(itemKey);
+        }
+
+        private final long itemKey;
+
+        @Basic @Immutable
+        public long getItemKey() {
+            return itemKey;
+        }
+
+        @Override
+        long[] getKeys() {
+            return new long[]{itemKey};
+        }
+    }
+
+    /**
+     * A class of events in which an entity loses hit points
+     */
+    public static final class EntityDamaged extends WorldEvent {
+
+        public EntityDamaged(long entityKey, int amount) throws IllegalArgumentException {
+            this.entityKey = checkKey(entityKey);
+            this.amount = amount;
+        }
+
+        private final long entityKey;
+
+        private final int amount;
+
+        @Basic @Immutable
+        public long getEntityKey() {
+            return entityKey;
+        }
+
+        @Basic @Immutable
+        public int getAmount() {
+            return amount;
+        }
+
+        @Override
+        long[] getKeys() {
+            return new long[]{entityKey};
+        }
+    }
+
+    /**
+     * A class of events in which an entity dies
+     */
+    public static final class EntityDied extends WorldEvent {
+
+        public EntityDied(long entityKey) throws IllegalArgumentException {
+            this.entityKey = checkKey(entityKey);
+        }
+
+        private final long entityKey;
+
+        @Basic @Immutable
+        public long getEntityKey() {
+            return entityKey;
+        }
+
+        @Override
+        long[] getKeys() {
+            return new long[]{entityKey};
+        }
+    }
+
+    /**
+     * A class of events in which ducats are added to, removed from or moved between purses
+     */
+    public static final class DucatsMoved extends WorldEvent {
+
+        /**
+         * Initializes this event moving the given amount of ducats from the given purse to the given purse
+         *
+         * @param   fromKey
+         *          The key of the purse losing the ducats, or noKey if the ducats are added
+         * @param   toKey
+         *          The key of the purse receiving the ducats, or noKey if the ducats are removed
+         * @throws  IllegalArgumentException
+         *          Neither key references a purse
+         *          | fromKey == noKey && toKey == noKey
+         */
+        public DucatsMoved(long fromKey, long toKey, int amount) throws IllegalArgumentException {
+            if(fromKey == noKey && toKey == noKey) throw new IllegalArgumentException("No purse is given");
+            this.fromKey = fromKey == noKey ? noKey : checkKey(fromKey);
+            this.toKey = toKey == noKey ? noKey : checkKey(toKey);
+            this.amount = amount;
+        }
+
+        private final long fromKey;
+
+        private final long toKey;
+
+        private final int amount;
+
+        @Basic @Immutable
+        public long getFromKey() {
+            return fromKey;
+        }
+
+        @Basic @Immutable
+        public long getToKey() {
+            return toKey;
+        }
+
+        @Basic @Immutable
+        public int getAmount() {
+            return amount;
+        }
+
+        @Override
+        long[] getKeys() {
+            if(fromKey == noKey) return new long[]{toKey};
+            if(toKey == noKey) return new long[]{fromKey};
+            return new long[]{fromKey, toKey};
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class of appliers of trusted domain events to a world
+ *
+ * Events are assumed to have been produced by a consistent world, so they are applied without re-validating them:
+ * items are attached to their holders without checking canPickup or canHaveAsHolder, and ducats are moved without
+ * checking the capacity of the holders of purses. Events of which the keys do not reference an entity or item of the
+ * right class are rejected. Created armors keep the identification of their event, even while the armor that produced
+ * it is still in memory.
+ *
+ * Events that reference disjoint entities and items may be applied concurrently.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each applier references an effective world
+ *          | getWorld() != null
+ */
+public class WorldEventApplier {
+
+    /**
+     * Initializes this applier for the given world
+     *
+     * @param   world
+     *          The world to which events are applied
+     * @post    The world of this new applier is set to the given world
+     *          | new.getWorld() == world
+     * @throws  IllegalArgumentException
+     *          The given world is not effective
+     *          | world == null
+     */
+    public WorldEventApplier(World world) throws IllegalArgumentException {
+        if(world == null) throw new IllegalArgumentException("The given world is not effective");
+        this.world = world;
+    }
+
+    /**
+     * Variable referencing the world of this applier
+     */
+    private final World world;
+
+    /**
+     * Returns the world to which this applier applies events
+     */
+    @Basic @Immutable
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Variable referencing the entities and items created by this applier, mapped on their keys
+     */
+    private final Map<Long, Object> objects = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the entity with the given key
+     *
+     * @throws  IllegalArgumentException
+     *          No entity with the given key was created
+     */
+    public Entity getEntity(long key) throws IllegalArgumentException {
+        return get(key, Entity.class);
+    }
+
+    /**
+     * Returns the item with the given key
+     *
+     * @throws  IllegalArgumentException
+     *          No item with the given key was created
+     */
+    public Item getItem(long key) throws IllegalArgumentException {
+        return get(key, Item.class);
+    }
+
+    /**
+     * Returns the object with the given key, if it is of the given class
+     */
+    private <T> T get(long key, Class<T> type) throws IllegalArgumentException {
+        Object object = objects.get(key);
+        if(!type.isInstance(object))
+            throw new IllegalArgumentException(String.format("Key %d does not reference a %s", key, type.getSimpleName()));
+        return type.cast(object);
+    }
+
+    /**
+     * Registers the given object with the given key
+     */
+    private void register(long key, Object object) throws IllegalArgumentException {
+        if(objects.putIfAbsent(key, object) != null) throw new IllegalArgumentException("Key " + key + " is already used");
+    }
+
+    /**
+     * Applies the given event to the world of this applier
+     *
+     * @param   event
+     *          The event to apply
+     * @throws  IllegalArgumentException
+     *          The given event is not effective or references entities or items that do not exist or are of the wrong
+     *          class
+     */
+    public void apply(WorldEvent event) throws IllegalArgumentException {
+        if(event == null) throw new IllegalArgumentException("The given event is not effective");
+        if(event instanceof WorldEvent.EntityCreated) {
+            apply((WorldEvent.EntityCreated) event);
+        } else if(event instanceof WorldEvent.ItemCreated) {
+            apply((WorldEvent.ItemCreated) event);
+        } else if(event instanceof WorldEvent.ItemPickedUp) {
+            apply((WorldEvent.ItemPickedUp) event);
+        } else if(event instanceof WorldEvent.ItemDropped) {
+            Item item = getItem(((WorldEvent.ItemDropped) event).getItemKey());
+            if(item.liesOnGround()) throw new IllegalArgumentException("The item lies on the ground");
+            item.getHolder().drop(item);
+            synchronized (world) {
+                world.addItem(item);
+            }
+        } else if(event instanceof WorldEvent.EntityDamaged) {
+            Entity entity = getEntity(((WorldEvent.EntityDamaged) event).getEntityKey());
+            entity.setHitPoints(Math.max(0, entity.getHitPoints() - ((WorldEvent.EntityDamaged) event).getAmount()));
+        } else if(event instanceof WorldEvent.EntityDied) {
+            getEntity(((WorldEvent.EntityDied) event).getEntityKey()).die();
+        } else if(event instanceof WorldEvent.DucatsMoved) {
+            WorldEvent.DucatsMoved moved = (WorldEvent.DucatsMoved) event;
+            if(moved.getFromKey() != WorldEvent.noKey) {
+                Purse from = get(moved.getFromKey(), Purse.class);
+                from.restoreContents(from.getContents() - moved.getAmount());
+            }
+            if(moved.getToKey() != WorldEvent.noKey) {
+                Purse to = get(moved.getToKey(), Purse.class);
+                to.restoreContents(to.getContents() + moved.getAmount());
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported event: " + event.getClass());
+        }
+    }
+
+    /**
+     * Creates the entity of the given event
+     */
+    private void apply(WorldEvent.EntityCreated event) {
+        Entity entity;
+        if(event.getType() == Hero.class) {
+            entity = Hero.restore(event.getName(), event.getMaxHitPoints(), event.getHitPoints(), event.getStrength());
+        } else {
+            entity = new Monster(event.getName(), event.getMaxHitPoints(), event.getHitPoints(), event.getAnchors(),
+                    event.getProtection(), event.getProtection(), event.getDamage(), event.getCapacity());
+        }
+        register(event.getKey(), entity);
+        synchronized (world) {
+            world.addEntity(entity);
+        }
+    }
+
+    /**
+     * Creates the item of the given event
+     */
+    private void apply(WorldEvent.ItemCreated event) {
+        Item item;
+        if(event.getType() == Weapon.class) {
+            item = new Weapon(event.getId(), event.getWeight(), event.getAmount());
+        } else if(event.getType() == Armor.class) {
+            item = Armor.restore(event.getId(), event.getWeight(), event.getValue(), event.getAmount());
+        } else if(event.getType() == Backpack.class) {
+            item = new Backpack(event.getId(), event.getWeight(), event.getValue(), event.getCapacity());
+        } else {
+            item = new Purse(event.getId(), event.getWeight(), (int) event.getCapacity(), event.getAmount());
+        }
+        register(event.getKey(), item);
+        synchronized (world) {
+            world.addItem(item);
+        }
+    }
+
+    /**
+     * Attaches the item of the given event to its new holder without validating it
+     */
+    private void apply(WorldEvent.ItemPickedUp event) {
+        Item item = getItem(event.getItemKey());
+        if(!item.liesOnGround()) throw new IllegalArgumentException("The item does not lie on the ground");
+        Object holder = objects.get(event.getHolderKey());
+        if(holder instanceof Entity) {
+            Entity entity = (Entity) holder;
+            if(event.getAnchor() == null || !entity.hasAnchor(event.getAnchor()) || entity.getItemAt(event.getAnchor()) != null)
+                throw new IllegalArgumentException("The item cannot be attached at " + event.getAnchor());
+            entity.restoreItemAt(event.getAnchor(), item);
+            entity.notifyChanged();
+        } else if(holder instanceof Backpack) {
+            Backpack backpack = (Backpack) holder;
+            backpack.restoreItem(item);
+            backpack.notifyChanged();
+        } else {
+            throw new IllegalArgumentException(String.format("Key %d does not reference a holder", event.getHolderKey()));
+        }
+        synchronized (world) {
+            world.removeItem(item);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+
+import java.util.*;
+
+/**
+ * A class of replayers, applying streams of trusted domain events in parallel
+ *
+ * Events are sharded by the entity (or item on the ground) at the root of the holder chain of everything they
+ * reference. Consecutive events are gathered in a segment as long as every event falls in a single shard; the shards of
+ * a segment are then applied in parallel, each shard in order. An event that spans two shards of the current segment,
+ * such as an item dropped by one entity and picked up by another, ends the segment and is applied on its own.
+ * Entities and items are created as soon as they are read, since creating them does not depend on any other event.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each replayer references an effective applier
+ *          | getApplier() != null
+ */
+public class WorldEventReplayer {
+
+    /**
+     * Initializes this replayer applying events with the given applier
+     *
+     * @param   applier
+     *          The applier of the new replayer
+     * @post    The applier of this new replayer is set to the given applier
+     *          | new.getApplier() == applier
+     * @throws  IllegalArgumentException
+     *          The given applier is not effective
+     *          | applier == null
+     */
+    public WorldEventReplayer(WorldEventApplier applier) throws IllegalArgumentException {
+        if(applier == null) throw new IllegalArgumentException("The given applier is not effective");
+        this.applier = applier;
+    }
+
+    /**
+     * Initializes this replayer applying events to a new world
+     *
+     * @effect  This replayer is initialized with an applier for a new, empty world
+     *          | this(new WorldEventApplier(new World()))
+     */
+    public WorldEventReplayer() {
+        this(new WorldEventApplier(new World()));
+    }
+
+    /**
+     * Variable referencing the applier of this replayer
+     */
+    private final WorldEventApplier applier;
+
+    /**
+     * Returns the applier of this replayer
+     */
+    @Basic @Immutable
+    public WorldEventApplier getApplier() {
+        return applier;
+    }
+
+    /**
+     * Returns the maximum number of events in a single segment
+     */
+    @Immutable
+    public static int getMaxSegmentSize() {
+        return 100_000;
+    }
+
+    /**
+     * Variable referencing the holder of every item that does not lie on the ground, mapped on their keys
+     */
+    private final Map<Long, Long> holders = new HashMap<>();
+
+    /**
+     * Variable referencing the shard every key touched in the current segment belongs to
+     */
+    private final Map<Long, Long> shardOf = new HashMap<>();
+
+    /**
+     * Variable referencing the events of every shard of the current segment, in order
+     */
+    private final Map<Long, List<WorldEvent>> shards = new LinkedHashMap<>();
+
+    private int segmentSize = 0;
+
+    private long nbEvents = 0;
+
+    private long nbSegments = 0;
+
+    private long nbBarriers = 0;
+
+    /**
+     * Returns the number of events replayed by this replayer
+     */
+    public long getNbEvents() {
+        return nbEvents;
+    }
+
+    /**
+     * Returns the number of segments that were applied in parallel
+     */
+    public long getNbSegments() {
+        return nbSegments;
+    }
+
+    /**
+     * Returns the number of events that spanned several shards and were applied on their own
+     */
+    public long getNbBarriers() {
+        return nbBarriers;
+    }
+
+    /**
+     * Replays the given events in order
+     *
+     * @param   events
+     *          The events to replay
+     * @effect  Every given event is applied by the applier of this replayer, every entity or item observing the events
+     *          that reference it in the given order
+     * @return  The world of the applier of this replayer
+     *          | result == getApplier().getWorld()
+     * @throws  IllegalArgumentException
+     *          The given events are not effective or an event cannot be applied
+     */
+    public World replay(Iterable<? extends WorldEvent> events) throws IllegalArgumentException {
+        if(events == null) throw new IllegalArgumentException("The given events are not effective");
+        for (WorldEvent event: events) {
+            nbEvents++;
+            if(event instanceof WorldEvent.EntityCreated || event instanceof WorldEvent.ItemCreated) {
+                applier.apply(event);
+                continue;
+            }
+            long[] keys = event.getKeys();
+            Set<Long> roots = new HashSet<>();
+            for (long key: keys) {
+                roots.add(key);
+                roots.add(getRoot(key));
+            }
+            Long shard = null;
+            boolean isBarrier = false;
+            for (long root: roots) {
+                Long rootShard = shardOf.get(root);
+                if(rootShard == null) continue;
+                if(shard != null && !shard.equals(rootShard)) isBarrier = true;
+                shard = rootShard;
+            }
+            if(isBarrier) {
+                flush();
+                nbBarriers++;
+                applier.apply(event);
+            } else {
+                if(shard == null) shard = getRoot(keys[keys.length - 1]);
+                for (long root: roots) shardOf.put(root, shard);
+                shards.computeIfAbsent(shard, key -> new ArrayList<>()).add(event);
+                if(++segmentSize >= getMaxSegmentSize()) flush();
+            }
+            track(event);
+        }
+        flush();
+        return applier.getWorld();
+    }
+
+    /**
+     * Returns the key of the entity or item on the ground at the root of the holder chain of the given key
+     */
+    private long getRoot(long key) {
+        Long holder = holders.get(key);
+        while(holder != null) {
+            key = holder;
+            holder = holders.get(key);
+        }
+        return key;
+    }
+
+    /**
+     * Tracks the holder changes of the given event
+     */
+    private void track(WorldEvent event) {
+        if(event instanceof WorldEvent.ItemPickedUp) {
+            holders.put(((WorldEvent.ItemPickedUp) event).getItemKey(), ((WorldEvent.ItemPickedUp) event).getHolderKey());
+        } else if(event instanceof WorldEvent.ItemDropped) {
+            holders.remove(((WorldEvent.ItemDropped) event).getItemKey());
+        }
+    }
+
+    /**
+     * Applies the shards of the current segment in parallel and starts a new segment
+     */
+    private void flush() {
+        if(segmentSize == 0) return;
+        shards.values().parallelStream().forEach(shard -> shard.forEach(applier::apply));
+        shards.clear();
+        shardOf.clear();
+        segmentSize = 0;
+        nbSegments++;
+    }
+}
@@ -0,0 +1,231 @@
+package rpg;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class of readers of binary world snapshots
+ *
+ * Identifications, holder relationships, hit points and broken states are restored as they were written. Armors keep
+ * their identification even while the armor that was saved is still in memory, as both are the same armor. Restored
+ * items are placed directly into their holders without re-checking capacities, since the snapshot was written from a
+ * consistent world.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each reader has an effective channel
+ *          | getChannel() != null
+ */
+public class WorldSnapshotReader {
+
+    /**
+     * Initializes this reader with the given channel
+     *
+     * @param   channel
+     *          The channel to read snapshots from
+     * @post    The channel of this new reader is set to the given channel
+     *          | new.getChannel() == channel
+     * @throws  IllegalArgumentException
+     *          The given channel is not effective
+     *          | channel == null
+     */
+    public WorldSnapshotReader(ReadableByteChannel channel) throws IllegalArgumentException {
+        if(channel == null) throw new IllegalArgumentException("The given channel is not effective");
+        this.channel = channel;
+        buffer.limit(0);
+    }
+
+    /**
+     * Reads the world from the snapshot in the file at the given path
+     *
+     * @param   path
+     *          The path of the file to read
+     * @return  The world that was saved in the given file
+     *          | result == new WorldSnapshotReader(FileChannel.open(path)).read()
+     */
+    public static World load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new WorldSnapshotReader(channel).read();
+        }
+    }
+
+    /**
+     * Variable referencing the channel of this reader
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * Returns the channel of this reader
+     */
+    public ReadableByteChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Variable referencing the buffer of this reader
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(SnapshotFormat.bufferSize);
+
+    /**
+     * Reads a world from the channel of this reader
+     *
+     * @return  A new world with the entities, and the items they hold, and items on the ground that were written
+     *          to the snapshot
+     * @throws  IOException
+     *          The channel does not contain a valid snapshot or could not be read
+     */
+    public World read() throws IOException {
+        ensureAvailable(SnapshotFormat.headerSize);
+        int[] header = SnapshotFormat.readHeader(buffer);
+
+        World world = new World();
+        for (int i = 0; i < header[0]; i++) world.addEntity(readEntity());
+        for (int i = 0; i < header[1]; i++) world.addItem(readItemTree());
+        return world;
+    }
+
+    /**
+     * Reads a delta from the channel of this reader and applies it to the given world
+     *
+     * @param   previous
+     *          The world in the state the delta was written against
+     * @return  A new world with the entities and items on the ground of the delta, reusing the unchanged entities and
+     *          items of the given world
+     * @post    The unchanged entities and items are moved from the given world to the resulting world
+     * @throws  IOException
+     *          The channel does not contain a valid delta for the given world or could not be read
+     */
+    World readDelta(World previous) throws IOException {
+        ensureAvailable(SnapshotFormat.headerSize);
+        int[] header = SnapshotFormat.readHeader(buffer, SnapshotFormat.deltaMagic);
+        List<Object> roots = new ArrayList<>(previous.getEntities());
+        roots.addAll(previous.getItems());
+
+        World world = new World();
+        for (int i = 0; i < header[0] + header[1]; i++) {
+            ensureAvailable(1);
+            Object root;
+            if(buffer.get() == SnapshotFormat.unchanged) {
+                ensureAvailable(4);
+                int index = buffer.getInt();
+                if(index >= roots.size()) throw new IOException("The delta does not match the previous state");
+                root = roots.get(index);
+            } else {
+                root = i < header[0] ? readEntity() : readItemTree();
+            }
+            if((i < header[0]) != (root instanceof Entity))
+                throw new IOException("The delta does not match the previous state");
+            if(i < header[0]) {
+                previous.removeEntity((Entity) root);
+                world.addEntity((Entity) root);
+            } else {
+                previous.removeItem((Item) root);
+                world.addItem((Item) root);
+            }
+        }
+        return world;
+    }
+
+    /**
+     * Returns whether all bytes of the channel of this reader are read
+     */
+    boolean isAtEnd() throws IOException {
+        if(buffer.hasRemaining()) return false;
+        buffer.clear();
+        int nbRead = 0;
+        while(nbRead == 0) nbRead = channel.read(buffer);
+        buffer.flip();
+        return nbRead < 0;
+    }
+
+    /**
+     * Discards the bytes buffered by this reader, so the next read starts at the current position of its channel
+     */
+    void discardBuffered() {
+        buffer.clear().limit(0);
+    }
+
+    /**
+     * Returns the buffer of this reader, after making sure it has at least the given number of bytes available
+     */
+    ByteBuffer require(int nbBytes) throws IOException {
+        ensureAvailable(nbBytes);
+        return buffer;
+    }
+
+    /**
+     * Reads an entity and the items it holds
+     *
+     * @throws  IOException
+     *          The channel does not contain a valid entity record or could not be read
+     */
+    Entity readEntity() throws IOException {
+        try {
+            ensureAvailable(3);
+            int size = SnapshotFormat.getEntityRecordSize(buffer.get(buffer.position()),
+                    Short.toUnsignedInt(buffer.getShort(buffer.position() + 1)));
+            ensureAvailable(size);
+            Entity entity = SnapshotFormat.readEntity(buffer);
+            int nbItems = buffer.getInt();
+            buffer.getInt(); // Number of bytes
+            while(nbItems > 0) {
+                ensureAvailable(2);
+                Anchorpoint anchor = Anchorpoint.values()[buffer.get(buffer.position() + 1)];
+                Item item = readItemTree();
+                entity.restoreItemAt(anchor, item);
+                nbItems -= item instanceof Backpack ? 1 + ((Backpack) item).getNbItemsHeld() : 1;
+            }
+            entity.notifyChanged();
+            return entity;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt world snapshot", e);
+        }
+    }
+
+    /**
+     * Reads an item and the items it holds
+     *
+     * @throws  IOException
+     *          The channel does not contain a valid item record or could not be read
+     */
+    Item readItemTree() throws IOException {
+        try {
+            ensureAvailable(1);
+            ensureAvailable(SnapshotFormat.getItemRecordSize(buffer.get(buffer.position())));
+            Item item = SnapshotFormat.readItem(buffer);
+            if(item instanceof Backpack) {
+                Backpack backpack = (Backpack) item;
+                int nbItems = buffer.getInt();
+                buffer.getInt(); // Number of bytes
+                while(backpack.getNbItemsHeld() < nbItems) backpack.restoreItem(readItemTree());
+            }
+            return item;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt world snapshot", e);
+        }
+    }
+
+    /**
+     * Makes sure the buffer of this reader has at least the given number of bytes available
+     *
+     * @throws  IOException
+     *          The given number of bytes is larger than the buffer, or the channel ends before they are read
+     */
+    private void ensureAvailable(int nbBytes) throws IOException {
+        if(buffer.remaining() >= nbBytes) return;
+        if(nbBytes > buffer.capacity()) throw new IOException("Corrupt world snapshot: record too large");
+        buffer.compact();
+        while(buffer.position() < nbBytes) {
+            if(channel.read(buffer) < 0) throw new EOFException("Unexpected end of snapshot");
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,307 @@
+package rpg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * A class of writers of binary world snapshots
+ *
+ * The snapshot is streamed through a buffer to the channel of the writer, see SnapshotFormat for the layout.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each writer has an effective channel
+ *          | getChannel() != null
+ */
+public class WorldSnapshotWriter {
+
+    /**
+     * Initializes this writer with the given channel
+     *
+     * @param   channel
+     *          The channel to write snapshots to
+     * @post    The channel of this new writer is set to the given channel
+     *          | new.getChannel() == channel
+     * @throws  IllegalArgumentException
+     *          The given channel is not effective
+     *          | channel == null
+     */
+    public WorldSnapshotWriter(WritableByteChannel channel) throws IllegalArgumentException {
+        if(channel == null) throw new IllegalArgumentException("The given channel is not effective");
+        this.channel = channel;
+    }
+
+    /**
+     * Writes a snapshot of the given world to the file at the given path, replacing its contents
+     *
+     * @param   world
+     *          The world to save
+     * @param   path
+     *          The path of the file to write to
+     * @effect  A snapshot of the given world is written to the file at the given path
+     *          | new WorldSnapshotWriter(FileChannel.open(path)).write(world)
+     */
+    public static void save(World world, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            new WorldSnapshotWriter(channel).write(world);
+        }
+    }
+
+    /**
+     * Variable referencing the channel of this writer
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * Returns the channel of this writer
+     */
+    public WritableByteChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Variable referencing the buffer of this writer
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(SnapshotFormat.bufferSize);
+
+    /**
+     * Variable referencing the number of bytes the contents of every backpack of the tree being written take
+     */
+    private final Map<Backpack, Integer> contentSizes = new IdentityHashMap<>();
+
+    /**
+     * Returns the number of bytes the records of the given item and the items it holds take, and registers the
+     * number of bytes of the contents of every backpack in that tree
+     */
+    private int measure(Item item) {
+        if(!(item instanceof Backpack)) return SnapshotFormat.getItemRecordSize(getKind(item));
+        int size = 0;
+        for (Item content: ((Backpack) item).getItems()) size += measure(content);
+        contentSizes.put((Backpack) item, size);
+        return SnapshotFormat.getItemRecordSize(SnapshotFormat.backpack) + size;
+    }
+
+    /**
+     * Returns the kind of the given item
+     *
+     * @throws  IllegalArgumentException
+     *          The class of the given item is not supported by the snapshot format
+     */
+    private static byte getKind(Item item) throws IllegalArgumentException {
+        if(item instanceof Weapon) return SnapshotFormat.weapon;
+        if(item instanceof Armor) return SnapshotFormat.armor;
+        if(item instanceof Backpack) return SnapshotFormat.backpack;
+        if(item instanceof Purse) return SnapshotFormat.purse;
+        throw new IllegalArgumentException("Unsupported item: " + item.getClass());
+    }
+
+    /**
+     * Writes a snapshot of the given world to the channel of this writer
+     *
+     * @param   world
+     *          The world to write
+     * @throws  IllegalArgumentException
+     *          The given world is not effective
+     *          | world == null
+     * @throws  IllegalArgumentException
+     *          The given world contains an item of which the class is not supported by the snapshot format
+     * @throws  IllegalArgumentException
+     *          The given world contains an entity of which the name is longer than the snapshot format supports
+     * @throws  IOException
+     *          The snapshot could not be written to the channel of this writer
+     */
+    public void write(World world) throws IllegalArgumentException, IOException {
+        if(world == null) throw new IllegalArgumentException("The given world is not effective");
+        ensureRemaining(SnapshotFormat.headerSize);
+        buffer.putInt(SnapshotFormat.magic);
+        buffer.putShort(SnapshotFormat.version);
+        buffer.putInt(world.getNbEntities());
+        buffer.putInt(world.getNbItems());
+        for (Entity entity: world.getEntities()) writeEntity(entity);
+        for (Item item: world.getItems()) {
+            measure(item);
+            writeItem(item, SnapshotFormat.noAnchor);
+            contentSizes.clear();
+        }
+        flush();
+    }
+
+    /**
+     * Writes a delta of the given world to the channel of this writer
+     *
+     * @param   world
+     *          The world to write
+     * @param   previousIndex
+     *          A function returning, for every entity and item on the ground, its index among the entities and items
+     *          on the ground of the previous state if it did not change since, or a negative number otherwise
+     * @throws  IOException
+     *          The delta could not be written to the channel of this writer
+     */
+    void writeDelta(World world, ToIntFunction<Object> previousIndex) throws IOException {
+        ensureRemaining(SnapshotFormat.headerSize);
+        buffer.putInt(SnapshotFormat.deltaMagic);
+        buffer.putShort(SnapshotFormat.version);
+        buffer.putInt(world.getNbEntities());
+        buffer.putInt(world.getNbItems());
+        List<Object> roots = new ArrayList<>(world.getEntities());
+        roots.addAll(world.getItems());
+        for (Object root: roots) {
+            int index = previousIndex.applyAsInt(root);
+            ensureRemaining(5);
+            if(index >= 0) {
+                buffer.put(SnapshotFormat.unchanged);
+                buffer.putInt(index);
+            } else {
+                buffer.put(SnapshotFormat.changed);
+                writeRoot(root);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Writes the given entity or item on the ground, with the items it holds, and flushes it to the channel of this
+     * writer
+     *
+     * @param   root
+     *          The entity or item to write
+     * @throws  IOException
+     *          The record could not be written to the channel of this writer
+     */
+    void writeRecord(Object root) throws IOException {
+        writeRoot(root);
+        flush();
+    }
+
+    /**
+     * Writes the given entity or item on the ground and the items it holds
+     */
+    private void writeRoot(Object root) throws IOException {
+        if(root instanceof Entity) {
+            writeEntity((Entity) root);
+        } else {
+            measure((Item) root);
+            writeItem((Item) root, SnapshotFormat.noAnchor);
+            contentSizes.clear();
+        }
+    }
+
+    /**
+     * Writes the given entity and the items it holds
+     */
+    private void writeEntity(Entity entity) throws IOException {
+        byte kind;
+        if(entity instanceof Hero) {
+            kind = SnapshotFormat.hero;
+        } else if(entity instanceof Monster) {
+            kind = SnapshotFormat.monster;
+        } else {
+            throw new IllegalArgumentException("Unsupported entity: " + entity.getClass());
+        }
+        byte[] name = entity.getName().getBytes(StandardCharsets.UTF_8);
+        if(name.length > SnapshotFormat.maxNameLength)
+            throw new IllegalArgumentException("The name of " + entity + " is too long for a snapshot");
+        ensureRemaining(SnapshotFormat.getEntityRecordSize(kind, name.length));
+        buffer.put(kind);
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+        buffer.putInt(entity.getMaxHitPoints());
+        buffer.putInt(entity.getHitPoints());
+        buffer.put((byte) (entity.isDead() ? 1 : 0));
+
+        int anchorMask = 0;
+        int nbItems = 0;
+        int nbBytes = 0;
+        for (Anchorpoint anchor: entity.getAnchorPoints()) {
+            anchorMask |= 1 << anchor.ordinal();
+            Item item = entity.getItemAt(anchor);
+            if(item != null) {
+                nbItems += item instanceof Backpack ? 1 + ((Backpack) item).getNbItemsHeld() : 1;
+                nbBytes += measure(item);
+            }
+        }
+        buffer.putInt(anchorMask);
+
+        if(entity instanceof Hero) {
+            buffer.putDouble(((Hero) entity).getStrength());
+        } else {
+            Monster monster = (Monster) entity;
+            buffer.putInt(monster.getBaseProtection());
+            buffer.putInt(monster.getProtection());
+            buffer.putInt(monster.getDamage());
+            buffer.putDouble(monster.getCapacity());
+        }
+        buffer.putInt(nbItems);
+        buffer.putInt(nbBytes);
+
+        for (Anchorpoint anchor: Anchorpoint.values()) {
+            if(entity.hasAnchor(anchor) && entity.getItemAt(anchor) != null)
+                writeItem(entity.getItemAt(anchor), (byte) anchor.ordinal());
+        }
+        contentSizes.clear();
+    }
+
+    /**
+     * Writes the given item, located at the anchor with the given ordinal, and the items it holds
+     */
+    private void writeItem(Item item, byte anchor) throws IOException {
+        byte kind = getKind(item);
+        ensureRemaining(SnapshotFormat.getItemRecordSize(kind));
+        buffer.put(kind);
+        buffer.put(anchor);
+        buffer.putLong(item.getId());
+        buffer.put((byte) (item.isBroken() ? 1 : 0));
+
+        if(item instanceof Weapon) {
+            buffer.putDouble(item.getWeight());
+            buffer.putInt(((Weapon) item).getDamage());
+        } else if(item instanceof Armor) {
+            Armor armor = (Armor) item;
+            buffer.putDouble(armor.getWeight());
+            buffer.putInt(armor.getMaxValue());
+            buffer.putInt(armor.getMaxProtection());
+            buffer.putInt(armor.getEffectiveProtection());
+        } else if(item instanceof Backpack) {
+            Backpack backpack = (Backpack) item;
+            buffer.putDouble(backpack.getOwnWeight());
+            buffer.putInt(backpack.getOwnValue());
+            buffer.putDouble(backpack.getCapacity());
+            buffer.putInt(backpack.getNbItemsHeld());
+            buffer.putInt(contentSizes.get(backpack));
+            for (Item content: backpack.getItems()) writeItem(content, SnapshotFormat.noAnchor);
+        } else {
+            Purse purse = (Purse) item;
+            buffer.putDouble(purse.getOwnWeight());
+            buffer.putInt(purse.getValue());
+            buffer.putInt(purse.getCapacity());
+            buffer.putInt(purse.getContents());
+        }
+    }
+
+    /**
+     * Flushes the buffer of this writer if it has less than the given number of bytes remaining
+     */
+    private void ensureRemaining(int nbBytes) throws IOException {
+        if(buffer.remaining() < nbBytes) flush();
+    }
+
+    /**
+     * Writes all buffered bytes to the channel of this writer
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
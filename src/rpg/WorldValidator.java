@@ -0,0 +1,213 @@
+package rpg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A utility class validating the class invariants of every entity and item of a world in parallel
+ *
+ * Each entity and each item on the ground is validated as a separate unit of work. The weight and the number of armors
+ * of every subtree is computed once, bottom-up, and reused by every invariant that depends on it, instead of
+ * recomputing the load of every holder for every item it holds.
+ *
+ * @author  Corteville Andrew
+ */
+public final class WorldValidator {
+
+    /**
+     * This class cannot be instantiated
+     */
+    private WorldValidator() {
+    }
+
+    /**
+     * Validates all entities and items of the given world
+     *
+     * @param   world
+     *          The world to validate
+     * @return  A list of all violations of class invariants by entities and items of the given world, or by items held
+     *          directly or indirectly by those
+     * @throws  IllegalArgumentException
+     *          The given world is not effective
+     *          | world == null
+     */
+    public static List<InvariantViolation> validate(World world) throws IllegalArgumentException {
+        if(world == null) throw new IllegalArgumentException("The given world is not effective");
+        List<Object> roots = new ArrayList<>(world.getNbEntities() + world.getNbItems());
+        roots.addAll(world.getEntities());
+        roots.addAll(world.getItems());
+        return roots.parallelStream()
+                .map(root -> root instanceof Entity ? visitEntity((Entity) root) : visitItem((Item) root, null, getName((Item) root)))
+                .reduce(new Subtree(), Subtree::combine, Subtree::combine)
+                .violations;
+    }
+
+    /**
+     * Validates the given entity and all items it holds directly or indirectly
+     *
+     * @param   entity
+     *          The entity to validate
+     * @return  A list of all violations of class invariants by the given entity or by the items it holds
+     * @throws  IllegalArgumentException
+     *          The given entity is not effective
+     *          | entity == null
+     */
+    public static List<InvariantViolation> validate(Entity entity) throws IllegalArgumentException {
+        if(entity == null) throw new IllegalArgumentException("The given entity is not effective");
+        return visitEntity(entity).violations;
+    }
+
+    /**
+     * Validates the given item and all items it holds directly or indirectly
+     *
+     * @param   item
+     *          The item to validate
+     * @return  A list of all violations of class invariants by the given item or by the items it holds
+     * @throws  IllegalArgumentException
+     *          The given item is not effective
+     *          | item == null
+     */
+    public static List<InvariantViolation> validate(Item item) throws IllegalArgumentException {
+        if(item == null) throw new IllegalArgumentException("The given item is not effective");
+        return visitItem(item, item.getHolder(), getName(item)).violations;
+    }
+
+    /**
+     * The result of validating a subtree: its total weight, its number of armors and its violations
+     */
+    private static final class Subtree {
+
+        private double weight = 0.00;
+
+        private int nbArmors = 0;
+
+        private final List<InvariantViolation> violations = new ArrayList<>();
+
+        private void check(boolean invariant, String path, String description, Object subject) {
+            if(!invariant) violations.add(new InvariantViolation(path, description, subject));
+        }
+
+        private Subtree combine(Subtree other) {
+            Subtree result = new Subtree();
+            result.weight = weight + other.weight;
+            result.nbArmors = nbArmors + other.nbArmors;
+            result.violations.addAll(violations);
+            result.violations.addAll(other.violations);
+            return result;
+        }
+    }
+
+    /**
+     * Returns the name of the given entity as used in paths
+     */
+    static String getName(Entity entity) {
+        return String.format("%s(%s)", entity.getClass().getSimpleName(), entity.getName());
+    }
+
+    /**
+     * Returns the name of the given item as used in paths
+     */
+    static String getName(Item item) {
+        return String.format("%s#%d", item.getClass().getSimpleName(), item.getId());
+    }
+
+    /**
+     * Validates the given entity and the items at its anchors
+     */
+    private static Subtree visitEntity(Entity entity) {
+        String path = getName(entity);
+        Subtree result = new Subtree();
+        for (Anchorpoint anchor: entity.getAnchorPoints()) {
+            Item item = entity.getItemAt(anchor);
+            if(item == null) continue;
+            result.check(entity.canHaveItemAtAnchor(item, anchor), path + "/" + anchor.getName(),
+                    "canHaveItemAtAnchor(getItemAt(anchor), anchor)", entity);
+            result = result.combine(visitItem(item, entity, path + "/" + anchor.getName() + "/" + getName(item)));
+        }
+        double load = result.weight;
+        result.check(entity.canHaveAsName(entity.getName()), path, "canHaveAsName(getName())", entity);
+        result.check(entity.canHaveAsMaxHitPoints(entity.getMaxHitPoints()), path,
+                "canHaveAsMaxHitPoints(getMaxHitPoints())", entity);
+        result.check(entity.canHaveAsHitPoints(entity.getHitPoints()), path, "canHaveAsHitPoints(getHitPoints())", entity);
+        result.check(entity.canHaveAsBaseProtection(entity.getBaseProtection()), path,
+                "canHaveAsBaseProtection(getBaseProtection())", entity);
+        result.check(load <= entity.getCapacity(), path, "getLoad() <= getCapacity()", entity);
+        if(entity instanceof Hero) {
+            Hero hero = (Hero) entity;
+            result.check(result.nbArmors <= 2, path, "getNbItemsOfTypeHeld(Armor.class) <= 2", entity);
+            result.check(hero.getStrength() > 0 && load < hero.getCapacity(), path,
+                    "canHaveAsStrength(getStrength())", entity);
+        } else if(entity instanceof Monster) {
+            Monster monster = (Monster) entity;
+            result.check(monster.canHaveAsEffectiveProtection(monster.getProtection()), path,
+                    "canHaveAsEffectiveProtection(getProtection())", entity);
+            result.check(Monster.isValidDamage(monster.getDamage()), path, "isValidDamage(getDamage())", entity);
+        }
+        result.weight = load;
+        return result;
+    }
+
+    /**
+     * Validates the given item, held by the given holder, and the items it holds
+     */
+    private static Subtree visitItem(Item item, ItemHolder holder, String path) {
+        Subtree result = new Subtree();
+        result.check(item.canHaveAsId(item.getId()), path, "canHaveAsId(getId())", item);
+        result.check(item.getHolder() == holder && item.canHaveAsHolder(holder), path, "hasProperHolder()", item);
+        if(item instanceof Armor) {
+            Armor armor = (Armor) item;
+            result.check(armor.canHaveAsEffectiveProtection(armor.getEffectiveProtection()), path,
+                    "canHaveAsEffectiveProtection(getEffectiveProtection())", item);
+            if(item.getClass() == Armor.class) result.nbArmors++;
+        } else if(item instanceof Weapon) {
+            result.check(Weapon.isValidDamage(((Weapon) item).getDamage()), path, "isValidDamage(getDamage())", item);
+        } else if(item instanceof Purse) {
+            Purse purse = (Purse) item;
+            result.check(purse.canHaveAsContents(purse.getContents()), path, "canHaveAsContents(getContents())", item);
+        }
+
+        if(item instanceof Backpack) {
+            Backpack backpack = (Backpack) item;
+            result.check(Item.isValidWeight(backpack.getOwnWeight()), path, "isValidWeight(getOwnWeight())", item);
+            result.check(backpack.canHaveAsValue(backpack.getOwnValue()), path, "canHaveAsValue(getOwnValue())", item);
+            Subtree contents = visitContents(backpack, path);
+            result.check(contents.weight <= backpack.getCapacity(), path, "getLoad() <= getCapacity()", item);
+            result = result.combine(contents);
+            result.weight = backpack.getOwnWeight() + contents.weight;
+        } else {
+            result.check(Item.isValidWeight(item.getWeight()), path, "isValidWeight(getWeight())", item);
+            result.check(item.canHaveAsValue(item.getValue()), path, "canHaveAsValue(getValue())", item);
+            result.weight = item.getWeight();
+        }
+        return result;
+    }
+
+    /**
+     * Validates the contents of the given backpack, in parallel if the backpack holds enough items
+     */
+    private static Subtree visitContents(Backpack backpack, String path) {
+        List<Item> items = new ArrayList<>();
+        List<Long> keys = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (long id: backpack.getStoredIds()) {
+            for (int pos = 0; pos < backpack.getNbItemsWithId(id); pos++) {
+                items.add(backpack.getItemWithIdAtPos(id, pos));
+                keys.add(id);
+                positions.add(pos);
+            }
+        }
+        IntStream indices = IntStream.range(0, items.size());
+        if(backpack.getNbItemsHeld() >= NestedContents.getParallelThreshold()) indices = indices.parallel();
+        return indices.mapToObj(i -> {
+                    Item item = items.get(i);
+                    String itemPath = String.format("%s/%s[%d]", path, getName(item), positions.get(i));
+                    Subtree result = new Subtree();
+                    result.check(item.getId() == keys.get(i), itemPath, "getId() == key", item);
+                    result.check(!item.isBroken() || item instanceof Purse, itemPath,
+                            "!isBroken() || this instanceof Purse", item);
+                    return result.combine(visitItem(item, backpack, itemPath));
+                })
+                .reduce(new Subtree(), Subtree::combine);
+    }
+}
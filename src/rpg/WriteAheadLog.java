@@ -0,0 +1,703 @@
+package rpg;
+
+import be.kuleuven.cs.som.annotate.Basic;
+import be.kuleuven.cs.som.annotate.Immutable;
+import rpg.exceptions.BrokenItemException;
+import rpg.exceptions.DeadEntityException;
+import rpg.exceptions.InvalidAnchorException;
+import rpg.exceptions.InvalidHolderException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+/**
+ * A class of write-ahead logs, recording the inventory mutations of a world between two snapshots
+ *
+ * Every mutation is applied to the world and appended to an in-memory batch. A background thread writes the batch to
+ * the log file and forces it to disk, completing the futures of all mutations in the batch at once (group commit), so
+ * a mutation does not wait for its own fsync. Mutations appended while a batch is being forced are committed together
+ * in the next batch.
+ *
+ * Entities and items on the ground are referenced by handles, assigned in the order of the world when the log is
+ * started and to items dropped on the ground afterwards. Items held by an entity are referenced by the anchor and the
+ * path of identifications and positions leading to them, so replaying the log on top of the snapshot resolves every
+ * reference to the same entity or item.
+ *
+ * The log file starts with a header holding the fingerprint of the snapshot its records apply to, and the fingerprint
+ * of a snapshot that already includes them while a checkpoint publishes it. A checkpoint records the fingerprint of the
+ * new snapshot before publishing it and only then empties the log, so recovering after a crash in between skips the
+ * records the snapshot already includes instead of applying them twice.
+ *
+ * @author  Corteville Andrew
+ *
+ * @invar   Each log references an effective world
+ *          | getWorld() != null
+ *
+ * @note    All mutations of the world must go through its log, entities added to the world afterwards are only
+ *          known to the log after the next checkpoint.
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    /*
+        Operations
+     */
+
+    private static final byte pickup = 1;
+
+    private static final byte drop = 2;
+
+    private static final byte transfer = 3;
+
+    private static final byte addDucats = 4;
+
+    private static final byte discard = 5;
+
+    /*
+        Header
+     */
+
+    /**
+     * The magic number every log starts with ("RPGL")
+     */
+    private static final int magic = 0x5250474C;
+
+    /**
+     * The number of bytes of the header of a log: the magic number, the fingerprint of the snapshot the records apply
+     * to and the fingerprint of a snapshot that already includes them, each fingerprint 0 if unknown or none
+     */
+    private static final int headerSize = 20;
+
+    /**
+     * Initializes this log for the given world, replacing the log file at the given path
+     *
+     * @param   world
+     *          The world of the new log, as saved in the last snapshot
+     * @param   path
+     *          The path of the log file
+     * @post    The world of this new log is set to the given world
+     *          | new.getWorld() == world
+     * @post    The log file at the given path is empty
+     * @throws  IllegalArgumentException
+     *          The given world or path is not effective
+     *          | world == null || path == null
+     * @throws  IOException
+     *          The log file could not be opened
+     */
+    public WriteAheadLog(World world, Path path) throws IllegalArgumentException, IOException {
+        this(world, path, true);
+        start();
+    }
+
+    /**
+     * Initializes this log for the given world and the log file at the given path, truncating it if requested
+     */
+    private WriteAheadLog(World world, Path path, boolean truncate) throws IllegalArgumentException, IOException {
+        if(world == null) throw new IllegalArgumentException("The given world is not effective");
+        if(path == null) throw new IllegalArgumentException("The given path is not effective");
+        this.world = world;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if(truncate) reset(0);
+        assignHandles();
+        committer = new Thread(this::commitBatches, "write-ahead-log");
+        committer.setDaemon(true);
+    }
+
+    /**
+     * Recovers the world from the snapshot at the given path and the log at the given path
+     *
+     * @param   snapshot
+     *          The path of the last snapshot, the world is empty if there is no such file
+     * @param   path
+     *          The path of the log file written since that snapshot
+     * @return  A log for the world of the given snapshot on which all complete records of the given log are replayed,
+     *          appending new records to the given log
+     * @throws  IOException
+     *          The snapshot or log could not be read, or the log does not match the snapshot
+     */
+    public static WriteAheadLog recover(Path snapshot, Path path) throws IOException {
+        World world = Files.exists(snapshot) ? WorldSnapshotReader.load(snapshot) : new World();
+        WriteAheadLog log = new WriteAheadLog(world, path, false);
+        log.replay(fingerprint(snapshot));
+        log.start();
+        return log;
+    }
+
+    /**
+     * Returns the fingerprint of the snapshot at the given path, 0 if there is no such file
+     *
+     * @return  The size of the snapshot in the upper half and its CRC-32 checksum in the lower half
+     */
+    private static long fingerprint(Path snapshot) throws IOException {
+        if(!Files.exists(snapshot)) return 0;
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (FileChannel file = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(SnapshotFormat.bufferSize);
+            while(file.read(buffer) >= 0) {
+                buffer.flip();
+                size += buffer.remaining();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return size << 32 | crc.getValue();
+    }
+
+    /**
+     * Variable referencing the fingerprint of the snapshot the records of the log file apply to, 0 if unknown
+     */
+    private long base = 0;
+
+    /**
+     * Writes the header of the log file with the given fingerprints and forces it to disk
+     *
+     * @param   base
+     *          The fingerprint of the snapshot the records of the log file apply to, 0 if unknown
+     * @param   next
+     *          The fingerprint of a snapshot that already includes the records of the log file, 0 if none
+     */
+    private void writeHeader(long base, long next) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerSize).putInt(magic).putLong(base).putLong(next).flip();
+        while(header.hasRemaining()) channel.write(header, header.position());
+        channel.force(false);
+    }
+
+    /**
+     * Empties the log file, of which the records apply to the snapshot with the given fingerprint from now on
+     *
+     * @param   base
+     *          The fingerprint of the snapshot the records of the log file apply to, 0 if unknown
+     */
+    private void reset(long base) throws IOException {
+        channel.truncate(headerSize);
+        writeHeader(base, 0);
+        channel.position(headerSize);
+        this.base = base;
+    }
+
+    /**
+     * Starts committing batches of this log
+     */
+    private void start() {
+        committer.start();
+    }
+
+    /**
+     * Variable referencing the world of this log
+     */
+    private final World world;
+
+    /**
+     * Returns the world of this log
+     */
+    @Basic @Immutable
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Variable referencing the channel of the log file
+     */
+    private final FileChannel channel;
+
+    /*
+        Handles
+     */
+
+    private final Map<Object, Long> handles = new IdentityHashMap<>();
+
+    private final Map<Long, Object> roots = new HashMap<>();
+
+    private long nextHandle = 0;
+
+    /**
+     * Assigns handles to the entities and items on the ground of the world of this log, in order
+     */
+    private void assignHandles() {
+        handles.clear();
+        roots.clear();
+        nextHandle = 0;
+        for (Entity entity: world.getEntities()) assignHandle(entity);
+        for (Item item: world.getItems()) assignHandle(item);
+    }
+
+    private void assignHandle(Object root) {
+        handles.put(root, nextHandle);
+        roots.put(nextHandle++, root);
+    }
+
+    private void removeHandle(Object root) {
+        Long handle = handles.remove(root);
+        if(handle != null) roots.remove(handle);
+    }
+
+    private long getHandle(Object root) throws IllegalArgumentException {
+        Long handle = handles.get(root);
+        if(handle == null) throw new IllegalArgumentException(root + " is not part of the world of this log");
+        return handle;
+    }
+
+    /*
+        References
+     */
+
+    /**
+     * Writes a reference to the given entity or item to the given buffer
+     *
+     * @throws  IllegalArgumentException
+     *          The given entity or item is not part of the world of this log
+     */
+    private void putReference(ByteBuffer buffer, Object target) throws IllegalArgumentException {
+        Deque<Item> path = new ArrayDeque<>();
+        Object root = target;
+        while(root instanceof Item && ((Item) root).getHolder() != null) {
+            path.push((Item) root);
+            root = ((Item) root).getHolder();
+        }
+        buffer.putLong(getHandle(root));
+        if(root instanceof Entity && !path.isEmpty()) {
+            buffer.put((byte) ((Entity) root).getAnchorOf(path.pop()).ordinal());
+        } else {
+            buffer.put(SnapshotFormat.noAnchor);
+        }
+        buffer.putShort((short) path.size());
+        for (Item item: path) {
+            Backpack backpack = (Backpack) item.getHolder();
+            buffer.putLong(item.getId());
+            int pos = 0;
+            while(backpack.getItemWithIdAtPos(item.getId(), pos) != item) pos++;
+            buffer.putInt(pos);
+        }
+    }
+
+    /**
+     * Reads a reference from the given buffer and returns the entity or item it references
+     */
+    private Object getReference(ByteBuffer buffer) {
+        Object target = roots.get(buffer.getLong());
+        if(target == null) throw new IllegalStateException("Unknown handle");
+        byte anchor = buffer.get();
+        if(anchor != SnapshotFormat.noAnchor) target = ((Entity) target).getItemAt(Anchorpoint.values()[anchor]);
+        int depth = buffer.getShort();
+        for (int i = 0; i < depth; i++) target = ((Backpack) target).getItemWithIdAtPos(buffer.getLong(), buffer.getInt());
+        return target;
+    }
+
+    /**
+     * Returns a buffer for a record of the given operation, large enough for the given number of references
+     */
+    private static ByteBuffer newRecord(byte operation, Object... targets) {
+        int size = 1 + 24;
+        for (Object target: targets) {
+            int depth = 0;
+            for (Object item = target; item instanceof Item; item = ((Item) item).getHolder()) depth++;
+            size += 11 + 12 * depth;
+        }
+        return ByteBuffer.allocate(size).put(operation);
+    }
+
+    /*
+        Mutations
+     */
+
+    /**
+     * Lets the given holder pick up the given item from the ground and logs it
+     *
+     * @param   holder
+     *          The entity or backpack picking up the item
+     * @param   item
+     *          The item on the ground to pick up
+     * @effect  The given holder picks up the given item
+     *          | holder.pickup(item)
+     * @effect  The given item is removed from the ground of the world
+     *          | getWorld().removeItem(item)
+     * @return  A future that completes once the pickup is durable
+     * @throws  IllegalArgumentException
+     *          The given holder or item is not part of the world of this log
+     */
+    public synchronized CompletableFuture<Void> pickup(ItemHolder holder, Item item)
+            throws IllegalArgumentException, InvalidAnchorException, InvalidHolderException, DeadEntityException {
+        ensureOpen();
+        ByteBuffer record = newRecord(pickup, holder);
+        putReference(record, holder);
+        record.putLong(getHandle(item));
+        holder.pickup(item);
+        record.put(holder instanceof Entity ? (byte) ((Entity) holder).getAnchorOf(item).ordinal() : SnapshotFormat.noAnchor);
+        onPickedUp(item);
+        return append(record);
+    }
+
+    /**
+     * Lets the holder of the given item drop it and logs it
+     *
+     * @param   item
+     *          The item to drop
+     * @effect  The holder of the given item drops it
+     *          | item.getHolder().drop(item)
+     * @effect  The given item is added to the ground of the world
+     *          | getWorld().addItem(item)
+     * @return  A future that completes once the drop is durable
+     * @throws  IllegalArgumentException
+     *          The given item lies on the ground or is not part of the world of this log
+     *          | item.liesOnGround()
+     */
+    public synchronized CompletableFuture<Void> drop(Item item) throws IllegalArgumentException {
+        ensureOpen();
+        if(item.liesOnGround()) throw new IllegalArgumentException("The given item lies on the ground");
+        ByteBuffer record = newRecord(drop, item);
+        putReference(record, item);
+        item.getHolder().drop(item);
+        onDropped(item);
+        return append(record);
+    }
+
+    /**
+     * Transfers the item at an anchor of the given entity to an anchor of the given recipient and logs it
+     *
+     * @effect  The given entity transfers the item at the given anchor to the given recipient
+     *          | entity.transferItemAtAnchorTo(recipient, anchorFrom, anchorTo)
+     * @return  A future that completes once the transfer is durable
+     * @throws  IllegalArgumentException
+     *          The given entity or recipient is not part of the world of this log
+     */
+    public synchronized CompletableFuture<Void> transferItemAtAnchorTo(Entity entity, Entity recipient,
+            Anchorpoint anchorFrom, Anchorpoint anchorTo)
+            throws IllegalArgumentException, InvalidAnchorException, InvalidHolderException {
+        ensureOpen();
+        ByteBuffer record = newRecord(transfer);
+        record.putLong(getHandle(entity)).putLong(getHandle(recipient));
+        record.put((byte) anchorFrom.ordinal()).put((byte) anchorTo.ordinal());
+        entity.transferItemAtAnchorTo(recipient, anchorFrom, anchorTo);
+        return append(record);
+    }
+
+    /**
+     * Adds the given amount of ducats to the given purse and logs it
+     *
+     * @effect  The given amount of ducats is added to the given purse
+     *          | purse.addDucats(amount)
+     * @return  A future that completes once the addition is durable
+     * @throws  IllegalArgumentException
+     *          The given purse is not part of the world of this log
+     */
+    public synchronized CompletableFuture<Void> addDucats(Purse purse, int amount)
+            throws IllegalArgumentException, BrokenItemException {
+        ensureOpen();
+        ByteBuffer record = newRecord(addDucats, purse);
+        putReference(record, purse);
+        record.putInt(amount);
+        purse.addDucats(amount);
+        return append(record);
+    }
+
+    /**
+     * Discards the given item and logs it
+     *
+     * @effect  The given item is discarded
+     *          | item.discard()
+     * @effect  The given item is removed from the ground of the world
+     *          | getWorld().removeItem(item)
+     * @return  A future that completes once the discard is durable
+     * @throws  IllegalArgumentException
+     *          The given item is not part of the world of this log
+     */
+    public synchronized CompletableFuture<Void> discard(Item item) throws IllegalArgumentException, BrokenItemException {
+        ensureOpen();
+        ByteBuffer record = newRecord(discard, item);
+        putReference(record, item);
+        if(item.isBroken()) throw new BrokenItemException(item);
+        item.discard();
+        onDiscarded(item);
+        return append(record);
+    }
+
+    private void onPickedUp(Item item) {
+        world.removeItem(item);
+        removeHandle(item);
+    }
+
+    private void onDropped(Item item) {
+        world.addItem(item);
+        assignHandle(item);
+    }
+
+    private void onDiscarded(Item item) {
+        world.removeItem(item);
+        removeHandle(item);
+    }
+
+    /*
+        Recovery
+     */
+
+    /**
+     * Replays every complete record of the log file on the world of this log and truncates the log file after the
+     * last complete record, unless the snapshot with the given fingerprint already includes the records
+     *
+     * @param   snapshot
+     *          The fingerprint of the snapshot the world of this log was loaded from, 0 if none
+     * @throws  IOException
+     *          The log file is not a log, or its records apply to another snapshot
+     */
+    private void replay(long snapshot) throws IOException {
+        ByteBuffer log = ByteBuffer.allocate((int) channel.size());
+        while(log.hasRemaining() && channel.read(log, log.position()) >= 0);
+        log.flip();
+        if(log.remaining() < headerSize) {
+            reset(snapshot);
+            return;
+        }
+        if(log.getInt() != magic) throw new IOException("Not a write-ahead log");
+        long base = log.getLong();
+        long next = log.getLong();
+        if(next != 0 && next == snapshot) {
+            // A checkpoint published the snapshot but did not empty the log
+            reset(snapshot);
+            return;
+        }
+        if(base != 0 && base != snapshot) throw new IOException("The log does not match the snapshot");
+        if(next != 0) writeHeader(base, 0);
+        this.base = base;
+        CRC32 crc = new CRC32();
+        while(log.remaining() >= 8) {
+            int length = log.getInt(log.position());
+            int checksum = log.getInt(log.position() + 4);
+            if(length <= 0 || log.remaining() < 8 + length) break;
+            ByteBuffer record = log.slice(log.position() + 8, length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if((int) crc.getValue() != checksum) break;
+            try {
+                apply(record);
+            } catch (Exception e) {
+                throw new IOException("The log does not match the snapshot", e);
+            }
+            log.position(log.position() + 8 + length);
+        }
+        channel.truncate(log.position());
+        channel.position(log.position());
+    }
+
+    /**
+     * Applies the given record to the world of this log
+     */
+    private void apply(ByteBuffer record) throws Exception {
+        byte operation = record.get();
+        if(operation == pickup) {
+            ItemHolder holder = (ItemHolder) getReference(record);
+            Item item = (Item) roots.get(record.getLong());
+            byte anchor = record.get();
+            if(anchor == SnapshotFormat.noAnchor) {
+                holder.pickup(item);
+            } else {
+                ((Entity) holder).pickup(item, Anchorpoint.values()[anchor]);
+            }
+            onPickedUp(item);
+        } else if(operation == drop) {
+            Item item = (Item) getReference(record);
+            item.getHolder().drop(item);
+            onDropped(item);
+        } else if(operation == transfer) {
+            Entity entity = (Entity) roots.get(record.getLong());
+            Entity recipient = (Entity) roots.get(record.getLong());
+            entity.transferItemAtAnchorTo(recipient, Anchorpoint.values()[record.get()], Anchorpoint.values()[record.get()]);
+        } else if(operation == addDucats) {
+            Purse purse = (Purse) getReference(record);
+            purse.addDucats(record.getInt());
+        } else if(operation == discard) {
+            Item item = (Item) getReference(record);
+            item.discard();
+            onDiscarded(item);
+        } else {
+            throw new IOException("Unknown operation: " + operation);
+        }
+    }
+
+    /*
+        Group commit
+     */
+
+    /**
+     * Variable referencing the records that are appended but not yet written
+     */
+    private ByteBuffer batch = ByteBuffer.allocate(SnapshotFormat.bufferSize);
+
+    /**
+     * Variable referencing the futures of the records in the batch
+     */
+    private List<CompletableFuture<Void>> batchFutures = new ArrayList<>();
+
+    /**
+     * Variable referencing the thread committing batches
+     */
+    private final Thread committer;
+
+    private boolean isClosed = false;
+
+    private long nbRecords = 0;
+
+    private long nbCommits = 0;
+
+    /**
+     * Returns the number of records appended to this log
+     */
+    public synchronized long getNbRecords() {
+        return nbRecords;
+    }
+
+    /**
+     * Returns the number of batches written and forced to disk, each covering one or more records
+     */
+    public synchronized long getNbCommits() {
+        return nbCommits;
+    }
+
+    /**
+     * Checks that this log is not closed, before a mutation is applied to the world
+     *
+     * @throws  IllegalStateException
+     *          This log is closed
+     */
+    private void ensureOpen() throws IllegalStateException {
+        if(isClosed) throw new IllegalStateException("This log is closed");
+    }
+
+    /**
+     * Appends the given record to the batch and returns a future completing once the batch is durable
+     */
+    private CompletableFuture<Void> append(ByteBuffer record) {
+        record.flip();
+        CRC32 crc = new CRC32();
+        crc.update(record.duplicate());
+        if(batch.remaining() < 8 + record.remaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(2 * (batch.capacity() + record.remaining()));
+            batch.flip();
+            batch = larger.put(batch);
+        }
+        batch.putInt(record.remaining()).putInt((int) crc.getValue()).put(record);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        batchFutures.add(future);
+        nbRecords++;
+        notifyAll();
+        return future;
+    }
+
+    /**
+     * Returns a future that completes once all records appended so far are durable
+     */
+    public synchronized CompletableFuture<Void> sync() {
+        if(batchFutures.isEmpty() && !isCommitting) return CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        batchFutures.add(future);
+        notifyAll();
+        return future;
+    }
+
+    private boolean isCommitting = false;
+
+    /**
+     * Writes and forces batches until this log is closed
+     */
+    private void commitBatches() {
+        while(true) {
+            ByteBuffer toWrite;
+            List<CompletableFuture<Void>> futures;
+            synchronized (this) {
+                while(batchFutures.isEmpty() && !isClosed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if(batchFutures.isEmpty()) return;
+                toWrite = batch.flip();
+                futures = batchFutures;
+                batch = ByteBuffer.allocate(SnapshotFormat.bufferSize);
+                batchFutures = new ArrayList<>();
+                isCommitting = true;
+            }
+            try {
+                while(toWrite.hasRemaining()) channel.write(toWrite);
+                channel.force(false);
+                futures.forEach(future -> future.complete(null));
+            } catch (IOException e) {
+                futures.forEach(future -> future.completeExceptionally(e));
+            }
+            synchronized (this) {
+                isCommitting = false;
+                nbCommits++;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the world to the given path and empties the log
+     *
+     * @param   snapshot
+     *          The path of the snapshot to write
+     * @effect  All appended records are made durable and a snapshot of the world is written to the given path,
+     *          replacing the previous one atomically
+     *          | WorldSnapshotWriter.save(getWorld(), snapshot)
+     * @post    The log file is empty and handles are reassigned in the order of the world
+     * @note    The fingerprint of the new snapshot is written to the log file before the snapshot replaces the previous
+     *          one, so a log that was not emptied yet is recognized as included in the snapshot when recovering.
+     * @throws  IllegalStateException
+     *          This log is closed
+     */
+    public synchronized void checkpoint(Path snapshot) throws IOException, IllegalStateException {
+        ensureOpen();
+        awaitCommitted();
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        WorldSnapshotWriter.save(world, temporary);
+        long fingerprint = fingerprint(temporary);
+        writeHeader(base, fingerprint);
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        reset(fingerprint);
+        assignHandles();
+    }
+
+    /**
+     * Waits until the batch and the batch being committed are written, while holding the monitor of this log
+     */
+    private void awaitCommitted() throws IOException {
+        CompletableFuture<Void> future = sync();
+        try {
+            while(!future.isDone()) wait();
+            future.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (RuntimeException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Commits all appended records and closes the log file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if(isClosed) return;
+            awaitCommitted();
+            isClosed = true;
+            notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,32 @@
+package rpg.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A flight recorder event for a fight between two entities, from its first hit until one of them died
+ *
+ * @author  Corteville Andrew
+ */
+@Name("rpg.Fight")
+@Label("Fight")
+@Category({"RPG", "Combat"})
+@Description("A fight between two entities until one of them died")
+@StackTrace(false)
+public final class FightEvent extends Event {
+
+    @Label("Attacker")
+    public String attacker;
+
+    @Label("Defender")
+    public String defender;
+
+    @Label("Rounds")
+    @Description("The number of times the attacker hit the defender")
+    public int rounds;
+
+    @Label("Attacker Won")
+    public boolean attackerWon;
+
+    @Label("Winner Hit Points")
+    public int winnerHitPoints;
+}
@@ -0,0 +1,26 @@
+package rpg.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A flight recorder event for the generation of a new identification
+ *
+ * @author  Corteville Andrew
+ */
+@Name("rpg.IdAllocation")
+@Label("Id Allocation")
+@Category({"RPG", "Items"})
+@Description("The generation of a new identification for an item")
+@StackTrace(false)
+public final class IdAllocationEvent extends Event {
+
+    @Label("Item Type")
+    public Class<?> itemType;
+
+    @Label("Identification")
+    public long id;
+
+    @Label("Probes")
+    @Description("The number of candidate identifications that were checked")
+    public long probes;
+}
@@ -0,0 +1,32 @@
+package rpg.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A flight recorder event for an item that is picked up or dropped by an entity or a backpack
+ *
+ * @author  Corteville Andrew
+ */
+@Name("rpg.Inventory")
+@Label("Inventory Change")
+@Category({"RPG", "Inventory"})
+@Description("An item that is picked up or dropped by an entity or a backpack")
+@StackTrace(false)
+public final class InventoryEvent extends Event {
+
+    @Label("Operation")
+    @Description("Either pickup or drop")
+    public String operation;
+
+    @Label("Item Type")
+    public Class<?> itemType;
+
+    @Label("Holder Depth")
+    @Description("The number of backpacks between the holder and the entity or ground it lies on")
+    public int holderDepth;
+
+    @Label("Capacity Check Time")
+    @Description("The time spent checking whether the holder can carry the item")
+    @Timespan(Timespan.NANOSECONDS)
+    public long capacityCheckTime;
+}
@@ -4,6 +4,9 @@ import static org.junit.jupiter.api.Assertions.*;
 import rpg.*;
 import rpg.exceptions.InvalidHolderException;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class BackpackTest {
 
     private static Hero hero;
@@ -82,4 +85,110 @@ public class BackpackTest {
         assertThrows(IllegalArgumentException.class, () -> backpack2.pickup(weapon1));
         assertThrows(InvalidHolderException.class, () -> backpack2.pickup(weapon2));
     }
+
+    @Test
+    void drop_LastItemWithId() throws Exception {
+        backpack1.pickup(weapon1);
+        backpack1.pickup(armor1);
+        backpack1.drop(weapon1);
+        assertFalse(backpack1.getStoredIds().contains(weapon1.getId()));
+        assertEquals(0, backpack1.getNbItemsWithId(weapon1.getId()));
+        assertEquals(15 + armor1.getWeight(), backpack1.getWeight(), 1e-9);
+        assertEquals(1, backpack1.getNbItemsHeld());
+    }
+
+    @Test
+    void inventorySnapshot() {
+        Anchorpoint anchor = hero.getAnchorOf(backpack2);
+        EntitySnapshot before = hero.getInventorySnapshot();
+        try {
+            backpack2.pickup(weapon1);
+        } catch (Exception e) {
+            fail();
+        }
+        EntitySnapshot after = hero.getInventorySnapshot();
+        assertNotSame(before, after);
+        assertEquals(0, before.getItemAt(anchor).getNbItemsWithId(weapon1.getId()));
+
+        ItemSnapshot backpackSnapshot = after.getItemAt(anchor);
+        assertEquals(1, backpackSnapshot.getNbItemsWithId(weapon1.getId()));
+        assertEquals(Weapon.class, backpackSnapshot.getItemWithIdAtPos(weapon1.getId(), 0).getItemClass());
+        assertEquals(backpack2.getWeight(), backpackSnapshot.getWeight(), 1e-9);
+        assertEquals(hero.getLoad(), after.getLoad(), 1e-9);
+        assertEquals(hero.getValueHeld(), after.getValueHeld());
+        // Unchanged items are shared between snapshots
+        assertSame(before.getItemAt(Anchorpoint.BODY), after.getItemAt(Anchorpoint.BODY));
+    }
+
+    @Test
+    void inventorySnapshot_BuiltOnRead() throws Exception {
+        EntitySnapshot snapshot = hero.getInventorySnapshot();
+        assertSame(snapshot, hero.getInventorySnapshot());
+        hero.multiplyStrength(2);
+        assertSame(snapshot, hero.getInventorySnapshot());
+        backpack2.pickup(weapon1);
+        assertNotSame(snapshot, hero.getInventorySnapshot());
+    }
+
+    @Test
+    void inventorySnapshot_ConsistentWhileMutated() throws Exception {
+        Anchorpoint anchor = hero.getAnchorOf(backpack2);
+        AtomicBoolean isMutating = new AtomicBoolean(true);
+        AtomicInteger nbInconsistent = new AtomicInteger(0);
+        Thread reader = new Thread(() -> {
+            while(isMutating.get()) {
+                EntitySnapshot snapshot = hero.getInventorySnapshot();
+                int nbHeld = snapshot.getItemAt(anchor).getNbItemsWithId(weapon1.getId());
+                for (Anchorpoint other: snapshot.getAnchorPoints()) {
+                    ItemSnapshot item = snapshot.getItemAt(other);
+                    if(item != null && item.getId() == weapon1.getId()) nbHeld++;
+                }
+                if(nbHeld > 1) nbInconsistent.incrementAndGet();
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 2000; i++) {
+            backpack2.pickup(weapon1);
+            backpack2.drop(weapon1);
+            hero.pickup(weapon1);
+            hero.drop(weapon1);
+        }
+        isMutating.set(false);
+        reader.join();
+        assertEquals(0, nbInconsistent.get());
+        // Snapshots taken by the reader are never reused once the hero changed
+        EntitySnapshot snapshot = hero.getInventorySnapshot();
+        assertEquals(0, snapshot.getItemAt(anchor).getNbItemsWithId(weapon1.getId()));
+        backpack2.pickup(weapon1);
+        assertEquals(1, hero.getInventorySnapshot().getItemAt(anchor).getNbItemsWithId(weapon1.getId()));
+    }
+
+    @Test
+    void nestedContents_Parallel() {
+        Backpack vault = new Backpack(1, 10, 1_000_000);
+        int nbBackpacks = 200;
+        int nbWeaponsPerBackpack = 60;
+        try {
+            for (int i = 0; i < nbBackpacks; i++) {
+                Backpack backpack = new Backpack(1, 1, 1_000);
+                for (int j = 0; j < nbWeaponsPerBackpack; j++) backpack.pickup(new Weapon(2, 7));
+                vault.pickup(backpack);
+            }
+        } catch (Exception e) {
+            fail();
+        }
+        int nbItems = nbBackpacks * (nbWeaponsPerBackpack + 1);
+        assertEquals(nbItems, vault.getNbItemsHeld());
+        assertTrue(vault.getNbItemsHeld() >= NestedContents.getParallelThreshold());
+
+        assertEquals(nbBackpacks * (1 + 2.0 * nbWeaponsPerBackpack), vault.getLoad(), 1e-6);
+        assertEquals(nbBackpacks * (1 + 14 * nbWeaponsPerBackpack), vault.getLoadValue());
+        assertEquals(nbBackpacks * nbWeaponsPerBackpack, vault.getNbItemsOfTypeHeld(Weapon.class));
+        assertEquals(nbBackpacks, vault.getNbItemsOfTypeHeld(Backpack.class));
+        assertEquals(nbBackpacks, NestedContents.filter(vault, Backpack.class::isInstance).size());
+
+        Item backpack = NestedContents.filter(vault, Backpack.class::isInstance).get(0);
+        vault.drop(backpack);
+        assertEquals(nbItems - nbWeaponsPerBackpack - 1, vault.getNbItemsHeld());
+    }
 }
@@ -0,0 +1,106 @@
+import org.junit.jupiter.api.Test;
+import rpg.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CatalogImporterTest {
+
+    @Test
+    void importCsv_Items() throws Exception {
+        StringBuilder catalog = new StringBuilder("kind,id,weight,value,damage,protection,type,capacity,contents,name\n");
+        catalog.append("armortype,,,,,40,,,,\"Chain, mail\"\n");
+        for (int i = 0; i < 3000; i++) {
+            catalog.append("weapon,,1.5,,14,,,,,\n");
+            catalog.append("armor,,4,50,,,\"Chain, mail\",,,\n");
+            catalog.append("backpack,,2,10,,,,100,,\n");
+            catalog.append("purse,,0.1,,,,,50,20,\n");
+        }
+        List<Item> items = new ArrayList<>();
+        CatalogImporter.Report report = new CatalogImporter(items::add).importCsv(new StringReader(catalog.toString()));
+
+        assertTrue(report.isValid());
+        assertEquals(12001, report.getNbRows());
+        assertEquals(12000, report.getNbItems());
+        assertEquals(1, report.getNbArmorTypes());
+        assertEquals(40, Armor.getArmorTypes().get("Chain, mail"));
+        assertEquals(12000, items.size());
+        Set<Long> weaponIds = new HashSet<>();
+        Set<Long> armorIds = new HashSet<>();
+        for (int i = 0; i < items.size(); i += 4) {
+            assertTrue(weaponIds.add(items.get(i).getId()));
+            assertTrue(armorIds.add(items.get(i + 1).getId()));
+            assertEquals(40, ((Armor) items.get(i + 1)).getMaxProtection());
+            assertEquals(100, ((Backpack) items.get(i + 2)).getCapacity());
+            assertEquals(20, ((Purse) items.get(i + 3)).getContents());
+        }
+        Armor armor = new Armor(-1, 1, 1, 10);
+        assertFalse(armorIds.contains(armor.getId()));
+    }
+
+    @Test
+    void importJson_Items() throws Exception {
+        String catalog = "[ {\"kind\": \"weapon\", \"weight\": 2, \"damage\": 21},\n"
+                + "  {\"kind\": \"armor\", \"id\": 1000003, \"weight\": 6.5, \"value\": 30, \"protection\": 20, \"name\": null},\n"
+                + "  {\"kind\": \"purse\", \"weight\": 0.5, \"capacity\": 30} ]";
+        List<Item> items = new ArrayList<>();
+        CatalogImporter.Report report = new CatalogImporter(items::add).importJson(new StringReader(catalog));
+
+        assertTrue(report.isValid());
+        assertEquals(3, items.size());
+        assertEquals(21, ((Weapon) items.get(0)).getDamage());
+        assertEquals(1000003, items.get(1).getId());
+        assertEquals(6.5, items.get(1).getWeight());
+        assertEquals(0, ((Purse) items.get(2)).getContents());
+    }
+
+    @Test
+    void importCsv_RowErrors() throws Exception {
+        String catalog = """
+                kind,id,weight,value,damage,protection,type,capacity,contents
+                weapon,,-1,,14,,,,
+                weapon,,1,,15,,,,
+                armor,4,1,10,,20,,,
+                armor,,1,10,,,Unknown,,
+                purse,,1,,,,,10,20
+                backpack,,1,10,,,,abc,
+                dragon,,1,,,,,,
+                weapon,,1,,7,,,,
+                """;
+        List<Item> items = new ArrayList<>();
+        CatalogImporter.Report report = new CatalogImporter(items::add).importCsv(new StringReader(catalog));
+
+        assertEquals(8, report.getNbRows());
+        assertEquals(1, report.getNbItems());
+        assertEquals(7, report.getNbErrors());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L),
+                report.getErrors().stream().map(CatalogImporter.RowError::getRow).toList());
+        assertEquals(7, ((Weapon) items.get(0)).getDamage());
+    }
+
+    @Test
+    void import_Illegal() {
+        CatalogImporter importer = new CatalogImporter(item -> {});
+        assertThrows(IllegalArgumentException.class, () -> new CatalogImporter(null));
+        assertThrows(java.io.IOException.class, () -> importer.importJson(new StringReader("[{\"kind\": [1]}]")));
+        assertThrows(java.io.IOException.class, () -> importer.importCsv(new StringReader("")));
+    }
+
+    @Test
+    void import_FailedKeepsNoReservedIds() throws Exception {
+        String row = "{\"kind\": \"armor\", \"id\": 1000033, \"weight\": 3, \"value\": 10, \"protection\": 20}";
+        List<Item> items = new ArrayList<>();
+        CatalogImporter importer = new CatalogImporter(items::add);
+        assertThrows(java.io.IOException.class, () -> importer.importJson(new StringReader("[" + row + ", {")));
+        assertTrue(items.isEmpty());
+
+        CatalogImporter.Report report = importer.importJson(new StringReader("[" + row + "]"));
+        assertTrue(report.isValid());
+        assertEquals(1000033, items.get(0).getId());
+    }
+}
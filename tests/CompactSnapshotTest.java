@@ -0,0 +1,134 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rpg.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactSnapshotTest {
+
+    @Test
+    void saveLoad_RoundTrip(@TempDir Path directory) throws Exception {
+        World world = new World();
+        Hero hero = new Hero("Compacted", 25);
+        Backpack backpack = new Backpack(2, 10, 100);
+        Weapon weapon = new Weapon(3, 14);
+        Purse purse = new Purse(0.1, 50);
+        purse.addDucats(12);
+        backpack.pickup(weapon);
+        backpack.pickup(purse);
+        backpack.pickup(new Backpack(1, 3, 20));
+        hero.pickup(backpack);
+        hero.die();
+        world.addEntity(hero);
+        world.addEntity(new Monster("Compressed", 100, 10, 14, List.of(new Weapon(2, 7))));
+        world.addItem(new Weapon(1, 7));
+
+        Path path = directory.resolve("world.compact");
+        CompactSnapshotWriter.save(world, path);
+        World loaded = CompactSnapshotReader.load(path);
+
+        assertEquals(2, loaded.getNbEntities());
+        assertEquals(1, loaded.getNbItems());
+        List<Entity> entities = new ArrayList<>(loaded.getEntities());
+        Hero loadedHero = (Hero) entities.get(0);
+        assertEquals(hero.getName(), loadedHero.getName());
+        assertTrue(loadedHero.isDead());
+        assertEquals(hero.getStrength(), loadedHero.getStrength());
+        assertEquals(hero.getLoad(), loadedHero.getLoad(), 1e-9);
+        assertEquals(hero.getValueHeld(), loadedHero.getValueHeld());
+        Backpack loadedBackpack = (Backpack) loadedHero.getItemAt(hero.getAnchorOf(backpack));
+        assertEquals(backpack.getId(), loadedBackpack.getId());
+        assertEquals(3, loadedBackpack.getNbItemsHeld());
+        assertEquals(weapon.getDamage(), ((Weapon) loadedBackpack.getItemWithIdAtPos(weapon.getId(), 0)).getDamage());
+        Purse loadedPurse = null;
+        for (int pos = 0; pos < loadedBackpack.getNbItemsWithId(purse.getId()); pos++) {
+            Item item = loadedBackpack.getItemWithIdAtPos(purse.getId(), pos);
+            if(item instanceof Purse) loadedPurse = (Purse) item;
+        }
+        assertNotNull(loadedPurse);
+        assertEquals(12, loadedPurse.getContents());
+        assertEquals(entities.get(1).getProtection(), world.getEntities().stream().skip(1).findFirst().orElseThrow().getProtection());
+        assertEquals(world.getItems().iterator().next().getId(), loaded.getItems().iterator().next().getId());
+    }
+
+    @Test
+    void save_SmallerThanSnapshot(@TempDir Path directory) throws Exception {
+        World world = new World();
+        for (int i = 0; i < 2000; i++) {
+            Hero hero = new Hero("Dormant", 25);
+            Backpack backpack = new Backpack(1, 10, 100);
+            for (int j = 0; j < 5; j++) backpack.pickup(new Weapon(0.5, 7));
+            hero.pickup(backpack);
+            world.addEntity(hero);
+        }
+        Path snapshot = directory.resolve("world.snapshot");
+        Path compact = directory.resolve("world.compact");
+        WorldSnapshotWriter.save(world, snapshot);
+        CompactSnapshotWriter.save(world, compact);
+
+        assertTrue(Files.size(compact) * 5 < Files.size(snapshot));
+        assertEquals(2000, CompactSnapshotReader.load(compact).getNbEntities());
+    }
+
+    @Test
+    void load_IllegalCase(@TempDir Path directory) throws Exception {
+        Path snapshot = directory.resolve("world.snapshot");
+        World world = new World();
+        world.addEntity(new Hero("Plain", 25));
+        WorldSnapshotWriter.save(world, snapshot);
+        assertThrows(IOException.class, () -> CompactSnapshotReader.load(snapshot));
+        assertThrows(IllegalArgumentException.class, () -> new CompactSnapshotWriter(null));
+    }
+
+    @Test
+    void load_CorruptAnchor(@TempDir Path directory) throws Exception {
+        World world = new World();
+        Hero hero = new Hero("Anchored", 25);
+        world.addEntity(hero);
+        Path path = directory.resolve("world.compact");
+        CompactSnapshotWriter.save(world, path);
+
+        // The single block follows the header and its uncompressed and compressed lengths
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        byte[] block = new byte[bytes.getInt(14)];
+        Inflater inflater = new Inflater();
+        inflater.setInput(bytes.array(), 22, bytes.getInt(18));
+        assertEquals(block.length, inflater.inflate(block));
+        inflater.end();
+
+        // The anchor of the first item follows the strength of the hero and the number of items it holds
+        byte[] strength = ByteBuffer.allocate(8).putDouble(hero.getStrength()).array();
+        int offset = 0;
+        while(!Arrays.equals(block, offset, offset + 8, strength, 0, 8)) offset++;
+        block[offset + 9] = 100;
+
+        byte[] compressed = new byte[block.length + 64];
+        Deflater deflater = new Deflater();
+        deflater.setInput(block);
+        deflater.finish();
+        int compressedLength = deflater.deflate(compressed);
+        deflater.end();
+        ByteBuffer corrupt = ByteBuffer.allocate(22 + compressedLength);
+        corrupt.put(bytes.array(), 0, 14).putInt(block.length).putInt(compressedLength).put(compressed, 0, compressedLength);
+        Files.write(path, corrupt.array());
+
+        assertThrows(IOException.class, () -> CompactSnapshotReader.load(path));
+    }
+
+    @Test
+    void save_NameTooLong(@TempDir Path directory) {
+        World named = new World();
+        named.addEntity(new Monster("A" + "a".repeat(70000), 100, 10, 14));
+        assertThrows(IllegalArgumentException.class, () -> CompactSnapshotWriter.save(named, directory.resolve("world.compact")));
+    }
+}
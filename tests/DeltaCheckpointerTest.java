@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rpg.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeltaCheckpointerTest {
+
+    private static World world;
+    private static List<Hero> heroes;
+
+    @BeforeEach
+    void setup() throws Exception {
+        world = new World();
+        heroes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Hero hero = new Hero("Checkpointed", 25);
+            Backpack backpack = new Backpack(1, 10, 100);
+            for (int j = 0; j < 10; j++) backpack.pickup(new Weapon(0.5, 7));
+            hero.pickup(backpack);
+            heroes.add(hero);
+            world.addEntity(hero);
+        }
+    }
+
+    @Test
+    void checkpoint_WritesDeltas(@TempDir Path directory) throws Exception {
+        DeltaCheckpointer checkpointer = new DeltaCheckpointer(world, directory, 2);
+        Path base = checkpointer.checkpoint();
+        Weapon weapon = new Weapon(1, 14);
+        heroes.get(3).pickup(weapon);
+        world.addItem(new Weapon(2, 21));
+        Path delta = checkpointer.checkpoint();
+
+        assertEquals(1, checkpointer.getNbDeltas());
+        assertTrue(Files.size(delta) * 10 < Files.size(base));
+        World loaded = DeltaCheckpointer.load(directory);
+        assertEquals(50, loaded.getNbEntities());
+        assertEquals(1, loaded.getNbItems());
+        List<Entity> entities = new ArrayList<>(loaded.getEntities());
+        assertEquals(heroes.get(3).getLoad(), entities.get(3).getLoad(), 1e-9);
+        assertEquals(heroes.get(4).getLoad(), entities.get(4).getLoad(), 1e-9);
+        assertEquals(weapon.getId(), entities.get(3).getItemAt(heroes.get(3).getAnchorOf(weapon)).getId());
+    }
+
+    @Test
+    void checkpoint_Compacts(@TempDir Path directory) throws Exception {
+        DeltaCheckpointer checkpointer = new DeltaCheckpointer(world, directory, 2);
+        checkpointer.checkpoint();
+        checkpointer.checkpoint();
+        checkpointer.checkpoint();
+        assertEquals(0, checkpointer.getGeneration());
+        Path base = checkpointer.checkpoint();
+        assertEquals(1, checkpointer.getGeneration());
+        assertEquals(0, checkpointer.getNbDeltas());
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(base), files.toList());
+        }
+        heroes.get(0).die();
+        checkpointer.checkpoint();
+        assertTrue(new ArrayList<>(DeltaCheckpointer.load(directory).getEntities()).get(0).isDead());
+        assertThrows(IllegalArgumentException.class, () -> new DeltaCheckpointer(world, directory, 0));
+    }
+}
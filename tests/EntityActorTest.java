@@ -0,0 +1,105 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import rpg.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntityActorTest {
+
+    private static Hero hero;
+    private static Monster monster;
+    private static EntityActor heroActor;
+
+    @BeforeEach
+    void setup() {
+        hero = new Hero("Actor", 25);
+        monster = new Monster("Mailbox", 100, 10, 14, new ArrayList<>());
+        heroActor = new EntityActor(hero);
+    }
+
+    @Test
+    void commands_ProcessedInOrder() {
+        Weapon weapon = new Weapon(2, 14);
+        heroActor.pickup(weapon);
+        heroActor.drop(weapon).join();
+        assertTrue(weapon.liesOnGround());
+        assertEquals(0, heroActor.getNbPendingCommands());
+    }
+
+    @Test
+    void commands_ManyProducers() throws InterruptedException {
+        List<Weapon> weapons = List.of(new Weapon(1, 7), new Weapon(1, 7));
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        for (Weapon weapon: weapons) {
+            Thread producer = new Thread(() -> {
+                synchronized (futures) {
+                    futures.add(heroActor.pickup(weapon));
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer: producers) producer.join();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        for (Weapon weapon: weapons) assertEquals(hero, weapon.getHolder());
+        assertTrue(hero.hasProperAnchors());
+    }
+
+    @Test
+    void commands_Illegal() {
+        EntityActor monsterActor = new EntityActor(monster);
+        assertThrows(CompletionException.class, () -> monsterActor.heal().join());
+        assertThrows(CompletionException.class, () -> heroActor.hit(new EntityActor(new Hero("Other", 10))).join());
+        assertThrows(IllegalArgumentException.class, () -> new EntityActor(null));
+        assertThrows(IllegalArgumentException.class, () -> heroActor.hit(null));
+    }
+
+    @Test
+    void pairCommands_Transfer() {
+        Hero other = new Hero("Other", 25);
+        EntityActor otherActor = new EntityActor(other);
+        Weapon weapon = new Weapon(1, 7);
+        heroActor.pickup(weapon).join();
+        Anchorpoint anchor = null;
+        for (Anchorpoint candidate: hero.getAnchorPoints()) {
+            if(hero.getItemAt(candidate) == weapon) anchor = candidate;
+        }
+        heroActor.transferItemAtAnchorTo(otherActor, anchor, anchor).join();
+        assertEquals(other, weapon.getHolder());
+        otherActor.transferItemAtAnchorTo(heroActor, anchor, anchor).join();
+        assertEquals(hero, weapon.getHolder());
+        assertTrue(hero.hasProperAnchors());
+        assertTrue(other.hasProperAnchors());
+    }
+
+    @Test
+    void pairCommands_BothWays() throws InterruptedException {
+        EntityActor monsterActor = new EntityActor(monster);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            boolean fromHero = i % 2 == 0;
+            Thread producer = new Thread(() -> {
+                for (int j = 0; j < 50; j++) {
+                    CompletableFuture<Void> future = fromHero ? heroActor.hit(monsterActor) : monsterActor.hit(heroActor);
+                    synchronized (futures) {
+                        futures.add(future.exceptionally(e -> null));
+                    }
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer: producers) producer.join();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).orTimeout(10, TimeUnit.SECONDS).join();
+        assertTrue(hero.hasProperAnchors());
+        assertTrue(monster.hasProperAnchors());
+    }
+}
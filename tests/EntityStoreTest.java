@@ -0,0 +1,100 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rpg.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntityStoreTest {
+
+    @Test
+    void get_PagesEntitiesInAndOut(@TempDir Path directory) throws Exception {
+        try (EntityStore store = new EntityStore(directory.resolve("entities.pages"), 3)) {
+            List<Long> handles = new ArrayList<>();
+            List<Double> loads = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                Hero hero = new Hero("Dormant", 25);
+                Backpack backpack = new Backpack(1, 10, 100);
+                for (int j = 0; j < i; j++) backpack.pickup(new Weapon(0.5, 7));
+                hero.pickup(backpack);
+                handles.add(store.add(hero));
+                loads.add(hero.getLoad());
+            }
+            assertEquals(10, store.getNbEntities());
+            assertEquals(3, store.getNbResident());
+            assertEquals(7, store.getNbPageOuts());
+            assertFalse(store.isResident(handles.get(0)));
+            assertTrue(store.isResident(handles.get(9)));
+
+            for (int i = 0; i < 10; i++) assertEquals(loads.get(i), store.get(handles.get(i)).getLoad(), 1e-9);
+            assertEquals(10, store.getNbPageIns());
+            assertEquals(3, store.getNbResident());
+            assertEquals(10, store.getNbWrites());
+
+            store.get(handles.get(0));
+            store.get(handles.get(1));
+            store.get(handles.get(2));
+            assertEquals(10, store.getNbWrites());
+
+            Hero hero = (Hero) store.get(handles.get(0));
+            hero.setName("Awoken");
+            for (int i = 3; i < 6; i++) store.get(handles.get(i));
+            assertEquals(11, store.getNbWrites());
+            assertEquals("Awoken", store.get(handles.get(0)).getName());
+        }
+    }
+
+    @Test
+    void get_KeepsItemIds(@TempDir Path directory) throws Exception {
+        try (EntityStore store = new EntityStore(directory.resolve("entities.pages"), 1)) {
+            Hero hero = new Hero("Armored", 25);
+            Backpack backpack = new Backpack(1, 10, 100);
+            backpack.pickup(new Armor(-1, 2, 20, 10));
+            hero.pickup(backpack);
+            long handle = store.add(hero);
+            List<Long> ids = itemIds(hero);
+
+            for (int i = 0; i < 3; i++) {
+                store.add(new Hero("Other", 25));
+                assertFalse(store.isResident(handle));
+                Armor armor = new Armor(-1, 2, 20, 10);
+                assertFalse(ids.contains(armor.getId()));
+                assertEquals(ids, itemIds(store.get(handle)));
+            }
+        }
+    }
+
+    private static List<Long> itemIds(Entity entity) {
+        List<Long> result = new ArrayList<>();
+        EntitySnapshot snapshot = entity.getInventorySnapshot();
+        for (Anchorpoint anchorpoint: Anchorpoint.values()) {
+            if(snapshot.getAnchorPoints().contains(anchorpoint) && snapshot.getItemAt(anchorpoint) != null)
+                itemIds(snapshot.getItemAt(anchorpoint), result);
+        }
+        return result;
+    }
+
+    private static void itemIds(ItemSnapshot item, List<Long> result) {
+        result.add(item.getId());
+        for (long id: item.getStoredIds()) {
+            for (int pos = 0; pos < item.getNbItemsWithId(id); pos++) itemIds(item.getItemWithIdAtPos(id, pos), result);
+        }
+    }
+
+    @Test
+    void get_IllegalCase(@TempDir Path directory) throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> new EntityStore(directory.resolve("entities.pages"), 0));
+        EntityStore store = new EntityStore(directory.resolve("entities.pages"), 1);
+        long handle = store.add(new Hero("Removed", 25));
+        store.remove(handle);
+        assertFalse(store.hasAsHandle(handle));
+        assertThrows(NoSuchElementException.class, () -> store.get(handle));
+        assertThrows(IllegalArgumentException.class, () -> store.add(null));
+        store.close();
+        assertThrows(IllegalStateException.class, () -> store.add(new Hero("Late", 25)));
+    }
+}
@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rpg.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FightResultExportTest {
+
+    @Test
+    void fight_RecordsResult() throws Exception {
+        Hero hero = new Hero("Recorded", 25);
+        Monster monster = new Monster("Victim", 100, 10, 7, new ArrayList<>());
+        int heroDamage = hero.getDamage();
+        int monsterHitPoints = monster.getHitPoints();
+        FightResult result = FightResult.fight(42, hero, monster);
+
+        assertEquals(42, result.getSeed());
+        assertTrue(result.getRounds() > 0);
+        assertEquals(FightResult.hero, result.get(FightResult.Column.ATTACKER_KIND));
+        assertEquals(FightResult.monster, result.get(FightResult.Column.DEFENDER_KIND));
+        assertEquals(heroDamage, result.get(FightResult.Column.ATTACKER_DAMAGE));
+        assertEquals(monsterHitPoints, result.get(FightResult.Column.DEFENDER_HIT_POINTS));
+        Entity winner = result.getWinner() == FightResult.attackerWon ? hero : monster;
+        assertFalse(winner.isDead());
+        assertEquals(winner.getHitPoints(), result.getWinnerHitPoints());
+        assertEquals(winner.getValueHeld(), result.getLootValue());
+        assertThrows(IllegalArgumentException.class, () -> FightResult.fight(0, hero, hero));
+        assertThrows(IllegalArgumentException.class, () -> FightResult.fight(0, hero, new Hero("Other", 25)));
+    }
+
+    @Test
+    void write_ReadsColumnsBack(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("fights.columns");
+        List<FightResult> results = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            results.add(new FightResult(i * 7L, new int[]{FightResult.hero, 100 + i, 90, 10, i},
+                    new int[]{FightResult.monster, 200, 200 - i, 15, 3}, i % 13,
+                    i % 3 == 0 ? FightResult.defenderWon : FightResult.attackerWon, i % 97, i * 11));
+        }
+        try (FightResultWriter writer = new FightResultWriter(path, 64)) {
+            for (FightResult result: results) writer.write(result);
+            assertEquals(250, writer.getNbRows());
+        }
+
+        try (FightResultReader reader = new FightResultReader(path)) {
+            assertEquals(250, reader.getNbRows());
+            assertEquals(4, reader.getNbRowGroups());
+            assertEquals(58, reader.getNbRowsIn(3));
+            for (FightResult.Column column: FightResult.Column.values()) {
+                long[] values = reader.readColumn(column);
+                for (int i = 0; i < results.size(); i++) assertEquals(results.get(i).get(column), values[i]);
+            }
+            assertEquals(64 * 7L, reader.readColumn(FightResult.Column.SEED, 1)[0]);
+        }
+    }
+
+    @Test
+    void write_IllegalCase(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("fights.columns");
+        assertThrows(IllegalArgumentException.class, () -> new FightResultWriter(path, 0));
+        FightResultWriter writer = new FightResultWriter(path);
+        writer.close();
+        assertThrows(IllegalStateException.class, () -> writer.write(FightResult.fight(0,
+                new Hero("Late", 25), new Monster("Later", 10, 10, 7, new ArrayList<>()))));
+        try (FightResultReader reader = new FightResultReader(path)) {
+            assertEquals(0, reader.getNbRows());
+        }
+    }
+}
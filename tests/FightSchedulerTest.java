@@ -0,0 +1,64 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import rpg.*;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FightSchedulerTest {
+
+    private static FightScheduler scheduler;
+    private static Hero hero1;
+    private static Hero hero2;
+    private static Hero hero3;
+    private static Monster monster1;
+    private static Monster monster2;
+
+    @BeforeEach
+    void setup() {
+        scheduler = new FightScheduler();
+        hero1 = new Hero("First", 25);
+        hero2 = new Hero("Second", 25);
+        hero3 = new Hero("Third", 25);
+        monster1 = new Monster("Weak", 1000, 10, 7, new ArrayList<>());
+        monster2 = new Monster("Feeble", 1000, 10, 7, new ArrayList<>());
+    }
+
+    @Test
+    void runTick_ConflictFree() {
+        scheduler.schedule(hero1, monster1);
+        scheduler.schedule(hero2, monster1);
+        scheduler.schedule(hero3, monster2);
+        scheduler.schedule(hero1, monster2);
+        assertEquals(4, scheduler.getNbScheduledExchanges());
+
+        FightScheduler.TickReport report = scheduler.runTick();
+        assertEquals(4, report.getNbExchanges());
+        assertEquals(4, report.getNbExecuted());
+        assertEquals(2, report.getNbRounds());
+        assertEquals(2, report.getMaxRoundSize());
+        assertEquals(2.0, report.getParallelism());
+        assertEquals(0, scheduler.getNbScheduledExchanges());
+        assertFalse(hero1.isFighting());
+        assertFalse(monster1.isFighting());
+        assertTrue(hero1.canHaveAsHitPoints(hero1.getHitPoints()));
+    }
+
+    @Test
+    void runTick_SkipsDead() {
+        monster2.die();
+        scheduler.schedule(hero1, monster2);
+        scheduler.schedule(monster1, hero2);
+        FightScheduler.TickReport report = scheduler.runTick();
+        assertEquals(1, report.getNbExecuted());
+        assertEquals(1, report.getNbRounds());
+    }
+
+    @Test
+    void schedule_Illegal() {
+        assertThrows(IllegalArgumentException.class, () -> scheduler.schedule(hero1, hero2));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.schedule(monster1, monster1));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.schedule(null, monster1));
+    }
+}
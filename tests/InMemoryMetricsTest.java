@@ -0,0 +1,66 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import rpg.*;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryMetricsTest {
+
+    private static InMemoryMetrics metrics;
+
+    @BeforeEach
+    void setup() {
+        metrics = new InMemoryMetrics();
+        Metrics.setRecorder(metrics);
+    }
+
+    @AfterEach
+    void teardown() {
+        Metrics.setRecorder(null);
+    }
+
+    @Test
+    void record_CountsOperations() throws Exception {
+        Hero hero = new Hero("Measured", 25);
+        Backpack backpack = new Backpack(1, 10, 100);
+        Weapon weapon = new Weapon(1, 14);
+        backpack.pickup(weapon);
+        hero.pickup(backpack);
+        backpack.drop(weapon);
+        weapon.degrade(7);
+        weapon.repair(7);
+        Monster monster = new Monster("Measured", 100, 10, 7, new ArrayList<>());
+        monster.fight(hero);
+
+        assertEquals(2, metrics.getCount(MetricsRecorder.Operation.PICKUP));
+        assertEquals(1, metrics.getCount(MetricsRecorder.Operation.DROP));
+        assertEquals(1, metrics.getCount(MetricsRecorder.Operation.DEGRADE));
+        assertEquals(1, metrics.getCount(MetricsRecorder.Operation.REPAIR));
+        assertEquals(1, metrics.getCount(MetricsRecorder.Operation.FIGHT));
+        assertTrue(metrics.getCount(MetricsRecorder.Operation.HIT) >= 1);
+        assertTrue(metrics.getTotalNanos(MetricsRecorder.Operation.FIGHT) > 0);
+        assertTrue(metrics.scrape().contains("rpg_operation_count{operation=\"pickup\"} 2"));
+    }
+
+    @Test
+    void getPercentileNanos_Buckets() {
+        for (int i = 0; i < 99; i++) metrics.record(MetricsRecorder.Operation.HIT, 100);
+        metrics.record(MetricsRecorder.Operation.HIT, 5000);
+        assertEquals(128, metrics.getPercentileNanos(MetricsRecorder.Operation.HIT, 50));
+        assertEquals(8192, metrics.getPercentileNanos(MetricsRecorder.Operation.HIT, 100));
+        assertEquals(0, metrics.getPercentileNanos(MetricsRecorder.Operation.DROP, 50));
+        assertThrows(IllegalArgumentException.class, () -> metrics.getPercentileNanos(MetricsRecorder.Operation.HIT, 101));
+        metrics.reset();
+        assertEquals(0, metrics.getCount(MetricsRecorder.Operation.HIT));
+    }
+
+    @Test
+    void setRecorder_Null() throws Exception {
+        Metrics.setRecorder(null);
+        new Backpack(1, 10, 100).pickup(new Weapon(1, 14));
+        assertEquals(0, metrics.getCount(MetricsRecorder.Operation.PICKUP));
+    }
+}
@@ -0,0 +1,92 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import rpg.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InvariantSamplerTest {
+
+    private static List<InvariantViolation> violations;
+
+    @BeforeEach
+    void setup() {
+        violations = new ArrayList<>();
+        InvariantSampler.setReporter(violations::add);
+        InvariantSampler.resetCounters();
+    }
+
+    @AfterEach
+    void teardown() {
+        InvariantSampler.setReporter(null);
+        InvariantSampler.setSampleRate(1);
+    }
+
+    @Test
+    void sampleRate_EnabledWithAssertions() {
+        assertEquals(1, InvariantSampler.getSampleRate());
+    }
+
+    @Test
+    void sample_EveryMutation() throws Exception {
+        Hero hero = new Hero("Checked", 25);
+        Backpack backpack = new Backpack(1, 10, 100);
+        Weapon weapon = new Weapon(1, 14);
+        backpack.pickup(weapon);
+        hero.pickup(backpack);
+        backpack.drop(weapon);
+        weapon.degrade(7);
+        Monster monster = new Monster("Checked", 100, 10, 7, new ArrayList<>());
+        monster.fight(hero);
+
+        assertTrue(InvariantSampler.getNbChecks() >= 6);
+        assertEquals(0, InvariantSampler.getNbViolations());
+        assertTrue(violations.isEmpty());
+    }
+
+    @Test
+    void sample_TransferChecksBothEntities() throws Exception {
+        Hero hero = new Hero("Giver", 25);
+        Hero other = new Hero("Receiver", 25);
+        Weapon weapon = new Weapon(1, 7);
+        hero.pickup(weapon);
+        Anchorpoint anchor = null;
+        for (Anchorpoint candidate: hero.getAnchorPoints()) {
+            if(hero.getItemAt(candidate) == weapon) anchor = candidate;
+        }
+        InvariantSampler.resetCounters();
+        hero.transferItemAtAnchorTo(other, anchor, anchor);
+
+        assertEquals(4, InvariantSampler.getNbChecks());
+        assertEquals(0, InvariantSampler.getNbViolations());
+    }
+
+    @Test
+    void sample_Disabled() throws Exception {
+        InvariantSampler.setSampleRate(0);
+        Hero hero = new Hero("Unchecked", 25);
+        hero.pickup(new Backpack(1, 10, 100));
+        assertEquals(0, InvariantSampler.getNbChecks());
+    }
+
+    @Test
+    void sample_Fraction() throws Exception {
+        InvariantSampler.setSampleRate(10);
+        Backpack backpack = new Backpack(1, 1000, 100);
+        Weapon weapon = new Weapon(1, 14);
+        for (int i = 0; i < 1000; i++) {
+            backpack.pickup(weapon);
+            backpack.drop(weapon);
+        }
+        long nbChecks = InvariantSampler.getNbChecks();
+        assertTrue(nbChecks > 100 && nbChecks < 300);
+    }
+
+    @Test
+    void setSampleRate_IllegalCase() {
+        assertThrows(IllegalArgumentException.class, () -> InvariantSampler.setSampleRate(-1));
+    }
+}
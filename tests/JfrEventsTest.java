@@ -0,0 +1,64 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rpg.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JfrEventsTest {
+
+    @Test
+    void events_Recorded(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("rpg.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("rpg.Fight");
+            recording.enable("rpg.Inventory");
+            recording.enable("rpg.IdAllocation");
+            recording.start();
+
+            Hero hero = new Hero("Recorded", 25);
+            Backpack outer = new Backpack(1, 10, 100);
+            Backpack inner = new Backpack(1, 10, 100);
+            outer.pickup(inner);
+            inner.pickup(new Armor(1, 2, 10, 10));
+            hero.pickup(outer);
+            Monster monster = new Monster("Recorded", 100, 10, 7, new ArrayList<>());
+            monster.fight(hero);
+
+            recording.stop();
+            recording.dump(path);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(path);
+        RecordedEvent fight = events.stream().filter(e -> e.getEventType().getName().equals("rpg.Fight"))
+                .findFirst().orElseThrow();
+        assertEquals("Recorded", fight.getString("attacker"));
+        assertTrue(fight.getInt("rounds") >= 1);
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("rpg.Inventory")
+                && e.getString("operation").equals("pickup") && e.getInt("holderDepth") == 2));
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("rpg.Inventory")
+                && e.getClass("itemType").getName().equals(Backpack.class.getName()) && e.getInt("holderDepth") == 0));
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("rpg.IdAllocation")
+                && e.getLong("probes") >= 1));
+    }
+
+    @Test
+    void events_NotRecordedWhenDisabled(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("rpg.jfr");
+        try (Recording recording = new Recording()) {
+            recording.disable("rpg.Inventory");
+            recording.start();
+            new Hero("Unrecorded", 25).pickup(new Backpack(1, 10, 100));
+            recording.stop();
+            recording.dump(path);
+        }
+        assertTrue(RecordingFile.readAllEvents(path).stream()
+                .noneMatch(e -> e.getEventType().getName().equals("rpg.Inventory")));
+    }
+}
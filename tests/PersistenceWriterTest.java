@@ -0,0 +1,110 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rpg.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistenceWriterTest {
+
+    private static Hero hero;
+    private static Monster monster;
+    private static Backpack backpack;
+
+    @BeforeEach
+    void setup() throws Exception {
+        hero = new Hero("Persisted", 25);
+        monster = new Monster("Stored", 100, 10, 7, new ArrayList<>());
+        backpack = new Backpack(1, 10, 100);
+    }
+
+    @Test
+    void submit_CoalescesChanges(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("world.changes");
+        Weapon last = null;
+        try (PersistenceWriter writer = new PersistenceWriter(path, 1024, 1000)) {
+            hero.pickup(backpack);
+            for (int i = 0; i < 20; i++) {
+                last = new Weapon(0.5, 7);
+                backpack.pickup(last);
+                writer.submit(last);
+            }
+            writer.submit(monster);
+            writer.flush();
+            assertEquals(2, writer.getNbWritten());
+            assertEquals(19, writer.getNbCoalesced());
+            assertEquals(0, writer.getQueueDepth());
+        }
+
+        World loaded = PersistenceWriter.load(path);
+        assertEquals(2, loaded.getNbEntities());
+        List<Entity> entities = new ArrayList<>(loaded.getEntities());
+        assertEquals(hero.getLoad(), entities.get(0).getLoad(), 1e-9);
+        assertEquals(last.getId(), ((Backpack) entities.get(0).getItemAt(hero.getAnchorOf(backpack)))
+                .getItemWithIdAtPos(last.getId(), 0).getId());
+    }
+
+    @Test
+    void remove_DropsRecord(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("world.changes");
+        try (PersistenceWriter writer = new PersistenceWriter(path, 1, 0)) {
+            writer.submit(hero);
+            writer.submit(backpack);
+            writer.submit(monster);
+            writer.flush();
+            writer.remove(monster);
+        }
+        World loaded = PersistenceWriter.load(path);
+        assertEquals(1, loaded.getNbEntities());
+        assertEquals(1, loaded.getNbItems());
+        assertEquals(backpack.getId(), loaded.getItems().iterator().next().getId());
+    }
+
+    @Test
+    void submit_AppendsSessions(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("world.changes");
+        try (PersistenceWriter writer = new PersistenceWriter(path)) {
+            writer.submit(hero);
+        }
+        try (PersistenceWriter writer = new PersistenceWriter(path)) {
+            writer.submit(monster);
+        }
+        World loaded = PersistenceWriter.load(path);
+        assertEquals(2, loaded.getNbEntities());
+        List<Entity> entities = new ArrayList<>(loaded.getEntities());
+        assertEquals(hero.getName(), entities.get(0).getName());
+        assertEquals(monster.getName(), entities.get(1).getName());
+    }
+
+    @Test
+    void submit_FlusherStopped(@TempDir Path directory) throws Exception {
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        PersistenceWriter writer = new PersistenceWriter(directory.resolve("world.changes"), 1, 0);
+        Thread flusher = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("persistence-writer") && !before.contains(thread))
+                .findFirst().orElseThrow();
+        flusher.interrupt();
+        flusher.join();
+        assertThrows(IllegalStateException.class, () -> writer.submit(hero));
+        assertThrows(IllegalStateException.class, () -> writer.submit(monster));
+        writer.flush();
+        writer.close();
+        assertEquals(0, writer.getNbWritten());
+    }
+
+    @Test
+    void submit_IllegalCase(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("world.changes");
+        assertThrows(IllegalArgumentException.class, () -> new PersistenceWriter(path, 0, 10));
+        PersistenceWriter writer = new PersistenceWriter(path);
+        assertThrows(IllegalArgumentException.class, () -> writer.submit((Entity) null));
+        assertThrows(IllegalArgumentException.class, () -> writer.remove("Not a root"));
+        writer.close();
+        assertThrows(IllegalStateException.class, () -> writer.submit(hero));
+    }
+}
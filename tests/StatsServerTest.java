@@ -0,0 +1,204 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rpg.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatsServerTest {
+
+    private static World world;
+
+    private static StatsServer server;
+
+    @BeforeEach
+    void setup() throws IOException {
+        world = new World();
+        server = new StatsServer(world, 0);
+    }
+
+    @AfterEach
+    void teardown() {
+        server.close();
+        Metrics.setRecorder(null);
+    }
+
+    private static HttpURLConnection connect(String path) throws IOException {
+        return (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+    }
+
+    @Test
+    void statistics_CountEntitiesAndItemsOfWorld() throws Exception {
+        Statistics statistics = world.getStatistics();
+        Hero hero = new Hero("Counted", 25);
+        assertEquals(0, statistics.getNbAlive(Hero.class));
+
+        world.addEntity(hero);
+        assertEquals(1, statistics.getNbAlive(Hero.class));
+        assertEquals(1, statistics.getNbItems(Armor.class));
+        assertEquals(1, statistics.getNbItems(Purse.class));
+
+        Backpack backpack = new Backpack(1, 10, 100);
+        backpack.pickup(new Weapon(1, 14));
+        hero.pickup(backpack);
+        assertEquals(1, statistics.getNbItems(Backpack.class));
+        assertEquals(1, statistics.getNbItems(Weapon.class));
+
+        Weapon weapon = new Weapon(1, 7);
+        world.addItem(weapon);
+        assertEquals(2, statistics.getNbItems(Weapon.class));
+        hero.drop(backpack);
+        assertEquals(1, statistics.getNbItems(Weapon.class));
+        world.removeItem(weapon);
+        assertEquals(0, statistics.getNbItems(Weapon.class));
+
+        world.removeEntity(hero);
+        assertEquals(0, statistics.getNbAlive(Hero.class));
+        assertEquals(0, statistics.getNbItems(Armor.class));
+        assertEquals(0, statistics.getNbItems(Purse.class));
+        assertThrows(IllegalArgumentException.class, () -> {
+            World other = new World();
+            other.addEntity(hero);
+            world.addEntity(hero);
+        });
+    }
+
+    @Test
+    void statistics_CountDeathsAndFights() {
+        Statistics statistics = world.getStatistics();
+        Hero hero = new Hero("Counted", 25);
+        Monster monster = new Monster("Counted", 1000, 10, 140, new ArrayList<>());
+        world.addEntity(hero);
+        world.addEntity(monster);
+        monster.fight(hero);
+        hero.die();
+
+        assertTrue(hero.isDead());
+        assertEquals(0, statistics.getNbAlive(Hero.class));
+        assertEquals(1, statistics.getNbDead(Hero.class));
+        assertEquals(1, statistics.getNbAlive(Monster.class));
+        assertEquals(1, statistics.getNbFights());
+    }
+
+    @Test
+    void statistics_CountDucats() throws Exception {
+        Statistics statistics = world.getStatistics();
+        Purse purse = new Purse(0.5, 100);
+        purse.addDucats(40);
+        assertEquals(0, statistics.getNbDucats());
+        world.addItem(purse);
+        assertEquals(40, statistics.getNbDucats());
+        purse.removeDucats(15);
+        assertEquals(25, statistics.getNbDucats());
+        purse.destroy();
+        assertEquals(0, statistics.getNbDucats());
+        assertEquals(0, statistics.getNbItems(Purse.class));
+        assertEquals(1, statistics.getNbBroken(Purse.class));
+    }
+
+    @Test
+    void statistics_CountNestedItemsThatChanged() throws Exception {
+        Hero hero = new Hero("Moved", 25);
+        Backpack outer = new Backpack(1, 10, 1000);
+        Backpack inner = new Backpack(1, 10, 1000);
+        Purse purse = new Purse(0.5, 100);
+        Purse destroyed = new Purse(0.5, 100);
+        inner.pickup(purse);
+        inner.pickup(destroyed);
+        inner.pickup(new Weapon(1, 14));
+        outer.pickup(inner);
+        hero.pickup(outer);
+        purse.addDucats(30);
+        destroyed.addDucats(10);
+        destroyed.destroy();
+        world.addEntity(hero);
+        assertEquals(2, world.getStatistics().getNbItems(Backpack.class));
+        assertEquals(1, world.getStatistics().getNbItems(Weapon.class));
+        assertEquals(2, world.getStatistics().getNbItems(Purse.class));
+        assertEquals(1, world.getStatistics().getNbBroken(Purse.class));
+        assertEquals(30, world.getStatistics().getNbDucats());
+
+        World other = new World();
+        world.removeEntity(hero);
+        inner.drop(purse);
+        hero.drop(outer);
+        other.addItem(outer);
+        assertEquals(0, world.getStatistics().getNbItems(Backpack.class));
+        assertEquals(0, world.getStatistics().getNbDucats());
+        assertEquals(2, other.getStatistics().getNbItems(Backpack.class));
+        assertEquals(1, other.getStatistics().getNbItems(Weapon.class));
+        assertEquals(0, other.getStatistics().getNbItems(Purse.class));
+        assertEquals(1, other.getStatistics().getNbBroken(Purse.class));
+        assertEquals(0, other.getStatistics().getNbDucats());
+    }
+
+    @Test
+    void statistics_CountRestoredWorldSeparately(@TempDir Path directory) throws Exception {
+        Hero hero = new Hero("Saved", 25);
+        Backpack backpack = new Backpack(1, 10, 100);
+        for (int i = 0; i < 3; i++) backpack.pickup(new Weapon(1, 14));
+        hero.pickup(backpack);
+        world.addEntity(hero);
+        Path path = directory.resolve("world.snapshot");
+        WorldSnapshotWriter.save(world, path);
+
+        World loaded = WorldSnapshotReader.load(path);
+        assertEquals(3, world.getStatistics().getNbItems(Weapon.class));
+        assertEquals(3, loaded.getStatistics().getNbItems(Weapon.class));
+        assertEquals(1, loaded.getStatistics().getNbAlive(Hero.class));
+
+        World mapped = MappedSnapshotLoader.load(path);
+        for (Entity entity: mapped.getEntities()) entity.getLoad();
+        assertEquals(3, mapped.getStatistics().getNbItems(Weapon.class));
+        assertEquals(1, mapped.getStatistics().getNbItems(Backpack.class));
+        assertEquals(1, world.getStatistics().getNbAlive(Hero.class));
+    }
+
+    @Test
+    void get_ReturnsStatistics() throws IOException {
+        Metrics.setRecorder(new InMemoryMetrics());
+        world.addEntity(new Hero("Exposed", 25));
+
+        HttpURLConnection connection = connect("/stats");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/plain"));
+        String body;
+        try (InputStream in = connection.getInputStream()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        assertTrue(body.contains("rpg_entities{kind=\"hero\",state=\"alive\"} 1\n"));
+        assertTrue(body.contains("rpg_entities{kind=\"monster\",state=\"dead\"} 0\n"));
+        assertTrue(body.contains("rpg_items{type=\"armor\",state=\"intact\"} 1\n"));
+        assertTrue(body.contains("rpg_ducats_total "));
+        assertTrue(body.contains("rpg_fights_per_second "));
+        assertTrue(body.contains("rpg_operation_count{operation=\"pickup\"} "));
+    }
+
+    @Test
+    void get_UnknownPathIsNotFound() throws IOException {
+        assertEquals(404, connect("/unknown").getResponseCode());
+    }
+
+    @Test
+    void post_IsNotAllowed() throws IOException {
+        HttpURLConnection connection = connect("/stats");
+        connection.setRequestMethod("POST");
+        assertEquals(405, connection.getResponseCode());
+    }
+
+    @Test
+    void constructor_InvalidPort() {
+        assertThrows(IllegalArgumentException.class, () -> new StatsServer(world, -1));
+        assertThrows(IllegalArgumentException.class, () -> new StatsServer(null, 0));
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+import rpg.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorldEventReplayerTest {
+
+    private static List<WorldEvent> getEvents(int nbHeroes) {
+        List<WorldEvent> events = new ArrayList<>();
+        long key = 0;
+        for (int i = 0; i < nbHeroes; i++) {
+            long hero = key++;
+            long backpack = key++;
+            long purse = key++;
+            long weapon = key++;
+            events.add(WorldEvent.EntityCreated.hero(hero, "Replayed", 100, 97, 25));
+            events.add(WorldEvent.ItemCreated.backpack(backpack, (1L << 40) + i, 2, 10, 100));
+            events.add(WorldEvent.ItemCreated.purse(purse, 0.1, 100, 10));
+            events.add(WorldEvent.ItemCreated.weapon(weapon, 6L * (1000 + i), 3, 14));
+            events.add(new WorldEvent.ItemPickedUp(backpack, hero, Anchorpoint.BACK));
+            events.add(new WorldEvent.ItemPickedUp(purse, backpack, null));
+            events.add(new WorldEvent.ItemPickedUp(weapon, backpack, null));
+            events.add(new WorldEvent.DucatsMoved(WorldEvent.noKey, purse, 5));
+            events.add(new WorldEvent.EntityDamaged(hero, 10));
+        }
+        return events;
+    }
+
+    @Test
+    void replay_Sharded() {
+        WorldEventReplayer replayer = new WorldEventReplayer();
+        World world = replayer.replay(getEvents(200));
+        assertEquals(200, world.getNbEntities());
+        assertEquals(0, world.getNbItems());
+        assertEquals(0, replayer.getNbBarriers());
+        assertEquals(1, replayer.getNbSegments());
+        for (Entity entity: world.getEntities()) {
+            Backpack backpack = (Backpack) entity.getItemAt(Anchorpoint.BACK);
+            assertEquals(2, backpack.getNbItemsHeld());
+            assertEquals(15, ((Purse) backpack.getItemWithIdAtPos(0, 0)).getContents());
+            assertEquals(87, entity.getHitPoints());
+        }
+    }
+
+    @Test
+    void replay_CrossShard() {
+        List<WorldEvent> events = getEvents(2);
+        long weapon = 3;
+        long other = 4;
+        events.add(new WorldEvent.ItemDropped(weapon));
+        events.add(new WorldEvent.ItemPickedUp(weapon, other, Anchorpoint.LEFT_HAND));
+        events.add(new WorldEvent.DucatsMoved(2, 6, 15));
+        events.add(new WorldEvent.EntityDied(0));
+        WorldEventReplayer replayer = new WorldEventReplayer();
+        replayer.replay(events);
+        WorldEventApplier applier = replayer.getApplier();
+
+        assertEquals(applier.getEntity(other), applier.getItem(weapon).getHolder());
+        assertEquals(0, ((Purse) applier.getItem(2)).getContents());
+        assertEquals(30, ((Purse) applier.getItem(6)).getContents());
+        assertTrue(applier.getEntity(0).isDead());
+        assertTrue(replayer.getNbBarriers() > 0);
+    }
+
+    @Test
+    void apply_Illegal() {
+        WorldEventApplier applier = new WorldEventApplier(new World());
+        applier.apply(WorldEvent.ItemCreated.weapon(0, 6, 1, 7));
+        assertThrows(IllegalArgumentException.class, () -> applier.apply(new WorldEvent.ItemPickedUp(0, 1, Anchorpoint.BACK)));
+        assertThrows(IllegalArgumentException.class, () -> applier.apply(WorldEvent.ItemCreated.weapon(0, 6, 1, 7)));
+        assertThrows(IllegalArgumentException.class, () -> new WorldEvent.ItemDropped(-5));
+    }
+}
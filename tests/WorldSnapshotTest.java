@@ -0,0 +1,135 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rpg.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorldSnapshotTest {
+
+    private static World world;
+    private static Hero hero;
+    private static Backpack backpack;
+    private static Weapon weapon;
+    private static Purse purse;
+    private static Backpack nested;
+
+    @BeforeEach
+    void setup() throws Exception {
+        world = new World();
+        hero = new Hero("Saved", 25);
+        backpack = new Backpack(2, 10, 100);
+        weapon = new Weapon(3, 14);
+        purse = new Purse(0.1, 50);
+        backpack.pickup(weapon);
+        backpack.pickup(purse);
+        nested = new Backpack(1, 3, 20);
+        nested.pickup(new Weapon(1, 7));
+        backpack.pickup(nested);
+        hero.pickup(backpack);
+        world.addEntity(hero);
+        world.addEntity(new Monster("Stored", 100, 10, 14, List.of(new Weapon(2, 7))));
+        world.addItem(new Weapon(1, 7));
+    }
+
+    @Test
+    void saveLoad_RoundTrip(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("world.snapshot");
+        WorldSnapshotWriter.save(world, path);
+        World loaded = WorldSnapshotReader.load(path);
+
+        assertEquals(world.getNbEntities(), loaded.getNbEntities());
+        assertEquals(world.getNbItems(), loaded.getNbItems());
+        Hero loadedHero = (Hero) loaded.getEntities().iterator().next();
+        assertEquals(hero.getName(), loadedHero.getName());
+        assertEquals(hero.getHitPoints(), loadedHero.getHitPoints());
+        assertEquals(hero.getStrength(), loadedHero.getStrength());
+        assertEquals(hero.getLoad(), loadedHero.getLoad(), 1e-9);
+        assertEquals(hero.getValueHeld(), loadedHero.getValueHeld());
+
+        Backpack loadedBackpack = (Backpack) loadedHero.getItemAt(hero.getAnchorOf(backpack));
+        assertEquals(backpack.getId(), loadedBackpack.getId());
+        assertEquals(loadedHero, loadedBackpack.getHolder());
+        assertEquals(4, loadedBackpack.getNbItemsHeld());
+        Weapon loadedWeapon = (Weapon) loadedBackpack.getItemWithIdAtPos(weapon.getId(), 0);
+        assertEquals(weapon.getDamage(), loadedWeapon.getDamage());
+        assertEquals(loadedBackpack, loadedWeapon.getHolder());
+        assertEquals(purse.getContents(), ((Purse) loadedBackpack.getItemWithIdAtPos(0, 0)).getContents());
+        assertTrue(WorldValidator.validate(loadedHero).isEmpty());
+    }
+
+    @Test
+    void saveLoad_KeepsArmorIdsWhileSavedWorldIsAlive(@TempDir Path directory) throws Exception {
+        Armor armor = new Armor(-1, 2, 20, 10);
+        backpack.pickup(armor);
+        Path path = directory.resolve("world.snapshot");
+        WorldSnapshotWriter.save(world, path);
+        World loaded = WorldSnapshotReader.load(path);
+
+        Hero loadedHero = (Hero) loaded.getEntities().iterator().next();
+        Backpack loadedBackpack = (Backpack) loadedHero.getItemAt(hero.getAnchorOf(backpack));
+        assertEquals(1, loadedBackpack.getNbItemsWithId(armor.getId()));
+        assertEquals(hero.getItemAt(Anchorpoint.BODY).getId(), loadedHero.getItemAt(Anchorpoint.BODY).getId());
+        assertEquals(backpack, armor.getHolder());
+    }
+
+    @Test
+    void loadMapped_Lazy(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("world.snapshot");
+        WorldSnapshotWriter.save(world, path);
+        World loaded = MappedSnapshotLoader.load(path);
+
+        assertEquals(world.getNbEntities(), loaded.getNbEntities());
+        assertEquals(world.getNbItems(), loaded.getNbItems());
+        Hero loadedHero = (Hero) loaded.getEntities().iterator().next();
+        assertThrows(IllegalStateException.class, loadedHero::getInventorySnapshot);
+        Backpack loadedBackpack = (Backpack) loadedHero.getItemAt(hero.getAnchorOf(backpack));
+        EntitySnapshot snapshot = loadedHero.getInventorySnapshot();
+        assertTrue(loadedBackpack.hasPendingContents());
+        assertEquals(4, loadedBackpack.getNbItemsHeld());
+        assertTrue(loadedBackpack.hasPendingContents());
+
+        Backpack loadedNested = (Backpack) loadedBackpack.getItemWithIdAtPos(nested.getId(), 0);
+        assertFalse(loadedBackpack.hasPendingContents());
+        assertTrue(loadedNested.hasPendingContents());
+        assertEquals(hero.getInventorySnapshot().getLoad(), snapshot.getLoad(), 1e-9);
+
+        assertEquals(backpack.getLoad(), loadedBackpack.getLoad(), 1e-9);
+        assertEquals(loadedBackpack, loadedBackpack.getItemWithIdAtPos(weapon.getId(), 0).getHolder());
+        assertEquals(hero.getValueHeld(), loadedHero.getValueHeld());
+        assertTrue(WorldValidator.validate(loaded).stream().allMatch(violation -> violation.getSubject() instanceof Monster));
+    }
+
+    @Test
+    void load_Illegal(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("garbage.snapshot");
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14});
+        assertThrows(IOException.class, () -> WorldSnapshotReader.load(path));
+        Files.write(path, new byte[0]);
+        assertThrows(IOException.class, () -> WorldSnapshotReader.load(path));
+        assertThrows(IOException.class, () -> MappedSnapshotLoader.load(path));
+    }
+
+    @Test
+    void load_CorruptAnchor(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("world.snapshot");
+        WorldSnapshotWriter.save(world, path);
+        byte[] bytes = Files.readAllBytes(path);
+        // The anchor of the first item held by the hero, after the header and the record of the hero
+        bytes[14 + 37 + 1] = 100;
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> WorldSnapshotReader.load(path));
+    }
+
+    @Test
+    void save_NameTooLong(@TempDir Path directory) {
+        World named = new World();
+        named.addEntity(new Monster("A" + "a".repeat(70000), 100, 10, 14));
+        assertThrows(IllegalArgumentException.class, () -> WorldSnapshotWriter.save(named, directory.resolve("world.snapshot")));
+    }
+}
@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import rpg.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorldValidatorTest {
+
+    private static World world;
+    private static Hero hero;
+    private static Backpack backpack;
+
+    @BeforeEach
+    void setup() throws Exception {
+        world = new World();
+        hero = new Hero("Validated", 25);
+        backpack = new Backpack(2, 10, 100);
+        backpack.pickup(new Weapon(3, 14));
+        backpack.pickup(new Purse(0.1, 50));
+        hero.pickup(backpack);
+        world.addEntity(hero);
+        world.addItem(new Weapon(1, 7));
+        world.addItem(new Backpack(1, 1, 10));
+    }
+
+    @Test
+    void validate_Legal() {
+        assertTrue(WorldValidator.validate(world).isEmpty());
+        assertTrue(WorldValidator.validate(hero).isEmpty());
+        assertTrue(WorldValidator.validate(backpack).isEmpty());
+    }
+
+    @Test
+    void validate_Violations() {
+        Monster monster = new Monster("Invalid", 100, 10, 15, new ArrayList<>());
+        world.addEntity(monster);
+        List<InvariantViolation> violations = WorldValidator.validate(world);
+        assertFalse(violations.isEmpty());
+        assertTrue(violations.stream().anyMatch(violation -> violation.getInvariant().equals("isValidDamage(getDamage())")));
+        for (InvariantViolation violation: violations) {
+            assertEquals("Monster(Invalid)", violation.getPath());
+            assertEquals(monster, violation.getSubject());
+        }
+    }
+
+    @Test
+    void validate_PickupFromGround() throws Exception {
+        World other = new World();
+        Weapon weapon = new Weapon(1, 7);
+        world.addItem(weapon);
+        hero.pickup(weapon);
+        assertFalse(world.hasAsItem(weapon));
+        assertTrue(WorldValidator.validate(world).isEmpty());
+        assertEquals(3, world.getStatistics().getNbItems(Weapon.class));
+        hero.drop(weapon);
+        other.addItem(weapon);
+        assertTrue(other.hasAsItem(weapon));
+        assertEquals(2, world.getStatistics().getNbItems(Weapon.class));
+        assertEquals(1, other.getStatistics().getNbItems(Weapon.class));
+    }
+
+    @Test
+    void addItem_Illegal() {
+        assertThrows(IllegalArgumentException.class, () -> world.addItem(backpack));
+        assertThrows(IllegalArgumentException.class, () -> world.addEntity(null));
+    }
+}
@@ -0,0 +1,147 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rpg.*;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest {
+
+    private static World world;
+    private static Hero hero;
+    private static Hero other;
+    private static Backpack backpack;
+    private static Purse purse;
+    private static Weapon weapon;
+
+    @BeforeEach
+    void setup() {
+        world = new World();
+        hero = new Hero("Logged", 25);
+        other = new Hero("Receiver", 25);
+        backpack = new Backpack(2, 10, 100);
+        purse = new Purse(0.1, 50);
+        weapon = new Weapon(3, 14);
+        world.addEntity(hero);
+        world.addEntity(other);
+        world.addItem(backpack);
+        world.addItem(purse);
+        world.addItem(weapon);
+    }
+
+    @Test
+    void recover_ReplaysMutations(@TempDir Path directory) throws Exception {
+        Path snapshot = directory.resolve("world.snapshot");
+        Path path = directory.resolve("world.log");
+        try (WriteAheadLog log = new WriteAheadLog(world, path)) {
+            log.checkpoint(snapshot);
+            log.pickup(hero, backpack);
+            log.pickup(backpack, purse);
+            log.addDucats(purse, 20);
+            log.pickup(hero, weapon);
+            Anchorpoint free = other.getAnchorPoints().stream().filter(anchor -> other.getItemAt(anchor) == null)
+                    .findFirst().orElseThrow();
+            log.transferItemAtAnchorTo(hero, other, hero.getAnchorOf(weapon), free);
+            log.drop(weapon);
+            log.sync().join();
+            assertEquals(6, log.getNbRecords());
+        }
+
+        try (WriteAheadLog log = WriteAheadLog.recover(snapshot, path)) {
+            List<Entity> entities = new ArrayList<>(log.getWorld().getEntities());
+            Hero recovered = (Hero) entities.get(0);
+            Backpack recoveredBackpack = (Backpack) recovered.getItemAt(hero.getAnchorOf(backpack));
+            assertEquals(backpack.getId(), recoveredBackpack.getId());
+            assertEquals(purse.getContents(), ((Purse) recoveredBackpack.getItemWithIdAtPos(0, 0)).getContents());
+            assertEquals(1, log.getWorld().getNbItems());
+            assertEquals(weapon.getId(), log.getWorld().getItems().iterator().next().getId());
+
+            log.drop(recoveredBackpack).join();
+            assertTrue(recoveredBackpack.liesOnGround());
+        }
+        try (WriteAheadLog log = WriteAheadLog.recover(snapshot, path)) {
+            assertEquals(2, log.getWorld().getNbItems());
+        }
+    }
+
+    @Test
+    void recover_IgnoresTornRecord(@TempDir Path directory) throws Exception {
+        Path snapshot = directory.resolve("world.snapshot");
+        Path path = directory.resolve("world.log");
+        try (WriteAheadLog log = new WriteAheadLog(world, path)) {
+            log.checkpoint(snapshot);
+            log.pickup(hero, weapon).join();
+        }
+        Files.write(path, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        try (WriteAheadLog log = WriteAheadLog.recover(snapshot, path)) {
+            assertEquals(2, log.getWorld().getNbItems());
+            assertFalse(((Hero) log.getWorld().getEntities().iterator().next()).getItemAt(hero.getAnchorOf(weapon)) == null);
+            assertEquals(0, log.getNbRecords());
+        }
+    }
+
+    @Test
+    void recover_CrashBetweenSnapshotAndTruncate(@TempDir Path directory) throws Exception {
+        Path snapshot = directory.resolve("world.snapshot");
+        Path path = directory.resolve("world.log");
+        byte[] beforeCheckpoint;
+        try (WriteAheadLog log = new WriteAheadLog(world, path)) {
+            log.checkpoint(snapshot);
+            log.pickup(hero, weapon);
+            log.addDucats(purse, 20).join();
+            beforeCheckpoint = Files.readAllBytes(path);
+            log.checkpoint(snapshot);
+            // The records of a log that was not emptied are marked with the fingerprint of the published snapshot
+            long published = ByteBuffer.wrap(Files.readAllBytes(path)).getLong(4);
+            ByteBuffer.wrap(beforeCheckpoint).putLong(12, published);
+        }
+        Files.write(path, beforeCheckpoint);
+        try (WriteAheadLog log = WriteAheadLog.recover(snapshot, path)) {
+            List<Purse> purses = new ArrayList<>();
+            for (Item item: log.getWorld().getItems()) if(item instanceof Purse) purses.add((Purse) item);
+            assertEquals(20, purses.get(0).getContents());
+            assertEquals(2, log.getWorld().getNbItems());
+            log.drop(((Hero) log.getWorld().getEntities().iterator().next()).getItemAt(hero.getAnchorOf(weapon))).join();
+        }
+        try (WriteAheadLog log = WriteAheadLog.recover(snapshot, path)) {
+            assertEquals(3, log.getWorld().getNbItems());
+        }
+    }
+
+    @Test
+    void mutation_Closed(@TempDir Path directory) throws Exception {
+        WriteAheadLog log = new WriteAheadLog(world, directory.resolve("world.log"));
+        log.close();
+        assertThrows(IllegalStateException.class, () -> log.pickup(hero, weapon));
+        assertThrows(IllegalStateException.class, () -> log.addDucats(purse, 10));
+        assertTrue(weapon.liesOnGround());
+        assertEquals(0, purse.getContents());
+    }
+
+    @Test
+    void groupCommit_ManyProducers(@TempDir Path directory) throws Exception {
+        List<Weapon> weapons = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Weapon item = new Weapon(0.01, 7);
+            weapons.add(item);
+            world.addItem(item);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(world, directory.resolve("world.log"))) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Weapon item: weapons) futures.add(log.discard(item));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            assertEquals(200, log.getNbRecords());
+            assertTrue(log.getNbCommits() <= 200);
+            assertTrue(weapons.stream().allMatch(Item::isBroken));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new WriteAheadLog(null, directory.resolve("other.log")));
+    }
+}